@@ -0,0 +1,196 @@
+/**
+ * BufferedLiveDataCacheRequest.java
+ *
+ * This sample sends cache requests while live data is being published to
+ * the requested topics, and holds back the live messages with a
+ * CacheLiveDataBuffer instead of CacheLiveDataAction.QUEUE: they are staged
+ * in a bounded direct buffer and delivered after the cached messages when
+ * each request completes. The sample checks that no cached message follows
+ * a live one and that live messages stay in order per topic, and reports
+ * the buffer's high-water marks.
+ *
+ * Sample Requirements:
+ * - A Solace appliance running SolOS-TR with an active cache.
+ * - A cache running and caching on a pattern that matches "my/sample/topic/>".
+ * - The cache name must be known and passed to this program as a command line
+ * argument.
+ *
+ * Copyright 2006-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CacheSession;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheLiveDataBuffer;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheLiveDataBuffer.OverflowPolicy;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheRequestManager;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheSessionConfiguration;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+
+public class BufferedLiveDataCacheRequest extends SampleApp {
+
+    CacheSession cacheSession = null;
+    XMLMessageProducer prod = null;
+    XMLMessageConsumer cons = null;
+    CacheSessionConfiguration conf = null;
+
+    void createSession(String[] args) {
+        // Parse command-line arguments.
+        ArgParser parser = new ArgParser();
+        if (parser.parseCacheSampleArgs(args) == 0)
+            conf = (CacheSessionConfiguration) parser.getConfig();
+        else
+            printUsage(parser.isSecure());
+        session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+    }
+
+    void printUsage(boolean secure) {
+        StringBuffer buf = new StringBuffer();
+        buf.append(ArgParser.getCacheArgUsage(secure));
+        buf.append("This sample (-l is ignored, the buffer does the queueing):\n");
+        buf.append("\t[-nt COUNT]     Topics " + SampleUtils.SAMPLE_TOPIC + "/<n> to request (default: 50)\n");
+        buf.append("\t[-mo COUNT]     Maximum outstanding cache requests (default: 16)\n");
+        buf.append("\t[-bb BYTES]     Live data buffer budget (default: 1048576)\n");
+        buf.append("\t[-bp POLICY]    Overflow policy: DROP_NEWEST, DROP_OLDEST or FLUSH (default: FLUSH)\n");
+        buf.append("\t[-ps BYTES]     Live message payload size (default: 256)\n");
+        System.out.println(buf.toString());
+        finish(1);
+    }
+
+    public static void main(String[] args) {
+        BufferedLiveDataCacheRequest cacheReq = new BufferedLiveDataCacheRequest();
+        cacheReq.run(args);
+    }
+
+    public BufferedLiveDataCacheRequest() {
+    }
+
+    void run(String[] args) {
+        createSession(args);
+
+        try {
+            Map<String, String> extraArguments = conf.getArgBag();
+            int count = extraArguments.containsKey("-nt") ? Integer.parseInt(extraArguments.get("-nt")) : 50;
+            int maxOutstanding = extraArguments.containsKey("-mo") ? Integer.parseInt(extraArguments.get("-mo")) : 16;
+            int budget = extraArguments.containsKey("-bb") ? Integer.parseInt(extraArguments.get("-bb")) : 1048576;
+            OverflowPolicy policy = extraArguments.containsKey("-bp") ? OverflowPolicy.valueOf(extraArguments.get("-bp"))
+                : OverflowPolicy.FLUSH;
+            final int payloadSize = Math.max(8, extraArguments.containsKey("-ps")
+                ? Integer.parseInt(extraArguments.get("-ps")) : 256);
+            final List<Topic> topics = new ArrayList<Topic>();
+            for (int i = 0; i < count; i++) {
+                topics.add(JCSMPFactory.onlyInstance().createTopic(SampleUtils.SAMPLE_TOPIC + "/" + i));
+            }
+
+            session.connect();
+            prod = session.getMessageProducer(new PrintingPubCallback());
+
+            // Publish one message per topic to make sure there is something cached.
+            // Payloads start with a sequence number.
+            BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+            byte[] payload = new byte[payloadSize];
+            for (Topic topic : topics) {
+                ByteBuffer.wrap(payload).putLong(0, 0);
+                msg.writeAttachment(payload);
+                prod.send(msg, topic);
+            }
+
+            // Checks the merged stream: per topic, no cached message after a
+            // live one, and live sequence numbers increasing.
+            final Map<String, long[]> lastLive = new HashMap<String, long[]>();
+            final long[] counts = new long[3]; // cached, live, out of order
+            CacheLiveDataBuffer.MessageHandler checker = new CacheLiveDataBuffer.MessageHandler() {
+                public void onMessage(String topic, ByteBuffer payload, boolean cached) {
+                    long seq = payload.remaining() >= 8 ? payload.getLong(payload.position()) : -1;
+                    synchronized (counts) {
+                        long[] last = lastLive.get(topic);
+                        if (cached) {
+                            counts[0]++;
+                            if (last != null) counts[2]++;
+                        } else {
+                            counts[1]++;
+                            if (last == null) {
+                                lastLive.put(topic, new long[] { seq });
+                            } else {
+                                if (seq <= last[0]) counts[2]++;
+                                last[0] = seq;
+                            }
+                        }
+                    }
+                }
+            };
+
+            // Create the cache session based on parameters on the command line.
+            cacheSession = SampleUtils.newCacheSession(session, conf);
+            CacheRequestManager manager = new CacheRequestManager(cacheSession, maxOutstanding);
+            final CacheLiveDataBuffer buffer = new CacheLiveDataBuffer(manager, budget, policy, checker);
+            cons = session.getMessageConsumer(buffer);
+            printRouterInfo();
+            cons.start();
+
+            // Live publisher, running across all of the cache requests.
+            final AtomicBoolean running = new AtomicBoolean(true);
+            final long[] published = { 0 };
+            Thread publisher = new Thread(new Runnable() {
+                public void run() {
+                    BytesXMLMessage live = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+                    byte[] data = new byte[payloadSize];
+                    try {
+                        for (long seq = 1; running.get(); seq++) {
+                            ByteBuffer.wrap(data).putLong(0, seq);
+                            live.writeAttachment(data);
+                            prod.send(live, topics.get((int) (seq % topics.size())));
+                            published[0] = seq;
+                        }
+                    } catch (JCSMPException ex) {
+                        System.err.println("Live publisher stopped: " + ex.getMessage());
+                    }
+                }
+            }, "Live-Publisher");
+            publisher.start();
+
+            System.out.printf("Requesting %d topics from cache '%s' with a %d byte live data buffer (%s)...\n",
+                topics.size(), conf.getCacheName(), budget, policy);
+            long start = System.currentTimeMillis();
+            for (Topic topic : topics) {
+                buffer.request(topic, true);
+            }
+            manager.awaitIdle(conf.getTimeout() * 2L);
+            long elapsed = System.currentTimeMillis() - start;
+            running.set(false);
+            publisher.join();
+
+            System.out.println(manager.getReport());
+            System.out.println(buffer.getReport());
+            synchronized (counts) {
+                System.out.printf("%d live messages published in %d ms; received %d cached and %d live, %d out of order\n",
+                    published[0], elapsed, counts[0], counts[1], counts[2]);
+            }
+            finish(0);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Illegal parameter... " + ex.getMessage());
+            finish(1);
+        } catch (JCSMPException ex) {
+            System.err.println("Encountered a JCSMPException performing a cache request... " + ex.getMessage());
+            finish(1);
+        } catch (InterruptedException ex) {
+            System.err.println("Interrupted... " + ex.getMessage());
+            finish(1);
+        }
+    }
+}
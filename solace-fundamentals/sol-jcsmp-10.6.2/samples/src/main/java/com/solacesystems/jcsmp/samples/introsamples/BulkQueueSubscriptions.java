@@ -0,0 +1,166 @@
+/**
+ * BulkQueueSubscriptions.java
+ *
+ * This sample maps thousands of topics to a queue. Where
+ * TopicToQueueMapping adds each subscription with WAIT_FOR_CONFIRM, one
+ * round trip per topic, this sample pipelines the requests through a
+ * BulkSubscriptionManager, which waits for one confirm per window and
+ * collects failures from the session events. Failed entries are retried,
+ * the subscriptions are removed again the same way, and both directions
+ * are reported in subscriptions per second.
+ *
+ * With -cmp, the first 1000 topics are also added one at a time with
+ * WAIT_FOR_CONFIRM for comparison.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.solacesystems.jcsmp.CapabilityType;
+import com.solacesystems.jcsmp.EndpointProperties;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.BulkSubscriptionManager;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+
+public class BulkQueueSubscriptions extends SampleApp {
+	SessionConfiguration conf = null;
+	BulkSubscriptionManager manager = null;
+
+	void createSession(String[] args) {
+		ArgParser parser = new ArgParser();
+
+		// Parse command-line arguments
+		if (parser.parse(args) == 0)
+			conf = parser.getConfig();
+		else
+			printUsage(parser.isSecure());
+
+		Map<String, String> map = conf.getArgBag();
+		int window = map.containsKey("-w") ? Integer.parseInt(map.get("-w")) : 256;
+		// The manager must see the session events to learn about failed
+		// subscriptions; it passes the other events on.
+		manager = new BulkSubscriptionManager(new PrintingSessionEventHandler(), window);
+		session = SampleUtils.newSession(conf, manager, null);
+		manager.setSession(session);
+	}
+
+	void printUsage(boolean secure) {
+		String strusage = ArgParser.getCommonUsage(secure);
+		strusage += "This sample:\n";
+		strusage += "\t[-q QUEUE]\t Queue to add the subscriptions to (default: bar1-bulk-subscriptions)\n";
+		strusage += "\t[-n COUNT]\t Number of topic subscriptions (default: 10000)\n";
+		strusage += "\t[-w WINDOW]\t Requests per confirmed round trip (default: 256)\n";
+		strusage += "\t[-r ATTEMPTS]\t Attempts per failed subscription (default: 3)\n";
+		strusage += "\t[-cmp]\t\t Also time 1000 subscriptions added one at a time\n";
+		strusage += "\t[-keep]\t\t Keep the subscriptions instead of removing them again\n";
+		System.out.println(strusage);
+		finish(1);
+	}
+
+	public static void main(String[] args) {
+		BulkQueueSubscriptions sample = new BulkQueueSubscriptions();
+		sample.run(args);
+	}
+
+	void checkCapability(final CapabilityType cap) {
+		System.out.printf("Checking for capability %s...", cap);
+		if (session.isCapable(cap)) {
+			System.out.println("OK");
+		} else {
+			System.out.println("FAILED");
+			finish(1);
+		}
+	}
+
+	BulkSubscriptionManager.Result withRetries(BulkSubscriptionManager.Result result, int attempts)
+		throws InterruptedException {
+		if (result.getFailed().isEmpty()) return result;
+		System.out.printf("Retrying %d failed subscriptions...\n", result.getFailed().size());
+		BulkSubscriptionManager.Result retried = manager.retry(result, attempts, 100);
+		System.out.println("  Retry: " + retried);
+		for (BulkSubscriptionManager.Entry e : retried.getFailed()) {
+			System.out.println("  Failed: " + e);
+		}
+		return retried;
+	}
+
+	void run(String[] args) {
+		createSession(args);
+		try {
+			Map<String, String> map = conf.getArgBag();
+			Queue queue = JCSMPFactory.onlyInstance().createQueue(
+				map.containsKey("-q") ? map.get("-q") : "bar1-bulk-subscriptions");
+			int count = map.containsKey("-n") ? Integer.parseInt(map.get("-n")) : 10000;
+			int attempts = map.containsKey("-r") ? Integer.parseInt(map.get("-r")) : 3;
+
+			session.connect();
+			checkCapability(CapabilityType.ENDPOINT_MANAGEMENT);
+			checkCapability(CapabilityType.QUEUE_SUBSCRIPTIONS);
+
+			EndpointProperties props = new EndpointProperties();
+			props.setPermission(EndpointProperties.PERMISSION_DELETE);
+			props.setAccessType(EndpointProperties.ACCESSTYPE_EXCLUSIVE);
+			session.provision(queue, props, JCSMPSession.FLAG_IGNORE_ALREADY_EXISTS);
+
+			List<Topic> topics = new ArrayList<Topic>(count);
+			for (int i = 0; i < count; i++) {
+				topics.add(JCSMPFactory.onlyInstance().createTopic(
+					String.format("bar1/bulk/region%d/symbol%05d", i % 8, i)));
+			}
+
+			if (map.containsKey("-cmp")) {
+				int n = Math.min(count, 1000);
+				long start = System.nanoTime();
+				for (int i = 0; i < n; i++) {
+					session.addSubscription(queue, topics.get(i), JCSMPSession.WAIT_FOR_CONFIRM);
+				}
+				long ms = Math.max(1, (System.nanoTime() - start) / 1000000);
+				System.out.printf("One at a time: %d subscriptions in %d ms (%.0f subscriptions/s)\n", n, ms,
+					n * 1000.0 / ms);
+				for (int i = 0; i < n; i++) {
+					session.removeSubscription(queue, topics.get(i), JCSMPSession.WAIT_FOR_CONFIRM);
+				}
+			}
+
+			System.out.printf("Adding %d subscriptions to '%s'...\n", count, queue.getName());
+			BulkSubscriptionManager.Result added = manager.add(queue, topics);
+			System.out.println("  Add: " + added);
+			withRetries(added, attempts);
+
+			if (!map.containsKey("-keep")) {
+				System.out.printf("Removing %d subscriptions from '%s'...\n", count, queue.getName());
+				BulkSubscriptionManager.Result removed = manager.remove(queue, topics);
+				System.out.println("  Remove: " + removed);
+				withRetries(removed, attempts);
+			}
+
+			finish(0);
+		} catch (JCSMPTransportException ex) {
+			System.err.println("Encountered a JCSMPTransportException, closing session... " + ex.getMessage());
+			finish(1);
+		} catch (JCSMPException ex) {
+			System.err.println("Encountered a JCSMPException, closing session... " + ex.getMessage());
+			// Possible causes:
+			// - Authentication error: invalid username/password
+			// - Provisioning error: unable to provision the queue
+			// - Missing modify-topic permission on the queue
+			finish(1);
+		} catch (Exception ex) {
+			System.err.println("Encountered an Exception... " + ex.getMessage());
+			finish(1);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * ConsumeTransformProduce.java
+ *
+ * This sample shows how to scale exactly-once queue-to-queue transformations over
+ * several threads using transactions.
+ *
+ * Transactions uses one TransactedSession on one thread. Here a TransactionalProcessor
+ * runs N workers, each with its own TransactedSession, a flow bound to the same
+ * non-exclusive source queue and a producer from txSession.createProducer(). Every
+ * consumed message and the message produced from it are committed together; a failed
+ * transform or commit is rolled back and the message is redelivered.
+ *
+ * The source queue is provisioned as non-exclusive if it does not exist. The sample
+ * prints per-worker and aggregate transactions per second every second.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.Map;
+import java.util.Random;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.EndpointProperties;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.XMLMessage;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+import com.solacesystems.jcsmp.samples.introsamples.common.TransactionalProcessor;
+import com.solacesystems.jcsmp.samples.introsamples.common.TransactionalProcessor.Transform;
+import com.solacesystems.jcsmp.samples.introsamples.common.TransactionalProcessor.Worker;
+
+public class ConsumeTransformProduce extends SampleApp {
+    SessionConfiguration conf = null;
+    XMLMessageProducer prod = null;
+
+    /**
+     * Copies the attachment and upper-cases it. Optionally fails a percentage
+     * of messages to demonstrate rollback and redelivery.
+     */
+    static class UpperCaseTransform implements Transform {
+        private final int failPercent;
+        private final Random random = new Random();
+
+        UpperCaseTransform(int failPercent) {
+            this.failPercent = failPercent;
+        }
+
+        public XMLMessage transform(BytesXMLMessage input) throws Exception {
+            if (failPercent > 0 && random.nextInt(100) < failPercent) {
+                throw new Exception("Injected transform failure");
+            }
+            byte[] data = new byte[input.getAttachmentContentLength()];
+            input.readAttachmentBytes(data);
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] >= 'a' && data[i] <= 'z') data[i] -= 'a' - 'A';
+            }
+            BytesXMLMessage out = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+            out.setDeliveryMode(DeliveryMode.PERSISTENT);
+            out.writeAttachment(data);
+            out.setApplicationMessageId(input.getApplicationMessageId());
+            return out;
+        }
+    }
+
+    void createSession(String[] args) {
+        ArgParser parser = new ArgParser();
+
+        // Parse command-line arguments
+        if (parser.parse(args) == 0)
+            conf = parser.getConfig();
+        else
+            printUsage(parser.isSecure());
+
+        session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+    }
+
+    void printUsage(boolean secure) {
+        String strusage = ArgParser.getCommonUsage(secure);
+        strusage += "This sample:\n";
+        strusage += "\t[-sq SOURCE_QUEUE]\tNon-exclusive queue to consume from (default: bar1-ctp-source)\n";
+        strusage += "\t[-dq TARGET_QUEUE]\tQueue to produce transformed messages to (default: bar1-ctp-target)\n";
+        strusage += "\t[-wk WORKERS]     \tNumber of worker threads (default: 4)\n";
+        strusage += "\t[-g GROUP_SIZE]   \tMessages per transaction (default: 1)\n";
+        strusage += "\t[-n NUM_MSGS]     \tMessages to publish to the source queue first (default: 10000)\n";
+        strusage += "\t[-d SECONDS]      \tHow long to run the processor (default: 30)\n";
+        strusage += "\t[-f FAIL_PCT]     \tPercentage of transforms that fail and roll back (default: 0)\n";
+        System.out.println(strusage);
+        finish(1);
+    }
+
+    public static void main(String[] args) {
+        ConsumeTransformProduce sample = new ConsumeTransformProduce();
+        sample.run(args);
+    }
+
+    static int intArg(Map<String, String> args, String key, int defaultValue) {
+        return args.containsKey(key) ? Integer.parseInt(args.get(key)) : defaultValue;
+    }
+
+    void run(String[] args) {
+        createSession(args);
+        Map<String, String> extraArguments = conf.getArgBag();
+        String sourceName = extraArguments.containsKey("-sq") ? extraArguments.get("-sq") : "bar1-ctp-source";
+        String targetName = extraArguments.containsKey("-dq") ? extraArguments.get("-dq") : "bar1-ctp-target";
+        int workers = 4, groupSize = 1, numMsgs = 10000, seconds = 30, failPercent = 0;
+        try {
+            workers = intArg(extraArguments, "-wk", workers);
+            groupSize = intArg(extraArguments, "-g", groupSize);
+            numMsgs = intArg(extraArguments, "-n", numMsgs);
+            seconds = intArg(extraArguments, "-d", seconds);
+            failPercent = intArg(extraArguments, "-f", failPercent);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid numeric argument: " + e.getMessage());
+            printUsage(false);
+        }
+
+        try {
+            session.connect();
+            prod = session.getMessageProducer(new PrintingPubCallback());
+
+            Queue source = JCSMPFactory.onlyInstance().createQueue(sourceName);
+            Queue target = JCSMPFactory.onlyInstance().createQueue(targetName);
+            EndpointProperties sourceProps = new EndpointProperties();
+            sourceProps.setAccessType(EndpointProperties.ACCESSTYPE_NONEXCLUSIVE);
+            sourceProps.setPermission(EndpointProperties.PERMISSION_CONSUME);
+            session.provision(source, sourceProps, JCSMPSession.FLAG_IGNORE_ALREADY_EXISTS);
+            EndpointProperties targetProps = new EndpointProperties();
+            targetProps.setPermission(EndpointProperties.PERMISSION_CONSUME);
+            session.provision(target, targetProps, JCSMPSession.FLAG_IGNORE_ALREADY_EXISTS);
+
+            System.out.printf("Publishing %d messages to '%s'...\n", numMsgs, sourceName);
+            BytesXMLMessage m = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+            m.setDeliveryMode(DeliveryMode.PERSISTENT);
+            for (int i = 0; i < numMsgs; i++) {
+                m.setApplicationMessageId(String.valueOf(i));
+                m.writeAttachment(("message number " + i).getBytes());
+                prod.send(m, source);
+            }
+
+            TransactionalProcessor processor = new TransactionalProcessor(session, source, target, workers,
+                new UpperCaseTransform(failPercent), groupSize, 1000);
+            System.out.printf("Starting %d workers, %d message(s) per transaction, for %d seconds...\n",
+                workers, groupSize, seconds);
+            processor.start();
+
+            long[] lastTx = new long[workers];
+            long lastTotal = 0;
+            long start = System.currentTimeMillis();
+            for (int s = 0; s < seconds; s++) {
+                Thread.sleep(1000);
+                StringBuilder line = new StringBuilder();
+                long total = 0;
+                for (Worker w : processor.getWorkers()) {
+                    long tx = w.getTransactions();
+                    line.append(String.format(" w%d=%d", w.getId(), tx - lastTx[w.getId()]));
+                    lastTx[w.getId()] = tx;
+                    total += tx;
+                }
+                System.out.printf("tx/sec: total=%d |%s\n", total - lastTotal, line);
+                lastTotal = total;
+            }
+            processor.stop();
+            double elapsed = (System.currentTimeMillis() - start) / 1000.0;
+
+            System.out.println("Summary:");
+            for (Worker w : processor.getWorkers()) {
+                System.out.printf("   worker %d: %d transactions (%.1f/sec), %d messages, %d rolled back, %d failed transforms\n",
+                    w.getId(), w.getTransactions(), w.getTransactions() / elapsed, w.getCommitted(),
+                    w.getRolledBack(), w.getFailures());
+            }
+            System.out.printf("   aggregate: %d transactions (%.1f/sec), %d messages (%.1f/sec)\n",
+                processor.getTransactions(), processor.getTransactions() / elapsed,
+                processor.getCommitted(), processor.getCommitted() / elapsed);
+
+            finish(0);
+        } catch (JCSMPTransportException ex) {
+            System.err.println("Encountered a JCSMPTransportException, closing session... " + ex.getMessage());
+            finish(1);
+        } catch (JCSMPException ex) {
+            System.err.println("Encountered a JCSMPException, closing session... " + ex.getMessage());
+            // Possible causes:
+            // - Provisioning error: the client is not allowed to provision endpoints
+            // - The source queue exists but is exclusive
+            finish(1);
+        } catch (Exception ex) {
+            System.err.println("Encountered an Exception... " + ex.getMessage());
+            finish(1);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * FlatPayloadBenchmark.java
+ *
+ * Compares four ways of carrying the same quote record in a message:
+ *
+ *  - a FlatLayout payload, written through a reusable Writer into the
+ *    binary attachment, copied with readAttachmentBytes() into a reused
+ *    array and read in place from it,
+ *  - an SDTMap in a MapMessage,
+ *  - an SDTStream in a StreamMessage,
+ *  - an XML document in the attachment, like SampleUtils.xmldoc, parsed
+ *    with StAX.
+ *
+ * Encoding includes getting the payload into the message: for the SDT
+ * forms that is the serialization done by getAttachmentByteBuffer(). The
+ * SDT decode figures only cover reading the fields from the container; on
+ * a received message the API also parses the container from the wire,
+ * which this offline benchmark cannot time, so they understate the SDT
+ * cost. Wire size is the attachment length of each form.
+ *
+ * No appliance is needed to run this sample.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.MapMessage;
+import com.solacesystems.jcsmp.SDTMap;
+import com.solacesystems.jcsmp.SDTStream;
+import com.solacesystems.jcsmp.StreamMessage;
+import com.solacesystems.jcsmp.samples.introsamples.common.FlatLayout;
+import com.solacesystems.jcsmp.samples.introsamples.common.FlatLayout.Field;
+import com.solacesystems.jcsmp.samples.introsamples.common.FlatLayout.Type;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+
+public class FlatPayloadBenchmark extends SampleApp {
+
+	public FlatPayloadBenchmark() {
+		super();
+	}
+
+	public void printSyntax() {
+		System.out.println("Parameters:");
+		System.out.println("\t[-n OPERATIONS]\tOperations per measured iteration. Default: 200000");
+		System.out.println("\t[-i ITERATIONS]\tMeasured iterations per case. Default: 5");
+		System.out.println();
+	}
+
+	static final FlatLayout QUOTE = FlatLayout.builder(1, 1)
+		.ascii("symbol", 16)
+		.add("sequence", Type.INT64)
+		.add("bid", Type.FLOAT64)
+		.add("ask", Type.FLOAT64)
+		.add("bidSize", Type.INT32)
+		.add("askSize", Type.INT32)
+		.add("venue", Type.INT8)
+		.add("firm", Type.INT8)
+		.add("timestamp", Type.INT64)
+		.build();
+	static final Field SYMBOL = QUOTE.field("symbol");
+	static final Field SEQUENCE = QUOTE.field("sequence");
+	static final Field BID = QUOTE.field("bid");
+	static final Field ASK = QUOTE.field("ask");
+	static final Field BID_SIZE = QUOTE.field("bidSize");
+	static final Field ASK_SIZE = QUOTE.field("askSize");
+	static final Field VENUE = QUOTE.field("venue");
+	static final Field FIRM = QUOTE.field("firm");
+	static final Field TIMESTAMP = QUOTE.field("timestamp");
+
+	static final String SYMBOL_VALUE = "BAR1.EQ.XYZ";
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The source values; the sequence changes with every operation. */
+	static final double BID_VALUE = 101.25, ASK_VALUE = 101.27;
+	static final int BID_SIZE_VALUE = 500, ASK_SIZE_VALUE = 300;
+	static final byte VENUE_VALUE = 7;
+	static final long TIMESTAMP_VALUE = 1560000000000L;
+
+	/** One encode or decode; the result keeps the JIT from dropping the work. */
+	static abstract class Case {
+		abstract long run(long i) throws Exception;
+	}
+
+	/** Bytes allocated by this thread so far, or -1 if the JVM cannot tell. */
+	static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hs = (com.sun.management.ThreadMXBean) bean;
+			if (hs.isThreadAllocatedMemorySupported() && hs.isThreadAllocatedMemoryEnabled()) {
+				return hs.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	static long sink;
+
+	/**
+	 * Runs every case before any is timed, so that the first one measured
+	 * does not pay for compiling the shared loop.
+	 */
+	static void warmUp(Case[][] cases, int ops) throws Exception {
+		long check = 0;
+		for (int w = 0; w < 5; w++) {
+			for (Case[] pair : cases) {
+				for (Case c : pair) {
+					for (int i = 0; i < ops; i++) check += c.run(i);
+				}
+			}
+		}
+		sink += check;
+	}
+
+	/** @return { ns/op, bytes/op } */
+	static double[] measure(Case c, int ops, int iterations) throws Exception {
+		long check = 0;
+		long nanos = 0;
+		long alloc = allocatedBytes();
+		for (int it = 0; it < iterations; it++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ops; i++) check += c.run(i);
+			nanos += System.nanoTime() - start;
+		}
+		long allocated = allocatedBytes() - alloc;
+		sink += check;
+		double total = (double) ops * iterations;
+		return new double[] { nanos / total, alloc < 0 ? -1 : allocated / total };
+	}
+
+	static String toXml(StringBuilder sb, long sequence) {
+		sb.setLength(0);
+		sb.append("<quote><symbol>").append(SYMBOL_VALUE).append("</symbol><sequence>").append(sequence)
+			.append("</sequence><bid>").append(BID_VALUE).append("</bid><ask>").append(ASK_VALUE)
+			.append("</ask><bidSize>").append(BID_SIZE_VALUE).append("</bidSize><askSize>").append(ASK_SIZE_VALUE)
+			.append("</askSize><venue>").append(VENUE_VALUE).append("</venue><firm>").append(true)
+			.append("</firm><timestamp>").append(TIMESTAMP_VALUE).append("</timestamp></quote>");
+		return sb.toString();
+	}
+
+	/** Parses a quote document and returns a checksum of its fields. */
+	static long parseXml(XMLInputFactory factory, byte[] doc, int len) throws Exception {
+		XMLStreamReader r = factory.createXMLStreamReader(new ByteArrayInputStream(doc, 0, len));
+		long sum = 0;
+		try {
+			String element = null;
+			while (r.hasNext()) {
+				int event = r.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					element = r.getLocalName();
+				} else if (event == XMLStreamConstants.CHARACTERS && element != null) {
+					String text = r.getText();
+					if (element.equals("symbol")) {
+						sum += text.length();
+					} else if (element.equals("bid") || element.equals("ask")) {
+						sum += (long) Double.parseDouble(text);
+					} else if (element.equals("firm")) {
+						sum += Boolean.parseBoolean(text) ? 1 : 0;
+					} else if (!element.equals("quote")) {
+						sum += Long.parseLong(text);
+					}
+					element = null;
+				}
+			}
+		} finally {
+			r.close();
+		}
+		return sum;
+	}
+
+	public void run(String[] args) {
+		try {
+			int ops = 200000;
+			int iterations = 5;
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-n")) {
+					i++;
+					ops = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-i")) {
+					i++;
+					iterations = Integer.parseInt(args[i]);
+				} else if (args[i].equals("--help")) {
+					printSyntax();
+					return;
+				}
+			}
+			JCSMPFactory f = JCSMPFactory.onlyInstance();
+
+			// Flat
+			final FlatLayout.Writer writer = new FlatLayout.Writer(QUOTE);
+			final FlatLayout.Reader reader = new FlatLayout.Reader(QUOTE);
+			final BytesXMLMessage flatMsg = f.createMessage(BytesXMLMessage.class);
+			final byte[] flatReceived = new byte[QUOTE.getEncodedLength()];
+			Case flatEncode = new Case() {
+				long run(long i) {
+					writer.reset().putAscii(SYMBOL, SYMBOL_VALUE).putLong(SEQUENCE, i).putDouble(BID, BID_VALUE)
+						.putDouble(ASK, ASK_VALUE).putInt(BID_SIZE, BID_SIZE_VALUE).putInt(ASK_SIZE, ASK_SIZE_VALUE)
+						.putByte(VENUE, VENUE_VALUE).putBoolean(FIRM, true).putLong(TIMESTAMP, TIMESTAMP_VALUE);
+					writer.writeTo(flatMsg);
+					return flatMsg.getAttachmentContentLength();
+				}
+			};
+			Case flatDecode = new Case() {
+				long run(long i) {
+					reader.wrap(flatReceived, 0, flatMsg.readAttachmentBytes(flatReceived));
+					return reader.getAsciiLength(SYMBOL) + reader.getLong(SEQUENCE) + (long) reader.getDouble(BID)
+						+ (long) reader.getDouble(ASK) + reader.getInt(BID_SIZE) + reader.getInt(ASK_SIZE)
+						+ reader.getByte(VENUE) + (reader.getBoolean(FIRM) ? 1 : 0) + reader.getLong(TIMESTAMP);
+				}
+			};
+
+			// SDTMap
+			final SDTMap map = f.createMap();
+			final MapMessage mapMsg = f.createMessage(MapMessage.class);
+			Case mapEncode = new Case() {
+				long run(long i) throws Exception {
+					map.clear();
+					map.putString("symbol", SYMBOL_VALUE);
+					map.putLong("sequence", i);
+					map.putDouble("bid", BID_VALUE);
+					map.putDouble("ask", ASK_VALUE);
+					map.putInteger("bidSize", BID_SIZE_VALUE);
+					map.putInteger("askSize", ASK_SIZE_VALUE);
+					map.putByte("venue", VENUE_VALUE);
+					map.putBoolean("firm", true);
+					map.putLong("timestamp", TIMESTAMP_VALUE);
+					mapMsg.setMap(map);
+					return mapMsg.getAttachmentByteBuffer().remaining();
+				}
+			};
+			Case mapDecode = new Case() {
+				long run(long i) throws Exception {
+					SDTMap m = mapMsg.getMap();
+					return m.getString("symbol").length() + m.getLong("sequence") + m.getDouble("bid").longValue()
+						+ m.getDouble("ask").longValue() + m.getInteger("bidSize") + m.getInteger("askSize")
+						+ m.getByte("venue") + (m.getBoolean("firm") ? 1 : 0) + m.getLong("timestamp");
+				}
+			};
+
+			// SDTStream
+			final SDTStream stream = f.createStream();
+			final StreamMessage streamMsg = f.createMessage(StreamMessage.class);
+			Case streamEncode = new Case() {
+				long run(long i) {
+					stream.clear();
+					stream.writeString(SYMBOL_VALUE);
+					stream.writeLong(i);
+					stream.writeDouble(BID_VALUE);
+					stream.writeDouble(ASK_VALUE);
+					stream.writeInteger(BID_SIZE_VALUE);
+					stream.writeInteger(ASK_SIZE_VALUE);
+					stream.writeByte(VENUE_VALUE);
+					stream.writeBoolean(true);
+					stream.writeLong(TIMESTAMP_VALUE);
+					streamMsg.setStream(stream);
+					return streamMsg.getAttachmentByteBuffer().remaining();
+				}
+			};
+			Case streamDecode = new Case() {
+				long run(long i) throws Exception {
+					SDTStream s = streamMsg.getStream();
+					s.rewind();
+					return s.readString().length() + s.readLong() + s.readDouble().longValue()
+						+ s.readDouble().longValue() + s.readInteger() + s.readInteger() + s.readByte()
+						+ (s.readBoolean() ? 1 : 0) + s.readLong();
+				}
+			};
+
+			// XML
+			final StringBuilder sb = new StringBuilder(512);
+			final BytesXMLMessage xmlMsg = f.createMessage(BytesXMLMessage.class);
+			final byte[] received = new byte[512];
+			final XMLInputFactory factory = XMLInputFactory.newInstance();
+			Case xmlEncode = new Case() {
+				long run(long i) {
+					byte[] doc = toXml(sb, i).getBytes(UTF8);
+					xmlMsg.writeAttachment(doc);
+					return doc.length;
+				}
+			};
+			Case xmlDecode = new Case() {
+				long run(long i) throws Exception {
+					int len = xmlMsg.readAttachmentBytes(received);
+					return parseXml(factory, received, len);
+				}
+			};
+
+			// Every form must carry the same record before it is worth timing.
+			long[] sums = { flatEncode.run(42) > 0 ? flatDecode.run(0) : 0,
+				mapEncode.run(42) > 0 ? mapDecode.run(0) : 0,
+				streamEncode.run(42) > 0 ? streamDecode.run(0) : 0,
+				xmlEncode.run(42) > 0 ? xmlDecode.run(0) : 0 };
+			for (long s : sums) {
+				if (s != sums[0]) throw new Exception("Decoded values differ between formats");
+			}
+			ByteBuffer flat = flatMsg.getAttachmentByteBuffer();
+			if (!reader.wrap(flat).asciiEquals(SYMBOL, SYMBOL_VALUE)) throw new Exception("Flat symbol mismatch");
+			System.out.println("Flat layout: " + QUOTE);
+
+			String[] names = { "flat", "SDTMap", "SDTStream", "XML" };
+			Case[][] cases = { { flatEncode, flatDecode }, { mapEncode, mapDecode }, { streamEncode, streamDecode },
+				{ xmlEncode, xmlDecode } };
+			int[] wire = { flatMsg.getAttachmentContentLength(), mapMsg.getAttachmentByteBuffer().remaining(),
+				streamMsg.getAttachmentByteBuffer().remaining(), xmlMsg.getAttachmentContentLength() };
+
+			warmUp(cases, ops);
+			System.out.printf("%-10s %12s %12s %12s %12s %10s\n", "format", "encode ns", "decode ns", "encode B/op",
+				"decode B/op", "wire bytes");
+			double[][] results = new double[names.length][];
+			for (int i = 0; i < names.length; i++) {
+				double[] enc = measure(cases[i][0], ops, iterations);
+				cases[i][0].run(42);
+				double[] dec = measure(cases[i][1], ops, iterations);
+				results[i] = new double[] { enc[0], dec[0] };
+				System.out.printf("%-10s %12.1f %12.1f %12.0f %12.0f %10d\n", names[i], enc[0], dec[0], enc[1], dec[1],
+					wire[i]);
+			}
+			for (int i = 1; i < names.length; i++) {
+				System.out.printf("flat vs %-9s encode %.1fx, decode %.1fx, %.0f%% of the bytes\n", names[i],
+					results[i][0] / results[0][0], results[i][1] / results[0][1], wire[0] * 100.0 / wire[i]);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static void main(String[] args) {
+		FlatPayloadBenchmark benchmark = new FlatPayloadBenchmark();
+		benchmark.run(args);
+		System.exit(0);
+	}
+}
@@ -0,0 +1,265 @@
+/**
+ * GroupCommitTransactions.java
+ *
+ * This sample extends the Transactions request/reply scenario with group commit.
+ *
+ * Transactions.Replier commits once per request, so every request pays a full
+ * commit round trip to the message broker. Here the replier consumes requests and
+ * sends replies through a GroupCommitSession, which commits once per group of up
+ * to N requests or after T microseconds, whichever comes first.
+ *
+ * The sample runs the same load at several group sizes and reports the commit rate,
+ * the message rate and the end-to-end latency (request sent to reply committed).
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.ConsumerFlowProperties;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.EndpointProperties;
+import com.solacesystems.jcsmp.FlowReceiver;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishEventHandler;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.ProducerFlowProperties;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.GroupCommitSession;
+import com.solacesystems.jcsmp.samples.introsamples.common.GroupCommitSession.CommitListener;
+import com.solacesystems.jcsmp.samples.introsamples.common.GroupCommitSession.MessageProcessor;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+import com.solacesystems.jcsmp.transaction.TransactedSession;
+
+public class GroupCommitTransactions extends SampleApp implements JCSMPStreamingPublishEventHandler {
+
+    static final String REQUEST_QUEUE = "bar1-transactions-reply";
+    static final String REPLY_QUEUE = "bar1-wh-req";
+
+    /**
+     * Consumes requests and sends one reply per request; commits are grouped.
+     */
+    public class Replier implements JCSMPStreamingPublishEventHandler, MessageProcessor, CommitListener {
+        public TransactedSession txSession;
+        public XMLMessageProducer producer;
+        public FlowReceiver receiver;
+        public GroupCommitSession groupCommit;
+
+        long committed = 0;
+        long rolledBack = 0;
+        long latencyMsTotal = 0;
+        long latencyMsMax = 0;
+
+        public Replier(Queue queue, int groupSize, long maxDelayMicros) throws JCSMPException {
+            txSession = session.createTransactedSession();
+
+            ProducerFlowProperties prodFlowProps = new ProducerFlowProperties();
+            prodFlowProps.setWindowSize(255);
+            producer = txSession.createProducer(prodFlowProps, this);
+
+            ConsumerFlowProperties consFlowProps = new ConsumerFlowProperties();
+            consFlowProps.setEndpoint(queue);
+            consFlowProps.setStartState(true);
+            EndpointProperties endpointProps = new EndpointProperties();
+            endpointProps.setAccessType(EndpointProperties.ACCESSTYPE_EXCLUSIVE);
+            // A null listener: the group commit loop pulls messages on this thread.
+            receiver = txSession.createFlow(null, consFlowProps, endpointProps);
+
+            groupCommit = new GroupCommitSession(txSession, groupSize, maxDelayMicros);
+        }
+
+        public Object process(BytesXMLMessage message) throws JCSMPException {
+            BytesXMLMessage reply = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+            reply.setDeliveryMode(DeliveryMode.PERSISTENT);
+            reply.setSenderId("Replier");
+            producer.send(reply, message.getReplyTo());
+            return message.getSenderTimestamp();
+        }
+
+        public void onCommitted(Object token) {
+            committed++;
+            if (token != null) {
+                long latency = System.currentTimeMillis() - (Long) token;
+                latencyMsTotal += latency;
+                if (latency > latencyMsMax) latencyMsMax = latency;
+            }
+        }
+
+        public void onRolledBack(Object token, JCSMPException cause) {
+            rolledBack++;
+        }
+
+        public void close() {
+            receiver.close();
+            txSession.close();
+        }
+
+        public void handleError(String messageID, JCSMPException cause,
+                                long timestamp) {
+            System.err.println("Replier handleError " + cause);
+        }
+
+        public void responseReceived(String messageID) {
+            // Do Nothing
+        }
+    }
+
+    private SessionConfiguration conf;
+    private XMLMessageProducer requestProducer;
+
+    public void handleError(String messageID, JCSMPException cause,
+                            long timestamp) {
+        System.err.println("Request producer handleError " + cause);
+    }
+
+    public void responseReceived(String messageID) {
+        // Do Nothing
+    }
+
+    void printUsage(boolean secure) {
+        String strusage = ArgParser.getCommonUsage(secure);
+        strusage += "This sample:\n";
+        strusage += "\t[-n NUM_MSGS]     \tRequests per group size (default: 1000)\n";
+        strusage += "\t[-g GROUP_SIZES]  \tComma separated group sizes to compare (default: 1,10,50,100)\n";
+        strusage += "\t[-T MAX_DELAY_US] \tMaximum time a unit waits for its group commit, in microseconds (default: 1000)\n";
+        System.out.println(strusage);
+        finish(1);
+    }
+
+    void createSession(String[] args) {
+        // Parse command-line arguments.
+        ArgParser parser = new ArgParser();
+        if (parser.parse(args) == 0)
+            conf = parser.getConfig();
+        else
+            printUsage(parser.isSecure());
+
+        session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(),null);
+    }
+
+    /**
+     * Publishes requests from a separate thread so that they arrive while the
+     * replier is committing, as they would from independent requestors.
+     */
+    Thread startPublisher(final int count, final Queue requestQueue, final Queue replyQueue) {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    BytesXMLMessage request = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+                    request.setDeliveryMode(DeliveryMode.PERSISTENT);
+                    request.setSenderId("Requestor");
+                    request.setReplyTo(replyQueue);
+                    for (int i = 0; i < count; i++) {
+                        request.setSenderTimestamp(System.currentTimeMillis());
+                        requestProducer.send(request, requestQueue);
+                    }
+                } catch (JCSMPException e) {
+                    System.err.println("Publisher failed: " + e);
+                }
+            }
+        }, "group-commit-publisher");
+        t.start();
+        return t;
+    }
+
+    /**
+     * Consumes and commits all replies so that the reply queue does not fill up
+     * between runs. Uses group commit too, with no-op processing.
+     */
+    void drainReplies(Queue replyQueue) throws JCSMPException {
+        TransactedSession txSession = session.createTransactedSession();
+        ConsumerFlowProperties consFlowProps = new ConsumerFlowProperties();
+        consFlowProps.setEndpoint(replyQueue);
+        consFlowProps.setStartState(true);
+        FlowReceiver receiver = txSession.createFlow(null, consFlowProps, new EndpointProperties());
+        GroupCommitSession drain = new GroupCommitSession(txSession, 200, 10000);
+        drain.run(receiver, new MessageProcessor() {
+            public Object process(BytesXMLMessage message) {
+                return null;
+            }
+        }, null, 0, 1000);
+        receiver.close();
+        txSession.close();
+    }
+
+    public void run(String[] args) {
+        createSession(args);
+        Map<String,String> extraArguments = conf.getArgBag();
+        int numMsgs = 1000;
+        long maxDelayMicros = 1000;
+        List<Integer> groupSizes = new ArrayList<Integer>();
+        try {
+            if (extraArguments.containsKey("-n")) {
+                numMsgs = Integer.parseInt(extraArguments.get("-n"));
+            }
+            if (extraArguments.containsKey("-T")) {
+                maxDelayMicros = Long.parseLong(extraArguments.get("-T"));
+            }
+            String sizes = extraArguments.containsKey("-g") ? extraArguments.get("-g") : "1,10,50,100";
+            for (String size : sizes.split(",")) {
+                groupSizes.add(Integer.valueOf(size.trim()));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid numeric argument: " + e.getMessage());
+            printUsage(false);
+        }
+
+        try {
+            session.connect();
+            requestProducer = session.getMessageProducer(this);
+
+            Queue requestQueue = JCSMPFactory.onlyInstance().createQueue(REQUEST_QUEUE);
+            Queue replyQueue = JCSMPFactory.onlyInstance().createQueue(REPLY_QUEUE);
+
+            StringBuilder table = new StringBuilder();
+            table.append(String.format("%8s %12s %12s %14s %14s %10s\n",
+                "group", "msgs/sec", "commits/sec", "avg e2e (ms)", "max e2e (ms)", "rollbacks"));
+            for (int groupSize : groupSizes) {
+                System.out.printf("Running %d requests with group size %d, max delay %d us...\n", numMsgs, groupSize, maxDelayMicros);
+                Replier replier = new Replier(requestQueue, groupSize, maxDelayMicros);
+                long start = System.nanoTime();
+                Thread publisher = startPublisher(numMsgs, requestQueue, replyQueue);
+                replier.groupCommit.run(replier.receiver, replier, replier, numMsgs, 10000);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                publisher.join();
+                System.out.println("   " + replier.groupCommit.getReport());
+                table.append(String.format("%8d %12.0f %12.1f %14.2f %14d %10d\n",
+                    groupSize, replier.committed / seconds, replier.groupCommit.getCommitCount() / seconds,
+                    replier.committed == 0 ? 0.0 : (double) replier.latencyMsTotal / replier.committed,
+                    replier.latencyMsMax, replier.rolledBack));
+                replier.close();
+                drainReplies(replyQueue);
+            }
+            System.out.println();
+            System.out.print(table);
+
+            finish(0);
+        } catch (JCSMPTransportException ex) {
+            System.err.println("Encountered a JCSMPTransportException, closing session... "
+                    + ex.getMessage());
+            finish(1);
+        } catch (JCSMPException ex) {
+            System.err.println("Encountered a JCSMPException, closing session... "
+                    + ex.getMessage());
+            finish(1);
+        } catch (Exception ex) {
+            System.err.println("Encountered an Exception... " + ex.getMessage());
+            finish(1);
+        }
+    }
+
+    public static void main(String[] args) {
+        GroupCommitTransactions r = new GroupCommitTransactions();
+        r.run(args);
+    }
+}
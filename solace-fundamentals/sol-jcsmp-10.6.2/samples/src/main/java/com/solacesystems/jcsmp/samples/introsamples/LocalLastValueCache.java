@@ -0,0 +1,175 @@
+/**
+ * LocalLastValueCache.java
+ *
+ * This sample keeps the latest value of many topics in the application
+ * process. A LastValueCache is seeded with cache requests and kept current
+ * by live data, while reader threads look values up locally. The sample
+ * publishes updates during the read phase and reports the local read rate.
+ *
+ * Sample Requirements:
+ * - A Solace appliance running SolOS-TR with an active cache.
+ * - A cache running and caching on a pattern that matches "my/sample/topic/>".
+ * - The cache name must be known and passed to this program as a command line
+ * argument.
+ *
+ * Copyright 2006-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CacheSession;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheRequestManager;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheSessionConfiguration;
+import com.solacesystems.jcsmp.samples.introsamples.common.LastValueCache;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+
+public class LocalLastValueCache extends SampleApp {
+
+    CacheSession cacheSession = null;
+    XMLMessageProducer prod = null;
+    XMLMessageConsumer cons = null;
+    CacheSessionConfiguration conf = null;
+
+    void createSession(String[] args) {
+        // Parse command-line arguments.
+        ArgParser parser = new ArgParser();
+        if (parser.parseCacheSampleArgs(args) == 0)
+            conf = (CacheSessionConfiguration) parser.getConfig();
+        else
+            printUsage(parser.isSecure());
+        session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+    }
+
+    void printUsage(boolean secure) {
+        StringBuffer buf = new StringBuffer();
+        buf.append(ArgParser.getCacheArgUsage(secure));
+        buf.append("This sample:\n");
+        buf.append("\t[-tl TOPICS]    Comma-separated topics to cache\n");
+        buf.append("\t[-nt COUNT]     Otherwise cache COUNT topics " + SampleUtils.SAMPLE_TOPIC + "/<n> (default: 100)\n");
+        buf.append("\t[-mo COUNT]     Maximum outstanding cache requests while seeding (default: 16)\n");
+        buf.append("\t[-oh]           Store payloads off-heap\n");
+        buf.append("\t[-rt COUNT]     Reader threads (default: 4)\n");
+        buf.append("\t[-d SECONDS]    Duration of the read phase (default: 5)\n");
+        System.out.println(buf.toString());
+        finish(1);
+    }
+
+    public static void main(String[] args) {
+        LocalLastValueCache lvc = new LocalLastValueCache();
+        lvc.run(args);
+    }
+
+    public LocalLastValueCache() {
+    }
+
+    void run(String[] args) {
+        createSession(args);
+
+        try {
+            Map<String, String> extraArguments = conf.getArgBag();
+            int maxOutstanding = extraArguments.containsKey("-mo") ? Integer.parseInt(extraArguments.get("-mo")) : 16;
+            int readers = extraArguments.containsKey("-rt") ? Integer.parseInt(extraArguments.get("-rt")) : 4;
+            int seconds = extraArguments.containsKey("-d") ? Integer.parseInt(extraArguments.get("-d")) : 5;
+            final List<Topic> topics = new ArrayList<Topic>();
+            if (extraArguments.containsKey("-tl")) {
+                for (String t : extraArguments.get("-tl").split(",")) {
+                    topics.add(JCSMPFactory.onlyInstance().createTopic(t.trim()));
+                }
+            } else {
+                int count = extraArguments.containsKey("-nt") ? Integer.parseInt(extraArguments.get("-nt")) : 100;
+                for (int i = 0; i < count; i++) {
+                    topics.add(JCSMPFactory.onlyInstance().createTopic(SampleUtils.SAMPLE_TOPIC + "/" + i));
+                }
+            }
+
+            // The last-value cache consumes every message of the session.
+            final LastValueCache lvc = new LastValueCache(extraArguments.containsKey("-oh"), null);
+            session.connect();
+            prod = session.getMessageProducer(new PrintingPubCallback());
+            cons = session.getMessageConsumer(lvc);
+            printRouterInfo();
+            cons.start();
+
+            // Publish one message per topic to make sure there is something cached.
+            BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+            for (Topic topic : topics) {
+                msg.writeAttachment(("initial value of " + topic.getName()).getBytes());
+                prod.send(msg, topic);
+            }
+
+            // Create the cache session based on parameters on the command line.
+            cacheSession = SampleUtils.newCacheSession(session, conf);
+            System.out.printf("Seeding %d topics from cache '%s'...\n", topics.size(), conf.getCacheName());
+            CacheRequestManager manager = lvc.seed(cacheSession, topics, maxOutstanding, conf.getTimeout() * 2L);
+            System.out.println(manager.getReport());
+            System.out.println(lvc.getReport());
+
+            // Readers look values up locally while live updates arrive.
+            final AtomicLong reads = new AtomicLong();
+            final AtomicLong misses = new AtomicLong();
+            final long deadline = System.currentTimeMillis() + seconds * 1000L;
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int r = 0; r < readers; r++) {
+                Thread t = new Thread(new Runnable() {
+                    public void run() {
+                        ByteBuffer buf = ByteBuffer.allocate(4096);
+                        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                        long n = 0, missed = 0;
+                        while ((n & 1023) != 0 || System.currentTimeMillis() < deadline) {
+                            buf.clear();
+                            if (lvc.read(topics.get(rnd.nextInt(topics.size())).getName(), buf) < 0) missed++;
+                            n++;
+                        }
+                        reads.addAndGet(n);
+                        misses.addAndGet(missed);
+                    }
+                }, "LVC-Reader-" + r);
+                t.start();
+                threads.add(t);
+            }
+            long published = 0;
+            while (System.currentTimeMillis() < deadline) {
+                Topic topic = topics.get(ThreadLocalRandom.current().nextInt(topics.size()));
+                msg.writeAttachment(("update " + (++published) + " of " + topic.getName()).getBytes());
+                prod.send(msg, topic);
+                Thread.sleep(1);
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            System.out.printf("%d readers: %d local reads in %d s (%.0f reads/s), %d misses; %d updates published\n",
+                readers, reads.get(), seconds, reads.get() / (double) seconds, misses.get(), published);
+            System.out.println(lvc.getReport());
+            for (int i = 0; i < Math.min(3, topics.size()); i++) {
+                LastValueCache.Value v = lvc.get(topics.get(i).getName());
+                if (v != null) System.out.println("   " + v + ": " + new String(v.getPayload()));
+            }
+            finish(0);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Illegal parameter... " + ex.getMessage());
+            finish(1);
+        } catch (JCSMPException ex) {
+            System.err.println("Encountered a JCSMPException... " + ex.getMessage());
+            finish(1);
+        } catch (InterruptedException ex) {
+            System.err.println("Interrupted... " + ex.getMessage());
+            finish(1);
+        }
+    }
+}
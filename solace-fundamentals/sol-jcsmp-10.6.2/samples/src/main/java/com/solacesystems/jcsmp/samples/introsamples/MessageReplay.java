@@ -1,5 +1,7 @@
 package com.solacesystems.jcsmp.samples.introsamples;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
@@ -23,6 +25,7 @@ import com.solacesystems.jcsmp.Queue;
 import com.solacesystems.jcsmp.ReplayStartLocation;
 import com.solacesystems.jcsmp.XMLMessageListener;
 import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.ReplayCheckpoint;
 import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
 import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
 import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
@@ -60,6 +63,7 @@ public class MessageReplay extends SampleApp implements XMLMessageListener {
 	private int msgCount = 0;
 	private ReplayFlowEventHandler consumerEventHandler = null;
 	private ReplayFlowEventHandler browserEventHandler = null;
+	private ReplayCheckpoint checkpoint = null;
 	
 	public MessageReplay() {
 		consumerEventHandler = new ReplayFlowEventHandler("consumer");
@@ -83,6 +87,12 @@ public class MessageReplay extends SampleApp implements XMLMessageListener {
 		strusage += "This sample:\n";
 		strusage += "\t[-q queue]\t queue ot topic endpoint. \n";
 		strusage += "\t[-d date]\t date string in \"yyyy-MM-dd'T'HH:mm:ss\" format (e.g. \"2018-06-15T01:37:56\"). It specifies replay start date and time in UTC time zone.\n";
+		strusage += "\t[-cp file]\t checkpoint file. The replay position is saved to it, and a restarted replay resumes from it instead of -d. Publishers must generate send timestamps and set application message IDs.\n";
+		strusage += "\t[-cb count]\t messages per checkpoint sync (default: 100).\n";
+		strusage += "\t[-ct ms]\t maximum time between checkpoint syncs (default: 1000).\n";
+		strusage += "\t[-cs ms]\t allowed clock skew between publishers and broker when resuming (default: 1000).\n";
+		strusage += "\t[-cw count]\t application message IDs kept to skip messages a resumed replay repeats (default: 1024).\n";
+		strusage += "\t[-cr]\t\t discard the checkpoint and start over.\n";
 		System.out.println(strusage);
 		finish(1);
 	}
@@ -116,6 +126,7 @@ public class MessageReplay extends SampleApp implements XMLMessageListener {
 			if (map.containsKey("-q"))
 			queueName = map.get("-q");
 		}
+		long skewMillis = 1000;
 		Queue queue = JCSMPFactory.onlyInstance().createQueue(queueName);
 		consumerProps.setEndpoint(queue);
 		simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));   // This line converts the given date into UTC time zone
@@ -126,6 +137,18 @@ public class MessageReplay extends SampleApp implements XMLMessageListener {
 		Browser browser = null;
 		
 		try {
+			if (map != null && map.containsKey("-cp")) {
+				File file = new File(map.get("-cp"));
+				if (map.containsKey("-cr") && !ReplayCheckpoint.delete(file)) {
+					throw new IOException("Unable to delete checkpoint " + file);
+				}
+				int batch = map.containsKey("-cb") ? Integer.parseInt(map.get("-cb")) : 100;
+				long interval = map.containsKey("-ct") ? Long.parseLong(map.get("-ct")) : 1000;
+				if (map.containsKey("-cs")) skewMillis = Long.parseLong(map.get("-cs"));
+				int window = map.containsKey("-cw") ? Integer.parseInt(map.get("-cw")) : 1024;
+				checkpoint = new ReplayCheckpoint(file, batch, interval, window);
+			}
+
 			// Connects the Session.
 			session.connect();
 
@@ -138,7 +161,15 @@ public class MessageReplay extends SampleApp implements XMLMessageListener {
 			browser = session.createBrowser(brosweProps, browserEventHandler);
 			System.out.println("Browser created.");	
 
-			if (dateStr != null) {
+			if (checkpoint != null && checkpoint.isResumed()) {
+				// Resume from the checkpoint; processed messages that the
+				// replay delivers again are skipped in onReceive() by ID.
+				Date date = checkpoint.getStartDate(skewMillis);
+				System.out.println("Resuming replay after " + checkpoint.getProcessed() + " messages, from "
+					+ simpleDateFormat.format(date) + " UTC");
+				loc = JCSMPFactory.onlyInstance().createReplayStartLocationDate(date);
+			}
+			else if (dateStr != null) {
 				Date date = simpleDateFormat.parse(dateStr);
 				loc = JCSMPFactory.onlyInstance().createReplayStartLocationDate(date);
 			}
@@ -180,6 +211,10 @@ public class MessageReplay extends SampleApp implements XMLMessageListener {
 			System.out.println("Close flow and browser");
 			consumer.close();
 			browser.close();
+			if (checkpoint != null) {
+				checkpoint.close();
+				System.out.println(checkpoint.getReport());
+			}
 			System.out.println("OK");
 
 			finish(0);
@@ -191,18 +226,40 @@ public class MessageReplay extends SampleApp implements XMLMessageListener {
 			if (browser != null) {
 				browser.close();
 			}
+			closeCheckpoint();
 			finish(1);
 		} catch (Exception ex) {
 			System.err.println("Encountered an Exception... " + ex.getMessage());
+			closeCheckpoint();
 			finish(1);
 		}
 
 	}
 
+	void closeCheckpoint() {
+		if (checkpoint != null) {
+			try {
+				checkpoint.close();
+			} catch (IOException e) {
+				System.err.println("Unable to save checkpoint: " + e.getMessage());
+			}
+		}
+	}
+
 	@Override
 	public void onReceive(BytesXMLMessage message) {
+		if (checkpoint != null && !checkpoint.shouldProcess(message)) {
+			return;
+		}
 		msgCount++;
 		System.out.println("Received Message (" +msgCount +"): "  + message.toString());
+		if (checkpoint != null) {
+			try {
+				checkpoint.processed(message);
+			} catch (IOException e) {
+				System.err.println("Unable to save checkpoint: " + e.getMessage());
+			}
+		}
 	}
 
 	@Override
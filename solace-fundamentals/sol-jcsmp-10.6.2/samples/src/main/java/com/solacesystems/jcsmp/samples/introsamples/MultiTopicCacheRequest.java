@@ -0,0 +1,163 @@
+/**
+ * MultiTopicCacheRequest.java
+ *
+ * This sample primes many topics from a cache at startup. It creates a
+ * CacheSession and sends cache requests for all topics through a
+ * CacheRequestManager, which allocates request IDs, keeps a bounded number
+ * of requests outstanding and completes one Future per topic. The sample
+ * then reports the result of each request and the total priming time.
+ *
+ * Sample Requirements:
+ * - A Solace appliance running SolOS-TR with an active cache.
+ * - A cache running and caching on a pattern that matches "my/sample/topic/>".
+ * - The cache name must be known and passed to this program as a command line
+ * argument.
+ *
+ * Copyright 2006-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CacheRequestResult;
+import com.solacesystems.jcsmp.CacheSession;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheRequestManager;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheRequestManager.CacheFuture;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheSessionConfiguration;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+
+public class MultiTopicCacheRequest extends SampleApp {
+
+    CacheSession cacheSession = null;
+    XMLMessageProducer prod = null;
+    XMLMessageConsumer cons = null;
+    CacheSessionConfiguration conf = null;
+
+    void createSession(String[] args) {
+        // Parse command-line arguments.
+        ArgParser parser = new ArgParser();
+        if (parser.parseCacheSampleArgs(args) == 0)
+            conf = (CacheSessionConfiguration) parser.getConfig();
+        else
+            printUsage(parser.isSecure());
+        session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+    }
+
+    void printUsage(boolean secure) {
+        StringBuffer buf = new StringBuffer();
+        buf.append(ArgParser.getCacheArgUsage(secure));
+        buf.append("This sample:\n");
+        buf.append("\t[-tl TOPICS]    Comma-separated topics to prime\n");
+        buf.append("\t[-nt COUNT]     Otherwise prime COUNT topics " + SampleUtils.SAMPLE_TOPIC + "/<n> (default: 200)\n");
+        buf.append("\t[-mo COUNT]     Maximum outstanding cache requests (default: 16)\n");
+        buf.append("\t[-np]           Do not publish a message to each topic first\n");
+        System.out.println(buf.toString());
+        finish(1);
+    }
+
+    public static void main(String[] args) {
+        MultiTopicCacheRequest cacheReq = new MultiTopicCacheRequest();
+        cacheReq.run(args);
+    }
+
+    public MultiTopicCacheRequest() {
+    }
+
+    void run(String[] args) {
+        createSession(args);
+
+        try {
+            Map<String, String> extraArguments = conf.getArgBag();
+            int maxOutstanding = extraArguments.containsKey("-mo") ? Integer.parseInt(extraArguments.get("-mo")) : 16;
+            List<Topic> topics = new ArrayList<Topic>();
+            if (extraArguments.containsKey("-tl")) {
+                for (String t : extraArguments.get("-tl").split(",")) {
+                    topics.add(JCSMPFactory.onlyInstance().createTopic(t.trim()));
+                }
+            } else {
+                int count = extraArguments.containsKey("-nt") ? Integer.parseInt(extraArguments.get("-nt")) : 200;
+                for (int i = 0; i < count; i++) {
+                    topics.add(JCSMPFactory.onlyInstance().createTopic(SampleUtils.SAMPLE_TOPIC + "/" + i));
+                }
+            }
+
+            // Count cached and live messages rather than printing hundreds of them.
+            final AtomicLong cachedMsgs = new AtomicLong();
+            final AtomicLong liveMsgs = new AtomicLong();
+            session.connect();
+            prod = session.getMessageProducer(new PrintingPubCallback());
+            cons = session.getMessageConsumer(new XMLMessageListener() {
+                public void onReceive(BytesXMLMessage msg) {
+                    if (msg.isCacheMessage()) {
+                        cachedMsgs.incrementAndGet();
+                    } else {
+                        liveMsgs.incrementAndGet();
+                    }
+                }
+
+                public void onException(JCSMPException e) {
+                    System.err.println("Consumer received exception: " + e);
+                }
+            });
+            printRouterInfo();
+            cons.start();
+
+            if (!extraArguments.containsKey("-np")) {
+                // Publish one message per topic to make sure there is something cached.
+                BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+                msg.writeAttachment("published message".getBytes());
+                for (Topic topic : topics) {
+                    prod.send(msg, topic);
+                }
+            }
+
+            // Create the cache session based on parameters on the command line.
+            cacheSession = SampleUtils.newCacheSession(session, conf);
+            CacheRequestManager manager = new CacheRequestManager(cacheSession, maxOutstanding);
+
+            System.out.printf("Priming %d topics from cache '%s', %d requests outstanding at most...\n",
+                topics.size(), conf.getCacheName(), maxOutstanding);
+            List<CacheFuture> futures = manager.requestAll(topics, conf.getSubscribe(), conf.getAction());
+
+            int shown = 0;
+            for (CacheFuture future : futures) {
+                try {
+                    CacheRequestResult result = future.get();
+                    if (result == CacheRequestResult.OK) continue;
+                    if (shown++ < 10) System.out.printf("   %s: %s\n", future.getTopic().getName(), result);
+                } catch (ExecutionException ex) {
+                    if (shown++ < 10) {
+                        System.out.printf("   %s: %s\n", future.getTopic().getName(), ex.getCause().getMessage());
+                    }
+                }
+            }
+            System.out.println(manager.getReport());
+            System.out.printf("Cached messages received: %d, live messages received: %d\n",
+                cachedMsgs.get(), liveMsgs.get());
+            finish(0);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Illegal parameter... " + ex.getMessage());
+            finish(1);
+        } catch (JCSMPException ex) {
+            System.err.println("Encountered a JCSMPException performing a cache request... " + ex.getMessage());
+            finish(1);
+        } catch (InterruptedException ex) {
+            System.err.println("InterruptedException waiting for cache requests... " + ex.getMessage());
+            finish(1);
+        }
+    }
+}
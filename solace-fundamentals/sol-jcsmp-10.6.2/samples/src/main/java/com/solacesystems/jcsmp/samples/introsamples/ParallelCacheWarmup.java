@@ -0,0 +1,142 @@
+/**
+ * ParallelCacheWarmup.java
+ *
+ * This sample shows a startup warm-up phase for a cache-backed
+ * application. Instead of one cache request after another, the warm-up
+ * topics (-wt, wildcards allowed) are requested over one or more cache
+ * sessions (-wn) with a bounded number of outstanding requests (-wc). The
+ * sample reports the time to warm, the cached messages per topic and any
+ * failed requests before it would start taking traffic.
+ *
+ * Sample Requirements:
+ * - A Solace appliance running SolOS-TR with an active cache.
+ * - A cache running and caching on a pattern that matches "my/sample/topic/>".
+ * - The cache name must be known and passed to this program as a command line
+ * argument.
+ *
+ * Copyright 2006-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.Map;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheSessionConfiguration;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheWarmer;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheWarmer.TopicResult;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+
+public class ParallelCacheWarmup extends SampleApp {
+
+    XMLMessageProducer prod = null;
+    XMLMessageConsumer cons = null;
+    CacheSessionConfiguration conf = null;
+
+    void createSession(String[] args) {
+        // Parse command-line arguments.
+        ArgParser parser = new ArgParser();
+        if (parser.parseCacheSampleArgs(args) == 0)
+            conf = (CacheSessionConfiguration) parser.getConfig();
+        else
+            printUsage(parser.isSecure());
+        session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+    }
+
+    void printUsage(boolean secure) {
+        StringBuffer buf = new StringBuffer();
+        buf.append(ArgParser.getCacheArgUsage(secure));
+        buf.append(ArgParser.getCacheWarmupUsage());
+        buf.append("This sample:\n");
+        buf.append("\t[-nt COUNT]     Without -wt, publish to and warm up COUNT topics\n");
+        buf.append("\t                " + SampleUtils.SAMPLE_TOPIC + "/<n> (default: 100)\n");
+        System.out.println(buf.toString());
+        finish(1);
+    }
+
+    public static void main(String[] args) {
+        ParallelCacheWarmup warmup = new ParallelCacheWarmup();
+        warmup.run(args);
+    }
+
+    public ParallelCacheWarmup() {
+    }
+
+    void run(String[] args) {
+        createSession(args);
+
+        try {
+            Map<String, String> extraArguments = conf.getArgBag();
+            boolean generated = conf.getWarmupTopics().isEmpty();
+            if (generated) {
+                int count = extraArguments.containsKey("-nt") ? Integer.parseInt(extraArguments.get("-nt")) : 100;
+                for (int i = 0; i < count; i++) {
+                    conf.getWarmupTopics().add(SampleUtils.SAMPLE_TOPIC + "/" + i);
+                }
+            }
+
+            // The application's own listener; the warmer sees every message
+            // first to count the cached ones.
+            XMLMessageListener appListener = new XMLMessageListener() {
+                public void onReceive(BytesXMLMessage msg) {
+                }
+
+                public void onException(JCSMPException e) {
+                    System.err.println("Consumer received exception: " + e);
+                }
+            };
+            CacheWarmer warmer = new CacheWarmer(session, conf, appListener);
+            session.connect();
+            prod = session.getMessageProducer(new PrintingPubCallback());
+            cons = session.getMessageConsumer(warmer);
+            printRouterInfo();
+            cons.start();
+
+            if (generated) {
+                // Publish one message per topic to make sure there is something cached.
+                BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+                msg.writeAttachment("published message".getBytes());
+                for (String topic : conf.getWarmupTopics()) {
+                    prod.send(msg, JCSMPFactory.onlyInstance().createTopic(topic));
+                }
+            }
+
+            System.out.printf("Warming up %d topics from cache '%s' over %d session(s), %d requests outstanding at most...\n",
+                conf.getWarmupTopics().size(), conf.getCacheName(), conf.getWarmupSessions(),
+                conf.getWarmupConcurrency());
+            warmer.warm();
+
+            int shown = 0;
+            for (TopicResult r : warmer.getFailures()) {
+                if (shown++ == 10) {
+                    System.out.println("   ...");
+                    break;
+                }
+                System.out.printf("   %s: %s\n", r.getTopic(), r.getError());
+            }
+            System.out.println(warmer.getReport());
+            if (warmer.isWarm()) {
+                System.out.printf("Warm after %d ms, ready to take traffic.\n", warmer.getWarmMillis());
+            } else {
+                System.out.printf("%d warm-up requests failed.\n", warmer.getFailures().size());
+            }
+            finish(0);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Illegal parameter... " + ex.getMessage());
+            finish(1);
+        } catch (JCSMPException ex) {
+            System.err.println("Encountered a JCSMPException during cache warm-up... " + ex.getMessage());
+            finish(1);
+        } catch (InterruptedException ex) {
+            System.err.println("Interrupted during cache warm-up... " + ex.getMessage());
+            finish(1);
+        }
+    }
+}
@@ -1,53 +1,98 @@
 /**
  * PerfSempRequest.java
- * 
- * This sample illustrates how to re-use a java.net.URL object instance to 
- * perform several SEMP requests (serially) at maximum rate to an appliance over 
- * the same connection.  
- * 
+ *
+ * This sample illustrates how to re-use a java.net.URL object instance to
+ * perform several SEMP requests at maximum rate to an appliance over
+ * the same connections.
+ *
+ * With -t, several worker threads issue requests concurrently, each reusing a
+ * keep-alive connection from the JVM's connection cache. Requests are drawn from
+ * a weighted mix of SEMP show commands (-m, -rf). When -t lists several thread
+ * counts, each step runs for the test duration so the point where the
+ * management plane stops scaling can be seen. Latency histograms and an error
+ * breakdown are printed at the end.
+ *
  * Copyright 2009-2019 Solace Corporation. All rights reserved.
  */
 
 package com.solacesystems.jcsmp.samples.introsamples;
 
 import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.net.Authenticator;
 import java.net.HttpURLConnection;
-import java.net.PasswordAuthentication;
-import java.net.URL;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-
+import com.solacesystems.jcsmp.samples.introsamples.common.LatencyHistogram;
 import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempHttpClient;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempHttpClient.SempHttpException;
 
 public class PerfSempRequest extends SampleApp {
 
-	public class MyAuthenticator extends Authenticator {
-        String user;
-        String pwd;
-        public MyAuthenticator(String username, String password) {
-            user = username;
-            pwd = password;
+    // Built-in SEMP show commands that can be used in a request mix.
+    static final Map<String, String> BUILTIN_COMMANDS = new LinkedHashMap<String, String>();
+    static {
+        BUILTIN_COMMANDS.put("hostname", "<show><hostname/></show>");
+        BUILTIN_COMMANDS.put("version", "<show><version/></show>");
+        BUILTIN_COMMANDS.put("stats-client", "<show><stats><client/></stats></show>");
+        BUILTIN_COMMANDS.put("client", "<show><client><name>*</name></client></show>");
+        BUILTIN_COMMANDS.put("queue", "<show><queue><name>*</name><count/><num-elements>100</num-elements></queue></show>");
+        BUILTIN_COMMANDS.put("vpn", "<show><message-vpn><vpn-name>*</vpn-name></message-vpn></show>");
+    }
+
+    /**
+     * One entry of the request mix, with its own latency histogram.
+     */
+    static class SempCommand {
+        final String name;
+        final int weight;
+        final byte[] request;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+
+        SempCommand(String name, int weight, String request) {
+            this.name = name;
+            this.weight = weight;
+            this.request = request.getBytes();
         }
-        protected PasswordAuthentication getPasswordAuthentication() {
-            return new PasswordAuthentication (user, pwd.toCharArray());
+    }
+
+    /**
+     * Results of running the mix at one concurrency level.
+     */
+    static class StepResult {
+        final int threads;
+        final long requests;
+        final long errors;
+        final double seconds;
+        final LatencyHistogram latency;
+
+        StepResult(int threads, long requests, long errors, double seconds, LatencyHistogram latency) {
+            this.threads = threads;
+            this.requests = requests;
+            this.errors = errors;
+            this.seconds = seconds;
+            this.latency = latency;
         }
     }
-    
+
+    private final ConcurrentHashMap<String, AtomicLong> errorBreakdown = new ConcurrentHashMap<String, AtomicLong>();
+
     public PerfSempRequest() {
 		super();
 	}
-    
+
     public void printSyntax() {
         System.out.println("Parameters:");
         System.out.println("\t-h HOST:PORT\t\tAppliance Management IP Address");
@@ -55,8 +100,14 @@ public class PerfSempRequest extends SampleApp {
         System.out.println("\t[-w PASSWORD]\t\tAuthentication Password");
         System.out.println("\t[-sv SEMP_VERSION]\tSEMP version in the SEMP request. Default: " + SEMP_VERSION_TR);
         System.out.println("\t[-s]\t\t\tUse HTTPS");
+        System.out.println("\t[-t THREADS]\t\tConcurrent worker threads, or a comma separated list of steps. Default: 1");
+        System.out.println("\t[-d SECONDS]\t\tTest duration (per step). Default: 5");
+        System.out.println("\t[-m MIX]\t\tRequest mix as NAME=WEIGHT,... Default: hostname=1");
+        System.out.println("\t\t\t\tBuilt-in commands: " + BUILTIN_COMMANDS.keySet());
+        System.out.println("\t[-rf FILE]\t\tAdd commands from FILE, one per line: NAME WEIGHT <show>...</show>");
         System.out.println();
     }
+
     public void run(String[] args) {
         try {
             String ipPort = null;
@@ -64,7 +115,11 @@ public class PerfSempRequest extends SampleApp {
             String password = "admin";
             String sempVersion = SEMP_VERSION_TR;
             boolean useHttps = false;
-            
+            String threadSteps = "1";
+            int testLength = 5;
+            String mix = null;
+            String requestFile = null;
+
             for(int i = 0; i < args.length; i++) {
                 if (args[i].equals("-h")) {
                     i++;
@@ -80,106 +135,248 @@ public class PerfSempRequest extends SampleApp {
                 	sempVersion = args[i];
                 } else if (args[i].equals("-s")) {
                     useHttps = true;
+                } else if (args[i].equals("-t")) {
+                    i++;
+                    threadSteps = args[i];
+                } else if (args[i].equals("-d")) {
+                    i++;
+                    testLength = Integer.parseInt(args[i]);
+                } else if (args[i].equals("-m")) {
+                    i++;
+                    mix = args[i];
+                } else if (args[i].equals("-rf")) {
+                    i++;
+                    requestFile = args[i];
                 }
             }
 			if (ipPort == null) {
 				printSyntax();
 				return;
 			}
-            
-            // Very fast SEMP request to execute.
-            final String request = "<rpc semp-version=\"" + sempVersion + "\"><show><hostname/></show></rpc>";
-            
-			// Default authenticator for connections. Java will first attempt an
-			// unauthenticated connection, then automatically retry with auth
-			// when that first connection fails.
-			Authenticator.setDefault(new MyAuthenticator(username, password));
-
-			// Setup for https.
-			// Create a trust manager that accepts all certificates.
-			// Create a hostname verifier that accepts all hostnames.
-            String scheme = "http://";
-			if (useHttps) {
-			    scheme = "https://";
-	            SSLContext sc = SSLContext.getInstance("TLSv1");
-	            sc.init(null, new TrustManager[] {new X509TrustManager() {
-	                public X509Certificate[] getAcceptedIssuers() {
-	                    return null;
-	                }
-	                public void checkServerTrusted(X509Certificate[] chain, String authType)
-	                        throws CertificateException {
-	                }
-	                public void checkClientTrusted(X509Certificate[] chain, String authType)
-	                        throws CertificateException {
-	                }
-	            }}, null);
-	            HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-	            HttpsURLConnection.setDefaultHostnameVerifier(new HostnameVerifier() {
-	                public boolean verify(String arg0, SSLSession arg1) {
-	                    return true;
-	                 }
-	            }); 
+
+			List<SempCommand> commands = buildMix(mix, requestFile, sempVersion);
+			List<Integer> steps = new ArrayList<Integer>();
+			int maxThreads = 1;
+			for (String step : threadSteps.split(",")) {
+				int t = Integer.parseInt(step.trim());
+				steps.add(t);
+				maxThreads = Math.max(maxThreads, t);
 			}
-			
-			// We use a URL instance to get HttpURLConnections; Java's HTTP
-			// handler keeps the underlying connection open and we can make
-			// several requests without reconnecting by calling
-			// openConnection().
-			URL url = new URL(scheme + ipPort + "/SEMP");
+
+			// The client reuses keep-alive connections from the JVM's
+			// connection cache, sized for the largest step.
+			SempHttpClient client = new SempHttpClient(ipPort, username, password, useHttps, maxThreads);
 
 			// ----- Warmup (connect + authenticate) -----
 			System.out.println("Testing... ");
-			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-			Callable<Integer> c = new BlockingSempRequest(connection, request, 0, true);
+			HttpURLConnection connection = (HttpURLConnection) client.getUrl().openConnection();
+			String request = "<rpc semp-version=\"" + sempVersion + "\"><show><hostname/></show></rpc>";
+			Callable<Integer> c = new BlockingSempRequest(connection, request, 0);
 			System.out.println("... Response Code: " + c.call());
 			// ----- End warmup (we are connected) -----
-			
-			// Single thread doing SEMP calls on a single connection.
-			final int TEST_LENGTH = 5;
-			long startTime = System.currentTimeMillis();
-			long stopTime = startTime + TEST_LENGTH * 1000;
-			System.out.printf("%s second test...\n", TEST_LENGTH);
-			int i = 0;
-			while (System.currentTimeMillis() < stopTime) {
-				connection = (HttpURLConnection) url.openConnection();
-				c = new BlockingSempRequest(connection, request, i, false);
-				c.call(); // Perform request
-				i++;
-				printDot();
+
+			List<StepResult> results = new ArrayList<StepResult>();
+			for (int threads : steps) {
+				System.out.printf("%s second test with %s thread(s)...\n", testLength, threads);
+				results.add(runStep(client, commands, threads, testLength));
 			}
-			
-			System.out.printf("\nSingle thread requestor ran %s requests in %s seconds.\n", i, TEST_LENGTH);
+			printReport(commands, results);
 
         } catch(Exception e) {
             e.printStackTrace();
         }
     }
-    
-	private static int dotsPrinted = 0;
 
-	public synchronized static void printDot() {
-		System.out.print(".");
-		if (++dotsPrinted % 75 == 0) System.out.println();
-	}
-	
+    /**
+     * Builds the weighted request mix from the -m spec and the -rf file.
+     */
+    List<SempCommand> buildMix(String mix, String requestFile, String sempVersion) throws IOException {
+        List<SempCommand> commands = new ArrayList<SempCommand>();
+        if (mix == null && requestFile == null) {
+            mix = "hostname=1";
+        }
+        if (mix != null) {
+            for (String entry : mix.split(",")) {
+                String[] parts = entry.trim().split("=");
+                String body = BUILTIN_COMMANDS.get(parts[0]);
+                if (body == null) {
+                    throw new IllegalArgumentException("Unknown SEMP command in mix: " + parts[0]);
+                }
+                int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+                commands.add(new SempCommand(parts[0], weight, wrapRpc(body, sempVersion)));
+            }
+        }
+        if (requestFile != null) {
+            BufferedReader in = new BufferedReader(new FileReader(requestFile));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() == 0 || line.startsWith("#")) continue;
+                    String[] parts = line.split("\\s+", 3);
+                    if (parts.length < 3) {
+                        throw new IllegalArgumentException("Expected NAME WEIGHT REQUEST in: " + line);
+                    }
+                    String body = parts[2].startsWith("<rpc") ? parts[2] : wrapRpc(parts[2], sempVersion);
+                    commands.add(new SempCommand(parts[0], Integer.parseInt(parts[1]), body));
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return commands;
+    }
+
+    static String wrapRpc(String body, String sempVersion) {
+        return "<rpc semp-version=\"" + sempVersion + "\">" + body + "</rpc>";
+    }
+
+    /**
+     * Runs the mix on <code>threads</code> workers for <code>seconds</code>.
+     */
+    StepResult runStep(final SempHttpClient client, final List<SempCommand> commands, int threads, int seconds)
+        throws InterruptedException {
+        int totalWeight = 0;
+        for (SempCommand cmd : commands) totalWeight += cmd.weight;
+        final SempCommand[] byWeight = new SempCommand[totalWeight];
+        int pos = 0;
+        for (SempCommand cmd : commands) {
+            for (int w = 0; w < cmd.weight; w++) byWeight[pos++] = cmd;
+        }
+
+        final LatencyHistogram stepLatency = new LatencyHistogram();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final long stopTime = System.currentTimeMillis() + seconds * 1000L;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    ResultChecker checker = new ResultChecker();
+                    while (System.currentTimeMillis() < stopTime) {
+                        SempCommand cmd = byWeight[ThreadLocalRandom.current().nextInt(byWeight.length)];
+                        long start = System.nanoTime();
+                        try {
+                            checker.reset();
+                            client.execute(cmd.request, checker);
+                            if (!checker.ok) {
+                                recordError(cmd, errors, "SEMP execute-result not ok (" + cmd.name + ")");
+                            }
+                        } catch (SempHttpException e) {
+                            recordError(cmd, errors, e.getMessage());
+                        } catch (IOException e) {
+                            recordError(cmd, errors, e.getClass().getSimpleName() + ": " + e.getMessage());
+                        }
+                        long micros = (System.nanoTime() - start) / 1000;
+                        cmd.latency.record(micros);
+                        stepLatency.record(micros);
+                        requests.incrementAndGet();
+                    }
+                }
+            }, "semp-worker-" + t);
+            workers[t].start();
+        }
+
+        long start = System.nanoTime();
+        long last = 0;
+        for (int s = 1; s <= seconds; s++) {
+            Thread.sleep(Math.max(0, start / 1000000 + s * 1000L - System.nanoTime() / 1000000));
+            long now = requests.get();
+            System.out.printf("   t=%ds %d req/s, errors so far: %d\n", s, now - last, errors.get());
+            last = now;
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        return new StepResult(threads, requests.get(), errors.get(), elapsed, stepLatency);
+    }
+
+    void recordError(SempCommand cmd, AtomicLong errors, String key) {
+        cmd.errors.incrementAndGet();
+        errors.incrementAndGet();
+        AtomicLong count = errorBreakdown.get(key);
+        if (count == null) {
+            AtomicLong fresh = new AtomicLong();
+            count = errorBreakdown.putIfAbsent(key, fresh);
+            if (count == null) count = fresh;
+        }
+        count.incrementAndGet();
+    }
+
+    void printReport(List<SempCommand> commands, List<StepResult> results) {
+        System.out.println("\nThroughput by concurrency:");
+        System.out.printf("%8s %10s %10s %10s %10s %10s\n", "threads", "req/s", "errors", "p50 (us)", "p99 (us)", "max (us)");
+        for (StepResult r : results) {
+            System.out.printf("%8d %10.0f %10d %10d %10d %10d\n", r.threads, r.requests / r.seconds, r.errors,
+                r.latency.getPercentile(50), r.latency.getPercentile(99), r.latency.getMax());
+        }
+
+        System.out.println("\nLatency by command (all steps):");
+        for (SempCommand cmd : commands) {
+            System.out.printf("   %-14s errors=%d %s\n", cmd.name, cmd.errors.get(), cmd.latency.getSummary("us"));
+        }
+        if (!results.isEmpty()) {
+            System.out.println("\nLatency distribution (last step):");
+            System.out.print(results.get(results.size() - 1).latency.getDistribution("us"));
+        }
+
+        System.out.println("\nErrors:");
+        if (errorBreakdown.isEmpty()) {
+            System.out.println("   none");
+        }
+        for (Map.Entry<String, AtomicLong> e : errorBreakdown.entrySet()) {
+            System.out.printf("   %8d  %s\n", e.getValue().get(), e.getKey());
+        }
+    }
+
+    /**
+     * Streams the response looking for a successful execute-result, without
+     * building Strings for the body.
+     */
+    static class ResultChecker implements SempHttpClient.ResponseHandler {
+        private static final byte[] OK = "<execute-result code=\"ok\"".getBytes();
+        private final byte[] buf = new byte[8192];
+        boolean ok;
+
+        void reset() {
+            ok = false;
+        }
+
+        public void onResponse(InputStream in) throws IOException {
+            int matched = 0;
+            int n;
+            while (!ok && (n = in.read(buf)) >= 0) {
+                for (int i = 0; i < n && !ok; i++) {
+                    // The pattern's first byte does not recur, so a mismatch
+                    // only needs to re-check the current byte.
+                    if (buf[i] == OK[matched]) {
+                        matched++;
+                    } else {
+                        matched = buf[i] == OK[0] ? 1 : 0;
+                    }
+                    ok = matched == OK.length;
+                }
+            }
+        }
+    }
+
 	public static class BlockingSempRequest implements Callable<Integer> {
 		final HttpURLConnection connection;
 		final String request;
 		final int _id;
-		final boolean _printResponse;
 
-		public BlockingSempRequest(HttpURLConnection conn, String req, int id, boolean printResponse) {
+		public BlockingSempRequest(HttpURLConnection conn, String req, int id) {
 			connection = conn;
 			request = req;
 			_id = id;
-			_printResponse = printResponse;
 		}
 
 		public Integer call() throws Exception {
 			connection.setRequestMethod("POST");
 			connection.setDoInput(true);
 			connection.setDoOutput(true);
-            
+
 			OutputStreamWriter out = new OutputStreamWriter(connection.getOutputStream());
 			out.write(request);
 			out.close();
@@ -189,23 +386,22 @@ public class PerfSempRequest extends SampleApp {
 				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
 				String inputLine;
 				while ((inputLine = in.readLine()) != null) {
-					// read / print response
-					if (_printResponse) System.out.println(inputLine);
+					System.out.println(inputLine);
 				}
 				in.close();
             } else {
 				System.out.printf("\n[%s] Error: %s %s.\n", _id, responseCode, connection.getResponseMessage());
 				throw new Exception(String.format("Response code not 200, was %s.", responseCode));
-            }            
-			
+            }
+
 			return Integer.valueOf(responseCode);
 		}
 	}
-    
+
     public static void main(String[] args) {
         PerfSempRequest httpSempReq = new PerfSempRequest();
         httpSempReq.run(args);
         System.exit(0);
     }
-    
+
 }
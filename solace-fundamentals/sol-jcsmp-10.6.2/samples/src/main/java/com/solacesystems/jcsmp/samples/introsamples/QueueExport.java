@@ -0,0 +1,215 @@
+/**
+ * QueueExport.java
+ *
+ * This sample exports the contents of one or more queues to disk without
+ * consuming them. Each queue is browsed with a large transport window by a
+ * QueueExporter, which writes every message with its headers into
+ * memory-mapped segment files from a background thread. Several queues are
+ * exported in parallel, and the sample reports msgs/s and MB/s per queue
+ * and overall.
+ *
+ * With -pub the queues are provisioned if needed and filled with test
+ * messages first; with -verify the written segments are read back.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CapabilityType;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.EndpointProperties;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.MessageRecord;
+import com.solacesystems.jcsmp.samples.introsamples.common.QueueExporter;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SegmentedLogReader;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+
+public class QueueExport extends SampleApp {
+	XMLMessageProducer prod = null;
+	SessionConfiguration conf = null;
+
+	void createSession(String[] args) {
+		ArgParser parser = new ArgParser();
+
+		// Parse command-line arguments
+		if (parser.parse(args) == 0)
+			conf = parser.getConfig();
+		else
+			printUsage(parser.isSecure());
+
+		session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+	}
+
+	void printUsage(boolean secure) {
+		String strusage = ArgParser.getCommonUsage(secure);
+		strusage += "This sample:\n";
+		strusage += "\t[-q QUEUES]\t Comma-separated queues to export (default: bar1-export)\n";
+		strusage += "\t[-dir DIR]\t Directory for the segment files, one subdirectory per queue (default: export)\n";
+		strusage += "\t[-seg MB]\t Segment file size (default: 64)\n";
+		strusage += "\t[-tw WINDOW]\t Browser transport window, 1-255 (default: 255)\n";
+		strusage += "\t[-n COUNT]\t Export at most COUNT messages per queue\n";
+		strusage += "\t[-pub COUNT]\t First provision the queues and publish COUNT messages to each\n";
+		strusage += "\t[-ps BYTES]\t Size of published messages (default: 1024)\n";
+		strusage += "\t[-verify]\t Read the exported segments back and count the records\n";
+		System.out.println(strusage);
+		finish(1);
+	}
+
+	public static void main(String[] args) {
+		QueueExport qsample = new QueueExport();
+		qsample.run(args);
+	}
+
+	void checkCapability(final CapabilityType cap) {
+		System.out.printf("Checking for capability %s...", cap);
+		if (session.isCapable(cap)) {
+			System.out.println("OK");
+		} else {
+			System.out.println("FAILED");
+			finish(1);
+		}
+	}
+
+	void publish(Queue queue, int count, int size) throws JCSMPException {
+		EndpointProperties props = new EndpointProperties();
+		props.setPermission(EndpointProperties.PERMISSION_CONSUME);
+		session.provision(queue, props, JCSMPSession.FLAG_IGNORE_ALREADY_EXISTS);
+		BytesXMLMessage m = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+		m.setDeliveryMode(DeliveryMode.PERSISTENT);
+		byte[] data = new byte[size];
+		for (int i = 0; i < count; i++) {
+			ByteBuffer.wrap(data).putInt(0, i);
+			m.writeAttachment(data);
+			m.setApplicationMessageId(queue.getName() + "-" + i);
+			prod.send(m, queue);
+		}
+	}
+
+	void run(String[] args) {
+		createSession(args);
+		try {
+			Map<String, String> map = conf.getArgBag();
+			String[] queueNames = (map.containsKey("-q") ? map.get("-q") : "bar1-export").split(",");
+			File dir = new File(map.containsKey("-dir") ? map.get("-dir") : "export");
+			int segmentBytes = (map.containsKey("-seg") ? Integer.parseInt(map.get("-seg")) : 64) * 1048576;
+			int window = map.containsKey("-tw") ? Integer.parseInt(map.get("-tw")) : QueueExporter.MAX_WINDOW;
+			final long max = map.containsKey("-n") ? Long.parseLong(map.get("-n")) : 0;
+
+			// Connects the Session and acquires a message producer.
+			session.connect();
+			prod = session.getMessageProducer(new PrintingPubCallback());
+			checkCapability(CapabilityType.BROWSER);
+
+			final List<QueueExporter> exporters = new ArrayList<QueueExporter>();
+			for (String name : queueNames) {
+				Queue queue = JCSMPFactory.onlyInstance().createQueue(name.trim());
+				if (map.containsKey("-pub")) {
+					int count = Integer.parseInt(map.get("-pub"));
+					publish(queue, count, map.containsKey("-ps") ? Integer.parseInt(map.get("-ps")) : 1024);
+					System.out.printf("Published %d messages to '%s'.\n", count, queue.getName());
+				}
+				exporters.add(new QueueExporter(session, queue, new File(dir, queue.getName()), segmentBytes, window,
+					2000));
+			}
+
+			// One thread per queue; each exporter has its own browser and writer.
+			ExecutorService pool = Executors.newFixedThreadPool(exporters.size());
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			long start = System.nanoTime();
+			for (final QueueExporter exporter : exporters) {
+				results.add(pool.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						exporter.export(max);
+						return null;
+					}
+				}));
+			}
+			pool.shutdown();
+			while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+				long msgs = 0, bytes = 0;
+				for (QueueExporter exporter : exporters) {
+					msgs += exporter.getMessages();
+					bytes += exporter.getBytes();
+				}
+				System.out.printf("   ... %d messages, %.1f MB\n", msgs, bytes / 1048576.0);
+			}
+			long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+			long msgs = 0, bytes = 0;
+			for (int i = 0; i < exporters.size(); i++) {
+				QueueExporter exporter = exporters.get(i);
+				try {
+					results.get(i).get();
+					System.out.println(exporter.getReport());
+				} catch (ExecutionException ex) {
+					System.err.println(exporter.getQueue().getName() + ": export failed: " + ex.getCause());
+				}
+				msgs += exporter.getMessages();
+				bytes += exporter.getBytes();
+			}
+			System.out.printf("Total: %d messages, %.1f MB from %d queue(s) in %d ms: %.0f msgs/s, %.1f MB/s\n", msgs,
+				bytes / 1048576.0, exporters.size(), elapsed, msgs * 1000.0 / elapsed, bytes / 1048576.0 * 1000 / elapsed);
+
+			if (map.containsKey("-verify")) {
+				for (QueueExporter exporter : exporters) {
+					String name = exporter.getQueue().getName();
+					SegmentedLogReader reader = new SegmentedLogReader(new File(dir, name), name);
+					long records = 0, attachmentBytes = 0;
+					ByteBuffer record;
+					while ((record = reader.next()) != null) {
+						attachmentBytes += MessageRecord.decode(record).getAttachment().remaining();
+						records++;
+					}
+					reader.close();
+					System.out.printf("Verified %s: %d records, %d attachment bytes in %d segment(s)\n", name, records,
+						attachmentBytes, reader.getSegmentCount());
+				}
+			}
+
+			finish(0);
+		} catch (JCSMPTransportException ex) {
+			System.err.println("Encountered a JCSMPTransportException, closing session... " + ex.getMessage());
+			if (prod != null) {
+				prod.close();
+				// At this point the producer handle is unusable, a new one
+				// may be created by the application.
+			}
+			finish(1);
+		} catch (JCSMPException ex) {
+			System.err.println("Encountered a JCSMPException, closing session... " + ex.getMessage());
+			// Possible causes:
+			// - Authentication error: invalid username/password
+			// - Provisioning error: unable to provision or browse the queue
+			// - Invalid or unsupported properties specified
+			if (prod != null) {
+				prod.close();
+			}
+			finish(1);
+		} catch (Exception ex) {
+			System.err.println("Encountered an Exception... " + ex.getMessage());
+			finish(1);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * QueueTriage.java
+ *
+ * This sample cleans up a backed-up queue without consuming it. It browses
+ * the queue, evaluates a filter on topic, user property, age, size and
+ * class of service, and removes the matching messages in batches through
+ * the Browser, optionally moving them to another queue first. Messages
+ * that do not match stay where they are.
+ *
+ * Removal can be rate limited, and progress is printed every second. With
+ * -dry the matches are only counted. With -pub the queue is first filled
+ * with a mix of test messages to triage.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CapabilityType;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.EndpointProperties;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.SDTMap;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.User_Cos;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.BrowseActionEngine;
+import com.solacesystems.jcsmp.samples.introsamples.common.MessageFilter;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+
+public class QueueTriage extends SampleApp {
+	XMLMessageProducer prod = null;
+	SessionConfiguration conf = null;
+
+	void createSession(String[] args) {
+		ArgParser parser = new ArgParser();
+
+		// Parse command-line arguments
+		if (parser.parse(args) == 0)
+			conf = parser.getConfig();
+		else
+			printUsage(parser.isSecure());
+
+		session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+	}
+
+	void printUsage(boolean secure) {
+		String strusage = ArgParser.getCommonUsage(secure);
+		strusage += "This sample:\n";
+		strusage += "\t[-q QUEUE]\t Queue to triage (default: bar1-triage)\n";
+		strusage += "\t[-to QUEUE]\t Move matching messages to QUEUE instead of deleting them\n";
+		strusage += "Filter (all given criteria must match; none matches every message):\n";
+		strusage += "\t[-ft TOPIC]\t Topic, may contain wildcards, e.g. orders/*/eu/>\n";
+		strusage += "\t[-fp NAME[=VALUE]]\t User property present, or equal to VALUE\n";
+		strusage += "\t[-fa SECS]\t Sent more than SECS ago (requires sender timestamps)\n";
+		strusage += "\t[-fs MIN:MAX]\t Payload size in bytes\n";
+		strusage += "\t[-fc COS]\t Class of service, 1-3\n";
+		strusage += "\t[-sel SELECTOR]\t Browser selector, so the broker filters as well\n";
+		strusage += "Actions:\n";
+		strusage += "\t[-bs SIZE]\t Messages per batch, 1-50 (default: 50)\n";
+		strusage += "\t[-rate N]\t Remove at most N messages per second (default: no limit)\n";
+		strusage += "\t[-n COUNT]\t Stop after COUNT matches\n";
+		strusage += "\t[-dry]\t\t Count the matches only\n";
+		strusage += "\t[-pub COUNT]\t First publish COUNT test messages to the queue\n";
+		System.out.println(strusage);
+		finish(1);
+	}
+
+	public static void main(String[] args) {
+		QueueTriage qsample = new QueueTriage();
+		qsample.run(args);
+	}
+
+	void checkCapability(final CapabilityType cap) {
+		System.out.printf("Checking for capability %s...", cap);
+		if (session.isCapable(cap)) {
+			System.out.println("OK");
+		} else {
+			System.out.println("FAILED");
+			finish(1);
+		}
+	}
+
+	MessageFilter buildFilter(Map<String, String> map) {
+		List<MessageFilter> filters = new ArrayList<MessageFilter>();
+		if (map.containsKey("-ft")) {
+			filters.add(MessageFilter.topic(map.get("-ft")));
+		}
+		if (map.containsKey("-fp")) {
+			String[] nv = map.get("-fp").split("=", 2);
+			filters.add(MessageFilter.property(nv[0], nv.length > 1 ? nv[1] : null));
+		}
+		if (map.containsKey("-fa")) {
+			filters.add(MessageFilter.olderThan(Long.parseLong(map.get("-fa")) * 1000));
+		}
+		if (map.containsKey("-fs")) {
+			String[] range = map.get("-fs").split(":");
+			filters.add(MessageFilter.size(Integer.parseInt(range[0]), Integer.parseInt(range[1])));
+		}
+		if (map.containsKey("-fc")) {
+			filters.add(MessageFilter.cos(User_Cos.values()[Integer.parseInt(map.get("-fc")) - 1]));
+		}
+		return filters.isEmpty() ? MessageFilter.any() : MessageFilter.all(filters.toArray(new MessageFilter[0]));
+	}
+
+	/**
+	 * Publishes test messages to topics the queue subscribes to, with a
+	 * mix of regions, priorities, sizes, classes of service and ages.
+	 */
+	void publish(Queue queue, int count) throws JCSMPException {
+		Topic sub = JCSMPFactory.onlyInstance().createTopic("bar1/triage/>");
+		session.addSubscription(queue, sub, JCSMPSession.WAIT_FOR_CONFIRM);
+		String[] regions = { "us", "eu", "apac" };
+		BytesXMLMessage m = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			m.reset();
+			m.setDeliveryMode(DeliveryMode.PERSISTENT);
+			m.setCos(User_Cos.values()[i % 3]);
+			// Spread the sender timestamps over the last hour, so that -fa has
+			// something to select.
+			m.setSenderTimestamp(now - (i % 60) * 60000L);
+			SDTMap props = JCSMPFactory.onlyInstance().createMap();
+			props.putString("priority", i % 10 == 0 ? "high" : "normal");
+			m.setProperties(props);
+			m.writeAttachment(new byte[100 + (i % 10) * 100]);
+			prod.send(m, JCSMPFactory.onlyInstance().createTopic("bar1/triage/" + regions[i % 3] + "/" + i));
+		}
+		System.out.printf("Published %d messages to '%s' via %s.\n", count, queue.getName(), sub.getName());
+	}
+
+	void run(String[] args) {
+		createSession(args);
+		try {
+			Map<String, String> map = conf.getArgBag();
+			Queue queue = JCSMPFactory.onlyInstance().createQueue(map.containsKey("-q") ? map.get("-q") : "bar1-triage");
+			MessageFilter filter = buildFilter(map);
+
+			// Connects the Session and acquires a message producer.
+			session.connect();
+			checkCapability(CapabilityType.BROWSER);
+
+			EndpointProperties props = new EndpointProperties();
+			props.setPermission(EndpointProperties.PERMISSION_DELETE);
+			session.provision(queue, props, JCSMPSession.FLAG_IGNORE_ALREADY_EXISTS);
+			if (map.containsKey("-pub")) {
+				prod = session.getMessageProducer(new PrintingPubCallback());
+				publish(queue, Integer.parseInt(map.get("-pub")));
+			}
+
+			final BrowseActionEngine engine = new BrowseActionEngine(session, queue, filter);
+			if (map.containsKey("-to")) {
+				Queue target = JCSMPFactory.onlyInstance().createQueue(map.get("-to"));
+				session.provision(target, props, JCSMPSession.FLAG_IGNORE_ALREADY_EXISTS);
+				engine.setMoveTo(target);
+			}
+			if (map.containsKey("-sel")) engine.setSelector(map.get("-sel"));
+			if (map.containsKey("-bs")) engine.setBatchSize(Integer.parseInt(map.get("-bs")));
+			if (map.containsKey("-rate")) engine.setRateLimit(Double.parseDouble(map.get("-rate")));
+			if (map.containsKey("-n")) engine.setMaxActions(Long.parseLong(map.get("-n")));
+			engine.setDryRun(map.containsKey("-dry"));
+
+			// Runs the engine on its own thread so that progress can be printed here.
+			final Exception[] error = new Exception[1];
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					try {
+						engine.run();
+					} catch (Exception e) {
+						error[0] = e;
+					}
+				}
+			}, "Triage");
+			System.out.printf("Triaging '%s', matching %s...\n", queue.getName(), filter);
+			t.start();
+			while (t.isAlive()) {
+				t.join(1000);
+				System.out.printf("   ... browsed %d, matched %d, removed %d\n", engine.getBrowsed(),
+					engine.getMatched(), engine.getRemoved());
+			}
+			if (error[0] instanceof JCSMPException) throw (JCSMPException) error[0];
+			if (error[0] != null) throw error[0];
+			System.out.println(engine.getReport());
+
+			finish(0);
+		} catch (JCSMPTransportException ex) {
+			System.err.println("Encountered a JCSMPTransportException, closing session... " + ex.getMessage());
+			if (prod != null) {
+				prod.close();
+				// At this point the producer handle is unusable, a new one
+				// may be created by the application.
+			}
+			finish(1);
+		} catch (JCSMPException ex) {
+			System.err.println("Encountered a JCSMPException, closing session... " + ex.getMessage());
+			// Possible causes:
+			// - Authentication error: invalid username/password
+			// - Provisioning error: unable to provision or browse the queue
+			// - Invalid selector
+			if (prod != null) {
+				prod.close();
+			}
+			finish(1);
+		} catch (Exception ex) {
+			System.err.println("Encountered an Exception... " + ex.getMessage());
+			finish(1);
+		}
+	}
+}
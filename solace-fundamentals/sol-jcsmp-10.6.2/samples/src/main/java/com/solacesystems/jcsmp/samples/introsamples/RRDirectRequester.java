@@ -12,6 +12,10 @@
  *  | RRDirectRequester |                      | RRDirectReplier  |
  *  |-------------------|  <--ReplyToTopic---- |------------------|
  *
+ * When -hb is given, requests are hedged: if no reply arrives within the observed
+ * p95 latency, a duplicate request is sent (to -at if given) and the first reply is
+ * used. The share of hedged requests is capped by the -hb budget.
+ *
  * Copyright 2013-2019 Solace Corporation. All rights reserved.
  */
 
@@ -34,7 +38,9 @@ import com.solacesystems.jcsmp.StreamMessage;
 import com.solacesystems.jcsmp.Topic;
 import com.solacesystems.jcsmp.XMLMessageConsumer;
 import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
 import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.HedgedRequestor;
 import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
 import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
 
@@ -70,6 +76,10 @@ public class RRDirectRequester extends SampleApp {
     //Time to wait for a reply before timing out
     private int timeoutMs = 2000;
     
+    //Set when hedging is enabled (-hb)
+    private HedgedRequestor hedgedRequestor = null;
+    private String alternateTopic = null;
+    
     public RRDirectRequester() {
         
     }
@@ -93,7 +103,10 @@ public class RRDirectRequester extends SampleApp {
         String strusage = ArgParser.getCommonUsage(secure);
         System.out.println(strusage);
         System.out.println("Extra arguments for this sample:");
-        System.out.println("\t -rt \t the topic to send the request message to (RRDirectReplier should be listeneing on the same topic)\n");
+        System.out.println("\t -rt \t the topic to send the request message to (RRDirectReplier should be listeneing on the same topic)");
+        System.out.println("\t[-hb] \t hedge budget: max percentage of requests that may be hedged (enables hedging)");
+        System.out.println("\t[-at] \t alternate topic to send hedged requests to (default: same as -rt)");
+        System.out.println("\t[-n]  \t number of request rounds to run (default: 1)\n");
     }
     
     public void doRequest(String requestTopic, Operation operation, int leftHandOperand, int rightHandOperand) throws Exception {
@@ -106,9 +119,15 @@ public class RRDirectRequester extends SampleApp {
         request.setStream(stream);
         request.setDeliveryMode(DeliveryMode.DIRECT);
         
-        Requestor requestor = session.createRequestor();
         Topic topic = JCSMPFactory.onlyInstance().createTopic(requestTopic);
-        BytesXMLMessage message = requestor.request(request, timeoutMs, topic);
+        BytesXMLMessage message;
+        if (hedgedRequestor != null) {
+            Topic alternate = alternateTopic == null ? null : JCSMPFactory.onlyInstance().createTopic(alternateTopic);
+            message = hedgedRequestor.request(request, topic, alternate);
+        } else {
+            Requestor requestor = session.createRequestor();
+            message = requestor.request(request, timeoutMs, topic);
+        }
         if (message != null) {
             if (message instanceof StreamMessage) {
                 StreamMessage replyMessage = (StreamMessage) message;
@@ -145,6 +164,21 @@ public class RRDirectRequester extends SampleApp {
             printUsage(parser.isSecure());
             finish(1);
         }
+        double hedgeBudgetPct = -1;
+        int rounds = 1;
+        try {
+            if (extraArguments.containsKey("-hb")) {
+                hedgeBudgetPct = Double.parseDouble(extraArguments.get("-hb"));
+            }
+            if (extraArguments.containsKey("-n")) {
+                rounds = Integer.parseInt(extraArguments.get("-n"));
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid numeric argument: " + e.getMessage() + "\n");
+            printUsage(parser.isSecure());
+            finish(1);
+        }
+        alternateTopic = extraArguments.get("-at");
 
      // Create a new Session. The Session properties are extracted from the
         // SessionConfiguration that was populated by the command line parser.
@@ -196,8 +230,15 @@ public class RRDirectRequester extends SampleApp {
             
             //This will have the session create the producer and consumer required
             //by the Requestor used below.
-            session.getMessageProducer(new PrintingPubCallback());
-            XMLMessageConsumer consumer = session.getMessageConsumer((XMLMessageListener)null);
+            XMLMessageProducer producer = session.getMessageProducer(new PrintingPubCallback());
+            XMLMessageListener listener = null;
+            if (hedgeBudgetPct >= 0) {
+                // Hedged requests are correlated by our own listener, starting
+                // with a 500 ms threshold until p95 has been observed.
+                hedgedRequestor = new HedgedRequestor(session, producer, timeoutMs, 500, 95, hedgeBudgetPct / 100.0);
+                listener = hedgedRequestor;
+            }
+            XMLMessageConsumer consumer = session.getMessageConsumer(listener);
             consumer.start();
         } catch (InvalidPropertiesException ipe) {
             System.err.println("Error during session creation: ");
@@ -209,18 +250,25 @@ public class RRDirectRequester extends SampleApp {
         }
         
         try {
-            doRequest(requestTopic, Operation.PLUS, 5, 4);
-            Thread.sleep(2000);
-            doRequest(requestTopic, Operation.MINUS, 5, 4);
-            Thread.sleep(2000);
-            doRequest(requestTopic, Operation.TIMES, 5, 4);
-            Thread.sleep(2000);
-            doRequest(requestTopic, Operation.DIVIDE, 5, 4);
+            // Pause between requests only for the single round demo.
+            long pauseMs = rounds == 1 ? 2000 : 0;
+            for (int round = 0; round < rounds; round++) {
+                doRequest(requestTopic, Operation.PLUS, 5, 4);
+                Thread.sleep(pauseMs);
+                doRequest(requestTopic, Operation.MINUS, 5, 4);
+                Thread.sleep(pauseMs);
+                doRequest(requestTopic, Operation.TIMES, 5, 4);
+                Thread.sleep(pauseMs);
+                doRequest(requestTopic, Operation.DIVIDE, 5, 4);
+            }
         } catch (JCSMPRequestTimeoutException e) {
             System.out.println("Failed to receive a reply in " + timeoutMs + " msecs");
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
+            if (hedgedRequestor != null) {
+                System.out.println(hedgedRequestor.getReport());
+            }
             if (session != null) {
                 session.closeSession();
             }
@@ -0,0 +1,156 @@
+/**
+ * ScatterGatherRequester.java
+ *
+ * This sample shows how to send one request to many repliers and gather their replies, where
+ *
+ *    ScatterGatherRequester: Publishes a request message once to a request topic and collects
+ *                            replies until enough replies arrive, a deadline passes or a
+ *                            reply satisfies the completion predicate.
+ *    RRDirectReplier:        Any number of instances listening on the same request topic.
+ *
+ *                                                  |------------------|
+ *                            ---RequestTopic --->  | RRDirectReplier  |  x N
+ *  |------------------------|                      |------------------|
+ *  | ScatterGatherRequester |
+ *  |------------------------|  <--ReplyToTopic---- (one reply per replier)
+ *
+ * Replies are printed as they arrive rather than once gathering completes.
+ *
+ * Copyright 2013-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.Map;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTStream;
+import com.solacesystems.jcsmp.StreamMessage;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.ScatterGatherRequestor;
+import com.solacesystems.jcsmp.samples.introsamples.common.ScatterGatherRequestor.Gather;
+import com.solacesystems.jcsmp.samples.introsamples.common.ScatterGatherRequestor.ReplyHandler;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+
+public class ScatterGatherRequester extends SampleApp {
+    SessionConfiguration conf = null;
+    XMLMessageProducer producer = null;
+    XMLMessageConsumer consumer = null;
+
+    // Same PLUS operation ordinal as RRDirectRequester / RRDirectReplier
+    private static final byte OPERATION_PLUS = 1;
+
+    public ScatterGatherRequester() {
+    }
+
+    void printUsage(boolean secure) {
+        String strusage = ArgParser.getCommonUsage(secure);
+        System.out.println(strusage);
+        System.out.println("Extra arguments for this sample:");
+        System.out.println("\t -rt \t the request topic (any number of RRDirectReplier instances listening on it)");
+        System.out.println("\t[-k]  \t stop after this many replies (default: no limit)");
+        System.out.println("\t[-d]  \t deadline in ms to wait for replies (default: 2000)\n");
+    }
+
+    /**
+     * Prints each reply as it arrives. Acts as the completion predicate too:
+     * gathering stops as soon as one replier reports a failed operation.
+     */
+    static class PrintingReplyHandler implements ReplyHandler {
+        public boolean onReply(BytesXMLMessage reply, int replyIndex) {
+            if (!(reply instanceof StreamMessage)) {
+                System.out.println("Reply " + replyIndex + ": unexpected message type");
+                return true;
+            }
+            SDTStream stream = ((StreamMessage) reply).getStream();
+            try {
+                if (stream.readBoolean()) {
+                    System.out.println("Reply " + replyIndex + ": " + stream.readDouble());
+                    return true;
+                }
+                System.out.println("Reply " + replyIndex + ": operation failed, stopping");
+                return false;
+            } catch (SDTException e) {
+                System.out.println("Reply " + replyIndex + ": invalid reply message");
+                return true;
+            } finally {
+                stream.rewind();
+            }
+        }
+    }
+
+    void run(String[] args) {
+        ArgParser parser = new ArgParser();
+        if (parser.parse(args) == 0) {
+            conf = parser.getConfig();
+        } else {
+            printUsage(parser.isSecure());
+            finish(1);
+        }
+        Map<String,String> extraArguments = conf.getArgBag();
+        String requestTopic = extraArguments.get("-rt");
+        if (requestTopic == null) {
+            System.out.println("This sample requires -rt to be specified\n");
+            printUsage(parser.isSecure());
+            finish(1);
+        }
+        int maxReplies = 0;
+        long deadlineMs = 2000;
+        try {
+            if (extraArguments.containsKey("-k")) {
+                maxReplies = Integer.parseInt(extraArguments.get("-k"));
+            }
+            if (extraArguments.containsKey("-d")) {
+                deadlineMs = Long.parseLong(extraArguments.get("-d"));
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid numeric argument: " + e.getMessage() + "\n");
+            printUsage(parser.isSecure());
+            finish(1);
+        }
+
+        session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+        try {
+            session.connect();
+            producer = session.getMessageProducer(new PrintingPubCallback());
+            ScatterGatherRequestor requestor = new ScatterGatherRequestor(session, producer);
+            consumer = session.getMessageConsumer(requestor);
+            consumer.start();
+
+            StreamMessage request = JCSMPFactory.onlyInstance().createMessage(StreamMessage.class);
+            SDTStream stream = JCSMPFactory.onlyInstance().createStream();
+            stream.writeByte(OPERATION_PLUS);
+            stream.writeInteger(5);
+            stream.writeInteger(4);
+            request.setStream(stream);
+            request.setDeliveryMode(DeliveryMode.DIRECT);
+
+            Topic topic = JCSMPFactory.onlyInstance().createTopic(requestTopic);
+            System.out.printf("Publishing request to '%s', gathering replies for up to %d ms...\n", requestTopic, deadlineMs);
+            Gather result = requestor.scatterGather(request, topic, maxReplies, deadlineMs, new PrintingReplyHandler());
+            System.out.printf("Gathered %d replies in %.2f ms, completed by %s\n",
+                result.getReplyCount(), result.getGatherMillis(), result.getReason());
+            finish(0);
+        } catch (JCSMPException e) {
+            e.printStackTrace();
+            finish(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(1);
+        }
+    }
+
+    public static void main(String[] args) {
+        ScatterGatherRequester instance = new ScatterGatherRequester();
+        instance.run(args);
+    }
+}
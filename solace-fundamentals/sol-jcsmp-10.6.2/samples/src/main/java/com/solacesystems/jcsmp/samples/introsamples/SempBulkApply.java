@@ -0,0 +1,197 @@
+/**
+ * SempBulkApply.java
+ *
+ * Applies many SEMP configuration RPCs over HTTP with a SempBulkApplier:
+ * several RPCs in flight over reused keep-alive connections, retries of
+ * transient failures, and dependency ordering between RPCs.
+ *
+ * The RPCs are read from a file (-f), one per line:
+ *
+ *     ID [after=ID,...] <rpc>...</rpc>
+ *
+ * where the RPC may also be given without the enclosing <rpc> element, in
+ * which case one with the -sv SEMP version is added. Lines starting with #
+ * are ignored. Alternatively -gen N generates the RPCs to create, configure
+ * and enable N queues (or, with -del, to delete them again).
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempBulkApplier;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempBulkApplier.ConfigRpc;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempBulkApplier.Status;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempHttpClient;
+
+public class SempBulkApply extends SampleApp {
+
+	public SempBulkApply() {
+		super();
+	}
+
+	public void printSyntax() {
+		System.out.println("Parameters:");
+		System.out.println("\t-h HOST:PORT\t\tAppliance Management IP Address");
+		System.out.println("\t[-u USER]\t\tAuthentication Username");
+		System.out.println("\t[-w PASSWORD]\t\tAuthentication Password");
+		System.out.println("\t[-sv SEMP_VERSION]\tSEMP version in the SEMP request. Default: " + SEMP_VERSION_TR);
+		System.out.println("\t[-s]\t\t\tUse HTTPS");
+		System.out.println("\t-f FILE | -gen N\tRPC file (ID [after=ID,...] RPC per line), or generate N queues");
+		System.out.println("\t[-vpn VPN]\t\tMessage VPN of generated queues. Default: default");
+		System.out.println("\t[-del]\t\t\tGenerate RPCs that delete the queues instead");
+		System.out.println("\t[-p PARALLELISM]\tRPCs in flight. Default: 8");
+		System.out.println("\t[-r ATTEMPTS]\t\tAttempts per RPC for transient failures. Default: 3");
+		System.out.println();
+	}
+
+	static String wrapRpc(String body, String sempVersion) {
+		if (body.startsWith("<rpc")) return body;
+		return "<rpc semp-version=\"" + sempVersion + "\">" + body + "</rpc>";
+	}
+
+	static List<ConfigRpc> readRpcs(String file, String sempVersion) throws IOException {
+		List<ConfigRpc> rpcs = new ArrayList<ConfigRpc>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				String[] parts = line.split("\\s+", 2);
+				if (parts.length < 2) {
+					throw new IllegalArgumentException("Expected ID [after=ID,...] RPC in: " + line);
+				}
+				List<String> after = Collections.emptyList();
+				String rest = parts[1];
+				if (rest.startsWith("after=")) {
+					String[] more = rest.split("\\s+", 2);
+					after = Arrays.asList(more[0].substring("after=".length()).split(","));
+					rest = more.length > 1 ? more[1] : "";
+				}
+				rpcs.add(new ConfigRpc(parts[0], wrapRpc(rest, sempVersion), after));
+			}
+		} finally {
+			in.close();
+		}
+		return rpcs;
+	}
+
+	/**
+	 * Per queue: create, then grant consume permission, then enable. Deletes
+	 * have no dependencies.
+	 */
+	static List<ConfigRpc> generateRpcs(int count, String vpn, boolean delete, String sempVersion) {
+		List<ConfigRpc> rpcs = new ArrayList<ConfigRpc>();
+		for (int i = 0; i < count; i++) {
+			String queue = "bulk-apply-q" + i;
+			String spool = "<message-spool><vpn-name>" + vpn + "</vpn-name>";
+			if (delete) {
+				rpcs.add(new ConfigRpc(queue + "/delete", wrapRpc(spool
+					+ "<no><queue><name>" + queue + "</name></queue></no></message-spool>", sempVersion), null));
+				continue;
+			}
+			rpcs.add(new ConfigRpc(queue + "/create", wrapRpc(spool
+				+ "<create><queue><name>" + queue + "</name></queue></create></message-spool>", sempVersion), null));
+			rpcs.add(new ConfigRpc(queue + "/permission", wrapRpc(spool
+				+ "<queue><name>" + queue + "</name><permission><all/><consume/></permission></queue></message-spool>",
+				sempVersion), Collections.singletonList(queue + "/create")));
+			rpcs.add(new ConfigRpc(queue + "/enable", wrapRpc(spool
+				+ "<queue><name>" + queue + "</name><no><shutdown/></no></queue></message-spool>", sempVersion),
+				Collections.singletonList(queue + "/permission")));
+		}
+		return rpcs;
+	}
+
+	public void run(String[] args) {
+		try {
+			String ipPort = null;
+			String username = "admin";
+			String password = "admin";
+			String sempVersion = SEMP_VERSION_TR;
+			boolean useHttps = false;
+			String file = null;
+			int generate = 0;
+			String vpn = "default";
+			boolean delete = false;
+			int parallelism = 8;
+			int attempts = 3;
+
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-h")) {
+					i++;
+					ipPort = args[i];
+				} else if (args[i].equals("-u")) {
+					i++;
+					username = args[i];
+				} else if (args[i].equals("-w")) {
+					i++;
+					password = args[i];
+				} else if (args[i].equals("-sv")) {
+					i++;
+					sempVersion = args[i];
+				} else if (args[i].equals("-s")) {
+					useHttps = true;
+				} else if (args[i].equals("-f")) {
+					i++;
+					file = args[i];
+				} else if (args[i].equals("-gen")) {
+					i++;
+					generate = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-vpn")) {
+					i++;
+					vpn = args[i];
+				} else if (args[i].equals("-del")) {
+					delete = true;
+				} else if (args[i].equals("-p")) {
+					i++;
+					parallelism = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-r")) {
+					i++;
+					attempts = Integer.parseInt(args[i]);
+				}
+			}
+			if (ipPort == null || (file == null && generate == 0)) {
+				printSyntax();
+				return;
+			}
+
+			List<ConfigRpc> rpcs = file != null ? readRpcs(file, sempVersion)
+				: generateRpcs(generate, vpn, delete, sempVersion);
+			SempHttpClient client = new SempHttpClient(ipPort, username, password, useHttps, parallelism);
+			SempBulkApplier applier = new SempBulkApplier(client, parallelism, attempts, 200);
+
+			System.out.printf("Applying %d RPCs to %s with %d in flight...\n", rpcs.size(), client.getUrl(), parallelism);
+			applier.apply(rpcs);
+
+			int shown = 0;
+			for (ConfigRpc rpc : rpcs) {
+				if (rpc.getStatus() == Status.OK) continue;
+				if (shown++ == 20) {
+					System.out.println("   ...");
+					break;
+				}
+				System.out.printf("   %-8s %s (%d attempts): %s\n", rpc.getStatus(), rpc.getId(), rpc.getAttempts(),
+					rpc.getError());
+			}
+			System.out.println(applier.getReport());
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static void main(String[] args) {
+		SempBulkApply bulkApply = new SempBulkApply();
+		bulkApply.run(args);
+		System.exit(0);
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ * SempCachedQueries.java
+ *
+ * This sample simulates several dashboards or agents in one JVM that poll
+ * the same SEMP show commands over the message bus. All of them go through a
+ * shared SempQueryCache, which answers from its cache while a reply is
+ * fresh and lets only one of several identical concurrent requests reach
+ * the appliance. At the end the sample reports how many appliance requests
+ * were saved.
+ *
+ * Sample requirements:
+ *  - A Solace appliance running SolOS-TR.
+ *  - The client's message vpn must have semp-over-msgbus enabled for SHOW commands.
+ *  - The client's message vpn must have management-message-vpn enabled to send SEMP requests outside of its message vpn.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.CapabilityType;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.LatencyHistogram;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempQueryCache;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+
+public class SempCachedQueries extends SampleApp {
+	XMLMessageConsumer cons = null;
+	SessionConfiguration conf = null;
+
+	// The show commands the simulated dashboards poll.
+	static final String[][] QUERIES = {
+		{ "hostname", "<show><hostname/></show>" },
+		{ "version", "<show><version/></show>" },
+		{ "client", "<show><client><name>*</name><stats/></client></show>" },
+		{ "queue", "<show><queue><name>*</name></queue></show>" },
+		{ "message-vpn", "<show><message-vpn><vpn-name>*</vpn-name></message-vpn></show>" },
+	};
+
+	void createSession(String[] args) {
+		ArgParser parser = new ArgParser();
+
+		// Parse command-line arguments.
+		if (parser.parse(args) == 0)
+			conf = parser.getConfig();
+		else
+			printUsage(parser.isSecure());
+
+		session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+	}
+
+	void printUsage(boolean secure) {
+		String strusage = ArgParser.getCommonUsage(secure);
+		strusage += "This sample:\n";
+		strusage += "\t[-sv SEMP_VERSION] \tSEMP version in the SEMP request. Default: " + SEMP_VERSION_TR + "\n";
+		strusage += "\t[-c CLIENTS]       \tConcurrent polling threads. Default: 8\n";
+		strusage += "\t[-d SECONDS]       \tTest duration. Default: 10\n";
+		strusage += "\t[-i INTERVAL_MS]   \tPause between polls of one thread. Default: 100\n";
+		strusage += "\t[-ttl TTLS]        \tDefault and per-command TTL in ms, e.g. 1000,queue=2000,hostname=60000. Default: 1000\n";
+		strusage += "\t[-lru ENTRIES]     \tMaximum cached replies. Default: 256\n";
+		System.out.println(strusage);
+		finish(1);
+	}
+
+	public SempCachedQueries() {
+	}
+
+	public static void main(String[] args) {
+		SempCachedQueries app = new SempCachedQueries();
+		app.run(args);
+	}
+
+	void run(String[] args) {
+		createSession(args);
+
+		try {
+			Map<String, String> extraArguments = conf.getArgBag();
+			String sempVersion = extraArguments.containsKey("-sv") ? extraArguments.get("-sv") : SEMP_VERSION_TR;
+			int clients = extraArguments.containsKey("-c") ? Integer.parseInt(extraArguments.get("-c")) : 8;
+			int seconds = extraArguments.containsKey("-d") ? Integer.parseInt(extraArguments.get("-d")) : 10;
+			final int intervalMs = extraArguments.containsKey("-i") ? Integer.parseInt(extraArguments.get("-i")) : 100;
+			String ttls = extraArguments.containsKey("-ttl") ? extraArguments.get("-ttl") : "1000";
+			int lru = extraArguments.containsKey("-lru") ? Integer.parseInt(extraArguments.get("-lru")) : 256;
+
+			System.out.println("About to connect to appliance.");
+			session.connect();
+			cons = session.getMessageConsumer(new PrintingMessageHandler());
+			printRouterInfo();
+			cons.start();
+			System.out.println("Connected!");
+
+			String routerName = (String) session.getCapability(CapabilityType.PEER_ROUTER_NAME);
+			final String SEMP_TOPIC_STRING = String.format("#SEMP/%s/SHOW", routerName);
+			final Topic SEMP_TOPIC = JCSMPFactory.onlyInstance().createTopic(SEMP_TOPIC_STRING);
+			System.out.printf("Router name is '%s', SEMP topic address is '%s'\n", routerName, SEMP_TOPIC_STRING);
+
+			long defaultTtl = 1000;
+			List<String[]> commandTtls = new ArrayList<String[]>();
+			for (String ttl : ttls.split(",")) {
+				String[] parts = ttl.trim().split("=");
+				if (parts.length == 1) {
+					defaultTtl = Long.parseLong(parts[0]);
+				} else {
+					commandTtls.add(parts);
+				}
+			}
+			final SempQueryCache cache = new SempQueryCache(session, SEMP_TOPIC, defaultTtl, lru, 5000);
+			for (String[] parts : commandTtls) {
+				cache.setTtl(parts[0], Long.parseLong(parts[1]));
+			}
+
+			// Requests are built with varying whitespace, as independently
+			// written tools would; the cache normalizes them to one key.
+			final String[] requests = new String[QUERIES.length * 2];
+			for (int i = 0; i < QUERIES.length; i++) {
+				requests[i * 2] = "<rpc semp-version=\"" + sempVersion + "\">" + QUERIES[i][1] + "</rpc>";
+				requests[i * 2 + 1] = "<rpc  semp-version=\"" + sempVersion + "\">\n  "
+					+ QUERIES[i][1].replace("><", ">\n    <") + "\n</rpc>\n";
+			}
+
+			final LatencyHistogram latency = new LatencyHistogram();
+			final AtomicLong errors = new AtomicLong();
+			final long endTime = System.currentTimeMillis() + seconds * 1000L;
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int t = 0; t < clients; t++) {
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						ThreadLocalRandom random = ThreadLocalRandom.current();
+						while (System.currentTimeMillis() < endTime) {
+							String request = requests[random.nextInt(requests.length)];
+							long start = System.nanoTime();
+							try {
+								cache.query(request);
+								latency.recordNanosAsMicros(System.nanoTime() - start);
+							} catch (JCSMPException e) {
+								if (errors.incrementAndGet() == 1) {
+									System.err.println("SEMP request failed: " + e.getMessage());
+								}
+							}
+							try {
+								Thread.sleep(intervalMs);
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+				}, "dashboard-" + t);
+				threads.add(thread);
+				thread.start();
+			}
+			System.out.printf("Polling with %s threads for %s seconds...\n", clients, seconds);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			System.out.println("Cache: " + cache.getReport());
+			System.out.printf("Appliance requests saved: %d of %d (%.1f%%), errors: %d\n",
+				cache.getSavedRequests(), cache.getRequests(), 100.0 * cache.getHitRatio(), errors.get());
+			System.out.println("Query latency: " + latency.getSummary("us"));
+			finish(0);
+		} catch (JCSMPTransportException ex) {
+			System.err.println("Encountered a JCSMPTransportException, closing consumer channel... " + ex.getMessage());
+			if (cons != null) {
+				cons.close();
+				// At this point the consumer handle is unusable; a new one should be created
+				// by calling cons = session.getMessageConsumer(...) if the application
+				// logic requires the consumer channel to remain open.
+			}
+			finish(1);
+		} catch (JCSMPException ex) {
+			System.err.println("Encountered a JCSMPException, closing consumer channel... " + ex.getMessage());
+			// Possible causes:
+			// - Authentication error: invalid username/password
+			// - Invalid or unsupported properties specified
+			if (cons != null) {
+				cons.close();
+			}
+			finish(1);
+		} catch (Exception ex) {
+			System.err.println("Encountered an Exception... " + ex.getMessage());
+			ex.printStackTrace();
+			finish(1);
+		}
+	}
+}
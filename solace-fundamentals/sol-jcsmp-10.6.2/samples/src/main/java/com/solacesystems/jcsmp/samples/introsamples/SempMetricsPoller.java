@@ -0,0 +1,218 @@
+/**
+ * SempMetricsPoller.java
+ *
+ * This sample polls queue and client statistics over SEMP (HTTP) with a
+ * SempMetricsScraper and prints, after every poll, the values and
+ * per-second rates computed from the difference with the previous poll.
+ *
+ * Field paths differ between SEMP versions; the default metric sets can be
+ * replaced with a file (-mf) listing one set per line:
+ *
+ *     NAME RECORD_PATH KEY_FIELD FIELD[,FIELD...] <show>...</show>
+ *
+ * where a field is a counter unless it ends in ":gauge", for example
+ *
+ *     queue queue/queues/queue name info/num-messages-spooled:gauge <show><queue><name>*</name></queue></show>
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempHttpClient;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempMetricsScraper;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempMetricsScraper.Kind;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempMetricsScraper.MetricSet;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempMetricsScraper.SetSnapshot;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempMetricsScraper.Snapshot;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempMetricsScraper.SnapshotListener;
+
+public class SempMetricsPoller extends SampleApp {
+
+	public SempMetricsPoller() {
+		super();
+	}
+
+	public void printSyntax() {
+		System.out.println("Parameters:");
+		System.out.println("\t-h HOST:PORT\t\tAppliance Management IP Address");
+		System.out.println("\t[-u USER]\t\tAuthentication Username");
+		System.out.println("\t[-w PASSWORD]\t\tAuthentication Password");
+		System.out.println("\t[-sv SEMP_VERSION]\tSEMP version in the SEMP request. Default: " + SEMP_VERSION_TR);
+		System.out.println("\t[-s]\t\t\tUse HTTPS");
+		System.out.println("\t[-i INTERVAL_MS]\tPoll interval. Default: 5000");
+		System.out.println("\t[-n POLLS]\t\tNumber of polls, 0 to poll until stopped. Default: 12");
+		System.out.println("\t[-top ROWS]\t\tRows printed per metric set, by first field. Default: 5");
+		System.out.println("\t[-mf FILE]\t\tMetric sets, one per line: NAME RECORD_PATH KEY FIELD[:gauge],... <show>...</show>");
+		System.out.println();
+	}
+
+	static List<MetricSet> defaultMetricSets() {
+		List<MetricSet> sets = new ArrayList<MetricSet>();
+		sets.add(new MetricSet("queue",
+			"<show><queue><name>*</name><detail/><count/><num-elements>100</num-elements></queue></show>",
+			"queue/queues/queue", "name",
+			"info/num-messages-spooled", "info/total-delivered-unacked-msgs", "info/bind-count")
+			.setKind(Kind.GAUGE, "info/num-messages-spooled", "info/total-delivered-unacked-msgs", "info/bind-count"));
+		sets.add(new MetricSet("client",
+			"<show><client><name>*</name><stats/><count/><num-elements>100</num-elements></client></show>",
+			"client/primary-virtual-router/client", "name",
+			"stats/client-data-messages-received", "stats/client-data-messages-sent"));
+		return sets;
+	}
+
+	static final String GAUGE_SUFFIX = ":gauge";
+
+	static List<MetricSet> readMetricSets(String file) throws IOException {
+		List<MetricSet> sets = new ArrayList<MetricSet>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				String[] parts = line.split("\\s+", 5);
+				if (parts.length < 5) {
+					throw new IllegalArgumentException("Expected NAME RECORD_PATH KEY FIELDS REQUEST in: " + line);
+				}
+				String[] fields = parts[3].split(",");
+				List<String> gauges = new ArrayList<String>();
+				for (int f = 0; f < fields.length; f++) {
+					if (fields[f].endsWith(GAUGE_SUFFIX)) {
+						fields[f] = fields[f].substring(0, fields[f].length() - GAUGE_SUFFIX.length());
+						gauges.add(fields[f]);
+					}
+				}
+				sets.add(new MetricSet(parts[0], parts[4], parts[1], parts[2], fields)
+					.setKind(Kind.GAUGE, gauges.toArray(new String[gauges.size()])));
+			}
+		} finally {
+			in.close();
+		}
+		return sets;
+	}
+
+	/**
+	 * Prints the busiest rows of every set.
+	 */
+	static class SnapshotPrinter implements SnapshotListener {
+		final int top;
+
+		SnapshotPrinter(int top) {
+			this.top = top;
+		}
+
+		public void onSnapshot(Snapshot snapshot) {
+			System.out.printf("--- poll took %.1f ms ---\n", snapshot.getPollMicros() / 1000.0);
+			for (final SetSnapshot set : snapshot.getSets()) {
+				StringBuilder header = new StringBuilder(String.format("%s: %d rows;", set.getName(), set.getRowCount()));
+				for (int f = 0; f < set.getFieldCount(); f++) {
+					header.append(' ').append(set.getField(f));
+				}
+				System.out.println(header);
+				Integer[] order = new Integer[set.getRowCount()];
+				for (int i = 0; i < order.length; i++) order[i] = i;
+				Arrays.sort(order, new Comparator<Integer>() {
+					public int compare(Integer a, Integer b) {
+						long va = set.getValue(a, 0);
+						long vb = set.getValue(b, 0);
+						return va < vb ? 1 : (va == vb ? 0 : -1);
+					}
+				});
+				for (int i = 0; i < Math.min(top, order.length); i++) {
+					int row = order[i];
+					StringBuilder line = new StringBuilder();
+					line.append(String.format("   %-32s", set.getKey(row)));
+					for (int f = 0; f < set.getFieldCount(); f++) {
+						line.append(String.format(" %12d (%+.1f/s)", set.getValue(row, f), set.getRate(row, f)));
+					}
+					System.out.println(line);
+				}
+			}
+		}
+	}
+
+	public void run(String[] args) {
+		try {
+			String ipPort = null;
+			String username = "admin";
+			String password = "admin";
+			String sempVersion = SEMP_VERSION_TR;
+			boolean useHttps = false;
+			long intervalMs = 5000;
+			int numPolls = 12;
+			int top = 5;
+			String metricsFile = null;
+
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-h")) {
+					i++;
+					ipPort = args[i];
+				} else if (args[i].equals("-u")) {
+					i++;
+					username = args[i];
+				} else if (args[i].equals("-w")) {
+					i++;
+					password = args[i];
+				} else if (args[i].equals("-sv")) {
+					i++;
+					sempVersion = args[i];
+				} else if (args[i].equals("-s")) {
+					useHttps = true;
+				} else if (args[i].equals("-i")) {
+					i++;
+					intervalMs = Long.parseLong(args[i]);
+				} else if (args[i].equals("-n")) {
+					i++;
+					numPolls = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-top")) {
+					i++;
+					top = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-mf")) {
+					i++;
+					metricsFile = args[i];
+				}
+			}
+			if (ipPort == null) {
+				printSyntax();
+				return;
+			}
+
+			SempHttpClient client = new SempHttpClient(ipPort, username, password, useHttps, 1);
+			SempMetricsScraper scraper = new SempMetricsScraper(client, sempVersion);
+			for (MetricSet set : metricsFile != null ? readMetricSets(metricsFile) : defaultMetricSets()) {
+				scraper.addMetricSet(set);
+			}
+			scraper.addListener(new SnapshotPrinter(top));
+
+			System.out.printf("Polling %s every %d ms...\n", client.getUrl(), intervalMs);
+			scraper.start(intervalMs);
+			while (numPolls == 0 || scraper.getPolls() < numPolls) {
+				Thread.sleep(100);
+			}
+			scraper.stop();
+
+			System.out.println("Poll time: " + scraper.getPollTimes().getSummary("us"));
+			if (scraper.getErrors() > 0) {
+				System.out.printf("%d failed polls, last error: %s\n", scraper.getErrors(), scraper.getLastError());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static void main(String[] args) {
+		SempMetricsPoller poller = new SempMetricsPoller();
+		poller.run(args);
+		System.exit(0);
+	}
+}
@@ -2,10 +2,12 @@
  * SempPagingRequests.java
  * 
  * This sample demonstrates SEMP requests with paging. The SEMP request shows configured 
- * queues on a Solace appliance, in sets of five per response.
+ * queues on a Solace appliance, in sets of five (-ps) per response.
  * 
  * The sample shows how to extract the more-cookie (used for paging) from 
- * a response to get more data by performing more requests.
+ * a response to get more data by performing more requests. SempPager exposes
+ * the queues as an Iterator and requests the next page as soon as the
+ * more-cookie of the current one has been parsed.
  * Sample requirements:
  *  - A Solace appliance running SolOS-TR.
  *  - When running with SolOS-TR 5.3.1 and above , The client's message vpn must have semp-over-msgbus enabled.
@@ -16,21 +18,8 @@
 
 package com.solacesystems.jcsmp.samples.introsamples;
 
-import java.io.StringReader;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-
-import com.solacesystems.jcsmp.BytesXMLMessage;
 import com.solacesystems.jcsmp.CapabilityType;
 import com.solacesystems.jcsmp.Consumer;
 import com.solacesystems.jcsmp.JCSMPException;
@@ -42,6 +31,9 @@ import com.solacesystems.jcsmp.XMLMessageProducer;
 import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
 import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
 import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempPager;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempPager.SempPagingException;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader.SempRecord;
 import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
 
 public class SempPagingRequests extends SampleApp {
@@ -65,6 +57,9 @@ public class SempPagingRequests extends SampleApp {
 		String strusage = ArgParser.getCommonUsage(secure);
 		strusage += "This sample:\n";
         strusage += "\t[-sv SEMP_VERSION] \tSEMP version in the SEMP request. Default: " + SEMP_VERSION_TR + "\n";
+		strusage += "\t[-ps PAGE_SIZE]    \tQueues per reply (num-elements). Default: 5\n";
+		strusage += "\t[-pf PAGES]        \tPages fetched ahead while listing, 0 for one at a time. Default: 2\n";
+		strusage += "\t[-q]               \tDo not print queue names, only the summary\n";
 		System.out.println(strusage);
 		finish(1);
 	}
@@ -105,76 +100,41 @@ public class SempPagingRequests extends SampleApp {
 			final Topic SEMP_TOPIC = JCSMPFactory.onlyInstance().createTopic(SEMP_TOPIC_STRING);
 			Map<String,String> extraArguments = conf.getArgBag();
 			String sempVersion = extraArguments.containsKey("-sv") ? sempVersion = extraArguments.get("-sv") : SEMP_VERSION_TR;
-			final String SEMP_SHOW_QUEUES = "<rpc semp-version=\"" + sempVersion + "\"><show><queue><name>*</name><count/><num-elements>5</num-elements></queue></show></rpc>";
-			final String MORECOOKIE_START = "<more-cookie>";
-			final String MORECOOKIE_END = "</more-cookie>";
+			int pageSize = extraArguments.containsKey("-ps") ? Integer.parseInt(extraArguments.get("-ps")) : 5;
+			int prefetch = extraArguments.containsKey("-pf") ? Integer.parseInt(extraArguments.get("-pf")) : 2;
+			boolean quiet = extraArguments.containsKey("-q");
+			final String SEMP_SHOW_QUEUES = SempPager.pagedShowRequest(sempVersion, "queue", "<name>*</name><count/>", pageSize);
 			
 			System.out.printf("Router name is '%s', SEMP topic address is '%s'\n", routerName, SEMP_TOPIC_STRING);	
+			System.out.println("REQUEST: " + trimXmlForDisplay(SEMP_SHOW_QUEUES, 175));
 			
 			// Set up the requestor on an open session to perform request operations.
 			Requestor requestor = session.createRequestor();
 
 			/*
-			 * We perform requests in a loop. Each new request uses the
-			 * more-cookie from the previous response.
+			 * The pager sends the first request, and each time a reply has
+			 * been parsed it sends the request from that reply's more-cookie
+			 * right away, while we are still going through the queues already
+			 * received. With -pf 0 every page is requested only when the
+			 * previous one has been consumed.
 			 */
-			String next_request = SEMP_SHOW_QUEUES;
-			while(next_request != null) {
-				BytesXMLMessage requestMsg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
-				requestMsg.writeAttachment(next_request.getBytes());
-				System.out.println("REQUEST: " + trimXmlForDisplay(next_request, 75)
-					+ String.format("(%s bytes)", next_request.getBytes().length));
-				BytesXMLMessage replyMsg = requestor.request(requestMsg, 5000, SEMP_TOPIC);
-
-				String replyStr = "";
-				if (replyMsg.getAttachmentContentLength() > 0) {
-					byte[] bytes = new byte[replyMsg.getAttachmentContentLength()];
-					replyMsg.readAttachmentBytes(bytes);
-					replyStr = new String(bytes, "UTF-8");
-				}
-				System.out.println("REPLY: " + trimXmlForDisplay(replyStr, 175)
-					+ String.format("(%s bytes)", replyStr.getBytes().length));
-
-				Document doc = loadXmlDoc(replyStr);
-				XPathFactory xpfactory = XPathFactory.newInstance();
-				XPath xpath = xpfactory.newXPath();
-
-				// Check execute-result using an XPath query.
-				String resultCode = (String) xpath.evaluate(
-					"string(//execute-result/@code)", 
-					doc, 
-					XPathConstants.STRING);
-				System.out.println("   Result: " + resultCode);
-				if (!"ok".equals(resultCode)) {
-					throw new Exception(String.format("SEMP response '%s' not OK.", resultCode));
-				}
-
-				/*
-				 * List queues. We select text nodes under
-				 * <queues><queue><name>NAME</name></queue><queues> in the
-				 * response.
-				 */
-				NodeList nl = (NodeList) xpath.evaluate(
-					"//show/queue/queues/queue/name", 
-					doc, 
-					XPathConstants.NODESET);
-				for (int i = 0; i < nl.getLength(); i++) {
-					Node node = nl.item(i);
-					System.out.println("   Queue: " + node.getTextContent());
-				}
-				
-				// Check for more data to request with more-cookie.
-				int start_idx = replyStr.indexOf(MORECOOKIE_START);
-				if (start_idx >= 0) {
-					// more data available
-					int end_idx = replyStr.indexOf(MORECOOKIE_END);
-					next_request = replyStr.substring(start_idx + MORECOOKIE_START.length(), end_idx);
-					System.out.println("Found more-cookie...");
-				} else {
-					// Abort the loop, no more data.
-					next_request = null;
+			long start = System.nanoTime();
+			SempPager pager = new SempPager(requestor, SEMP_TOPIC, SEMP_SHOW_QUEUES, "queue/queues/queue", 5000, prefetch);
+			try {
+				while (pager.hasNext()) {
+					SempRecord queue = pager.next();
+					if (!quiet) System.out.println("   Queue: " + queue.get("name"));
 				}
-			} // End requestor loop.
+			} catch (SempPagingException ex) {
+				if (ex.getCause() instanceof JCSMPException) throw (JCSMPException) ex.getCause();
+				throw ex;
+			} finally {
+				pager.close();
+			}
+			long elapsedMs = (System.nanoTime() - start) / 1000000;
+			System.out.printf("%d queues in %d pages of %d, prefetch %d: %d ms total, %d ms request time, %d ms waiting for pages\n",
+				pager.getRecordCount(), pager.getPageCount(), pageSize, prefetch, elapsedMs,
+				pager.getRequestMillis(), pager.getWaitMillis());
 			
 			finish(0);
 		} catch (JCSMPTransportException ex) {
@@ -206,16 +166,6 @@ public class SempPagingRequests extends SampleApp {
 		}
 	}
 
-	/**
-	 * Load a new Document object from an XML string.
-	 */
-	private static Document loadXmlDoc(String doc) throws Exception {
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		factory.setNamespaceAware(false);
-		DocumentBuilder builder = factory.newDocumentBuilder();
-		return builder.parse(new InputSource(new StringReader(doc)));
-	}
-
 	/**
 	 * Pretty-print / trim a request or response by putting it all on one line,
 	 * and trimming to length.
@@ -0,0 +1,204 @@
+/**
+ * SempParseBenchmark.java
+ *
+ * Compares two ways of reading a large SEMP "show queue" reply:
+ *
+ *  - DOM + XPath, as SempPagingRequests used to: build a Document with
+ *    DocumentBuilderFactory, create an XPath and evaluate
+ *    //show/queue/queues/queue/name over the whole tree.
+ *  - SempReplyReader, which streams records out of the reply bytes with StAX.
+ *
+ * The reply is generated in memory (or read from a file captured from an
+ * appliance with -f), so no appliance is needed to run this sample.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader.RecordHandler;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader.SempRecord;
+
+public class SempParseBenchmark extends SampleApp {
+
+	public SempParseBenchmark() {
+		super();
+	}
+
+	public void printSyntax() {
+		System.out.println("Parameters:");
+		System.out.println("\t[-n NUM_QUEUES]\tQueues in the generated reply. Default: 50000");
+		System.out.println("\t[-i ITERATIONS]\tMeasured iterations per parser. Default: 5");
+		System.out.println("\t[-f FILE]\tParse a captured show queue reply instead of a generated one");
+		System.out.println();
+	}
+
+	/**
+	 * Builds a reply shaped like the appliance's answer to
+	 * &lt;show&gt;&lt;queue&gt;&lt;name&gt;*&lt;/name&gt;&lt;/queue&gt;&lt;/show&gt;.
+	 */
+	static byte[] generateShowQueueReply(int numQueues) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(numQueues * 400);
+		StringBuilder bldr = new StringBuilder(512);
+		out.write(("<rpc-reply semp-version=\"" + SEMP_VERSION_TR + "\">\n  <rpc>\n    <show>\n      <queue>\n        <queues>\n").getBytes("UTF-8"));
+		for (int i = 0; i < numQueues; i++) {
+			bldr.setLength(0);
+			bldr.append("          <queue>\n            <name>bench-queue-").append(i).append("</name>\n");
+			bldr.append("            <info>\n              <message-vpn>default</message-vpn>\n");
+			bldr.append("              <num-messages-spooled>").append(i % 1000).append("</num-messages-spooled>\n");
+			bldr.append("              <current-spool-usage-in-mb>").append((i % 100) / 10.0).append("</current-spool-usage-in-mb>\n");
+			bldr.append("              <durable>true</durable>\n              <bind-count>").append(i % 3).append("</bind-count>\n");
+			bldr.append("            </info>\n          </queue>\n");
+			out.write(bldr.toString().getBytes("UTF-8"));
+		}
+		out.write(("        </queues>\n      </queue>\n    </show>\n  </rpc>\n"
+			+ "  <execute-result code=\"ok\"/>\n</rpc-reply>\n").getBytes("UTF-8"));
+		return out.toByteArray();
+	}
+
+	static byte[] readFile(String path) throws Exception {
+		InputStream in = new FileInputStream(path);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[65536];
+			int n;
+			while ((n = in.read(buf)) >= 0) out.write(buf, 0, n);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The DOM + XPath path from SempPagingRequests.
+	 */
+	static long parseDom(byte[] reply) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(false);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		Document doc = builder.parse(new ByteArrayInputStream(reply));
+		XPathFactory xpfactory = XPathFactory.newInstance();
+		XPath xpath = xpfactory.newXPath();
+		String resultCode = (String) xpath.evaluate("string(//execute-result/@code)", doc, XPathConstants.STRING);
+		if (!"ok".equals(resultCode)) throw new Exception("Unexpected result " + resultCode);
+		NodeList nl = (NodeList) xpath.evaluate("//show/queue/queues/queue/name", doc, XPathConstants.NODESET);
+		long checksum = 0;
+		for (int i = 0; i < nl.getLength(); i++) {
+			checksum += nl.item(i).getTextContent().length();
+		}
+		return checksum;
+	}
+
+	/**
+	 * The same extraction with the streaming reader.
+	 */
+	static long parseStax(SempReplyReader reader, byte[] reply) throws Exception {
+		final long[] checksum = new long[1];
+		SempReplyReader.Result result = reader.read(reply, 0, reply.length, new RecordHandler() {
+			public void onRecord(SempRecord record) {
+				CharSequence name = record.getValue("name");
+				if (name != null) checksum[0] += name.length();
+			}
+		});
+		if (!result.isOk()) throw new Exception("Unexpected result " + result.getExecuteResult());
+		return checksum[0];
+	}
+
+	static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	/**
+	 * Heap retained while the parsed representation is still referenced.
+	 */
+	static long domRetainedBytes(byte[] reply) throws Exception {
+		long before = usedHeap();
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		Document doc = factory.newDocumentBuilder().parse(new ByteArrayInputStream(reply));
+		long after = usedHeap();
+		if (doc.getDocumentElement() == null) return 0; // keep doc reachable
+		return after - before;
+	}
+
+	public void run(String[] args) {
+		try {
+			int numQueues = 50000;
+			int iterations = 5;
+			String file = null;
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-n")) {
+					i++;
+					numQueues = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-i")) {
+					i++;
+					iterations = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-f")) {
+					i++;
+					file = args[i];
+				} else if (args[i].equals("--help")) {
+					printSyntax();
+					return;
+				}
+			}
+
+			byte[] reply = file != null ? readFile(file) : generateShowQueueReply(numQueues);
+			System.out.printf("Reply size: %.1f MB\n", reply.length / 1048576.0);
+
+			SempReplyReader reader = new SempReplyReader("queue/queues/queue");
+			// Warm up both paths so the JIT has compiled them.
+			for (int i = 0; i < 2; i++) {
+				parseDom(reply);
+				parseStax(reader, reply);
+			}
+
+			long domNanos = 0, staxNanos = 0, domSum = 0, staxSum = 0;
+			for (int i = 0; i < iterations; i++) {
+				long start = System.nanoTime();
+				domSum = parseDom(reply);
+				domNanos += System.nanoTime() - start;
+				start = System.nanoTime();
+				staxSum = parseStax(reader, reply);
+				staxNanos += System.nanoTime() - start;
+			}
+			if (domSum != staxSum) {
+				System.out.printf("WARNING: results differ (DOM %d, StAX %d)\n", domSum, staxSum);
+			}
+
+			long records = reader.read(reply, 0, reply.length, null).getRecordCount();
+			double domMs = domNanos / 1e6 / iterations;
+			double staxMs = staxNanos / 1e6 / iterations;
+			System.out.printf("%-14s %12s %14s %16s\n", "parser", "ms/reply", "records/sec", "retained heap");
+			System.out.printf("%-14s %12.1f %14.0f %13.1f MB\n", "DOM+XPath", domMs, records / (domMs / 1000),
+				domRetainedBytes(reply) / 1048576.0);
+			System.out.printf("%-14s %12.1f %14.0f %16s\n", "StAX reader", staxMs, records / (staxMs / 1000),
+				"one record");
+			System.out.printf("Speedup: %.1fx\n", domMs / staxMs);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static void main(String[] args) {
+		SempParseBenchmark benchmark = new SempParseBenchmark();
+		benchmark.run(args);
+		System.exit(0);
+	}
+}
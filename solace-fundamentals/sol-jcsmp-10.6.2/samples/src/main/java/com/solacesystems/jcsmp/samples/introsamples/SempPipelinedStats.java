@@ -0,0 +1,193 @@
+/**
+ * SempPipelinedStats.java
+ *
+ * This sample collects per-queue details over SEMP on the message bus, first
+ * one request at a time and then with increasing numbers of requests in
+ * flight through a PipelinedSempClient, and reports how the total
+ * collection time falls as concurrency rises.
+ *
+ * Sample requirements:
+ *  - A Solace appliance running SolOS-TR with some queues provisioned.
+ *  - The client's message vpn must have semp-over-msgbus enabled for SHOW commands.
+ *  - The client's message vpn must have management-message-vpn enabled to send SEMP requests outside of its message vpn.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CapabilityType;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.PipelinedSempClient;
+import com.solacesystems.jcsmp.samples.introsamples.common.PipelinedSempClient.SempFuture;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempPager;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+
+public class SempPipelinedStats extends SampleApp {
+	XMLMessageConsumer cons = null;
+	XMLMessageProducer prod = null;
+	SessionConfiguration conf = null;
+
+	// Replies go to whichever client is running the current step.
+	volatile PipelinedSempClient client = null;
+
+	void createSession(String[] args) {
+		ArgParser parser = new ArgParser();
+
+		// Parse command-line arguments.
+		if (parser.parse(args) == 0)
+			conf = parser.getConfig();
+		else
+			printUsage(parser.isSecure());
+
+		session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+	}
+
+	void printUsage(boolean secure) {
+		String strusage = ArgParser.getCommonUsage(secure);
+		strusage += "This sample:\n";
+		strusage += "\t[-sv SEMP_VERSION] \tSEMP version in the SEMP request. Default: " + SEMP_VERSION_TR + "\n";
+		strusage += "\t[-cc LEVELS]       \tComma-separated maximum requests in flight to compare. Default: 1,2,4,8,16,32\n";
+		strusage += "\t[-nq REQUESTS]     \tQueue detail requests per step; queues are reused when there are fewer. Default: 200\n";
+		System.out.println(strusage);
+		finish(1);
+	}
+
+	public SempPipelinedStats() {
+	}
+
+	public static void main(String[] args) {
+		SempPipelinedStats app = new SempPipelinedStats();
+		app.run(args);
+	}
+
+	void run(String[] args) {
+		createSession(args);
+
+		try {
+			Map<String, String> extraArguments = conf.getArgBag();
+			String sempVersion = extraArguments.containsKey("-sv") ? extraArguments.get("-sv") : SEMP_VERSION_TR;
+			String levels = extraArguments.containsKey("-cc") ? extraArguments.get("-cc") : "1,2,4,8,16,32";
+			int numRequests = extraArguments.containsKey("-nq") ? Integer.parseInt(extraArguments.get("-nq")) : 200;
+
+			System.out.println("About to connect to appliance.");
+			session.connect();
+			prod = session.getMessageProducer(new PrintingPubCallback());
+			cons = session.getMessageConsumer(new XMLMessageListener() {
+				public void onReceive(BytesXMLMessage msg) {
+					PipelinedSempClient c = client;
+					if (c != null) c.onReceive(msg);
+				}
+
+				public void onException(JCSMPException e) {
+					System.err.println("Consumer received exception: " + e);
+				}
+			});
+			printRouterInfo();
+			cons.start();
+			System.out.println("Connected!");
+
+			String routerName = (String) session.getCapability(CapabilityType.PEER_ROUTER_NAME);
+			final String SEMP_TOPIC_STRING = String.format("#SEMP/%s/SHOW", routerName);
+			final Topic SEMP_TOPIC = JCSMPFactory.onlyInstance().createTopic(SEMP_TOPIC_STRING);
+			System.out.printf("Router name is '%s', SEMP topic address is '%s'\n", routerName, SEMP_TOPIC_STRING);
+
+			// List the queues to collect details for.
+			List<String> queues = new ArrayList<String>();
+			SempPager pager = new SempPager(session.createRequestor(), SEMP_TOPIC,
+				SempPager.pagedShowRequest(sempVersion, "queue", "<name>*</name>", 100), "queue/queues/queue", 5000, 2);
+			try {
+				while (pager.hasNext()) {
+					queues.add(pager.next().get("name"));
+				}
+			} finally {
+				pager.close();
+			}
+			if (queues.isEmpty()) {
+				System.out.println("No queues found; provision some queues and run again.");
+				finish(1);
+			}
+			String[] requests = new String[numRequests];
+			for (int i = 0; i < numRequests; i++) {
+				requests[i] = String.format("<rpc semp-version=\"%s\"><show><queue><name>%s</name><detail/></queue></show></rpc>",
+					sempVersion, queues.get(i % queues.size()));
+			}
+			System.out.printf("Found %d queues; collecting %d queue details per step.\n", queues.size(), numRequests);
+
+			SempReplyReader reader = new SempReplyReader(null);
+			List<long[]> rows = new ArrayList<long[]>();
+			for (String level : levels.split(",")) {
+				int maxOutstanding = Integer.parseInt(level.trim());
+				PipelinedSempClient c = new PipelinedSempClient(session, prod, SEMP_TOPIC, maxOutstanding, 5000);
+				client = c;
+				long errors = 0;
+				long start = System.nanoTime();
+				List<SempFuture> futures = new ArrayList<SempFuture>(numRequests);
+				for (String request : requests) {
+					futures.add(c.submit(request));
+				}
+				for (SempFuture future : futures) {
+					try {
+						byte[] reply = future.get();
+						if (!reader.read(reply, 0, reply.length, null).isOk()) errors++;
+					} catch (Exception e) {
+						errors++;
+					}
+				}
+				long elapsedMs = (System.nanoTime() - start) / 1000000;
+				c.close();
+				client = null;
+				rows.add(new long[] { maxOutstanding, elapsedMs, c.getPeakOutstanding(), errors,
+					c.getLatency().getPercentile(50), c.getLatency().getPercentile(99) });
+				System.out.printf("  max in flight %3d: %6d ms\n", maxOutstanding, elapsedMs);
+			}
+
+			long baseline = Math.max(1, rows.get(0)[1]);
+			System.out.printf("%10s %6s %10s %10s %10s %10s %10s %8s\n",
+				"in-flight", "peak", "time-ms", "req/sec", "speedup", "p50-us", "p99-us", "errors");
+			for (long[] row : rows) {
+				System.out.printf("%10d %6d %10d %10.0f %9.1fx %10d %10d %8d\n", row[0], row[2], row[1],
+					numRequests * 1000.0 / Math.max(1, row[1]), (double) baseline / Math.max(1, row[1]),
+					row[4], row[5], row[3]);
+			}
+			finish(0);
+		} catch (JCSMPTransportException ex) {
+			System.err.println("Encountered a JCSMPTransportException, closing consumer channel... " + ex.getMessage());
+			if (cons != null) {
+				cons.close();
+				// At this point the consumer handle is unusable; a new one should be created
+				// by calling cons = session.getMessageConsumer(...) if the application
+				// logic requires the consumer channel to remain open.
+			}
+			finish(1);
+		} catch (JCSMPException ex) {
+			System.err.println("Encountered a JCSMPException, closing consumer channel... " + ex.getMessage());
+			// Possible causes:
+			// - Authentication error: invalid username/password
+			// - Invalid or unsupported properties specified
+			if (cons != null) {
+				cons.close();
+			}
+			finish(1);
+		} catch (Exception ex) {
+			System.err.println("Encountered an Exception... " + ex.getMessage());
+			ex.printStackTrace();
+			finish(1);
+		}
+	}
+}
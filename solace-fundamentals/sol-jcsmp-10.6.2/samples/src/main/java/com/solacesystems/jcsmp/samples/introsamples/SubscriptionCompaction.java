@@ -0,0 +1,232 @@
+/**
+ * SubscriptionCompaction.java
+ *
+ * This sample shows how to avoid adding overlapping subscriptions to the
+ * broker. Its "services" ask for a mix of exact topics, duplicates, and
+ * wildcards that cover some of them, such as .../desk03/* next to
+ * .../desk03/sym00042, or region1/&gt; over everything in region 1. The
+ * SubscriptionCompactor reduces that set to the subscriptions no other one
+ * covers, and only those are added to the session.
+ *
+ * Every service handler is still registered on the subscription it asked
+ * for, in a TopicDispatcher, so it receives exactly the topics it would
+ * have received had its own subscription been added. After publishing to
+ * random topics the sample checks that each handler got the expected
+ * messages, and reports how many broker subscriptions were saved.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+import com.solacesystems.jcsmp.samples.introsamples.common.SubscriptionCompactor;
+import com.solacesystems.jcsmp.samples.introsamples.common.TopicDispatcher;
+import com.solacesystems.jcsmp.samples.introsamples.common.TopicMatcher;
+
+public class SubscriptionCompaction extends SampleApp {
+	XMLMessageConsumer cons = null;
+	XMLMessageProducer prod = null;
+	SessionConfiguration conf = null;
+
+	/** One service's interest in one subscription. */
+	static final class ServiceHandler implements XMLMessageListener {
+		final String subscription;
+		volatile long received;
+		long expected;
+
+		ServiceHandler(String subscription) {
+			this.subscription = subscription;
+		}
+
+		public void onReceive(BytesXMLMessage msg) {
+			received++;
+		}
+
+		public void onException(JCSMPException e) {
+		}
+	}
+
+	void createSession(String[] args) {
+		ArgParser parser = new ArgParser();
+
+		// Parse command-line arguments
+		if (parser.parse(args) == 0)
+			conf = parser.getConfig();
+		else
+			printUsage(parser.isSecure());
+
+		session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+	}
+
+	void printUsage(boolean secure) {
+		String strusage = ArgParser.getCommonUsage(secure);
+		strusage += "This sample:\n";
+		strusage += "\t[-n COUNT]\t Exact topics the services ask for (default: 5000)\n";
+		strusage += "\t[-m COUNT]\t Messages to publish (default: 2000)\n";
+		strusage += "\t[-v]\t\t Print the broker subscriptions and what they carry\n";
+		System.out.println(strusage);
+		finish(1);
+	}
+
+	public static void main(String[] args) {
+		SubscriptionCompaction sample = new SubscriptionCompaction();
+		sample.run(args);
+	}
+
+	static final int REGIONS = 4;
+	static final int DESKS = 16;
+
+	static String symbolTopic(int i) {
+		return String.format("bar1/compact/region%d/desk%02d/sym%05d", i % REGIONS, (i / REGIONS) % DESKS, i);
+	}
+
+	/**
+	 * The services' requests: every symbol, a second service on every
+	 * tenth, desk watchers on region 0, symbol ranges on region 2 and all
+	 * of region 1.
+	 */
+	static List<String> requestedSubscriptions(int count) {
+		List<String> subs = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			subs.add(symbolTopic(i));
+			if (i % 10 == 0) subs.add(symbolTopic(i));
+		}
+		for (int d = 0; d < DESKS; d += 2) {
+			subs.add(String.format("bar1/compact/region0/desk%02d/*", d));
+			subs.add(String.format("bar1/compact/region2/desk%02d/sym0*", d));
+		}
+		subs.add("bar1/compact/region1/>");
+		return subs;
+	}
+
+	void run(String[] args) {
+		createSession(args);
+		try {
+			Map<String, String> map = conf.getArgBag();
+			int count = map.containsKey("-n") ? Integer.parseInt(map.get("-n")) : 5000;
+			int messages = map.containsKey("-m") ? Integer.parseInt(map.get("-m")) : 2000;
+
+			List<String> requested = requestedSubscriptions(count);
+			long start = System.nanoTime();
+			SubscriptionCompactor.Plan plan = SubscriptionCompactor.compact(requested);
+			System.out.printf("Compacted in %.1f ms: %s\n", (System.nanoTime() - start) / 1e6, plan);
+			if (map.containsKey("-v")) {
+				for (Map.Entry<String, List<String>> e : plan.getCovered().entrySet()) {
+					if (e.getValue().size() > 1) {
+						System.out.printf("  %s carries %d subscriptions\n", e.getKey(), e.getValue().size());
+					}
+				}
+			}
+
+			// The handlers stay on the subscriptions the services asked for.
+			TopicDispatcher dispatcher = new TopicDispatcher(null);
+			List<ServiceHandler> handlers = new ArrayList<ServiceHandler>(requested.size());
+			for (String s : requested) {
+				ServiceHandler h = new ServiceHandler(s);
+				handlers.add(h);
+				dispatcher.subscribe(s, h);
+			}
+
+			session.connect();
+			cons = session.getMessageConsumer(dispatcher);
+			List<String> broker = plan.getBrokerSubscriptions();
+			System.out.printf("Adding %d broker subscriptions instead of %d...\n", broker.size(), requested.size());
+			start = System.nanoTime();
+			for (int i = 0; i < broker.size(); i++) {
+				// Only the last one waits; the broker answers in order.
+				session.addSubscription(JCSMPFactory.onlyInstance().createTopic(broker.get(i)),
+					i == broker.size() - 1);
+			}
+			System.out.printf("  Added in %d ms\n", (System.nanoTime() - start) / 1000000);
+			cons.start();
+
+			prod = session.getMessageProducer(new PrintingPubCallback());
+			BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+			msg.setDeliveryMode(DeliveryMode.DIRECT);
+			Random rnd = new Random();
+			long deliverable = 0;
+			for (int i = 0; i < messages; i++) {
+				// Some symbols beyond the requested ones, which only wildcards match.
+				String topic = symbolTopic(rnd.nextInt(count + count / 4));
+				boolean matched = false;
+				for (ServiceHandler h : handlers) {
+					if (TopicMatcher.matches(h.subscription, topic)) {
+						h.expected++;
+						matched = true;
+					}
+				}
+				if (matched) deliverable++;
+				prod.send(msg, JCSMPFactory.onlyInstance().createTopic(topic));
+			}
+			System.out.printf("Published %d messages, %d to topics some service asked for.\n", messages,
+				deliverable);
+
+			long deadline = System.currentTimeMillis() + 10000;
+			while (dispatcher.getDispatched() < deliverable && System.currentTimeMillis() < deadline) {
+				Thread.sleep(100);
+			}
+			int wrong = 0;
+			for (ServiceHandler h : handlers) {
+				if (h.received != h.expected) {
+					if (wrong++ < 10) {
+						System.out.printf("  %s: received %d, expected %d\n", h.subscription, h.received, h.expected);
+					}
+				}
+			}
+			System.out.printf("Received %d messages, %d unmatched; %d of %d handlers got exactly their topics.\n",
+				dispatcher.getDispatched(), dispatcher.getDropped(), handlers.size() - wrong, handlers.size());
+			System.out.printf("Broker subscriptions saved: %d of %d\n", plan.getSaved(), plan.getRequested());
+
+			cons.stop();
+			for (String s : broker) {
+				session.removeSubscription(JCSMPFactory.onlyInstance().createTopic(s), false);
+			}
+			finish(0);
+		} catch (JCSMPTransportException ex) {
+			System.err.println("Encountered a JCSMPTransportException, closing session... " + ex.getMessage());
+			if (cons != null) {
+				cons.close();
+				// At this point the consumer handle is unusable, a new one may be
+				// created by the application.
+			}
+			if (prod != null) {
+				prod.close();
+				// At this point the producer handle is unusable, a new one may be
+				// created by the application.
+			}
+			finish(1);
+		} catch (JCSMPException ex) {
+			System.err.println("Encountered a JCSMPException, closing session... " + ex.getMessage());
+			// Possible causes:
+			// - Authentication error: invalid username/password
+			// - Subscription error: the client's subscription limit was reached
+			if (cons != null) {
+				cons.close();
+			}
+			if (prod != null) {
+				prod.close();
+			}
+			finish(1);
+		} catch (Exception ex) {
+			System.err.println("Encountered an Exception... " + ex.getMessage());
+			finish(1);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * SubscriptionReconcile.java
+ *
+ * This sample reconciles topic-to-queue subscriptions against a declared
+ * set instead of re-adding all of them on every start, as
+ * TopicToQueueMapping does. It reads the desired "queue topic" pairs from
+ * a file, reads the current subscriptions of each queue over SEMP (or from
+ * the state file it saved last time), and applies only the additions and
+ * removals that differ, through the pipelined BulkSubscriptionManager.
+ * The time taken scales with the size of the change, not the size of the
+ * set.
+ *
+ * With -gen the desired file is generated first; -shift changes part of
+ * it, so that repeated runs show small diffs.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.solacesystems.jcsmp.CapabilityType;
+import com.solacesystems.jcsmp.EndpointProperties;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.BulkSubscriptionManager;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+import com.solacesystems.jcsmp.samples.introsamples.common.SubscriptionReconciler;
+
+public class SubscriptionReconcile extends SampleApp {
+	SessionConfiguration conf = null;
+	BulkSubscriptionManager manager = null;
+
+	void createSession(String[] args) {
+		ArgParser parser = new ArgParser();
+
+		// Parse command-line arguments
+		if (parser.parse(args) == 0)
+			conf = parser.getConfig();
+		else
+			printUsage(parser.isSecure());
+
+		Map<String, String> map = conf.getArgBag();
+		int window = map.containsKey("-w") ? Integer.parseInt(map.get("-w")) : 256;
+		// The manager must see the session events to learn about failed
+		// subscriptions; it passes the other events on.
+		manager = new BulkSubscriptionManager(new PrintingSessionEventHandler(), window);
+		session = SampleUtils.newSession(conf, manager, null);
+		manager.setSession(session);
+	}
+
+	void printUsage(boolean secure) {
+		String strusage = ArgParser.getCommonUsage(secure);
+		strusage += "This sample:\n";
+		strusage += "\t[-f FILE]\t Desired subscriptions, one 'queue topic' per line (default: subscriptions.txt)\n";
+		strusage += "\t[-src SOURCE]\t Current subscriptions from 'semp' or the 'tracked' state file (default: semp)\n";
+		strusage += "\t[-state FILE]\t State file written after each run (default: subscriptions.state)\n";
+		strusage += "\t[-sv VERSION]\t SEMP version (default: " + SEMP_VERSION_TR + ")\n";
+		strusage += "\t[-w WINDOW]\t Requests per confirmed round trip (default: 256)\n";
+		strusage += "\t[-dry]\t\t Print the diff without applying it\n";
+		strusage += "\t[-v]\t\t Print every change\n";
+		strusage += "\t[-gen COUNT]\t First write a desired file with COUNT subscriptions over 4 queues\n";
+		strusage += "\t[-shift N]\t With -gen, replace the first N topics with N new ones\n";
+		System.out.println(strusage);
+		finish(1);
+	}
+
+	public static void main(String[] args) {
+		SubscriptionReconcile sample = new SubscriptionReconcile();
+		sample.run(args);
+	}
+
+	void checkCapability(final CapabilityType cap) {
+		System.out.printf("Checking for capability %s...", cap);
+		if (session.isCapable(cap)) {
+			System.out.println("OK");
+		} else {
+			System.out.println("FAILED");
+			finish(1);
+		}
+	}
+
+	static Map<String, Set<String>> generate(int count, int shift) {
+		Map<String, Set<String>> set = new TreeMap<String, Set<String>>();
+		for (int i = shift; i < count + shift; i++) {
+			String queue = "bar1-reconcile-" + (i % 4);
+			Set<String> topics = set.get(queue);
+			if (topics == null) set.put(queue, topics = new TreeSet<String>());
+			topics.add(String.format("bar1/reconcile/region%d/symbol%06d", i % 8, i));
+		}
+		return set;
+	}
+
+	void run(String[] args) {
+		createSession(args);
+		try {
+			Map<String, String> map = conf.getArgBag();
+			File desiredFile = new File(map.containsKey("-f") ? map.get("-f") : "subscriptions.txt");
+			File stateFile = new File(map.containsKey("-state") ? map.get("-state") : "subscriptions.state");
+			String source = map.containsKey("-src") ? map.get("-src") : "semp";
+			String sempVersion = map.containsKey("-sv") ? map.get("-sv") : SEMP_VERSION_TR;
+
+			if (map.containsKey("-gen")) {
+				int shift = map.containsKey("-shift") ? Integer.parseInt(map.get("-shift")) : 0;
+				SubscriptionReconciler.write(desiredFile, generate(Integer.parseInt(map.get("-gen")), shift));
+				System.out.printf("Wrote desired subscriptions to %s\n", desiredFile);
+			}
+			Map<String, Set<String>> desired = SubscriptionReconciler.read(desiredFile);
+
+			session.connect();
+			checkCapability(CapabilityType.ENDPOINT_MANAGEMENT);
+			checkCapability(CapabilityType.QUEUE_SUBSCRIPTIONS);
+
+			EndpointProperties props = new EndpointProperties();
+			props.setPermission(EndpointProperties.PERMISSION_DELETE);
+			props.setAccessType(EndpointProperties.ACCESSTYPE_EXCLUSIVE);
+			for (String q : desired.keySet()) {
+				session.provision(JCSMPFactory.onlyInstance().createQueue(q), props,
+					JCSMPSession.FLAG_IGNORE_ALREADY_EXISTS);
+			}
+
+			SubscriptionReconciler.CurrentState current;
+			if (source.equals("tracked")) {
+				current = new SubscriptionReconciler.TrackedState(stateFile);
+			} else {
+				String routerName = (String) session.getCapability(CapabilityType.PEER_ROUTER_NAME);
+				Topic sempTopic = JCSMPFactory.onlyInstance().createTopic(String.format("#SEMP/%s/SHOW", routerName));
+				current = new SubscriptionReconciler.SempState(session.createRequestor(), sempTopic, sempVersion, 1000);
+			}
+
+			SubscriptionReconciler reconciler = new SubscriptionReconciler(manager, current, stateFile);
+			List<BulkSubscriptionManager.Entry> changes = new ArrayList<BulkSubscriptionManager.Entry>();
+			SubscriptionReconciler.Report report = reconciler.reconcile(desired, map.containsKey("-dry"), changes);
+			if (map.containsKey("-v")) {
+				for (BulkSubscriptionManager.Entry e : changes) {
+					System.out.println("  " + e);
+				}
+			}
+			System.out.println(report);
+			if (report.getResult() != null) {
+				for (BulkSubscriptionManager.Entry e : report.getResult().getFailed()) {
+					System.out.println("  Failed: " + e);
+				}
+			}
+
+			finish(0);
+		} catch (JCSMPTransportException ex) {
+			System.err.println("Encountered a JCSMPTransportException, closing session... " + ex.getMessage());
+			finish(1);
+		} catch (JCSMPException ex) {
+			System.err.println("Encountered a JCSMPException, closing session... " + ex.getMessage());
+			// Possible causes:
+			// - Authentication error: invalid username/password
+			// - Provisioning error: unable to provision a queue
+			// - SEMP over the message bus not enabled for show commands
+			finish(1);
+		} catch (Exception ex) {
+			System.err.println("Encountered an Exception... " + ex.getMessage());
+			finish(1);
+		}
+	}
+}
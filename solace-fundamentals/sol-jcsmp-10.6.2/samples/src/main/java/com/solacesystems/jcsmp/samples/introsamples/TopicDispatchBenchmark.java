@@ -0,0 +1,241 @@
+/**
+ * TopicDispatchBenchmark.java
+ *
+ * Measures the TopicDispatcher, which routes each received message to the
+ * handlers of the subscriptions its topic matches, against re-matching the
+ * topic with TopicMatcher.matches against every subscription, as an
+ * application with a single XMLMessageListener has to.
+ *
+ * The subscription set is generated: mostly exact topics, with a share of
+ * "*", prefix "sym12*" and trailing "&gt;" wildcards. The routed topics hit
+ * exact subscriptions, wildcards only, or nothing. The trie is checked
+ * against the linear scan on a sample of the topics before timing, so no
+ * appliance is needed to run this sample.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.TopicDispatcher;
+import com.solacesystems.jcsmp.samples.introsamples.common.TopicMatcher;
+
+public class TopicDispatchBenchmark extends SampleApp {
+
+	public TopicDispatchBenchmark() {
+		super();
+	}
+
+	public void printSyntax() {
+		System.out.println("Parameters:");
+		System.out.println("\t[-n NUM_SUBSCRIPTIONS]\tSubscriptions to register. Default: 100000");
+		System.out.println("\t[-w PERCENT]\tShare of wildcard subscriptions. Default: 10");
+		System.out.println("\t[-m NUM_TOPICS]\tTopics routed per iteration. Default: 1000000");
+		System.out.println("\t[-i ITERATIONS]\tMeasured iterations. Default: 5");
+		System.out.println("\t[-l NUM_TOPICS]\tTopics timed with the linear scan. Default: 200");
+		System.out.println();
+	}
+
+	/** Counts deliveries; the benchmark routes without a message. */
+	static final class CountingHandler implements XMLMessageListener {
+		long received;
+
+		public void onReceive(BytesXMLMessage msg) {
+			received++;
+		}
+
+		public void onException(JCSMPException e) {
+		}
+	}
+
+	static final int REGIONS = 8;
+	static final int DESKS = 16;
+
+	static String exact(int region, int desk, int sym) {
+		return String.format("bar1/dispatch/region%d/desk%02d/sym%06d", region, desk, sym);
+	}
+
+	static List<String> generateSubscriptions(int count, int wildcardPercent, Random rnd) {
+		List<String> subs = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			int region = i % REGIONS, desk = (i / REGIONS) % DESKS;
+			if (rnd.nextInt(100) >= wildcardPercent) {
+				subs.add(exact(region, desk, i));
+				continue;
+			}
+			switch (rnd.nextInt(3)) {
+			case 0:
+				subs.add(String.format("bar1/dispatch/region%d/*/sym%06d", region, i));
+				break;
+			case 1:
+				subs.add(String.format("bar1/dispatch/region%d/desk%02d/sym%04d*", region, desk, i / 100));
+				break;
+			default:
+				subs.add(String.format("bar1/dispatch/region%d/desk%02d/%d/>", region, desk, i));
+				break;
+			}
+		}
+		return subs;
+	}
+
+	/** Two thirds of the topics hit a generated symbol, the rest nothing. */
+	static String[] generateTopics(int count, int numSubscriptions, Random rnd) {
+		String[] topics = new String[count];
+		for (int i = 0; i < count; i++) {
+			int sym = rnd.nextInt(numSubscriptions);
+			int region = sym % REGIONS, desk = (sym / REGIONS) % DESKS;
+			switch (i % 3) {
+			case 0:
+				topics[i] = exact(region, desk, sym);
+				break;
+			case 1:
+				topics[i] = String.format("bar1/dispatch/region%d/desk%02d/%d/trade", region, desk, sym);
+				break;
+			default:
+				topics[i] = String.format("bar1/unrouted/region%d/desk%02d/sym%06d", region, desk, sym);
+				break;
+			}
+		}
+		return topics;
+	}
+
+	static int linearScan(List<String> subs, String topic) {
+		int hits = 0;
+		for (int i = 0; i < subs.size(); i++) {
+			if (TopicMatcher.matches(subs.get(i), topic)) hits++;
+		}
+		return hits;
+	}
+
+	/** Bytes allocated by this thread so far, or -1 if the JVM cannot tell. */
+	static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hs = (com.sun.management.ThreadMXBean) bean;
+			if (hs.isThreadAllocatedMemorySupported() && hs.isThreadAllocatedMemoryEnabled()) {
+				return hs.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public void run(String[] args) {
+		try {
+			int numSubscriptions = 100000;
+			int wildcardPercent = 10;
+			int numTopics = 1000000;
+			int iterations = 5;
+			int linearTopics = 200;
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-n")) {
+					i++;
+					numSubscriptions = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-w")) {
+					i++;
+					wildcardPercent = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-m")) {
+					i++;
+					numTopics = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-i")) {
+					i++;
+					iterations = Integer.parseInt(args[i]);
+				} else if (args[i].equals("-l")) {
+					i++;
+					linearTopics = Integer.parseInt(args[i]);
+				} else if (args[i].equals("--help")) {
+					printSyntax();
+					return;
+				}
+			}
+
+			Random rnd = new Random(47);
+			List<String> subs = generateSubscriptions(numSubscriptions, wildcardPercent, rnd);
+			String[] topics = generateTopics(numTopics, numSubscriptions, rnd);
+			CountingHandler handler = new CountingHandler();
+
+			long heapBefore = usedHeap();
+			long start = System.nanoTime();
+			TopicDispatcher dispatcher = new TopicDispatcher(null);
+			for (String s : subs) {
+				dispatcher.subscribe(s, handler);
+			}
+			long buildNanos = System.nanoTime() - start;
+			long trieBytes = usedHeap() - heapBefore;
+			System.out.printf("%d subscriptions (%d distinct), %d trie nodes, built in %.0f ms, ~%.1f MB\n",
+				subs.size(), dispatcher.getSubscriptionCount(), dispatcher.getNodeCount(), buildNanos / 1e6,
+				trieBytes / 1048576.0);
+
+			// The trie must agree with the linear scan before it is worth timing.
+			int checked = Math.min(numTopics, Math.max(linearTopics, 1000));
+			for (int i = 0; i < checked; i++) {
+				int expected = linearScan(subs, topics[i]);
+				int actual = dispatcher.dispatch(topics[i], null);
+				if (actual != expected) {
+					System.out.printf("MISMATCH for %s: trie %d, linear %d\n", topics[i], actual, expected);
+					return;
+				}
+			}
+			System.out.printf("Trie and linear scan agree on %d topics\n", checked);
+
+			// Warm up so the JIT has compiled the walk.
+			for (int w = 0; w < 2; w++) {
+				for (int i = 0; i < numTopics; i++) dispatcher.dispatch(topics[i], null);
+			}
+
+			long trieNanos = 0, matched = 0;
+			long allocBefore = allocatedBytes();
+			for (int it = 0; it < iterations; it++) {
+				start = System.nanoTime();
+				for (int i = 0; i < numTopics; i++) {
+					matched += dispatcher.dispatch(topics[i], null);
+				}
+				trieNanos += System.nanoTime() - start;
+			}
+			long allocAfter = allocatedBytes();
+
+			int n = Math.min(linearTopics, numTopics);
+			for (int i = 0; i < n; i++) linearScan(subs, topics[i]);
+			start = System.nanoTime();
+			for (int i = 0; i < n; i++) linearScan(subs, topics[i]);
+			long linearNanos = System.nanoTime() - start;
+
+			long routed = (long) numTopics * iterations;
+			double trieNs = trieNanos / (double) routed;
+			double linearNs = linearNanos / (double) Math.max(n, 1);
+			System.out.printf("%-14s %14s %16s\n", "dispatch", "ns/message", "messages/sec");
+			System.out.printf("%-14s %14.0f %16.0f\n", "trie", trieNs, 1e9 / trieNs);
+			System.out.printf("%-14s %14.0f %16.0f\n", "linear scan", linearNs, 1e9 / linearNs);
+			System.out.printf("Speedup: %.0fx; %.2f subscriptions matched per message\n", linearNs / trieNs,
+				matched / (double) routed);
+			if (allocBefore >= 0) {
+				System.out.printf("Allocated while routing: %.3f bytes/message\n", (allocAfter - allocBefore)
+					/ (double) routed);
+			}
+			if (handler.received == 0) System.out.println("WARNING: nothing was delivered");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static void main(String[] args) {
+		TopicDispatchBenchmark benchmark = new TopicDispatchBenchmark();
+		benchmark.run(args);
+		System.exit(0);
+	}
+}
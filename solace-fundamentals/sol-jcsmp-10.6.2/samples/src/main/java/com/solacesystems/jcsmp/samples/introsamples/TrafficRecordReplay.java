@@ -0,0 +1,234 @@
+/**
+ * TrafficRecordReplay.java
+ *
+ * This sample records live traffic to disk and plays it back, for load
+ * testing against a test broker with production-like traffic shapes.
+ *
+ * In record mode it subscribes to topics with direct messages, or binds a
+ * flow to a queue, and appends every message with its destination, headers,
+ * attachment and arrival time to memory-mapped segment files.
+ *
+ * In replay mode it republishes the recording with the recorded gaps
+ * between messages, at a scaled rate, or as fast as possible, using
+ * batched sends and nanosecond pacing.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.ConsumerFlowProperties;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.EndpointProperties;
+import com.solacesystems.jcsmp.FlowReceiver;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.samples.introsamples.common.ArgParser;
+import com.solacesystems.jcsmp.samples.introsamples.common.MessageRecorder;
+import com.solacesystems.jcsmp.samples.introsamples.common.MessageReplayer;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleApp;
+import com.solacesystems.jcsmp.samples.introsamples.common.SampleUtils;
+import com.solacesystems.jcsmp.samples.introsamples.common.SegmentedLogWriter;
+import com.solacesystems.jcsmp.samples.introsamples.common.SessionConfiguration;
+
+public class TrafficRecordReplay extends SampleApp {
+	SessionConfiguration conf = null;
+	XMLMessageConsumer cons = null;
+	FlowReceiver flow = null;
+	XMLMessageProducer prod = null;
+
+	void createSession(String[] args) {
+		ArgParser parser = new ArgParser();
+
+		// Parse command-line arguments
+		if (parser.parse(args) == 0)
+			conf = parser.getConfig();
+		else
+			printUsage(parser.isSecure());
+
+		session = SampleUtils.newSession(conf, new PrintingSessionEventHandler(), null);
+	}
+
+	void printUsage(boolean secure) {
+		String strusage = ArgParser.getCommonUsage(secure);
+		strusage += "This sample:\n";
+		strusage += "\t[-mode MODE]\t record or replay (default: record)\n";
+		strusage += "\t[-dir DIR]\t Directory of the recording (default: recording)\n";
+		strusage += "\t[-name NAME]\t Name of the recording's segment files (default: traffic)\n";
+		strusage += "Record mode:\n";
+		strusage += "\t[-t TOPICS]\t Comma-separated topic subscriptions to record (default: bar1/traffic/>)\n";
+		strusage += "\t[-q QUEUE]\t Record from a flow bound to QUEUE instead of topics\n";
+		strusage += "\t[-dur SECS]\t Recording time (default: 10)\n";
+		strusage += "\t[-seg MB]\t Segment file size (default: 64)\n";
+		strusage += "\t[-pub COUNT]\t Publish COUNT bursty test messages while recording\n";
+		strusage += "Replay mode:\n";
+		strusage += "\t[-speed X]\t 1 for the recorded pacing, 2 for twice as fast, 0 for as fast as possible (default: 1)\n";
+		strusage += "\t[-bs SIZE]\t Maximum messages per batched send, 1-50 (default: 50)\n";
+		strusage += "\t[-bw MICROS]\t Messages due within this window are sent in one batch (default: 1000)\n";
+		strusage += "\t[-dest TOPIC]\t Publish everything to TOPIC instead of the recorded destinations\n";
+		System.out.println(strusage);
+		finish(1);
+	}
+
+	public static void main(String[] args) {
+		TrafficRecordReplay sample = new TrafficRecordReplay();
+		sample.run(args);
+	}
+
+	void run(String[] args) {
+		createSession(args);
+		try {
+			Map<String, String> map = conf.getArgBag();
+			String mode = map.containsKey("-mode") ? map.get("-mode") : "record";
+			File dir = new File(map.containsKey("-dir") ? map.get("-dir") : "recording");
+			String name = map.containsKey("-name") ? map.get("-name") : "traffic";
+
+			// Connects the Session and acquires a streaming message producer,
+			// which batched sends require.
+			session.connect();
+			printRouterInfo();
+			prod = session.getMessageProducer(new PrintingPubCallback());
+
+			if (mode.equals("record")) {
+				record(map, dir, name);
+			} else if (mode.equals("replay")) {
+				replay(map, dir, name);
+			} else {
+				System.err.println("Unknown mode '" + mode + "', expected record or replay");
+				finish(1);
+			}
+			finish(0);
+		} catch (JCSMPTransportException ex) {
+			System.err.println("Encountered a JCSMPTransportException, closing session... " + ex.getMessage());
+			close();
+			finish(1);
+		} catch (JCSMPException ex) {
+			System.err.println("Encountered a JCSMPException, closing session... " + ex.getMessage());
+			// Possible causes:
+			// - Authentication error: invalid username/password
+			// - Provisioning error: unable to bind to the queue
+			// - Invalid or unsupported properties specified
+			close();
+			finish(1);
+		} catch (Exception ex) {
+			System.err.println("Encountered an Exception... " + ex.getMessage());
+			close();
+			finish(1);
+		}
+	}
+
+	void record(Map<String, String> map, File dir, String name) throws Exception {
+		int segmentBytes = (map.containsKey("-seg") ? Integer.parseInt(map.get("-seg")) : 64) * 1048576;
+		int seconds = map.containsKey("-dur") ? Integer.parseInt(map.get("-dur")) : 10;
+		MessageRecorder recorder = new MessageRecorder(new SegmentedLogWriter(dir, name, segmentBytes), 10000);
+
+		Destination target;
+		if (map.containsKey("-q")) {
+			Queue queue = JCSMPFactory.onlyInstance().createQueue(map.get("-q"));
+			EndpointProperties props = new EndpointProperties();
+			props.setPermission(EndpointProperties.PERMISSION_CONSUME);
+			session.provision(queue, props, JCSMPSession.FLAG_IGNORE_ALREADY_EXISTS);
+			ConsumerFlowProperties flowProps = new ConsumerFlowProperties();
+			flowProps.setEndpoint(queue);
+			flow = session.createFlow(recorder, flowProps, null);
+			flow.start();
+			target = queue;
+			System.out.printf("Recording from queue '%s' for %d s...\n", queue.getName(), seconds);
+		} else {
+			String[] topics = (map.containsKey("-t") ? map.get("-t") : "bar1/traffic/>").split(",");
+			cons = session.getMessageConsumer(recorder);
+			for (String t : topics) {
+				session.addSubscription(JCSMPFactory.onlyInstance().createTopic(t.trim()));
+			}
+			cons.start();
+			String first = topics[0].trim();
+			target = JCSMPFactory.onlyInstance().createTopic(
+				first.endsWith(">") || first.endsWith("*") ? first.substring(0, first.length() - 1) + "test" : first);
+			System.out.printf("Recording %d topic subscription(s) for %d s...\n", topics.length, seconds);
+		}
+
+		long end = System.currentTimeMillis() + seconds * 1000L;
+		if (map.containsKey("-pub")) {
+			publishBursts(target, Integer.parseInt(map.get("-pub")), target instanceof Queue, end);
+		}
+		long now;
+		while ((now = System.currentTimeMillis()) < end) {
+			Thread.sleep(Math.min(1000, end - now));
+			System.out.printf("   ... %d messages, %.1f MB\n", recorder.getMessages(), recorder.getBytes() / 1048576.0);
+		}
+		if (flow != null) flow.close();
+		if (cons != null) cons.close();
+		recorder.close();
+		System.out.println(recorder.getReport());
+	}
+
+	/** Publishes bursts of 1-50 messages separated by gaps of up to 20 ms. */
+	void publishBursts(Destination target, int count, boolean persistent, long end) throws Exception {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+		msg.setDeliveryMode(persistent ? DeliveryMode.PERSISTENT : DeliveryMode.DIRECT);
+		int sent = 0;
+		while (sent < count && System.currentTimeMillis() < end) {
+			int burst = Math.min(count - sent, 1 + rnd.nextInt(50));
+			for (int i = 0; i < burst; i++) {
+				msg.reset();
+				msg.setDeliveryMode(persistent ? DeliveryMode.PERSISTENT : DeliveryMode.DIRECT);
+				msg.setApplicationMessageId("burst-" + sent);
+				msg.writeAttachment(new byte[64 + rnd.nextInt(960)]);
+				prod.send(msg, target);
+				sent++;
+			}
+			Thread.sleep(rnd.nextInt(21));
+		}
+		System.out.printf("Published %d test messages to '%s'.\n", sent, target.getName());
+	}
+
+	void replay(Map<String, String> map, File dir, String name) throws Exception {
+		final MessageReplayer replayer = new MessageReplayer(prod, dir, name);
+		if (map.containsKey("-speed")) replayer.setSpeed(Double.parseDouble(map.get("-speed")));
+		if (map.containsKey("-bs")) replayer.setBatchSize(Integer.parseInt(map.get("-bs")));
+		if (map.containsKey("-bw")) replayer.setBatchWindowMicros(Long.parseLong(map.get("-bw")));
+		if (map.containsKey("-dest")) {
+			Topic dest = JCSMPFactory.onlyInstance().createTopic(map.get("-dest"));
+			replayer.setDestination(dest);
+		}
+
+		// Replays on its own thread so that progress can be printed here.
+		final Exception[] error = new Exception[1];
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				try {
+					replayer.replay();
+				} catch (Exception e) {
+					error[0] = e;
+				}
+			}
+		}, "Replayer");
+		System.out.printf("Replaying '%s' from %s...\n", name, dir);
+		t.start();
+		while (t.isAlive()) {
+			t.join(1000);
+			System.out.printf("   ... %d messages, %.1f MB\n", replayer.getMessages(), replayer.getBytes() / 1048576.0);
+		}
+		if (error[0] != null) throw error[0];
+		System.out.println(replayer.getReport());
+	}
+
+	void close() {
+		if (flow != null) flow.close();
+		if (cons != null) cons.close();
+		if (prod != null) prod.close();
+	}
+}
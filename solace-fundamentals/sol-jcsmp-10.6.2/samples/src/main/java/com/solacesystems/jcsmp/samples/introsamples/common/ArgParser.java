@@ -152,6 +152,20 @@ public class ArgParser {
                 i++;
                 if (i >= args.length) return 1;
                 cf.setAction(CacheLiveDataAction.valueOf(args[i]));
+            } else if (args[i].equals("-wt")) {
+                i++;
+                if (i >= args.length) return 1;
+                for (String topic : args[i].split(",")) {
+                    if (topic.trim().length() > 0) cf.getWarmupTopics().add(topic.trim());
+                }
+            } else if (args[i].equals("-wn")) {
+                i++;
+                if (i >= args.length) return 1;
+                cf.setWarmupSessions(Integer.valueOf(args[i]));
+            } else if (args[i].equals("-wc")) {
+                i++;
+                if (i >= args.length) return 1;
+                cf.setWarmupConcurrency(Integer.valueOf(args[i]));
             }
         }
 
@@ -290,6 +304,15 @@ public class ArgParser {
         return buf.toString();
      }
 
+    public static String getCacheWarmupUsage() {
+        StringBuffer buf = new StringBuffer();
+        buf.append("Cache warm-up parameters:\n");
+        buf.append("\t[-wt TOPICS]    Comma-separated topics to request at startup, wildcards allowed\n");
+        buf.append("\t[-wn SESSIONS]  Cache sessions to spread the requests over (default: 1)\n");
+        buf.append("\t[-wc COUNT]     Maximum outstanding requests over all sessions (default: 16)\n");
+        return buf.toString();
+    }
+
     public static String getSecureArgUsage() {
         StringBuffer buf = new StringBuffer();
         buf.append("Secure request parameters:\n");
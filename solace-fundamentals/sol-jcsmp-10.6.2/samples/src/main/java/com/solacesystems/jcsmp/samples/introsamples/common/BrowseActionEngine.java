@@ -0,0 +1,322 @@
+/**
+ * BrowseActionEngine.java
+ *
+ * Browses a queue and removes the messages that match a MessageFilter,
+ * optionally republishing them to another queue first. The messages that
+ * do not match stay on the queue untouched.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.solacesystems.jcsmp.Browser;
+import com.solacesystems.jcsmp.BrowserProperties;
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSendMultipleEntry;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishCorrelatingEventHandler;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+
+/**
+ * Matches are collected into batches. In move mode, a batch is copied
+ * (through MessageRecord, so headers and properties are kept), published
+ * to the target with one sendMultiple() call, and only the messages whose
+ * copies the broker acknowledged are then removed from the source, so a
+ * failure never loses a message. A message whose copy would lose user
+ * properties MessageRecord cannot carry, such as nested maps, streams or
+ * destinations, is not republished or removed; it stays on the source,
+ * with a warning, and is counted. In purge mode the batch is removed
+ * directly.
+ *
+ * The Browser uses the largest transport window, and an optional selector
+ * so the broker only sends candidates. A rate limit, in messages removed
+ * per second, is applied per batch. Counters may be read from another
+ * thread while run() is in progress.
+ *
+ * In move mode the engine acquires the session's message producer, which
+ * closes any producer acquired before.
+ */
+public class BrowseActionEngine implements JCSMPStreamingPublishCorrelatingEventHandler {
+
+	public static final int MAX_BATCH = 50;
+
+	private static final long ACK_TIMEOUT_MS = 30000;
+
+	private final JCSMPSession session;
+	private final Queue source;
+	private final MessageFilter filter;
+	private final MessageRecord.Encoder encoder = new MessageRecord.Encoder();
+
+	private Queue moveTo;
+	private String selector;
+	private int batchSize = MAX_BATCH;
+	private double rateLimit;
+	private long maxActions;
+	private boolean dryRun;
+	private int waitMs = 2000;
+
+	private volatile long browsed;
+	private volatile long matched;
+	private volatile long removed;
+	private volatile long moved;
+	private volatile long failed;
+	private volatile long incomplete;
+	private long elapsedMillis;
+
+	/** Correlation key of a republished copy. */
+	private static final class Pending {
+		final BytesXMLMessage original;
+		final ConcurrentLinkedQueue<BytesXMLMessage> acked;
+		final CountDownLatch latch;
+
+		Pending(BytesXMLMessage original, ConcurrentLinkedQueue<BytesXMLMessage> acked, CountDownLatch latch) {
+			this.original = original;
+			this.acked = acked;
+			this.latch = latch;
+		}
+	}
+
+	public BrowseActionEngine(JCSMPSession session, Queue source, MessageFilter filter) {
+		this.session = session;
+		this.source = source;
+		this.filter = filter;
+	}
+
+	/** Republishes matches to <code>queue</code> before removing them; null to purge. */
+	public BrowseActionEngine setMoveTo(Queue queue) {
+		this.moveTo = queue;
+		return this;
+	}
+
+	/** Selector for the Browser, so that the broker filters as well. */
+	public BrowseActionEngine setSelector(String selector) {
+		this.selector = selector;
+		return this;
+	}
+
+	public BrowseActionEngine setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH));
+		return this;
+	}
+
+	/** Maximum messages removed per second; 0 for no limit. */
+	public BrowseActionEngine setRateLimit(double perSecond) {
+		this.rateLimit = perSecond;
+		return this;
+	}
+
+	/** Stops after acting on this many messages; 0 for no limit. */
+	public BrowseActionEngine setMaxActions(long maxActions) {
+		this.maxActions = maxActions;
+		return this;
+	}
+
+	/** Only counts the matches, without removing or moving anything. */
+	public BrowseActionEngine setDryRun(boolean dryRun) {
+		this.dryRun = dryRun;
+		return this;
+	}
+
+	/** The browse ends after this long without a message. */
+	public BrowseActionEngine setWaitMillis(int waitMs) {
+		this.waitMs = waitMs;
+		return this;
+	}
+
+	/**
+	 * Browses the queue to the end, acting on every match. Returns when
+	 * the queue has been browsed, or when the maximum actions were taken.
+	 */
+	public void run() throws JCSMPException, InterruptedException {
+		BrowserProperties props = new BrowserProperties();
+		props.setEndpoint(source);
+		props.setTransportWindowSize(QueueExporter.MAX_WINDOW);
+		props.setWaitTimeout(waitMs);
+		if (selector != null) props.setSelector(selector);
+		XMLMessageProducer producer = moveTo != null && !dryRun ? session.getMessageProducer(this) : null;
+		Browser browser = session.createBrowser(props);
+		List<BytesXMLMessage> batch = new ArrayList<BytesXMLMessage>(batchSize);
+		long start = System.nanoTime();
+		long nextBatchAt = start;
+		try {
+			while (maxActions == 0 || matched < maxActions) {
+				BytesXMLMessage msg = browser.getNext(waitMs);
+				if (msg == null) break;
+				browsed++;
+				if (!filter.accept(msg, System.currentTimeMillis())) continue;
+				matched++;
+				if (dryRun) continue;
+				batch.add(msg);
+				if (batch.size() == batchSize) {
+					nextBatchAt = pace(nextBatchAt, batch.size());
+					act(browser, producer, batch);
+				}
+			}
+			if (!batch.isEmpty()) {
+				pace(nextBatchAt, batch.size());
+				act(browser, producer, batch);
+			}
+		} finally {
+			browser.close();
+			if (producer != null) producer.close();
+			elapsedMillis = (System.nanoTime() - start) / 1000000;
+		}
+	}
+
+	/**
+	 * Waits until the batch may go out under the rate limit, and returns
+	 * when the next batch may.
+	 */
+	private long pace(long at, int n) {
+		if (rateLimit <= 0) return at;
+		long wait;
+		while ((wait = at - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(wait);
+		}
+		return Math.max(at, System.nanoTime() - 1000000000L) + (long) (n * 1e9 / rateLimit);
+	}
+
+	private void act(Browser browser, XMLMessageProducer producer, List<BytesXMLMessage> batch)
+		throws JCSMPException, InterruptedException {
+		List<BytesXMLMessage> toRemove = batch;
+		if (producer != null) {
+			toRemove = republish(producer, batch);
+		}
+		for (BytesXMLMessage msg : toRemove) {
+			browser.remove(msg);
+			removed++;
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Publishes copies of the batch to the target and returns the
+	 * originals whose copies were acknowledged.
+	 */
+	private List<BytesXMLMessage> republish(XMLMessageProducer producer, List<BytesXMLMessage> batch)
+		throws JCSMPException, InterruptedException {
+		List<BytesXMLMessage> copies = new ArrayList<BytesXMLMessage>(batch.size());
+		List<BytesXMLMessage> originals = new ArrayList<BytesXMLMessage>(batch.size());
+		for (BytesXMLMessage original : batch) {
+			long skipped = encoder.getSkippedProperties();
+			BytesXMLMessage copy;
+			try {
+				copy = MessageRecord.decode(encoder.encode(original, 0)).toMessage();
+			} catch (Exception e) {
+				throw new JCSMPException("Unable to copy message " + original.getMessageId(), e);
+			}
+			if (encoder.getSkippedProperties() != skipped) {
+				// The copy would lose properties; leave the original in place.
+				System.err.printf("Message %s has properties that cannot be copied; left on %s\n",
+					original.getMessageId(), source.getName());
+				incomplete++;
+				continue;
+			}
+			copies.add(copy);
+			originals.add(original);
+		}
+		JCSMPSendMultipleEntry[] entries = new JCSMPSendMultipleEntry[copies.size()];
+		ConcurrentLinkedQueue<BytesXMLMessage> acked = new ConcurrentLinkedQueue<BytesXMLMessage>();
+		CountDownLatch latch = new CountDownLatch(entries.length);
+		for (int i = 0; i < entries.length; i++) {
+			BytesXMLMessage copy = copies.get(i);
+			// All messages of one sendMultiple() need the same delivery mode;
+			// queued messages are guaranteed, so republish them as persistent.
+			copy.setDeliveryMode(DeliveryMode.PERSISTENT);
+			copy.setCorrelationKey(new Pending(originals.get(i), acked, latch));
+			entries[i] = JCSMPFactory.onlyInstance().createSendMultipleEntry(copy, moveTo);
+		}
+		int sent = 0;
+		while (sent < entries.length) {
+			sent += producer.sendMultiple(entries, sent, entries.length - sent, 0);
+		}
+		if (!latch.await(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+			System.err.println("Timed out waiting for acknowledgements from " + moveTo.getName());
+		}
+		List<BytesXMLMessage> confirmed = new ArrayList<BytesXMLMessage>(acked);
+		moved += confirmed.size();
+		failed += entries.length - confirmed.size();
+		return confirmed;
+	}
+
+	public void responseReceivedEx(Object key) {
+		if (key instanceof Pending) {
+			Pending p = (Pending) key;
+			p.acked.add(p.original);
+			p.latch.countDown();
+		}
+	}
+
+	public void handleErrorEx(Object key, JCSMPException cause, long timestamp) {
+		System.err.println("Republish failed: " + cause.getMessage());
+		if (key instanceof Pending) ((Pending) key).latch.countDown();
+	}
+
+	public void responseReceived(String messageID) {
+	}
+
+	public void handleError(String messageID, JCSMPException cause, long timestamp) {
+	}
+
+	public long getBrowsed() {
+		return browsed;
+	}
+
+	public long getMatched() {
+		return matched;
+	}
+
+	public long getRemoved() {
+		return removed;
+	}
+
+	public long getMoved() {
+		return moved;
+	}
+
+	/** Matches that could not be republished and were left on the queue. */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Matches left on the queue because their copy would have lost user
+	 * properties.
+	 */
+	public long getIncomplete() {
+		return incomplete;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public String getReport() {
+		double secs = Math.max(elapsedMillis, 1) / 1000.0;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s: browsed %d, matched %d (%s)", source.getName(), browsed, matched, filter));
+		if (dryRun) {
+			sb.append(", dry run");
+		} else if (moveTo != null) {
+			sb.append(String.format(", moved %d to %s, %d left on failure", moved, moveTo.getName(), failed));
+			if (incomplete > 0) sb.append(String.format(", %d left with properties that cannot be copied", incomplete));
+		} else {
+			sb.append(String.format(", removed %d", removed));
+		}
+		sb.append(String.format(" in %d ms: %.0f browsed/s, %.0f removed/s", elapsedMillis, browsed / secs,
+			removed / secs));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,328 @@
+/**
+ * BulkSubscriptionManager.java
+ *
+ * Adds and removes large numbers of endpoint topic subscriptions by
+ * pipelining the requests instead of waiting for a confirm on each one.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.solacesystems.jcsmp.Endpoint;
+import com.solacesystems.jcsmp.JCSMPErrorResponseException;
+import com.solacesystems.jcsmp.JCSMPErrorResponseSubcodeEx;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.SessionEvent;
+import com.solacesystems.jcsmp.SessionEventArgs;
+import com.solacesystems.jcsmp.SessionEventHandler;
+import com.solacesystems.jcsmp.Topic;
+
+/**
+ * Requests go out in windows. All but the last request of a window are
+ * sent without JCSMPSession.WAIT_FOR_CONFIRM; the last one waits. The
+ * broker answers in order, so when that fence returns, every request of
+ * the window has been processed: one round trip per window instead of one
+ * per subscription.
+ *
+ * Without WAIT_FOR_CONFIRM the broker only reports failures, as
+ * SUBSCRIPTION_ERROR session events. The manager must therefore be the
+ * session's event handler; other events are passed on to
+ * <code>next</code>. An error is attributed to the request whose topic its
+ * info names. If an error cannot be attributed, the rest of the window is
+ * verified one request at a time with WAIT_FOR_CONFIRM, which is safe
+ * because the requests are idempotent: adding a subscription that is
+ * already present, or removing one that is not, counts as success.
+ *
+ * Failed entries are kept with their error and can be retried.
+ */
+public class BulkSubscriptionManager implements SessionEventHandler {
+
+	public enum Op {
+		ADD, REMOVE
+	}
+
+	/** One subscription change and its outcome. */
+	public static final class Entry {
+		private final Endpoint endpoint;
+		private final Topic topic;
+		private final Op op;
+		private JCSMPException error;
+		private int attempts;
+
+		public Entry(Endpoint endpoint, Topic topic, Op op) {
+			this.endpoint = endpoint;
+			this.topic = topic;
+			this.op = op;
+		}
+
+		public Endpoint getEndpoint() {
+			return endpoint;
+		}
+
+		public Topic getTopic() {
+			return topic;
+		}
+
+		public Op getOp() {
+			return op;
+		}
+
+		/** The error of the last attempt, or null if it succeeded. */
+		public JCSMPException getError() {
+			return error;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+		public String toString() {
+			return op + " " + topic.getName() + " on " + endpoint.getName()
+				+ (error != null ? ": " + error.getMessage() : "");
+		}
+	}
+
+	/** Outcome of one apply(). */
+	public static final class Result {
+		private final int requested;
+		private final int succeeded;
+		private final List<Entry> failed;
+		private final int windows;
+		private final int verified;
+		private final long elapsedNanos;
+
+		Result(int requested, List<Entry> failed, int windows, int verified, long elapsedNanos) {
+			this.requested = requested;
+			this.succeeded = requested - failed.size();
+			this.failed = Collections.unmodifiableList(failed);
+			this.windows = windows;
+			this.verified = verified;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public int getRequested() {
+			return requested;
+		}
+
+		public int getSucceeded() {
+			return succeeded;
+		}
+
+		public List<Entry> getFailed() {
+			return failed;
+		}
+
+		/** Round trips waited for; one per window. */
+		public int getWindows() {
+			return windows;
+		}
+
+		/** Requests that were re-sent with a confirm to attribute an error. */
+		public int getVerified() {
+			return verified;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedNanos / 1000000;
+		}
+
+		public double getPerSecond() {
+			return requested * 1e9 / Math.max(elapsedNanos, 1);
+		}
+
+		public String toString() {
+			return String.format("%d requested, %d succeeded, %d failed in %d ms (%.0f subscriptions/s),"
+				+ " %d round trips, %d verified individually", requested, succeeded, failed.size(),
+				getElapsedMillis(), getPerSecond(), windows, verified);
+		}
+	}
+
+	private final SessionEventHandler next;
+	private final int window;
+	private final ConcurrentLinkedQueue<SessionEventArgs> errors = new ConcurrentLinkedQueue<SessionEventArgs>();
+	private JCSMPSession session;
+
+	/**
+	 * @param next receives the session events other than SUBSCRIPTION_ERROR;
+	 *        may be null
+	 * @param window requests per round trip
+	 */
+	public BulkSubscriptionManager(SessionEventHandler next, int window) {
+		this.next = next;
+		this.window = Math.max(1, window);
+	}
+
+	/** Sets the session to work on; it must use this manager as its event handler. */
+	public void setSession(JCSMPSession session) {
+		this.session = session;
+	}
+
+	public void handleEvent(SessionEventArgs event) {
+		if (event.getEvent() == SessionEvent.SUBSCRIPTION_ERROR) {
+			errors.add(event);
+		} else if (next != null) {
+			next.handleEvent(event);
+		}
+	}
+
+	public Result add(Endpoint endpoint, Collection<Topic> topics) {
+		return apply(entries(endpoint, topics, Op.ADD));
+	}
+
+	public Result remove(Endpoint endpoint, Collection<Topic> topics) {
+		return apply(entries(endpoint, topics, Op.REMOVE));
+	}
+
+	public static List<Entry> entries(Endpoint endpoint, Collection<Topic> topics, Op op) {
+		List<Entry> entries = new ArrayList<Entry>(topics.size());
+		for (Topic t : topics) {
+			entries.add(new Entry(endpoint, t, op));
+		}
+		return entries;
+	}
+
+	/**
+	 * Applies the entries, window by window, and returns when all of them
+	 * are confirmed or have failed.
+	 */
+	public Result apply(List<Entry> entries) {
+		long start = System.nanoTime();
+		List<Entry> failed = new ArrayList<Entry>();
+		int windows = 0;
+		int verified = 0;
+		errors.clear();
+		for (int from = 0; from < entries.size(); from += window) {
+			List<Entry> batch = entries.subList(from, Math.min(from + window, entries.size()));
+			for (int i = 0; i < batch.size(); i++) {
+				Entry e = batch.get(i);
+				e.error = null;
+				e.attempts++;
+				send(e, i == batch.size() - 1);
+			}
+			windows++;
+			if (!attribute(batch)) {
+				// Some error names no topic of the window; confirm the rest one by one.
+				for (int i = 0; i < batch.size() - 1; i++) {
+					Entry e = batch.get(i);
+					if (e.error == null) {
+						send(e, true);
+						verified++;
+					}
+				}
+			}
+			for (Entry e : batch) {
+				if (e.error != null) failed.add(e);
+			}
+		}
+		return new Result(entries.size(), failed, windows, verified, System.nanoTime() - start);
+	}
+
+	/**
+	 * Retries the failed entries of <code>result</code>, up to
+	 * <code>maxAttempts</code> attempts per entry, pausing
+	 * <code>backoffMs</code> (doubled each round) between rounds. The
+	 * returned result covers the entries that had failed.
+	 */
+	public Result retry(Result result, int maxAttempts, long backoffMs) throws InterruptedException {
+		List<Entry> pending = new ArrayList<Entry>(result.getFailed());
+		int windows = 0, verified = 0;
+		long start = System.nanoTime();
+		List<Entry> failed = new ArrayList<Entry>();
+		while (!pending.isEmpty()) {
+			List<Entry> round = new ArrayList<Entry>();
+			for (Entry e : pending) {
+				if (e.attempts < maxAttempts && isRetryable(e.error)) {
+					round.add(e);
+				} else {
+					failed.add(e);
+				}
+			}
+			if (round.isEmpty()) break;
+			Thread.sleep(backoffMs);
+			backoffMs *= 2;
+			Result r = apply(round);
+			windows += r.getWindows();
+			verified += r.getVerified();
+			pending = new ArrayList<Entry>(r.getFailed());
+		}
+		return new Result(result.getFailed().size(), failed, windows, verified, System.nanoTime() - start);
+	}
+
+	/** Errors a later attempt cannot fix are not retried. */
+	static boolean isRetryable(JCSMPException error) {
+		if (!(error instanceof JCSMPErrorResponseException)) return true;
+		int subcode = ((JCSMPErrorResponseException) error).getSubcodeEx();
+		return subcode != JCSMPErrorResponseSubcodeEx.SUBSCRIPTION_INVALID
+			&& subcode != JCSMPErrorResponseSubcodeEx.SUBSCRIPTION_ACL_DENIED
+			&& subcode != JCSMPErrorResponseSubcodeEx.SUBSCRIPTION_MANAGER_DENIED
+			&& subcode != JCSMPErrorResponseSubcodeEx.UNKNOWN_QUEUE_NAME;
+	}
+
+	private void send(Entry e, boolean confirm) {
+		int flags = confirm ? JCSMPSession.WAIT_FOR_CONFIRM : 0;
+		try {
+			if (e.op == Op.ADD) {
+				session.addSubscription(e.endpoint, e.topic, flags);
+			} else {
+				session.removeSubscription(e.endpoint, e.topic, flags);
+			}
+			e.error = null;
+		} catch (JCSMPException ex) {
+			e.error = isIdempotent(e, ex) ? null : ex;
+		}
+	}
+
+	/** Adding a present or removing an absent subscription is not a failure. */
+	private static boolean isIdempotent(Entry e, JCSMPException ex) {
+		if (!(ex instanceof JCSMPErrorResponseException)) return false;
+		int subcode = ((JCSMPErrorResponseException) ex).getSubcodeEx();
+		return e.op == Op.ADD ? subcode == JCSMPErrorResponseSubcodeEx.SUBSCRIPTION_ALREADY_PRESENT
+			: subcode == JCSMPErrorResponseSubcodeEx.SUBSCRIPTION_NOT_FOUND;
+	}
+
+	/**
+	 * Matches the errors reported for the window to its entries.
+	 *
+	 * @return false if an error could not be attributed
+	 */
+	private boolean attribute(List<Entry> batch) {
+		boolean attributed = true;
+		SessionEventArgs event;
+		while ((event = errors.poll()) != null) {
+			JCSMPException ex = event.getException() instanceof JCSMPException ? (JCSMPException) event
+				.getException() : new JCSMPException(String.valueOf(event.getInfo()));
+			Entry match = null;
+			boolean ambiguous = false;
+			String info = event.getInfo();
+			if (info != null) {
+				// The longest matching name, so that a/b is not taken for a/b/c.
+				// The same topic on two endpoints cannot be told apart.
+				for (int i = 0; i < batch.size() - 1; i++) {
+					Entry e = batch.get(i);
+					if (e.error != null || !info.contains(e.topic.getName())) continue;
+					int len = e.topic.getName().length();
+					if (match == null || len > match.topic.getName().length()) {
+						match = e;
+						ambiguous = false;
+					} else if (len == match.topic.getName().length()) {
+						ambiguous = true;
+					}
+				}
+			}
+			if (match == null || ambiguous) {
+				attributed = false;
+			} else if (!isIdempotent(match, ex)) {
+				match.error = ex;
+			}
+		}
+		return attributed;
+	}
+}
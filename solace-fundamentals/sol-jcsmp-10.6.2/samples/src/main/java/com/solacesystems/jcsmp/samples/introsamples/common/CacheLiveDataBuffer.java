@@ -0,0 +1,344 @@
+/**
+ * CacheLiveDataBuffer.java
+ *
+ * Client-side replacement for CacheLiveDataAction.QUEUE. Live messages
+ * that arrive for a topic while a cache request for it is outstanding are
+ * staged in a fixed-size direct buffer instead of being held on the heap,
+ * and are delivered in arrival order after the cached messages once the
+ * request completes.
+ *
+ * Copyright 2006-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CacheLiveDataAction;
+import com.solacesystems.jcsmp.CacheRequestListener;
+import com.solacesystems.jcsmp.CacheRequestResult;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheRequestManager.CacheFuture;
+
+/**
+ * Requests are sent through a CacheRequestManager with FLOW_THRU, so the
+ * API passes live data on at once, and this buffer, as the session
+ * consumer's listener, holds back the live messages that match an
+ * outstanding request. Cached messages and unrelated live messages go
+ * straight to the handler.
+ *
+ * Staged messages keep only their topic and attachment. They are written
+ * as records into a ring within the byte budget; a record is released when
+ * the request it was staged under completes, successfully or not. When a
+ * record does not fit, the overflow policy decides what gives.
+ *
+ * All methods synchronize on the buffer. The callbacks normally all run on
+ * the JCSMP context thread, so there is no contention.
+ */
+public class CacheLiveDataBuffer implements XMLMessageListener, CacheRequestListener {
+
+	/**
+	 * What to do with a live message that does not fit in the budget.
+	 */
+	public enum OverflowPolicy {
+		/** Discard the new message. */
+		DROP_NEWEST,
+		/** Discard the oldest staged messages until the new one fits. */
+		DROP_OLDEST,
+		/**
+		 * Deliver the messages staged under the same request, then the new
+		 * one, without waiting for the rest of the cached data.
+		 */
+		FLUSH
+	}
+
+	/**
+	 * Receives the merged stream. The payload buffer is only valid during
+	 * the call.
+	 */
+	public interface MessageHandler {
+		void onMessage(String topic, ByteBuffer payload, boolean cached);
+	}
+
+	// Record layout: int length (header included), int request slot (-1
+	// once released or for padding), int topic index, payload.
+	private static final int HEADER = 12;
+	private static final int RELEASED = -1;
+
+	private final ByteBuffer ring;
+	private final int capacity;
+	private final OverflowPolicy policy;
+	private final MessageHandler handler;
+	private final CacheRequestManager manager;
+
+	private int head;    // next write position
+	private int tail;    // oldest record
+	private int used;    // bytes between tail and head, padding included
+	private int records; // records not yet released
+
+	// Topic names are stored once on the heap and referenced by index.
+	private final Map<String, Integer> topicIndex = new HashMap<String, Integer>();
+	private final List<String> topicNames = new ArrayList<String>();
+
+	// Outstanding request topics (may be wildcards): slot and count.
+	private final Map<String, int[]> outstanding = new HashMap<String, int[]>();
+	private final List<String> wildcards = new ArrayList<String>();
+	private int nextSlot;
+
+	// Statistics
+	private long staged;
+	private long released;
+	private long dropped;
+	private long flushed;
+	private int highWaterBytes;
+	private int highWaterRecords;
+
+	/**
+	 * @param manager manager to send the cache requests with; this buffer
+	 *        becomes its listener
+	 * @param budgetBytes direct memory for staged live messages
+	 * @param policy what to do when a message does not fit
+	 * @param handler receives cached, released and unrelated live messages
+	 */
+	public CacheLiveDataBuffer(CacheRequestManager manager, int budgetBytes, OverflowPolicy policy,
+		MessageHandler handler) {
+		this.manager = manager;
+		this.capacity = budgetBytes;
+		this.ring = ByteBuffer.allocateDirect(budgetBytes);
+		this.policy = policy;
+		this.handler = handler;
+		manager.setListener(this);
+	}
+
+	/**
+	 * Starts staging live data for the topic, then sends the cache request.
+	 * The live data action is always FLOW_THRU; this buffer does the
+	 * queueing. If the request cannot be sent, the manager reports it to
+	 * this buffer before throwing, which releases the staged data.
+	 */
+	public CacheFuture request(Topic topic, boolean subscribe) throws JCSMPException {
+		String name = topic.getName();
+		synchronized (this) {
+			int[] entry = outstanding.get(name);
+			if (entry == null) {
+				outstanding.put(name, new int[] { nextSlot++, 1 });
+				if (name.indexOf('*') >= 0 || name.endsWith(">")) wildcards.add(name);
+			} else {
+				entry[1]++;
+			}
+		}
+		return manager.request(topic, subscribe, CacheLiveDataAction.FLOW_THRU);
+	}
+
+	public void onReceive(BytesXMLMessage msg) {
+		Destination dest = msg.getDestination();
+		ByteBuffer payload = msg.getAttachmentByteBuffer();
+		String topic = dest == null ? null : dest.getName();
+		synchronized (this) {
+			if (!msg.isCacheMessage() && topic != null && !outstanding.isEmpty()) {
+				int slot = slotFor(topic);
+				if (slot >= 0 && stage(slot, topic, payload)) return;
+			}
+		}
+		handler.onMessage(topic, payload == null ? ByteBuffer.allocate(0) : payload.duplicate(), msg.isCacheMessage());
+	}
+
+	public void onException(JCSMPException e) {
+		System.err.println("Consumer received exception: " + e);
+	}
+
+	public void onComplete(Long requestId, Topic topic, CacheRequestResult result) {
+		release(topic.getName());
+	}
+
+	public void onException(Long requestId, Topic topic, JCSMPException exception) {
+		release(topic.getName());
+	}
+
+	private int slotFor(String topic) {
+		int[] entry = outstanding.get(topic);
+		if (entry != null) return entry[0];
+		for (int i = 0; i < wildcards.size(); i++) {
+			if (TopicMatcher.matches(wildcards.get(i), topic)) return outstanding.get(wildcards.get(i))[0];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return false if the message should be delivered at once
+	 */
+	private boolean stage(int slot, String topic, ByteBuffer payload) {
+		int len = payload == null ? 0 : payload.remaining();
+		int size = HEADER + len;
+		if (!makeRoom(size)) {
+			if (policy == OverflowPolicy.FLUSH) {
+				// Live order within the request is kept; the new message
+				// follows its staged predecessors.
+				flushed += deliver(slot);
+				if (!makeRoom(size)) {
+					flushed++;
+					return false;
+				}
+			} else {
+				dropped++;
+				return true;
+			}
+		}
+		if (capacity - head < size) {
+			// Pad to the end and wrap, so that records are contiguous.
+			if (capacity - head >= HEADER) {
+				ring.putInt(head, capacity - head);
+				ring.putInt(head + 4, RELEASED);
+			}
+			used += capacity - head;
+			head = 0;
+		}
+		Integer index = topicIndex.get(topic);
+		if (index == null) {
+			index = topicNames.size();
+			topicNames.add(topic);
+			topicIndex.put(topic, index);
+		}
+		ring.putInt(head, size);
+		ring.putInt(head + 4, slot);
+		ring.putInt(head + 8, index);
+		if (len > 0) {
+			ByteBuffer dst = ring.duplicate();
+			dst.position(head + HEADER);
+			dst.put(payload.duplicate());
+		}
+		head += size;
+		if (head == capacity) head = 0;
+		used += size;
+		records++;
+		staged++;
+		if (used > highWaterBytes) highWaterBytes = used;
+		if (records > highWaterRecords) highWaterRecords = records;
+		return true;
+	}
+
+	/**
+	 * Space for a record of <code>size</code> bytes, counting the padding a
+	 * wrap would need, applying DROP_OLDEST if necessary.
+	 */
+	private boolean makeRoom(int size) {
+		if (size > capacity) return false;
+		while (true) {
+			int needed = size + (capacity - head < size ? capacity - head : 0);
+			if (capacity - used >= needed) return true;
+			if (policy != OverflowPolicy.DROP_OLDEST || records == 0) return false;
+			if (ring.getInt(tail + 4) != RELEASED) {
+				ring.putInt(tail + 4, RELEASED);
+				records--;
+				dropped++;
+			}
+			trimTail();
+		}
+	}
+
+	/**
+	 * Delivers, in arrival order, the live messages staged under the topic's
+	 * request, once the last outstanding request for it has completed.
+	 */
+	private void release(String name) {
+		synchronized (this) {
+			int[] entry = outstanding.get(name);
+			if (entry == null || --entry[1] > 0) return;
+			outstanding.remove(name);
+			wildcards.remove(name);
+			released += deliver(entry[0]);
+		}
+	}
+
+	/**
+	 * Hands the records staged under a request slot to the handler, oldest
+	 * first, and releases them.
+	 */
+	private int deliver(int slot) {
+		ByteBuffer view = null;
+		int count = 0;
+		int pos = tail;
+		int remaining = used;
+		while (remaining > 0) {
+			int size = pos + HEADER <= capacity ? ring.getInt(pos) : capacity - pos;
+			if (pos + HEADER <= capacity && ring.getInt(pos + 4) == slot) {
+				if (view == null) view = ring.duplicate();
+				view.limit(pos + size).position(pos + HEADER);
+				handler.onMessage(topicNames.get(ring.getInt(pos + 8)), view, false);
+				ring.putInt(pos + 4, RELEASED);
+				records--;
+				count++;
+			}
+			remaining -= size;
+			pos += size;
+			if (pos == capacity) pos = 0;
+		}
+		trimTail();
+		return count;
+	}
+
+	/** Advances the tail over released records and padding. */
+	private void trimTail() {
+		while (used > 0) {
+			int size;
+			if (tail + HEADER > capacity) {
+				size = capacity - tail; // padding too short for a header
+			} else if (ring.getInt(tail + 4) == RELEASED) {
+				size = ring.getInt(tail);
+			} else {
+				break;
+			}
+			used -= size;
+			tail += size;
+			if (tail == capacity) tail = 0;
+		}
+		if (used == 0) {
+			head = 0;
+			tail = 0;
+		}
+	}
+
+	public synchronized int getBudgetBytes() {
+		return capacity;
+	}
+
+	public synchronized int getUsedBytes() {
+		return used;
+	}
+
+	public synchronized int getStagedRecords() {
+		return records;
+	}
+
+	public synchronized int getHighWaterBytes() {
+		return highWaterBytes;
+	}
+
+	public synchronized int getHighWaterRecords() {
+		return highWaterRecords;
+	}
+
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/** Messages delivered early by the FLUSH policy, the new ones included. */
+	public synchronized long getFlushed() {
+		return flushed;
+	}
+
+	public synchronized String getReport() {
+		return String.format("Live data buffer: %d staged, %d released, %d dropped, %d flushed early (%s); "
+			+ "high water %d bytes of %d (%.0f%%), %d messages",
+			staged, released, dropped, flushed, policy, highWaterBytes, capacity,
+			highWaterBytes * 100.0 / capacity, highWaterRecords);
+	}
+}
@@ -0,0 +1,299 @@
+/**
+ * CacheRequestManager.java
+ *
+ * Issues cache requests for many topics over one CacheSession. Request IDs
+ * are allocated here, at most a fixed number of requests are outstanding at
+ * any time, and each topic gets a Future that completes from the
+ * CacheRequestListener callbacks.
+ *
+ * Copyright 2006-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.CacheLiveDataAction;
+import com.solacesystems.jcsmp.CacheRequestListener;
+import com.solacesystems.jcsmp.CacheRequestResult;
+import com.solacesystems.jcsmp.CacheSession;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.Topic;
+
+/**
+ * The manager is the CacheRequestListener of every request it sends, so the
+ * callbacks run on the JCSMP context thread; they only complete the future
+ * and free the slot. request() blocks while the outstanding limit is
+ * reached, so it must not be called from that thread.
+ */
+public class CacheRequestManager implements CacheRequestListener {
+
+	/**
+	 * Outcome of the cache request for one topic. get() throws an
+	 * ExecutionException whose cause is the JCSMPException from
+	 * onException (for example a cache request timeout).
+	 */
+	public static final class CacheFuture implements Future<CacheRequestResult> {
+		private final Long requestId;
+		private final Topic topic;
+		private final long sentNanos;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile CacheRequestResult result;
+		private volatile JCSMPException error;
+		private volatile long latencyNanos;
+
+		CacheFuture(Long requestId, Topic topic) {
+			this.requestId = requestId;
+			this.topic = topic;
+			this.sentNanos = System.nanoTime();
+		}
+
+		boolean complete(CacheRequestResult result, JCSMPException error) {
+			synchronized (this) {
+				if (done.getCount() == 0) return false;
+				this.result = result;
+				this.error = error;
+				this.latencyNanos = System.nanoTime() - sentNanos;
+				done.countDown();
+			}
+			return true;
+		}
+
+		public Long getRequestId() {
+			return requestId;
+		}
+
+		public Topic getTopic() {
+			return topic;
+		}
+
+		/** Time from sending the request to its completion, valid once done. */
+		public long getLatencyNanos() {
+			return latencyNanos;
+		}
+
+		/** The failure, or null if the request completed with a result. */
+		public JCSMPException getError() {
+			return error;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			// Individual cache requests cannot be withdrawn; see
+			// CacheSession.cancelCacheRequests().
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		public CacheRequestResult get() throws InterruptedException, ExecutionException {
+			done.await();
+			return value();
+		}
+
+		public CacheRequestResult get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+			if (!done.await(timeout, unit)) throw new TimeoutException();
+			return value();
+		}
+
+		private CacheRequestResult value() throws ExecutionException {
+			if (error != null) throw new ExecutionException(error.getMessage(), error);
+			return result;
+		}
+	}
+
+	private final CacheSession cacheSession;
+	private final int maxOutstanding;
+	private final Semaphore permits;
+	private final AtomicLong nextRequestId;
+	private final ConcurrentHashMap<Long, CacheFuture> pending = new ConcurrentHashMap<Long, CacheFuture>();
+	private volatile CacheRequestListener listener;
+
+	// Statistics
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicInteger peakOutstanding = new AtomicInteger();
+	private final AtomicLong[] resultCounts = new AtomicLong[CacheRequestResult.values().length];
+	private final AtomicLong errors = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong firstSendNanos = new AtomicLong();
+	private final AtomicLong lastCompletionNanos = new AtomicLong();
+
+	/**
+	 * @param cacheSession the cache session to send requests on
+	 * @param maxOutstanding maximum cache requests in progress at once
+	 * @param firstRequestId first request ID to allocate; IDs must be unique
+	 *        on the cache session, so give each manager its own range
+	 */
+	public CacheRequestManager(CacheSession cacheSession, int maxOutstanding, long firstRequestId) {
+		this.cacheSession = cacheSession;
+		this.maxOutstanding = maxOutstanding;
+		this.permits = new Semaphore(maxOutstanding);
+		this.nextRequestId = new AtomicLong(firstRequestId);
+		for (int i = 0; i < resultCounts.length; i++) {
+			resultCounts[i] = new AtomicLong();
+		}
+	}
+
+	public CacheRequestManager(CacheSession cacheSession, int maxOutstanding) {
+		this(cacheSession, maxOutstanding, 1);
+	}
+
+	/**
+	 * Sets a listener that is also told of every completion, including
+	 * requests that could not be sent, before the request's future completes.
+	 */
+	public void setListener(CacheRequestListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sends a cache request for one topic, first waiting for a free slot if
+	 * <code>maxOutstanding</code> requests are in progress.
+	 */
+	public CacheFuture request(Topic topic, boolean subscribe, CacheLiveDataAction action) throws JCSMPException {
+		Long id = nextRequestId.getAndIncrement();
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			JCSMPException error = new JCSMPException("Interrupted waiting for a free cache request slot", e);
+			// Never sent, so no slot or future to release, but the listener
+			// must still hear of it.
+			errors.incrementAndGet();
+			CacheRequestListener l = listener;
+			if (l != null) l.onException(id, topic, error);
+			throw error;
+		}
+		CacheFuture future = new CacheFuture(id, topic);
+		pending.put(id, future);
+		int now = outstanding.incrementAndGet();
+		int peak;
+		while (now > (peak = peakOutstanding.get()) && !peakOutstanding.compareAndSet(peak, now)) {
+			// retry
+		}
+		firstSendNanos.compareAndSet(0, System.nanoTime());
+		try {
+			cacheSession.sendCacheRequest(id, topic, subscribe, action, this);
+		} catch (JCSMPException e) {
+			finish(id, null, e);
+			throw e;
+		}
+		return future;
+	}
+
+	/**
+	 * Sends cache requests for all topics, at most
+	 * <code>maxOutstanding</code> at a time, and returns their futures in
+	 * topic order. Returns once the last request has been sent.
+	 */
+	public List<CacheFuture> requestAll(Collection<Topic> topics, boolean subscribe, CacheLiveDataAction action)
+		throws JCSMPException {
+		List<CacheFuture> futures = new ArrayList<CacheFuture>(topics.size());
+		for (Topic topic : topics) {
+			futures.add(request(topic, subscribe, action));
+		}
+		return futures;
+	}
+
+	/**
+	 * Waits until no request is outstanding or the timeout expires.
+	 *
+	 * @return true if all requests completed
+	 */
+	public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+		if (!permits.tryAcquire(maxOutstanding, timeoutMs, TimeUnit.MILLISECONDS)) return false;
+		permits.release(maxOutstanding);
+		return true;
+	}
+
+	public void onComplete(Long requestId, Topic topic, CacheRequestResult result) {
+		finish(requestId, result, null);
+	}
+
+	public void onException(Long requestId, Topic topic, JCSMPException exception) {
+		finish(requestId, null, exception);
+	}
+
+	private void finish(Long requestId, CacheRequestResult result, JCSMPException error) {
+		CacheFuture future = pending.remove(requestId);
+		if (future == null || future.isDone()) return;
+		CacheRequestListener l = listener;
+		if (l != null) {
+			if (error != null) {
+				l.onException(requestId, future.getTopic(), error);
+			} else {
+				l.onComplete(requestId, future.getTopic(), result);
+			}
+		}
+		if (!future.complete(result, error)) return;
+		if (error != null) {
+			errors.incrementAndGet();
+		} else {
+			resultCounts[result.ordinal()].incrementAndGet();
+		}
+		latency.recordNanosAsMicros(future.getLatencyNanos());
+		lastCompletionNanos.set(System.nanoTime());
+		outstanding.decrementAndGet();
+		permits.release();
+	}
+
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	public int getPeakOutstanding() {
+		return peakOutstanding.get();
+	}
+
+	public long getResultCount(CacheRequestResult result) {
+		return resultCounts[result.ordinal()].get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/** Time from the first request sent to the last one completed. */
+	public long getPrimingMillis() {
+		long first = firstSendNanos.get();
+		long last = lastCompletionNanos.get();
+		return first == 0 || last < first ? 0 : (last - first) / 1000000;
+	}
+
+	public String getReport() {
+		StringBuilder bldr = new StringBuilder();
+		long total = errors.get();
+		for (CacheRequestResult r : CacheRequestResult.values()) {
+			total += getResultCount(r);
+		}
+		bldr.append(String.format("%d cache requests in %d ms, at most %d outstanding (peak %d)\n",
+			total, getPrimingMillis(), maxOutstanding, getPeakOutstanding()));
+		for (CacheRequestResult r : CacheRequestResult.values()) {
+			bldr.append(String.format("   %-12s %d\n", r, getResultCount(r)));
+		}
+		bldr.append(String.format("   %-12s %d\n", "errors", errors.get()));
+		bldr.append("Request latency: ").append(latency.getSummary("us"));
+		return bldr.toString();
+	}
+}
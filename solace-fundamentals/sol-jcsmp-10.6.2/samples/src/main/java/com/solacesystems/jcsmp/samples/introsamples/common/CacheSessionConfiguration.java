@@ -6,6 +6,9 @@
 
 package com.solacesystems.jcsmp.samples.introsamples.common;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.solacesystems.jcsmp.CacheLiveDataAction;
 
 /**
@@ -20,6 +23,12 @@ public class CacheSessionConfiguration extends SessionConfiguration {
     private boolean mSubscribe = false;
     private CacheLiveDataAction mAction = CacheLiveDataAction.FLOW_THRU;
     
+    // Warm-up phase: topics (wildcards allowed) to request at startup,
+    // spread over a number of cache sessions.
+    private List<String> mWarmupTopics = new ArrayList<String>();
+    private int mWarmupSessions = 1;
+    private int mWarmupConcurrency = 16;
+    
     public String getCacheName() {
         return mCacheName;
     }
@@ -56,6 +65,24 @@ public class CacheSessionConfiguration extends SessionConfiguration {
     public void setAction(CacheLiveDataAction action) {
         mAction = action;
     }
+    public List<String> getWarmupTopics() {
+        return mWarmupTopics;
+    }
+    public void setWarmupTopics(List<String> warmupTopics) {
+        mWarmupTopics = warmupTopics;
+    }
+    public int getWarmupSessions() {
+        return mWarmupSessions;
+    }
+    public void setWarmupSessions(int warmupSessions) {
+        mWarmupSessions = warmupSessions;
+    }
+    public int getWarmupConcurrency() {
+        return mWarmupConcurrency;
+    }
+    public void setWarmupConcurrency(int warmupConcurrency) {
+        mWarmupConcurrency = warmupConcurrency;
+    }
     @Override
 	public String toString() {
         StringBuilder bldr = new StringBuilder(super.toString());
@@ -71,6 +98,14 @@ public class CacheSessionConfiguration extends SessionConfiguration {
         bldr.append(mSubscribe);
         bldr.append(", action=");
         bldr.append(mAction);
+        if (!mWarmupTopics.isEmpty()) {
+            bldr.append(", warmupTopics=");
+            bldr.append(mWarmupTopics.size());
+            bldr.append(", warmupSessions=");
+            bldr.append(mWarmupSessions);
+            bldr.append(", warmupConcurrency=");
+            bldr.append(mWarmupConcurrency);
+        }
         return bldr.toString();
     }
 }
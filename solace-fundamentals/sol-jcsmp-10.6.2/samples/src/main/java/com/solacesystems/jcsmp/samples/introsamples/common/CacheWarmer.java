@@ -0,0 +1,303 @@
+/**
+ * CacheWarmer.java
+ *
+ * Startup warm-up from a cache: requests the configured warm-up topics
+ * (wildcards allowed) over one or more CacheSessions with a bounded number
+ * of outstanding requests, and reports the time to warm, the messages
+ * received per topic and the requests that failed.
+ *
+ * Copyright 2006-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CacheRequestResult;
+import com.solacesystems.jcsmp.CacheSession;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.samples.introsamples.common.CacheRequestManager.CacheFuture;
+
+/**
+ * The warmer counts cached messages, so it must see every message of the
+ * session: make it the listener of the session consumer, passing the
+ * application's listener as <code>next</code>.
+ *
+ * Topics are dealt round-robin to the cache sessions, each of which has
+ * its own CacheRequestManager and request ID range, and the outstanding
+ * limit is divided among them without exceeding it in total, so there
+ * are never more sessions than that limit. warm() returns once every
+ * request has completed, so the application can start taking traffic
+ * right after.
+ */
+public class CacheWarmer implements XMLMessageListener {
+
+	/** Request IDs of each cache session start at a multiple of this. */
+	private static final long REQUEST_ID_RANGE = 1000000000L;
+
+	/**
+	 * Outcome of one warm-up request.
+	 */
+	public static final class TopicResult {
+		private final String topic;
+		private final CacheRequestResult result;
+		private final String error;
+		private final long messages;
+		private final long latencyMicros;
+
+		TopicResult(String topic, CacheRequestResult result, String error, long messages, long latencyMicros) {
+			this.topic = topic;
+			this.result = result;
+			this.error = error;
+			this.messages = messages;
+			this.latencyMicros = latencyMicros;
+		}
+
+		/** The requested topic, possibly a wildcard. */
+		public String getTopic() {
+			return topic;
+		}
+
+		/** The result, or null if the request failed. */
+		public CacheRequestResult getResult() {
+			return result;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		/** Cached messages received for this request. */
+		public long getMessages() {
+			return messages;
+		}
+
+		public long getLatencyMicros() {
+			return latencyMicros;
+		}
+	}
+
+	private final JCSMPSession session;
+	private final CacheSessionConfiguration conf;
+	private final XMLMessageListener next;
+
+	// Cached messages per request ID and per received topic. Requests
+	// with wildcards return messages for many topics.
+	private final ConcurrentHashMap<Long, AtomicLong> msgsByRequest = new ConcurrentHashMap<Long, AtomicLong>();
+	private final ConcurrentHashMap<String, AtomicLong> msgsByTopic = new ConcurrentHashMap<String, AtomicLong>();
+
+	private final List<TopicResult> results = new ArrayList<TopicResult>();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private long warmMillis;
+	private int sessionsUsed;
+	private int peakOutstanding;
+
+	public CacheWarmer(JCSMPSession session, CacheSessionConfiguration conf, XMLMessageListener next) {
+		this.session = session;
+		this.conf = conf;
+		this.next = next;
+	}
+
+	public void onReceive(BytesXMLMessage msg) {
+		if (msg.isCacheMessage()) {
+			Long id = msg.getCacheRequestId();
+			if (id != null) increment(msgsByRequest, id);
+			if (msg.getDestination() != null) increment(msgsByTopic, msg.getDestination().getName());
+		}
+		if (next != null) next.onReceive(msg);
+	}
+
+	public void onException(JCSMPException e) {
+		if (next != null) {
+			next.onException(e);
+		} else {
+			System.err.println("Consumer received exception: " + e);
+		}
+	}
+
+	private static <K> void increment(ConcurrentHashMap<K, AtomicLong> counts, K key) {
+		AtomicLong count = counts.get(key);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = counts.putIfAbsent(key, created);
+			if (count == null) count = created;
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Requests all warm-up topics of the configuration, using its cache
+	 * name, request properties, subscribe flag and live data action, and
+	 * waits for every request to complete. The cache sessions are closed
+	 * afterwards.
+	 */
+	public void warm() throws JCSMPException, InterruptedException {
+		List<String> topics = conf.getWarmupTopics();
+		int concurrency = Math.max(1, conf.getWarmupConcurrency());
+		// Each session needs at least one of the outstanding requests.
+		int sessions = Math.max(1, Math.min(Math.min(conf.getWarmupSessions(), topics.size()), concurrency));
+
+		final List<List<Topic>> shares = new ArrayList<List<Topic>>();
+		final List<CacheSession> cacheSessions = new ArrayList<CacheSession>();
+		final List<CacheRequestManager> managers = new ArrayList<CacheRequestManager>();
+		for (int s = 0; s < sessions; s++) {
+			shares.add(new ArrayList<Topic>());
+		}
+		for (int i = 0; i < topics.size(); i++) {
+			shares.get(i % sessions).add(JCSMPFactory.onlyInstance().createTopic(topics.get(i)));
+		}
+
+		sessionsUsed = sessions;
+		peakOutstanding = 0;
+		long start = System.nanoTime();
+		try {
+			for (int s = 0; s < sessions; s++) {
+				CacheSession cacheSession = SampleUtils.newCacheSession(session, conf);
+				cacheSessions.add(cacheSession);
+				// The limits add up to the concurrency, the first sessions taking the remainder.
+				int limit = concurrency / sessions + (s < concurrency % sessions ? 1 : 0);
+				managers.add(new CacheRequestManager(cacheSession, limit, s * REQUEST_ID_RANGE + 1));
+			}
+
+			// request() blocks while a session's limit is reached, so each
+			// session is fed from its own thread.
+			final List<List<CacheFuture>> futures = new ArrayList<List<CacheFuture>>();
+			final JCSMPException[] sendError = new JCSMPException[1];
+			List<Thread> senders = new ArrayList<Thread>();
+			for (int s = 0; s < sessions; s++) {
+				futures.add(Collections.synchronizedList(new ArrayList<CacheFuture>()));
+				final int idx = s;
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						CacheRequestManager manager = managers.get(idx);
+						try {
+							for (Topic topic : shares.get(idx)) {
+								futures.get(idx).add(manager.request(topic, conf.getSubscribe(), conf.getAction()));
+							}
+						} catch (JCSMPException e) {
+							synchronized (sendError) {
+								if (sendError[0] == null) sendError[0] = e;
+							}
+						}
+					}
+				}, "Cache-Warmup-" + s);
+				t.start();
+				senders.add(t);
+			}
+			for (Thread t : senders) {
+				t.join();
+			}
+			if (sendError[0] != null) throw sendError[0];
+
+			results.clear();
+			for (List<CacheFuture> list : futures) {
+				for (CacheFuture future : list) {
+					CacheRequestResult result = null;
+					String error = null;
+					try {
+						result = future.get();
+					} catch (ExecutionException e) {
+						error = e.getCause().getMessage();
+					}
+					AtomicLong msgs = msgsByRequest.get(future.getRequestId());
+					long micros = future.getLatencyNanos() / 1000;
+					latency.record(micros);
+					results.add(new TopicResult(future.getTopic().getName(), result, error,
+						msgs == null ? 0 : msgs.get(), micros));
+				}
+			}
+		} finally {
+			warmMillis = (System.nanoTime() - start) / 1000000;
+			for (CacheRequestManager manager : managers) {
+				peakOutstanding += manager.getPeakOutstanding();
+			}
+			for (CacheSession cacheSession : cacheSessions) {
+				cacheSession.close();
+			}
+		}
+	}
+
+	/** Time from the first request sent until all had completed. */
+	public long getWarmMillis() {
+		return warmMillis;
+	}
+
+	public List<TopicResult> getResults() {
+		return Collections.unmodifiableList(results);
+	}
+
+	/** Requests that completed with an exception. */
+	public List<TopicResult> getFailures() {
+		List<TopicResult> failures = new ArrayList<TopicResult>();
+		for (TopicResult r : results) {
+			if (r.result == null) failures.add(r);
+		}
+		return failures;
+	}
+
+	/** True once warm() has completed without failed requests. */
+	public boolean isWarm() {
+		return !results.isEmpty() && getFailures().isEmpty();
+	}
+
+	/** Cached messages received per topic, including topics matched by wildcards. */
+	public Map<String, AtomicLong> getMessagesByTopic() {
+		return Collections.<String, AtomicLong> unmodifiableMap(msgsByTopic);
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public String getReport() {
+		long ok = 0, noData = 0, suspect = 0, failed = 0, msgs = 0;
+		for (TopicResult r : results) {
+			msgs += r.messages;
+			if (r.result == null) {
+				failed++;
+			} else if (r.result == CacheRequestResult.OK) {
+				ok++;
+			} else if (r.result == CacheRequestResult.NO_DATA) {
+				noData++;
+			} else {
+				suspect++;
+			}
+		}
+		StringBuilder bldr = new StringBuilder();
+		bldr.append(String.format("Warmed %d requests in %d ms over %d cache session(s), up to %d outstanding\n",
+			results.size(), warmMillis, sessionsUsed, peakOutstanding));
+		bldr.append(String.format("   ok=%d no-data=%d suspect=%d failed=%d\n", ok, noData, suspect, failed));
+
+		List<Map.Entry<String, AtomicLong>> topics = new ArrayList<Map.Entry<String, AtomicLong>>(msgsByTopic.entrySet());
+		long min = Long.MAX_VALUE, max = 0;
+		for (Map.Entry<String, AtomicLong> e : topics) {
+			min = Math.min(min, e.getValue().get());
+			max = Math.max(max, e.getValue().get());
+		}
+		bldr.append(String.format("   %d cached messages on %d topics, per topic min/avg/max %d/%.1f/%d\n", msgs,
+			topics.size(), topics.isEmpty() ? 0 : min, topics.isEmpty() ? 0.0 : msgs / (double) topics.size(), max));
+		Collections.sort(topics, new Comparator<Map.Entry<String, AtomicLong>>() {
+			public int compare(Map.Entry<String, AtomicLong> a, Map.Entry<String, AtomicLong> b) {
+				long x = a.getValue().get(), y = b.getValue().get();
+				return x < y ? 1 : (x == y ? 0 : -1);
+			}
+		});
+		for (int i = 0; i < Math.min(5, topics.size()); i++) {
+			bldr.append(String.format("      %-40s %d\n", topics.get(i).getKey(), topics.get(i).getValue().get()));
+		}
+		bldr.append("Request latency: ").append(latency.getSummary("us"));
+		return bldr.toString();
+	}
+}
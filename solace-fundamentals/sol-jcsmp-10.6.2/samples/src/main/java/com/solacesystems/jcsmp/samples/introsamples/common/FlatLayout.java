@@ -0,0 +1,409 @@
+/**
+ * FlatLayout.java
+ *
+ * A fixed binary layout for message payloads, in the spirit of SBE:
+ * every field sits at a known offset, so it is written and read in place
+ * without building or parsing a container.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+
+/**
+ * A payload is an 8-byte header followed by the block of fields, all
+ * little-endian:
+ *
+ * <pre>
+ *   0  uint16 block length
+ *   2  uint16 template id
+ *   4  uint16 version
+ *   6  uint16 reserved
+ *   8  fields, in the order they were added to the Builder
+ * </pre>
+ *
+ * Text fields have a fixed length and hold ASCII, padded with zeros.
+ *
+ * A layout is built once and its Fields kept, typically in static finals.
+ * A Writer owns a reusable buffer: reset(), set the fields, then
+ * writeTo() the message attachment; the API copies the bytes into the
+ * message, and that copy is the only one. A Reader wraps the received
+ * attachment, usually the buffer from getAttachmentByteBuffer(), which is
+ * a view of the message's own bytes, and reads each field from it at its
+ * offset. Neither allocates per message, except getString(); the view
+ * getAttachmentByteBuffer() returns is the API's own. To avoid that too,
+ * copy the attachment into a reused array with readAttachmentBytes() and
+ * wrap the array.
+ *
+ * Fields may only be appended. A reader accepts a longer block from a
+ * newer writer and ignores the extra fields, and with has() can tell the
+ * fields a shorter block from an older writer does not carry.
+ */
+public final class FlatLayout {
+
+	public static final int HEADER_LENGTH = 8;
+
+	public enum Type {
+		INT8(1), INT16(2), INT32(4), INT64(8), FLOAT32(4), FLOAT64(8), ASCII(0);
+
+		final int size;
+
+		Type(int size) {
+			this.size = size;
+		}
+	}
+
+	/** A field of a layout; pass it to the Writer and Reader accessors. */
+	public static final class Field {
+		private final String name;
+		private final Type type;
+		private final int offset;
+		private final int length;
+
+		Field(String name, Type type, int offset, int length) {
+			this.name = name;
+			this.type = type;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		/** Offset from the start of the payload, header included. */
+		public int getOffset() {
+			return offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public String toString() {
+			return name + " " + type.name().toLowerCase() + (type == Type.ASCII ? "[" + length + "]" : "") + " @"
+				+ offset;
+		}
+	}
+
+	public static final class Builder {
+		private final int templateId;
+		private final int version;
+		private final List<Field> fields = new ArrayList<Field>();
+		private int offset = HEADER_LENGTH;
+
+		Builder(int templateId, int version) {
+			this.templateId = templateId;
+			this.version = version;
+		}
+
+		public Builder add(String name, Type type) {
+			if (type == Type.ASCII) throw new IllegalArgumentException("ASCII fields need a length");
+			return add(name, type, type.size);
+		}
+
+		public Builder ascii(String name, int length) {
+			return add(name, Type.ASCII, length);
+		}
+
+		private Builder add(String name, Type type, int length) {
+			for (Field f : fields) {
+				if (f.name.equals(name)) throw new IllegalArgumentException("Duplicate field " + name);
+			}
+			fields.add(new Field(name, type, offset, length));
+			offset += length;
+			if (offset - HEADER_LENGTH > 0xffff) throw new IllegalArgumentException("Block longer than 65535 bytes");
+			return this;
+		}
+
+		public FlatLayout build() {
+			return new FlatLayout(templateId, version, fields, offset - HEADER_LENGTH);
+		}
+	}
+
+	private final int templateId;
+	private final int version;
+	private final List<Field> fields;
+	private final int blockLength;
+
+	private FlatLayout(int templateId, int version, List<Field> fields, int blockLength) {
+		this.templateId = templateId;
+		this.version = version;
+		this.fields = Collections.unmodifiableList(new ArrayList<Field>(fields));
+		this.blockLength = blockLength;
+	}
+
+	/** @param templateId identifies the record type on the wire, 0-65535 */
+	public static Builder builder(int templateId, int version) {
+		return new Builder(templateId, version);
+	}
+
+	public Field field(String name) {
+		for (Field f : fields) {
+			if (f.name.equals(name)) return f;
+		}
+		throw new IllegalArgumentException("No field " + name);
+	}
+
+	public List<Field> getFields() {
+		return fields;
+	}
+
+	public int getTemplateId() {
+		return templateId;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/** Header and fields: the size of every payload of this layout. */
+	public int getEncodedLength() {
+		return HEADER_LENGTH + blockLength;
+	}
+
+	public String toString() {
+		return String.format("template %d v%d, %d bytes: %s", templateId, version, getEncodedLength(), fields);
+	}
+
+	/**
+	 * Encodes payloads into a buffer it reuses. The accessors do not check
+	 * that the field belongs to this layout or has the accessor's type.
+	 */
+	public static final class Writer {
+		private final FlatLayout layout;
+		private final byte[] array;
+		private final ByteBuffer buf;
+
+		public Writer(FlatLayout layout) {
+			this.layout = layout;
+			this.array = new byte[layout.getEncodedLength()];
+			this.buf = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		/** Zeroes the fields and writes the header. */
+		public Writer reset() {
+			Arrays.fill(array, HEADER_LENGTH, array.length, (byte) 0);
+			buf.putShort(0, (short) layout.blockLength);
+			buf.putShort(2, (short) layout.templateId);
+			buf.putShort(4, (short) layout.version);
+			buf.putShort(6, (short) 0);
+			return this;
+		}
+
+		public Writer putByte(Field f, byte v) {
+			buf.put(f.offset, v);
+			return this;
+		}
+
+		public Writer putBoolean(Field f, boolean v) {
+			buf.put(f.offset, v ? (byte) 1 : (byte) 0);
+			return this;
+		}
+
+		public Writer putShort(Field f, short v) {
+			buf.putShort(f.offset, v);
+			return this;
+		}
+
+		public Writer putInt(Field f, int v) {
+			buf.putInt(f.offset, v);
+			return this;
+		}
+
+		public Writer putLong(Field f, long v) {
+			buf.putLong(f.offset, v);
+			return this;
+		}
+
+		public Writer putFloat(Field f, float v) {
+			buf.putFloat(f.offset, v);
+			return this;
+		}
+
+		public Writer putDouble(Field f, double v) {
+			buf.putDouble(f.offset, v);
+			return this;
+		}
+
+		/**
+		 * Writes <code>v</code> as ASCII, zero-padded.
+		 *
+		 * @throws IllegalArgumentException if it is longer than the field
+		 */
+		public Writer putAscii(Field f, CharSequence v) {
+			int n = v.length();
+			if (n > f.length) throw new IllegalArgumentException(f.name + " holds " + f.length + " characters");
+			for (int i = 0; i < n; i++) array[f.offset + i] = (byte) v.charAt(i);
+			for (int i = n; i < f.length; i++) array[f.offset + i] = 0;
+			return this;
+		}
+
+		public byte[] array() {
+			return array;
+		}
+
+		public int length() {
+			return array.length;
+		}
+
+		/** Replaces the attachment of <code>msg</code> with the payload. */
+		public void writeTo(BytesXMLMessage msg) {
+			msg.writeAttachment(array, 0, array.length);
+		}
+	}
+
+	/**
+	 * Reads payloads in place. Like the Writer, the accessors trust the
+	 * field they are given.
+	 */
+	public static final class Reader {
+		private final FlatLayout layout;
+		private ByteBuffer buf;
+		private ByteBuffer arrayView;
+		/** True if <code>buf</code> is big-endian and values need their bytes reversed. */
+		private boolean swap;
+		private int base;
+		private int receivedBlock;
+
+		public Reader(FlatLayout layout) {
+			this.layout = layout;
+		}
+
+		/**
+		 * Reads the payload between the position and the limit of
+		 * <code>payload</code>, which must not change until the next wrap.
+		 * The buffer's byte order is left as it is; values are read
+		 * little-endian whatever it is.
+		 *
+		 * @throws IllegalArgumentException if it is not a payload of this
+		 *         layout's template
+		 */
+		public Reader wrap(ByteBuffer payload) {
+			int len = payload.remaining();
+			int pos = payload.position();
+			if (len < HEADER_LENGTH) throw new IllegalArgumentException("Payload shorter than the header");
+			this.buf = payload;
+			this.swap = payload.order() == ByteOrder.BIG_ENDIAN;
+			this.base = pos;
+			int block = getShort(0) & 0xffff;
+			int template = getShort(2) & 0xffff;
+			if (template != layout.templateId) {
+				throw new IllegalArgumentException("Template " + template + ", expected " + layout.templateId);
+			}
+			if (HEADER_LENGTH + block > len) throw new IllegalArgumentException("Payload shorter than its block");
+			this.receivedBlock = block;
+			return this;
+		}
+
+		/**
+		 * Reads the payload in <code>array</code>, for example one filled by
+		 * readAttachmentBytes(). The view of the array is kept for the next
+		 * wrap of the same array.
+		 */
+		public Reader wrap(byte[] array, int offset, int length) {
+			if (arrayView == null || arrayView.array() != array) {
+				arrayView = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			arrayView.clear();
+			arrayView.position(offset);
+			arrayView.limit(offset + length);
+			return wrap(arrayView);
+		}
+
+		private short getShort(int offset) {
+			short v = buf.getShort(base + offset);
+			return swap ? Short.reverseBytes(v) : v;
+		}
+
+		private int getInt(int offset) {
+			int v = buf.getInt(base + offset);
+			return swap ? Integer.reverseBytes(v) : v;
+		}
+
+		private long getLong(int offset) {
+			long v = buf.getLong(base + offset);
+			return swap ? Long.reverseBytes(v) : v;
+		}
+
+		/** The version of the writer's layout. */
+		public int getVersion() {
+			return getShort(4) & 0xffff;
+		}
+
+		/** False if the payload comes from an older layout without <code>f</code>. */
+		public boolean has(Field f) {
+			return f.offset + f.length <= HEADER_LENGTH + receivedBlock;
+		}
+
+		public byte getByte(Field f) {
+			return buf.get(base + f.offset);
+		}
+
+		public boolean getBoolean(Field f) {
+			return buf.get(base + f.offset) != 0;
+		}
+
+		public short getShort(Field f) {
+			return getShort(f.offset);
+		}
+
+		public int getInt(Field f) {
+			return getInt(f.offset);
+		}
+
+		public long getLong(Field f) {
+			return getLong(f.offset);
+		}
+
+		public float getFloat(Field f) {
+			return Float.intBitsToFloat(getInt(f.offset));
+		}
+
+		public double getDouble(Field f) {
+			return Double.longBitsToDouble(getLong(f.offset));
+		}
+
+		/** Length of an ASCII field's value, without the padding. */
+		public int getAsciiLength(Field f) {
+			int n = 0;
+			while (n < f.length && buf.get(base + f.offset + n) != 0) n++;
+			return n;
+		}
+
+		/** Compares an ASCII field with <code>v</code> without creating a String. */
+		public boolean asciiEquals(Field f, CharSequence v) {
+			int n = getAsciiLength(f);
+			if (n != v.length()) return false;
+			for (int i = 0; i < n; i++) {
+				if (buf.get(base + f.offset + i) != (byte) v.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		/** Appends an ASCII field to <code>dst</code>, which can be reused. */
+		public StringBuilder getAscii(Field f, StringBuilder dst) {
+			int n = getAsciiLength(f);
+			for (int i = 0; i < n; i++) dst.append((char) buf.get(base + f.offset + i));
+			return dst;
+		}
+
+		/** An ASCII field as a new String. */
+		public String getString(Field f) {
+			return getAscii(f, new StringBuilder(f.length)).toString();
+		}
+	}
+}
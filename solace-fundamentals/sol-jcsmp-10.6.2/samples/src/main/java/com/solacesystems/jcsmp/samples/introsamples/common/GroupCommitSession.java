@@ -0,0 +1,243 @@
+/**
+ * GroupCommitSession.java
+ *
+ * Group-commit wrapper for a TransactedSession: units of work (a consumed
+ * message and the messages produced for it) are collected for up to N units
+ * or T microseconds and then committed together.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.concurrent.TimeUnit;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.FlowReceiver;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.transaction.RollbackException;
+import com.solacesystems.jcsmp.transaction.TransactedSession;
+
+/**
+ * A TransactedSession must not be committed while another thread is still
+ * consuming or producing in the same transaction, so a GroupCommitSession is
+ * driven by a single thread: create the transacted flow with a null listener
+ * and either call {@link #run(FlowReceiver, MessageProcessor, CommitListener, long, int)}, or call
+ * {@link #add(Object, CommitListener)} after processing each message and use
+ * {@link #millisUntilDue()} as the receive timeout followed by
+ * {@link #commitIfDue()}.
+ *
+ * Note that the message broker limits the number of messages in a single
+ * transaction (256 by default), which bounds the useful group size.
+ */
+public class GroupCommitSession {
+
+	/**
+	 * Per-unit completion notification.
+	 */
+	public interface CommitListener {
+		void onCommitted(Object token);
+
+		void onRolledBack(Object token, JCSMPException cause);
+	}
+
+	/**
+	 * Processes one consumed message inside the current transaction, typically
+	 * by sending replies through a producer of the same TransactedSession.
+	 * The returned token is handed back to the CommitListener.
+	 */
+	public interface MessageProcessor {
+		Object process(BytesXMLMessage message) throws JCSMPException;
+	}
+
+	private final TransactedSession txSession;
+	private final int maxGroupSize;
+	private final long maxDelayNanos;
+
+	// Current group, preallocated so that adding a unit does not allocate.
+	private final Object[] tokens;
+	private final CommitListener[] listeners;
+	private final long[] addedNanos;
+	private int groupSize = 0;
+
+	// Statistics; the counters may be read from other threads.
+	private volatile long commits = 0;
+	private volatile long unitsCommitted = 0;
+	private long rollbacks = 0;
+	private long unitsRolledBack = 0;
+	private long commitNanosTotal = 0;
+	private long latencyNanosTotal = 0;
+	private long latencyNanosMax = 0;
+
+	/**
+	 * @param txSession the transacted session whose work is grouped
+	 * @param maxGroupSize commit once this many units are pending
+	 * @param maxDelayMicros commit once the oldest pending unit is this old
+	 */
+	public GroupCommitSession(TransactedSession txSession, int maxGroupSize, long maxDelayMicros) {
+		if (maxGroupSize < 1) {
+			throw new IllegalArgumentException("maxGroupSize must be at least 1");
+		}
+		this.txSession = txSession;
+		this.maxGroupSize = maxGroupSize;
+		this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+		this.tokens = new Object[maxGroupSize];
+		this.listeners = new CommitListener[maxGroupSize];
+		this.addedNanos = new long[maxGroupSize];
+	}
+
+	public TransactedSession getTransactedSession() {
+		return txSession;
+	}
+
+	/**
+	 * Records one unit of work done in the current transaction, and commits
+	 * if the group is full.
+	 */
+	public void add(Object token, CommitListener listener) throws JCSMPException {
+		tokens[groupSize] = token;
+		listeners[groupSize] = listener;
+		addedNanos[groupSize] = System.nanoTime();
+		groupSize++;
+		if (groupSize >= maxGroupSize) {
+			commit();
+		}
+	}
+
+	/**
+	 * Time until the pending group must be committed, suitable as a receive
+	 * timeout. Returns 0 when no unit is pending.
+	 */
+	public int millisUntilDue() {
+		if (groupSize == 0) return 0;
+		long remaining = addedNanos[0] + maxDelayNanos - System.nanoTime();
+		// Never return 0 with work pending, it would not be a usable timeout.
+		return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+	}
+
+	/**
+	 * Commits the pending group if its oldest unit has waited long enough.
+	 */
+	public boolean commitIfDue() throws JCSMPException {
+		if (groupSize > 0 && System.nanoTime() - addedNanos[0] >= maxDelayNanos) {
+			commit();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Commits all pending units now. Every pending listener is notified,
+	 * either of the commit or of the rollback.
+	 */
+	public void commit() throws JCSMPException {
+		if (groupSize == 0) return;
+		long start = System.nanoTime();
+		try {
+			txSession.commit();
+		} catch (RollbackException e) {
+			failGroup(e);
+			throw e;
+		} catch (JCSMPException e) {
+			// Includes TransactionResultUnknownException: the outcome is not
+			// known, so the units are reported as not committed.
+			failGroup(e);
+			throw e;
+		}
+		long end = System.nanoTime();
+		commits++;
+		commitNanosTotal += end - start;
+		for (int i = 0; i < groupSize; i++) {
+			long latency = end - addedNanos[i];
+			latencyNanosTotal += latency;
+			if (latency > latencyNanosMax) latencyNanosMax = latency;
+			if (listeners[i] != null) listeners[i].onCommitted(tokens[i]);
+		}
+		unitsCommitted += groupSize;
+		clearGroup();
+	}
+
+	/**
+	 * Rolls back the current transaction, including work not yet added as a
+	 * unit, and notifies all pending units. Consumed messages are redelivered.
+	 */
+	public void rollback(JCSMPException cause) throws JCSMPException {
+		try {
+			txSession.rollback();
+		} finally {
+			failGroup(cause);
+		}
+	}
+
+	private void failGroup(JCSMPException cause) {
+		if (groupSize == 0) return;
+		rollbacks++;
+		unitsRolledBack += groupSize;
+		for (int i = 0; i < groupSize; i++) {
+			if (listeners[i] != null) listeners[i].onRolledBack(tokens[i], cause);
+		}
+		clearGroup();
+	}
+
+	private void clearGroup() {
+		for (int i = 0; i < groupSize; i++) {
+			tokens[i] = null;
+			listeners[i] = null;
+		}
+		groupSize = 0;
+	}
+
+	/**
+	 * Receives from <code>receiver</code> and processes messages until
+	 * <code>maxUnits</code> units have been committed (0 for no limit) or
+	 * no message arrives for <code>idleTimeoutMs</code>. Pending work is
+	 * committed before returning. A failure in the processor, or a commit
+	 * rolled back by the broker, rolls back the current group; its messages
+	 * are redelivered and processed again.
+	 */
+	public void run(FlowReceiver receiver, MessageProcessor processor, CommitListener listener,
+		long maxUnits, int idleTimeoutMs) throws JCSMPException {
+		long target = unitsCommitted + maxUnits;
+		while (maxUnits <= 0 || unitsCommitted + groupSize < target) {
+			int timeout = groupSize == 0 ? idleTimeoutMs : Math.min(idleTimeoutMs, millisUntilDue());
+			BytesXMLMessage msg = receiver.receive(timeout);
+			try {
+				if (msg == null) {
+					if (groupSize == 0) break; // idle
+					commitIfDue();
+					continue;
+				}
+				Object token;
+				try {
+					token = processor.process(msg);
+				} catch (JCSMPException e) {
+					if (listener != null) listener.onRolledBack(msg, e);
+					rollback(e);
+					continue;
+				}
+				add(token, listener);
+				commitIfDue();
+			} catch (RollbackException e) {
+				// Listeners have been notified; the messages will be redelivered.
+			}
+		}
+		commit();
+	}
+
+	public long getCommitCount() {
+		return commits;
+	}
+
+	public long getUnitsCommitted() {
+		return unitsCommitted;
+	}
+
+	public String getReport() {
+		return String.format("commits: %d, units committed: %d, avg group: %.1f, avg commit: %.3f ms, "
+			+ "avg/max add-to-commit latency: %.3f / %.3f ms, rollbacks: %d (%d units)",
+			commits, unitsCommitted, commits == 0 ? 0.0 : (double) unitsCommitted / commits,
+			commits == 0 ? 0.0 : commitNanosTotal / 1e6 / commits,
+			unitsCommitted == 0 ? 0.0 : latencyNanosTotal / 1e6 / unitsCommitted,
+			latencyNanosMax / 1e6, rollbacks, unitsRolledBack);
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * HedgedRequestor.java
+ *
+ * A direct-messaging requestor that hedges slow requests: when no reply has
+ * arrived within a dynamic threshold (the observed latency percentile), a
+ * duplicate request is sent to the same or an alternate destination and the
+ * first reply wins.
+ *
+ * Copyright 2013-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPProperties;
+import com.solacesystems.jcsmp.JCSMPRequestTimeoutException;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.XMLMessage;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+
+/**
+ * Replies are matched on correlation ID, so this object must be installed as
+ * the listener of the session's XMLMessageConsumer. The original request and
+ * its hedge carry distinct correlation IDs that map to the same pending
+ * request, which lets us tell which copy answered first and, when the hedge
+ * wins, how much later the original reply showed up.
+ */
+public class HedgedRequestor implements XMLMessageListener {
+
+	private static final String HEDGE_SUFFIX = "/h";
+	private static final int LATENCY_WINDOW = 1024;
+	private static final int RECOMPUTE_EVERY = 64;
+	private static final int MAX_LATE_WATCH = 1024;
+
+	private final XMLMessageProducer producer;
+	private final Destination replyTo;
+	private final long timeoutMs;
+	private final double hedgeBudget;
+	private final double percentile;
+	private final String correlationPrefix;
+
+	private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<String, Pending>();
+	private final ConcurrentHashMap<String, Pending> lateWatch = new ConcurrentHashMap<String, Pending>();
+	private final AtomicLong sequence = new AtomicLong();
+
+	// Latency window used to derive the hedge threshold, guarded by "this".
+	private final long[] window = new long[LATENCY_WINDOW];
+	private final long[] sortScratch = new long[LATENCY_WINDOW];
+	private int windowCount = 0;
+	private int windowPos = 0;
+	private volatile long hedgeThresholdNanos;
+
+	// Statistics
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	private final AtomicLong budgetDenied = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong lateOriginals = new AtomicLong();
+	private final AtomicLong savedNanos = new AtomicLong();
+
+	static final class Pending {
+		final long sentNanos;
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile BytesXMLMessage reply;
+		volatile boolean hedgeWon;
+		volatile long latencyNanos;
+
+		Pending(long sentNanos) {
+			this.sentNanos = sentNanos;
+		}
+	}
+
+	/**
+	 * @param session a connected session; its P2P inbox is used as the reply address
+	 * @param producer the producer used to send requests
+	 * @param timeoutMs overall time to wait for a reply
+	 * @param initialThresholdMs hedge threshold used until enough latencies are observed
+	 * @param percentile latency percentile (0-100) used as the dynamic hedge threshold
+	 * @param hedgeBudget maximum fraction of requests that may be hedged (e.g. 0.05)
+	 */
+	public HedgedRequestor(JCSMPSession session, XMLMessageProducer producer, long timeoutMs,
+		long initialThresholdMs, double percentile, double hedgeBudget) {
+		this.producer = producer;
+		this.timeoutMs = timeoutMs;
+		this.percentile = percentile;
+		this.hedgeBudget = hedgeBudget;
+		this.hedgeThresholdNanos = TimeUnit.MILLISECONDS.toNanos(initialThresholdMs);
+		String inbox = (String) session.getProperty(JCSMPProperties.P2PINBOX_IN_USE);
+		this.replyTo = JCSMPFactory.onlyInstance().createTopic(inbox);
+		this.correlationPrefix = "#HEDGE/" + Long.toHexString(System.nanoTime()) + "/";
+	}
+
+	/**
+	 * Sends a request and blocks until the first reply, hedging to
+	 * <code>alternate</code> (or <code>primary</code> if null) when the
+	 * original is slower than the current threshold.
+	 */
+	public BytesXMLMessage request(XMLMessage request, Destination primary, Destination alternate) throws JCSMPException {
+		final String id = correlationPrefix + sequence.incrementAndGet();
+		final Pending p = new Pending(System.nanoTime());
+		pending.put(id, p);
+		requests.incrementAndGet();
+
+		try {
+			request.setReplyTo(replyTo);
+			request.setCorrelationId(id);
+			producer.send(request, primary);
+
+			long thresholdNanos = hedgeThresholdNanos;
+			long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+			boolean replied = await(p, Math.min(thresholdNanos, timeoutNanos));
+			if (!replied && thresholdNanos < timeoutNanos) {
+				if (tryAcquireHedge()) {
+					String hedgeId = id + HEDGE_SUFFIX;
+					pending.put(hedgeId, p);
+					request.setCorrelationId(hedgeId);
+					producer.send(request, alternate != null ? alternate : primary);
+				}
+				replied = await(p, timeoutNanos - (System.nanoTime() - p.sentNanos));
+			}
+			if (!replied) {
+				timeouts.incrementAndGet();
+				throw new JCSMPRequestTimeoutException("No reply received within " + timeoutMs + " ms");
+			}
+			recordLatency(p.latencyNanos);
+			return p.reply;
+		} finally {
+			pending.remove(id);
+			pending.remove(id + HEDGE_SUFFIX);
+		}
+	}
+
+	private static boolean await(Pending p, long nanos) {
+		if (nanos <= 0) {
+			return p.done.getCount() == 0;
+		}
+		try {
+			return p.done.await(nanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return p.done.getCount() == 0;
+		}
+	}
+
+	private boolean tryAcquireHedge() {
+		// Budget is expressed as a fraction of all requests issued so far.
+		for (;;) {
+			long sent = hedges.get();
+			if (sent + 1 > (long) (requests.get() * hedgeBudget)) {
+				budgetDenied.incrementAndGet();
+				return false;
+			}
+			if (hedges.compareAndSet(sent, sent + 1)) return true;
+		}
+	}
+
+	private void watchForLateOriginal(String id, Pending p) {
+		if (lateWatch.size() >= MAX_LATE_WATCH) {
+			// Originals older than the timeout will never be observed, drop them.
+			long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+			Iterator<Pending> it = lateWatch.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().sentNanos < cutoff) it.remove();
+			}
+			if (lateWatch.size() >= MAX_LATE_WATCH) return;
+		}
+		lateWatch.put(id, p);
+	}
+
+	private synchronized void recordLatency(long nanos) {
+		window[windowPos] = nanos;
+		windowPos = (windowPos + 1) % LATENCY_WINDOW;
+		if (windowCount < LATENCY_WINDOW) windowCount++;
+		if (windowCount >= RECOMPUTE_EVERY && windowPos % RECOMPUTE_EVERY == 0) {
+			hedgeThresholdNanos = percentileOf(percentile);
+		}
+	}
+
+	private synchronized long percentileOf(double pct) {
+		if (windowCount == 0) return 0;
+		System.arraycopy(window, 0, sortScratch, 0, windowCount);
+		Arrays.sort(sortScratch, 0, windowCount);
+		int idx = (int) Math.ceil(pct / 100.0 * windowCount) - 1;
+		return sortScratch[Math.max(0, Math.min(idx, windowCount - 1))];
+	}
+
+	public void onReceive(BytesXMLMessage msg) {
+		String cid = msg.getCorrelationId();
+		if (cid == null) return;
+		long now = System.nanoTime();
+		Pending p = pending.get(cid);
+		if (p != null) {
+			synchronized (p) {
+				if (p.done.getCount() != 0) {
+					p.reply = msg;
+					p.latencyNanos = now - p.sentNanos;
+					p.hedgeWon = cid.endsWith(HEDGE_SUFFIX);
+					if (p.hedgeWon) {
+						hedgeWins.incrementAndGet();
+						// Keep watching for the original so we can measure the improvement.
+						// It is registered under the lock, before done is counted down, so an
+						// original reply that takes the lock next finds it.
+						watchForLateOriginal(cid.substring(0, cid.length() - HEDGE_SUFFIX.length()), p);
+					}
+					p.done.countDown();
+					return;
+				}
+			}
+			// The other copy already answered; this may be a late original.
+		}
+		Pending late = lateWatch.remove(cid);
+		if (late != null) {
+			lateOriginals.incrementAndGet();
+			savedNanos.addAndGet((now - late.sentNanos) - late.latencyNanos);
+		}
+	}
+
+	public void onException(JCSMPException exception) {
+		System.err.println("HedgedRequestor consumer error: " + exception);
+	}
+
+	public long getHedgeThresholdMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(hedgeThresholdNanos);
+	}
+
+	/**
+	 * Returns a short report of hedge rate, latency percentiles and the
+	 * latency saved on requests where the hedge answered first.
+	 */
+	public String getReport() {
+		long reqs = requests.get();
+		StringBuilder bldr = new StringBuilder();
+		bldr.append(String.format("Requests: %d, timeouts: %d\n", reqs, timeouts.get()));
+		bldr.append(String.format("Hedges sent: %d (%.2f%% of requests, budget %.2f%%), denied by budget: %d\n",
+			hedges.get(), reqs == 0 ? 0.0 : 100.0 * hedges.get() / reqs, 100.0 * hedgeBudget, budgetDenied.get()));
+		bldr.append(String.format("Hedge wins: %d, current hedge threshold: %d ms (p%.0f)\n",
+			hedgeWins.get(), getHedgeThresholdMillis(), percentile));
+		bldr.append(String.format("Latency p50/p95/p99: %.2f / %.2f / %.2f ms\n",
+			percentileOf(50) / 1e6, percentileOf(95) / 1e6, percentileOf(99) / 1e6));
+		long late = lateOriginals.get();
+		bldr.append(String.format("Late originals observed: %d, avg latency saved by hedging: %.2f ms",
+			late, late == 0 ? 0.0 : savedNanos.get() / 1e6 / late));
+		return bldr.toString();
+	}
+}
@@ -0,0 +1,365 @@
+/**
+ * LastValueCache.java
+ *
+ * In-process last-value cache keyed by topic. It is seeded with cache
+ * requests on a CacheSession and kept current by the live subscription,
+ * so application threads can read the latest payload of a topic without a
+ * round trip to the cache or waiting for the next live message.
+ *
+ * Copyright 2006-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.CacheLiveDataAction;
+import com.solacesystems.jcsmp.CacheSession;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessageListener;
+
+/**
+ * Use the cache as (or in front of) the XMLMessageListener of the session
+ * consumer. Each message updates the entry of its destination topic; a
+ * message from the cache never replaces a value that came from live data,
+ * so a slow cache reply cannot roll a topic back.
+ *
+ * Reads never block. On the heap, each update publishes a new immutable
+ * Value. Off-heap, each topic owns a direct buffer that is overwritten in
+ * place under a sequence lock: the writer makes the sequence odd while it
+ * copies, and a reader retries if the sequence was odd or changed during its
+ * copy. Off-heap storage keeps large payloads out of the Java heap and
+ * allocates nothing per update once a topic's buffer is large enough.
+ */
+public class LastValueCache implements XMLMessageListener {
+
+	/**
+	 * Snapshot of one topic's latest value.
+	 */
+	public static final class Value {
+		private final String topic;
+		private final byte[] payload;
+		private final long timestamp;
+		private final boolean cached;
+		private final long updates;
+
+		Value(String topic, byte[] payload, long timestamp, boolean cached, long updates) {
+			this.topic = topic;
+			this.payload = payload;
+			this.timestamp = timestamp;
+			this.cached = cached;
+			this.updates = updates;
+		}
+
+		public String getTopic() {
+			return topic;
+		}
+
+		/** The payload; shared with other readers, so it must not be modified. */
+		public byte[] getPayload() {
+			return payload;
+		}
+
+		/** Time the value was stored, in milliseconds since the epoch. */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/** True if the value came from a cache reply rather than live data. */
+		public boolean isCached() {
+			return cached;
+		}
+
+		/** Number of times this topic has been updated. */
+		public long getUpdates() {
+			return updates;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d bytes, %s, %d updates", topic, payload.length, cached ? "cached" : "live",
+				updates);
+		}
+	}
+
+	/**
+	 * Storage for one topic. Writers synchronize on the slot; readers don't.
+	 */
+	static final class Slot {
+		final String topic;
+
+		// Heap storage
+		volatile Value value;
+
+		// Off-heap storage, guarded by seq
+		final AtomicLong seq = new AtomicLong();
+		volatile ByteBuffer data;
+		int length;
+		long timestamp;
+		boolean cached;
+		long updates;
+
+		Slot(String topic) {
+			this.topic = topic;
+		}
+	}
+
+	private static final int MIN_SLOT_BYTES = 64;
+
+	private final boolean offHeap;
+	private final XMLMessageListener next;
+	private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+	// Statistics
+	private final AtomicLong liveUpdates = new AtomicLong();
+	private final AtomicLong cachedUpdates = new AtomicLong();
+	private final AtomicLong staleCached = new AtomicLong();
+	private final AtomicLong offHeapBytes = new AtomicLong();
+	private final AtomicLong readRetries = new AtomicLong();
+
+	/**
+	 * @param offHeap store payloads in direct buffers instead of byte arrays
+	 * @param next listener that also receives every message, or null
+	 */
+	public LastValueCache(boolean offHeap, XMLMessageListener next) {
+		this.offHeap = offHeap;
+		this.next = next;
+	}
+
+	/**
+	 * Requests the cached value of each topic, adding a subscription for it so
+	 * that live data keeps the value current, and waits until all requests
+	 * have completed or <code>timeoutMs</code> has passed. Live data flows
+	 * through while the requests are outstanding.
+	 *
+	 * The messages must reach this cache, i.e. it must be the listener of the
+	 * session consumer, or be called from it.
+	 *
+	 * @return the manager used, for its futures and statistics
+	 */
+	public CacheRequestManager seed(CacheSession cacheSession, Collection<Topic> topics, int maxOutstanding,
+		long timeoutMs) throws JCSMPException, InterruptedException {
+		CacheRequestManager manager = new CacheRequestManager(cacheSession, maxOutstanding);
+		manager.requestAll(topics, true, CacheLiveDataAction.FLOW_THRU);
+		manager.awaitIdle(timeoutMs);
+		return manager;
+	}
+
+	public void onReceive(BytesXMLMessage msg) {
+		Destination dest = msg.getDestination();
+		if (dest instanceof Topic) {
+			update(dest.getName(), msg.getAttachmentByteBuffer(), msg.isCacheMessage());
+		}
+		if (next != null) next.onReceive(msg);
+	}
+
+	public void onException(JCSMPException e) {
+		if (next != null) {
+			next.onException(e);
+		} else {
+			System.err.println("Consumer received exception: " + e);
+		}
+	}
+
+	/**
+	 * Stores the bytes between position and limit of <code>payload</code>
+	 * (null for an empty payload) as the latest value of a topic.
+	 *
+	 * @return false if a cached value was ignored because live data for the
+	 *         topic has already arrived
+	 */
+	public boolean update(String topic, ByteBuffer payload, boolean fromCache) {
+		Slot slot = slots.get(topic);
+		if (slot == null) {
+			Slot created = new Slot(topic);
+			slot = slots.putIfAbsent(topic, created);
+			if (slot == null) slot = created;
+		}
+		int len = payload == null ? 0 : payload.remaining();
+		long now = System.currentTimeMillis();
+		synchronized (slot) {
+			if (fromCache && hasLiveValue(slot)) {
+				staleCached.incrementAndGet();
+				return false;
+			}
+			if (offHeap) {
+				slot.seq.incrementAndGet(); // odd: write in progress
+				ByteBuffer data = slot.data;
+				if (data == null || data.capacity() < len) {
+					int capacity = Math.max(MIN_SLOT_BYTES, Integer.highestOneBit(Math.max(len - 1, 1)) << 1);
+					offHeapBytes.addAndGet(capacity - (data == null ? 0 : data.capacity()));
+					data = ByteBuffer.allocateDirect(capacity);
+					slot.data = data;
+				}
+				// Readers copy from duplicates, so the shared position and
+				// limit are the writer's.
+				data.clear();
+				if (len > 0) data.put(payload.duplicate());
+				slot.length = len;
+				slot.timestamp = now;
+				slot.cached = fromCache;
+				slot.updates++;
+				slot.seq.incrementAndGet(); // even: stable
+			} else {
+				byte[] bytes = new byte[len];
+				if (len > 0) payload.duplicate().get(bytes);
+				Value old = slot.value;
+				slot.value = new Value(topic, bytes, now, fromCache, old == null ? 1 : old.updates + 1);
+			}
+		}
+		(fromCache ? cachedUpdates : liveUpdates).incrementAndGet();
+		return true;
+	}
+
+	private boolean hasLiveValue(Slot slot) {
+		if (offHeap) return slot.updates > 0 && !slot.cached;
+		Value v = slot.value;
+		return v != null && !v.cached;
+	}
+
+	/**
+	 * Returns the latest value of a topic, or null if none has been received.
+	 * On the heap this allocates nothing; off-heap the payload is copied.
+	 */
+	public Value get(String topic) {
+		Slot slot = slots.get(topic);
+		if (slot == null) return null;
+		if (!offHeap) return slot.value;
+		while (true) {
+			long s = slot.seq.get();
+			if ((s & 1) != 0) {
+				readRetries.incrementAndGet();
+				Thread.yield();
+				continue;
+			}
+			if (s == 0) return null;
+			ByteBuffer data = slot.data;
+			int len = slot.length;
+			long timestamp = slot.timestamp;
+			boolean cached = slot.cached;
+			long updates = slot.updates;
+			byte[] bytes = null;
+			if (len <= data.capacity()) {
+				bytes = new byte[len];
+				ByteBuffer src = data.duplicate();
+				src.limit(len).position(0);
+				src.get(bytes);
+			}
+			if (validate(slot, s) && bytes != null) {
+				return new Value(topic, bytes, timestamp, cached, updates);
+			}
+			readRetries.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Copies the latest payload of a topic into <code>dst</code> at its
+	 * position, without allocating.
+	 *
+	 * @return the payload length, or -1 if the topic has no value
+	 * @throws BufferOverflowException if the payload does not fit; dst is
+	 *         unchanged
+	 */
+	public int read(String topic, ByteBuffer dst) {
+		Slot slot = slots.get(topic);
+		if (slot == null) return -1;
+		if (!offHeap) {
+			Value v = slot.value;
+			if (v == null) return -1;
+			dst.put(v.payload);
+			return v.payload.length;
+		}
+		int start = dst.position();
+		while (true) {
+			long s = slot.seq.get();
+			if ((s & 1) != 0) {
+				readRetries.incrementAndGet();
+				Thread.yield();
+				continue;
+			}
+			if (s == 0) return -1;
+			ByteBuffer data = slot.data;
+			int len = slot.length;
+			boolean copied = false;
+			if (len <= data.capacity() && len <= dst.limit() - start) {
+				ByteBuffer src = data.duplicate();
+				src.limit(len).position(0);
+				dst.position(start);
+				dst.put(src);
+				copied = true;
+			}
+			if (validate(slot, s)) {
+				if (!copied) throw new BufferOverflowException();
+				return len;
+			}
+			readRetries.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Second read of the sequence, after the data has been copied. A
+	 * read-modify-write rather than a plain volatile read: the Java memory
+	 * model lets the plain reads of the fields and the buffer move after a
+	 * volatile load, and a torn copy would then validate. The cost is that
+	 * concurrent readers of a slot write to its sequence's cache line.
+	 */
+	private static boolean validate(Slot slot, long s) {
+		return slot.seq.getAndAdd(0) == s;
+	}
+
+	public boolean contains(String topic) {
+		Slot slot = slots.get(topic);
+		return slot != null && (offHeap ? slot.seq.get() != 0 : slot.value != null);
+	}
+
+	public int size() {
+		return slots.size();
+	}
+
+	public Set<String> getTopics() {
+		return Collections.unmodifiableSet(slots.keySet());
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	public long getLiveUpdates() {
+		return liveUpdates.get();
+	}
+
+	public long getCachedUpdates() {
+		return cachedUpdates.get();
+	}
+
+	/** Cached messages ignored because the topic already had a live value. */
+	public long getStaleCached() {
+		return staleCached.get();
+	}
+
+	/** Direct memory held by off-heap slots. */
+	public long getOffHeapBytes() {
+		return offHeapBytes.get();
+	}
+
+	/** Off-heap reads that had to be repeated because of a concurrent update. */
+	public long getReadRetries() {
+		return readRetries.get();
+	}
+
+	public String getReport() {
+		return String.format("%d topics (%s), updates: %d live, %d cached, %d stale cached ignored%s",
+			size(), offHeap ? "off-heap" : "heap", getLiveUpdates(), getCachedUpdates(), getStaleCached(),
+			offHeap ? String.format(", %d bytes direct memory, %d read retries", getOffHeapBytes(), getReadRetries())
+				: "");
+	}
+}
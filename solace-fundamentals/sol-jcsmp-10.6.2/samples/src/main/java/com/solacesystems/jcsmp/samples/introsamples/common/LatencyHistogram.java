@@ -0,0 +1,136 @@
+/**
+ * LatencyHistogram.java
+ *
+ * Fixed-size, thread-safe latency histogram with log-linear buckets
+ * (32 sub-buckets per power of two, so about 3% resolution). Recording
+ * a value does not allocate.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int LINEAR_LIMIT = SUB_COUNT * 2;
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BITS) * SUB_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one value, typically a latency in microseconds.
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+			// retry
+		}
+	}
+
+	public void recordNanosAsMicros(long nanos) {
+		record(nanos / 1000);
+	}
+
+	static int indexOf(long value) {
+		if (value < LINEAR_LIMIT) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+		return LINEAR_LIMIT + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+	}
+
+	static long upperBoundOf(int index) {
+		if (index < LINEAR_LIMIT) return index;
+		int exponent = (index - LINEAR_LIMIT) / SUB_COUNT + SUB_BITS + 1;
+		int sub = (index - LINEAR_LIMIT) % SUB_COUNT;
+		long width = 1L << (exponent - SUB_BITS);
+		return ((long) (SUB_COUNT + sub) << (exponent - SUB_BITS)) + width - 1;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long c = count.get();
+		return c == 0 ? 0 : (double) sum.get() / c;
+	}
+
+	/**
+	 * Returns the value at the given percentile (0-100), accurate to the
+	 * bucket resolution and never above the recorded maximum.
+	 */
+	public long getPercentile(double percentile) {
+		long c = count.get();
+		if (c == 0) return 0;
+		long rank = (long) Math.ceil(percentile / 100.0 * c);
+		if (rank < 1) rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * One-line summary of count, mean and percentiles.
+	 */
+	public String getSummary(String unit) {
+		return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d (%s)",
+			getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99),
+			getPercentile(99.9), getMax(), unit);
+	}
+
+	/**
+	 * Multi-line distribution with one row per power-of-two range.
+	 */
+	public String getDistribution(String unit) {
+		StringBuilder bldr = new StringBuilder();
+		long total = count.get();
+		if (total == 0) return "   (no samples)\n";
+		long low = 0;
+		long high = 1;
+		long rowCount = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long upper = upperBoundOf(i);
+			if (upper >= high) {
+				appendRow(bldr, low, high, rowCount, total, unit);
+				low = high;
+				while (high <= upper) high <<= 1;
+				rowCount = 0;
+			}
+			rowCount += counts.get(i);
+		}
+		appendRow(bldr, low, high, rowCount, total, unit);
+		return bldr.toString();
+	}
+
+	private static void appendRow(StringBuilder bldr, long low, long high, long rowCount, long total, String unit) {
+		if (rowCount == 0) return;
+		int bar = (int) Math.round(50.0 * rowCount / total);
+		StringBuilder stars = new StringBuilder();
+		for (int i = 0; i < bar; i++) stars.append('#');
+		bldr.append(String.format("   [%8d, %8d) %s %10d %6.2f%% %s\n", low, high, unit, rowCount,
+			100.0 * rowCount / total, stars));
+	}
+}
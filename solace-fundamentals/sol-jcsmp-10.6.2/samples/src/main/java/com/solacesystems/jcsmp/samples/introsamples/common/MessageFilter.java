@@ -0,0 +1,153 @@
+/**
+ * MessageFilter.java
+ *
+ * A predicate on browsed or received messages, with factories for the
+ * common criteria: topic, user property, age, size and class of service.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTMap;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.User_Cos;
+
+/**
+ * Filters are evaluated on the client, per message. Where a criterion can
+ * be written as a selector, passing the selector to the Browser as well
+ * saves transferring the messages that cannot match.
+ */
+public abstract class MessageFilter {
+
+	/**
+	 * @param now the current time in milliseconds, for age criteria
+	 */
+	public abstract boolean accept(BytesXMLMessage msg, long now);
+
+	public abstract String toString();
+
+	/** Accepts every message. */
+	public static MessageFilter any() {
+		return new MessageFilter() {
+			public boolean accept(BytesXMLMessage msg, long now) {
+				return true;
+			}
+
+			public String toString() {
+				return "any";
+			}
+		};
+	}
+
+	/**
+	 * Accepts messages published to a topic matching <code>pattern</code>,
+	 * which may use the '*' and '>' wildcards.
+	 */
+	public static MessageFilter topic(final String pattern) {
+		return new MessageFilter() {
+			public boolean accept(BytesXMLMessage msg, long now) {
+				Destination dest = msg.getDestination();
+				return dest instanceof Topic && TopicMatcher.matches(pattern, dest.getName());
+			}
+
+			public String toString() {
+				return "topic " + pattern;
+			}
+		};
+	}
+
+	/**
+	 * Accepts messages with a user property <code>name</code> whose string
+	 * form equals <code>value</code>, or, if <code>value</code> is null,
+	 * with any value.
+	 */
+	public static MessageFilter property(final String name, final String value) {
+		return new MessageFilter() {
+			public boolean accept(BytesXMLMessage msg, long now) {
+				SDTMap props = msg.getProperties();
+				if (props == null || !props.containsKey(name)) return false;
+				if (value == null) return true;
+				try {
+					Object v = props.get(name);
+					return v != null && value.equals(v.toString());
+				} catch (SDTException e) {
+					return false;
+				}
+			}
+
+			public String toString() {
+				return value == null ? "property " + name : "property " + name + "=" + value;
+			}
+		};
+	}
+
+	/**
+	 * Accepts messages sent more than <code>ageMillis</code> ago. The age
+	 * is taken from the sender timestamp, since the API does not expose the
+	 * spool time; messages without one never match.
+	 */
+	public static MessageFilter olderThan(final long ageMillis) {
+		return new MessageFilter() {
+			public boolean accept(BytesXMLMessage msg, long now) {
+				Long sent = msg.getSenderTimestamp();
+				return sent != null && now - sent.longValue() > ageMillis;
+			}
+
+			public String toString() {
+				return "older than " + ageMillis + " ms";
+			}
+		};
+	}
+
+	/** Accepts messages whose attachment and XML content sizes add up to min..max bytes. */
+	public static MessageFilter size(final int min, final int max) {
+		return new MessageFilter() {
+			public boolean accept(BytesXMLMessage msg, long now) {
+				int size = msg.getAttachmentContentLength() + msg.getContentLength();
+				return size >= min && size <= max;
+			}
+
+			public String toString() {
+				return "size " + min + ".." + max;
+			}
+		};
+	}
+
+	public static MessageFilter cos(final User_Cos cos) {
+		return new MessageFilter() {
+			public boolean accept(BytesXMLMessage msg, long now) {
+				return msg.getCos() == cos;
+			}
+
+			public String toString() {
+				return "cos " + cos;
+			}
+		};
+	}
+
+	/** Accepts messages that every one of <code>filters</code> accepts. */
+	public static MessageFilter all(final MessageFilter... filters) {
+		if (filters.length == 1) return filters[0];
+		return new MessageFilter() {
+			public boolean accept(BytesXMLMessage msg, long now) {
+				for (MessageFilter f : filters) {
+					if (!f.accept(msg, now)) return false;
+				}
+				return true;
+			}
+
+			public String toString() {
+				StringBuilder sb = new StringBuilder();
+				for (MessageFilter f : filters) {
+					if (sb.length() > 0) sb.append(" and ");
+					sb.append(f);
+				}
+				return sb.length() == 0 ? "any" : sb.toString();
+			}
+		};
+	}
+}
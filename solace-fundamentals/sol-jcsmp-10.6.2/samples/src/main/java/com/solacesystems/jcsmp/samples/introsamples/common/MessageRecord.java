@@ -0,0 +1,459 @@
+/**
+ * MessageRecord.java
+ *
+ * Compact binary form of a received message for SegmentedLogWriter: the
+ * time it was captured, its destination, headers, user properties, user
+ * data, XML content and attachment. Records can be decoded and turned back
+ * into messages to republish.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTMap;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.User_Cos;
+
+/**
+ * Strings are UTF-8 with a short length, -1 for null; byte arrays have an
+ * int length. User properties of simple types (strings, numbers, booleans,
+ * characters and byte arrays) are kept; nested maps, streams and
+ * destinations are skipped and counted.
+ */
+public final class MessageRecord {
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final byte DEST_NONE = 0;
+	static final byte DEST_TOPIC = 1;
+	static final byte DEST_QUEUE = 2;
+
+	static final int FLAG_REDELIVERED = 1;
+	static final int FLAG_DMQ_ELIGIBLE = 2;
+	static final int FLAG_ELIDING_ELIGIBLE = 4;
+	// 8 is unused: the deprecated deliver-to-one flag is not recorded.
+	static final int FLAG_REPLY = 16;
+	static final int FLAG_STRUCTURED = 32;
+
+	static final byte P_STRING = 1;
+	static final byte P_INT = 2;
+	static final byte P_LONG = 3;
+	static final byte P_BOOLEAN = 4;
+	static final byte P_DOUBLE = 5;
+	static final byte P_FLOAT = 6;
+	static final byte P_SHORT = 7;
+	static final byte P_BYTE = 8;
+	static final byte P_BYTES = 9;
+	static final byte P_CHAR = 10;
+
+	/**
+	 * Encodes messages into a reusable buffer that grows as needed. Not
+	 * thread-safe.
+	 */
+	public static final class Encoder {
+		private ByteBuffer buf = ByteBuffer.allocate(4096);
+		private byte[] scratch = new byte[256];
+		private long skippedProperties;
+
+		/**
+		 * @param timestamp capture time to store, e.g. the arrival time, in
+		 *        wall-clock nanoseconds since the epoch
+		 * @return the encoded record, between position and limit; valid
+		 *         until the next call
+		 */
+		public ByteBuffer encode(BytesXMLMessage msg, long timestamp) {
+			ByteBuffer attachment = msg.getAttachmentByteBuffer();
+			int attachmentLen = attachment == null ? 0 : attachment.remaining();
+			int contentLen = msg.getContentLength();
+			// Fixed part and strings are small; reserve for the bulk up front.
+			buf.clear();
+			ensure(512 + attachmentLen + contentLen);
+			buf.putLong(timestamp);
+			putDestination(msg.getDestination());
+			putDestination(msg.getReplyTo());
+			putString(msg.getMessageId());
+			putString(msg.getApplicationMessageId());
+			putString(msg.getApplicationMessageType());
+			putString(msg.getCorrelationId());
+			putString(msg.getSenderId());
+			putString(msg.getHTTPContentType());
+			putString(msg.getHTTPContentEncoding());
+			Long senderTimestamp = msg.getSenderTimestamp();
+			ensure(64);
+			buf.putLong(senderTimestamp == null ? -1 : senderTimestamp.longValue());
+			Long sequence = msg.getSequenceNumber();
+			buf.putLong(sequence == null ? -1 : sequence.longValue());
+			buf.putLong(msg.getExpiration());
+			buf.putLong(msg.getTimeToLive());
+			buf.putInt(msg.getPriority());
+			buf.put((byte) (msg.getDeliveryMode() == null ? -1 : msg.getDeliveryMode().ordinal()));
+			buf.put((byte) (msg.getCos() == null ? -1 : msg.getCos().ordinal()));
+			int flags = (msg.getRedelivered() ? FLAG_REDELIVERED : 0) | (msg.isDMQEligible() ? FLAG_DMQ_ELIGIBLE : 0)
+				| (msg.isElidingEligible() ? FLAG_ELIDING_ELIGIBLE : 0)
+				| (msg.isReplyMessage() ? FLAG_REPLY : 0)
+				| (msg.isStructuredMsg() ? FLAG_STRUCTURED : 0);
+			buf.putInt(flags);
+			buf.put(msg.getStructuredMsgType());
+			putProperties(msg.getProperties());
+			putBytes(msg.hasUserData() ? msg.getUserData() : null, 0, -1);
+
+			ensure(8 + contentLen + attachmentLen);
+			buf.putInt(contentLen);
+			if (contentLen > 0) {
+				if (scratch.length < contentLen) scratch = new byte[contentLen];
+				msg.readContentBytes(0, scratch, 0, contentLen);
+				buf.put(scratch, 0, contentLen);
+			}
+			buf.putInt(attachmentLen);
+			if (attachmentLen > 0) buf.put(attachment.duplicate());
+			buf.flip();
+			return buf;
+		}
+
+		/** Properties of unsupported types that were not recorded. */
+		public long getSkippedProperties() {
+			return skippedProperties;
+		}
+
+		private void ensure(int more) {
+			if (buf.remaining() >= more) return;
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + more));
+			buf.flip();
+			bigger.put(buf);
+			buf = bigger;
+		}
+
+		private void putString(String s) {
+			if (s == null) {
+				ensure(2);
+				buf.putShort((short) -1);
+				return;
+			}
+			byte[] b = s.getBytes(UTF8);
+			int len = Math.min(b.length, Short.MAX_VALUE);
+			ensure(2 + len);
+			buf.putShort((short) len);
+			buf.put(b, 0, len);
+		}
+
+		private void putBytes(byte[] b, int off, int len) {
+			if (b == null) {
+				ensure(4);
+				buf.putInt(-1);
+				return;
+			}
+			if (len < 0) len = b.length;
+			ensure(4 + len);
+			buf.putInt(len);
+			buf.put(b, off, len);
+		}
+
+		private void putDestination(Destination dest) {
+			ensure(1);
+			if (dest instanceof Topic) {
+				buf.put(DEST_TOPIC);
+			} else if (dest instanceof Queue) {
+				buf.put(DEST_QUEUE);
+			} else {
+				buf.put(DEST_NONE);
+				return;
+			}
+			putString(dest.getName());
+		}
+
+		private void putProperties(SDTMap props) {
+			ensure(2);
+			int countPos = buf.position();
+			buf.putShort((short) 0);
+			if (props == null) return;
+			int count = 0;
+			for (String key : props.keySet()) {
+				Object v;
+				try {
+					v = props.get(key);
+				} catch (SDTException e) {
+					skippedProperties++;
+					continue;
+				}
+				int start = buf.position();
+				putString(key);
+				ensure(16);
+				if (v instanceof String) {
+					buf.put(P_STRING);
+					putString((String) v);
+				} else if (v instanceof Integer) {
+					buf.put(P_INT).putInt((Integer) v);
+				} else if (v instanceof Long) {
+					buf.put(P_LONG).putLong((Long) v);
+				} else if (v instanceof Boolean) {
+					buf.put(P_BOOLEAN).put((byte) (((Boolean) v) ? 1 : 0));
+				} else if (v instanceof Double) {
+					buf.put(P_DOUBLE).putDouble((Double) v);
+				} else if (v instanceof Float) {
+					buf.put(P_FLOAT).putFloat((Float) v);
+				} else if (v instanceof Short) {
+					buf.put(P_SHORT).putShort((Short) v);
+				} else if (v instanceof Byte) {
+					buf.put(P_BYTE).put((Byte) v);
+				} else if (v instanceof Character) {
+					buf.put(P_CHAR).putChar((Character) v);
+				} else {
+					// Byte arrays; the map refuses anything else, such as a
+					// nested map or a destination, which is skipped.
+					byte[] b = null;
+					try {
+						if (v != null) b = props.getBytes(key);
+					} catch (SDTException e) {
+						// not a byte array
+					}
+					if (b == null) {
+						buf.position(start);
+						skippedProperties++;
+						continue;
+					}
+					buf.put(P_BYTES);
+					putBytes(b, 0, -1);
+				}
+				count++;
+			}
+			buf.putShort(countPos, (short) count);
+		}
+	}
+
+	// Decoded fields
+	private long timestamp;
+	private byte destinationType;
+	private String destination;
+	private byte replyToType;
+	private String replyTo;
+	private String messageId;
+	private String applicationMessageId;
+	private String applicationMessageType;
+	private String correlationId;
+	private String senderId;
+	private String httpContentType;
+	private String httpContentEncoding;
+	private long senderTimestamp;
+	private long sequenceNumber;
+	private long expiration;
+	private long timeToLive;
+	private int priority;
+	private byte deliveryMode;
+	private byte cos;
+	private int flags;
+	private byte structuredMsgType;
+	private SDTMap properties;
+	private byte[] userData;
+	private byte[] content;
+	private ByteBuffer attachment;
+
+	private MessageRecord() {
+	}
+
+	/**
+	 * Decodes a record. The attachment is a view into <code>record</code>,
+	 * not a copy.
+	 */
+	public static MessageRecord decode(ByteBuffer record) throws SDTException {
+		ByteBuffer in = record.duplicate();
+		MessageRecord r = new MessageRecord();
+		r.timestamp = in.getLong();
+		r.destinationType = in.get();
+		r.destination = r.destinationType == DEST_NONE ? null : getString(in);
+		r.replyToType = in.get();
+		r.replyTo = r.replyToType == DEST_NONE ? null : getString(in);
+		r.messageId = getString(in);
+		r.applicationMessageId = getString(in);
+		r.applicationMessageType = getString(in);
+		r.correlationId = getString(in);
+		r.senderId = getString(in);
+		r.httpContentType = getString(in);
+		r.httpContentEncoding = getString(in);
+		r.senderTimestamp = in.getLong();
+		r.sequenceNumber = in.getLong();
+		r.expiration = in.getLong();
+		r.timeToLive = in.getLong();
+		r.priority = in.getInt();
+		r.deliveryMode = in.get();
+		r.cos = in.get();
+		r.flags = in.getInt();
+		r.structuredMsgType = in.get();
+		int count = in.getShort();
+		if (count > 0) {
+			r.properties = JCSMPFactory.onlyInstance().createMap();
+			for (int i = 0; i < count; i++) {
+				String key = getString(in);
+				byte type = in.get();
+				switch (type) {
+				case P_STRING: r.properties.putString(key, getString(in)); break;
+				case P_INT: r.properties.putInteger(key, in.getInt()); break;
+				case P_LONG: r.properties.putLong(key, in.getLong()); break;
+				case P_BOOLEAN: r.properties.putBoolean(key, in.get() != 0); break;
+				case P_DOUBLE: r.properties.putDouble(key, in.getDouble()); break;
+				case P_FLOAT: r.properties.putFloat(key, in.getFloat()); break;
+				case P_SHORT: r.properties.putShort(key, in.getShort()); break;
+				case P_BYTE: r.properties.putByte(key, in.get()); break;
+				case P_CHAR: r.properties.putCharacter(key, in.getChar()); break;
+				case P_BYTES: r.properties.putBytes(key, getBytes(in)); break;
+				default:
+					throw new IllegalArgumentException("Unknown property type " + type + " in record");
+				}
+			}
+		}
+		r.userData = getBytes(in);
+		int contentLen = in.getInt();
+		if (contentLen > 0) {
+			r.content = new byte[contentLen];
+			in.get(r.content);
+		}
+		int attachmentLen = in.getInt();
+		r.attachment = in.slice();
+		r.attachment.limit(attachmentLen);
+		return r;
+	}
+
+	private static String getString(ByteBuffer in) {
+		int len = in.getShort();
+		if (len < 0) return null;
+		if (!in.hasArray()) return new String(copy(in, len), UTF8);
+		String s = new String(in.array(), in.arrayOffset() + in.position(), len, UTF8);
+		in.position(in.position() + len);
+		return s;
+	}
+
+	private static byte[] copy(ByteBuffer in, int len) {
+		byte[] b = new byte[len];
+		in.get(b);
+		return b;
+	}
+
+	private static byte[] getBytes(ByteBuffer in) {
+		int len = in.getInt();
+		return len < 0 ? null : copy(in, len);
+	}
+
+	/**
+	 * Builds a message with the recorded headers, properties and payload,
+	 * ready to be sent. Broker-assigned values (message ID, redelivered
+	 * flag, expiration, sequence number) are not carried over.
+	 */
+	public BytesXMLMessage toMessage() {
+		BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+		if (replyTo != null) msg.setReplyTo(createDestination(replyToType, replyTo));
+		if (applicationMessageId != null) msg.setApplicationMessageId(applicationMessageId);
+		if (applicationMessageType != null) msg.setApplicationMessageType(applicationMessageType);
+		if (correlationId != null) msg.setCorrelationId(correlationId);
+		if (senderId != null) msg.setSenderId(senderId);
+		if (httpContentType != null) msg.setHTTPContentType(httpContentType);
+		if (httpContentEncoding != null) msg.setHTTPContentEncoding(httpContentEncoding);
+		if (senderTimestamp >= 0) msg.setSenderTimestamp(senderTimestamp);
+		if (timeToLive > 0) msg.setTimeToLive(timeToLive);
+		if (priority >= 0) msg.setPriority(priority);
+		if (deliveryMode >= 0) msg.setDeliveryMode(DeliveryMode.values()[deliveryMode]);
+		if (cos >= 0) msg.setCos(User_Cos.values()[cos]);
+		msg.setDMQEligible((flags & FLAG_DMQ_ELIGIBLE) != 0);
+		msg.setElidingEligible((flags & FLAG_ELIDING_ELIGIBLE) != 0);
+		msg.setAsReplyMessage((flags & FLAG_REPLY) != 0);
+		if ((flags & FLAG_STRUCTURED) != 0) {
+			msg.setStructuredMsg(true);
+			msg.setStructuredMsgType(structuredMsgType);
+		}
+		if (properties != null) msg.setProperties(properties);
+		if (userData != null) msg.setUserData(userData);
+		if (content != null) msg.writeBytes(content);
+		if (attachment.remaining() > 0) {
+			if (attachment.hasArray()) {
+				msg.writeAttachment(attachment.array(), attachment.arrayOffset() + attachment.position(),
+					attachment.remaining());
+			} else {
+				msg.writeAttachment(copy(attachment.duplicate(), attachment.remaining()));
+			}
+		}
+		return msg;
+	}
+
+	static Destination createDestination(byte type, String name) {
+		if (name == null) return null;
+		return type == DEST_QUEUE ? JCSMPFactory.onlyInstance().createQueue(name)
+			: JCSMPFactory.onlyInstance().createTopic(name);
+	}
+
+	/** Capture time given to the encoder, in nanoseconds since the epoch. */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/** The original destination, or null. */
+	public Destination getDestination() {
+		return createDestination(destinationType, destination);
+	}
+
+	public String getDestinationName() {
+		return destination;
+	}
+
+	public boolean isTopic() {
+		return destinationType == DEST_TOPIC;
+	}
+
+	public String getMessageId() {
+		return messageId;
+	}
+
+	public String getApplicationMessageId() {
+		return applicationMessageId;
+	}
+
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
+	/** Sender timestamp, or -1 if the message had none. */
+	public long getSenderTimestamp() {
+		return senderTimestamp;
+	}
+
+	public long getExpiration() {
+		return expiration;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public DeliveryMode getDeliveryMode() {
+		return deliveryMode < 0 ? null : DeliveryMode.values()[deliveryMode];
+	}
+
+	public User_Cos getCos() {
+		return cos < 0 ? null : User_Cos.values()[cos];
+	}
+
+	public boolean isRedelivered() {
+		return (flags & FLAG_REDELIVERED) != 0;
+	}
+
+	/** The user properties, or null if there were none. */
+	public SDTMap getProperties() {
+		return properties;
+	}
+
+	public int getContentLength() {
+		return content == null ? 0 : content.length;
+	}
+
+	/** The attachment, as a view into the record. */
+	public ByteBuffer getAttachment() {
+		return attachment.duplicate();
+	}
+}
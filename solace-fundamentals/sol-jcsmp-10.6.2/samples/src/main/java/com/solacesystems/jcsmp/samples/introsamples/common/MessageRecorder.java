@@ -0,0 +1,159 @@
+/**
+ * MessageRecorder.java
+ *
+ * Records received messages, with their destination, headers, attachment
+ * and arrival time, into a SegmentedLogWriter log of MessageRecords that
+ * MessageReplayer can play back.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.XMLMessageListener;
+
+/**
+ * Use the recorder as the listener of a consumer or a flow. Arrival times
+ * are taken in onReceive() as wall-clock nanoseconds, derived from
+ * System.nanoTime(), so that the replayer can reproduce the gaps between
+ * messages more precisely than the millisecond receive timestamp allows.
+ *
+ * Encoding and writing run on a background thread, so that rolling over
+ * to a new segment file never stalls the API's dispatcher thread. The
+ * hand-over queue is bounded; if the disk cannot keep up, onReceive()
+ * blocks, which for a flow slows the broker down rather than losing
+ * messages.
+ */
+public class MessageRecorder implements XMLMessageListener {
+
+	private static final class Arrival {
+		final BytesXMLMessage msg;
+		final long nanos;
+
+		Arrival(BytesXMLMessage msg, long nanos) {
+			this.msg = msg;
+			this.nanos = nanos;
+		}
+	}
+
+	private static final Arrival END = new Arrival(null, 0);
+
+	private final SegmentedLogWriter writer;
+	private final BlockingQueue<Arrival> handOver;
+	private final MessageRecord.Encoder encoder = new MessageRecord.Encoder();
+	private final Thread writerThread;
+	private final long baseMillis = System.currentTimeMillis();
+	private final long baseNanos = System.nanoTime();
+
+	private volatile long messages;
+	private volatile long bytes;
+	private volatile Throwable writeError;
+	private volatile boolean closed;
+	private long firstNanos = -1;
+	private long lastNanos;
+
+	/**
+	 * @param queueCapacity messages that may wait for the writer thread
+	 */
+	public MessageRecorder(SegmentedLogWriter writer, int queueCapacity) {
+		this.writer = writer;
+		handOver = new ArrayBlockingQueue<Arrival>(queueCapacity);
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "Recorder-Writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/** Wall-clock time in nanoseconds. */
+	private long now() {
+		return baseMillis * 1000000L + (System.nanoTime() - baseNanos);
+	}
+
+	public void onReceive(BytesXMLMessage msg) {
+		if (closed || writeError != null) return;
+		try {
+			handOver.put(new Arrival(msg, now()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void onException(JCSMPException e) {
+		System.err.println("Recorder consumer exception: " + e);
+	}
+
+	private void write() {
+		try {
+			while (true) {
+				Arrival a = handOver.take();
+				if (a == END) break;
+				writer.append(encoder.encode(a.msg, a.nanos));
+				if (firstNanos < 0) firstNanos = a.nanos;
+				lastNanos = a.nanos;
+				bytes = writer.getBytesWritten();
+				messages++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable t) {
+			// Any failure, not only I/O, must release the dispatcher thread.
+			writeError = t;
+			handOver.clear();
+		}
+	}
+
+	/**
+	 * Stops recording, writes out the messages still queued and closes the
+	 * log. Stop the consumer or flow first.
+	 *
+	 * @throws IOException if writing failed; a RuntimeException or Error
+	 *         from the writer thread is thrown as is
+	 */
+	public void close() throws IOException, InterruptedException {
+		closed = true;
+		// The writer thread may fail while END waits for room in the queue.
+		while (writeError == null) {
+			if (handOver.offer(END, 100, TimeUnit.MILLISECONDS)) break;
+		}
+		writerThread.join();
+		writer.close();
+		Throwable t = writeError;
+		if (t instanceof IOException) throw (IOException) t;
+		if (t instanceof RuntimeException) throw (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		if (t != null) throw new IOException(t);
+	}
+
+	/** Messages recorded so far; may be read while recording. */
+	public long getMessages() {
+		return messages;
+	}
+
+	/** Bytes written so far; may be read while recording. */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/** Time between the first and the last recorded arrival, after close(). */
+	public long getSpanMillis() {
+		return firstNanos < 0 ? 0 : (lastNanos - firstNanos) / 1000000;
+	}
+
+	public String getReport() {
+		long span = getSpanMillis();
+		return String.format("Recorded %d messages, %.1f MB in %d segment(s) over %d ms (%.0f msgs/s)%s", messages,
+			bytes / 1048576.0, writer.getFiles().size(), span, span > 0 ? messages * 1000.0 / span : 0.0,
+			encoder.getSkippedProperties() > 0
+				? String.format(", %d unsupported properties skipped", encoder.getSkippedProperties()) : "");
+	}
+}
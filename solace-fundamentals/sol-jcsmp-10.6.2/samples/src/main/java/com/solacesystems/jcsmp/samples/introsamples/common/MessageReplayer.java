@@ -0,0 +1,196 @@
+/**
+ * MessageReplayer.java
+ *
+ * Republishes a log written by MessageRecorder, either with the original
+ * gaps between messages, at a scaled rate, or as fast as possible.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSendMultipleEntry;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+
+/**
+ * Messages are sent in batches with XMLMessageProducer.sendMultiple(),
+ * which requires a streaming producer. A batch holds the messages that are
+ * due within <code>batchWindowMicros</code> of its first message, at most
+ * 50 (the API limit), all of the same delivery mode.
+ *
+ * Pacing uses System.nanoTime(): the replayer parks until shortly before a
+ * batch is due and spins for the rest, so batches go out within a few
+ * microseconds of their schedule unless the producer itself falls behind.
+ * The schedule is fixed at the start, so one late batch does not delay
+ * the ones after it. The report includes how late batches were sent.
+ */
+public class MessageReplayer {
+
+	/** Largest batch sendMultiple() accepts. */
+	public static final int MAX_BATCH = 50;
+
+	private static final long SPIN_NANOS = 100000;
+
+	private final XMLMessageProducer producer;
+	private final File dir;
+	private final String prefix;
+
+	private double speed = 1.0;
+	private int batchSize = MAX_BATCH;
+	private long batchWindowNanos = 1000000;
+	private Destination destination;
+
+	private volatile long messages;
+	private volatile long bytes;
+	private long batches;
+	private long skipped;
+	private long elapsedNanos;
+	private long recordedNanos;
+	private long lateTotalNanos;
+	private long lateMaxNanos;
+	private long lateBatches;
+
+	public MessageReplayer(XMLMessageProducer producer, File dir, String prefix) {
+		this.producer = producer;
+		this.dir = dir;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * @param speed 1 for the recorded pacing, 2 for twice as fast and so on;
+	 *        0 sends as fast as possible
+	 */
+	public MessageReplayer setSpeed(double speed) {
+		this.speed = speed;
+		return this;
+	}
+
+	public MessageReplayer setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH));
+		return this;
+	}
+
+	/** Messages due within this window of a batch's first go out together. */
+	public MessageReplayer setBatchWindowMicros(long micros) {
+		this.batchWindowNanos = micros * 1000;
+		return this;
+	}
+
+	/** Sends everything to <code>destination</code> instead of the recorded ones. */
+	public MessageReplayer setDestination(Destination destination) {
+		this.destination = destination;
+		return this;
+	}
+
+	/**
+	 * Replays the whole log and returns when the last message was sent.
+	 */
+	public void replay() throws IOException, JCSMPException {
+		SegmentedLogReader reader = new SegmentedLogReader(dir, prefix);
+		JCSMPSendMultipleEntry[] batch = new JCSMPSendMultipleEntry[batchSize];
+		for (int i = 0; i < batch.length; i++) {
+			batch[i] = JCSMPFactory.onlyInstance().createSendMultipleEntry(null, null);
+		}
+		try {
+			long firstRecorded = -1;
+			long lastRecorded = 0;
+			long start = 0;
+			long batchDue = 0;
+			int n = 0;
+			ByteBuffer record;
+			while ((record = reader.next()) != null) {
+				MessageRecord r = MessageRecord.decode(record);
+				Destination dest = destination != null ? destination : r.getDestination();
+				if (dest == null) {
+					skipped++;
+					continue;
+				}
+				if (firstRecorded < 0) {
+					firstRecorded = r.getTimestamp();
+					start = System.nanoTime();
+				}
+				lastRecorded = r.getTimestamp();
+				long due = speed > 0 ? start + (long) ((r.getTimestamp() - firstRecorded) / speed) : start;
+				BytesXMLMessage msg = r.toMessage();
+				if (n > 0 && (n == batch.length || due - batchDue > batchWindowNanos
+					|| msg.getDeliveryMode() != batch[0].getMessage().getDeliveryMode())) {
+					send(batch, n, batchDue);
+					n = 0;
+				}
+				if (n == 0) batchDue = due;
+				batch[n].setMessage(msg).setDestination(dest);
+				n++;
+				bytes += r.getAttachment().remaining() + r.getContentLength();
+			}
+			if (n > 0) send(batch, n, batchDue);
+			elapsedNanos = firstRecorded < 0 ? 0 : System.nanoTime() - start;
+			recordedNanos = firstRecorded < 0 ? 0 : lastRecorded - firstRecorded;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void send(JCSMPSendMultipleEntry[] batch, int n, long due) throws JCSMPException {
+		if (speed > 0) {
+			long wait;
+			while ((wait = due - System.nanoTime()) > SPIN_NANOS) {
+				LockSupport.parkNanos(wait - SPIN_NANOS);
+			}
+			while (System.nanoTime() < due) {
+				// spin for the last few microseconds
+			}
+			long late = System.nanoTime() - due;
+			lateTotalNanos += late;
+			if (late > lateMaxNanos) lateMaxNanos = late;
+			if (late > 1000000) lateBatches++;
+		}
+		int sent = 0;
+		while (sent < n) {
+			sent += producer.sendMultiple(batch, sent, n - sent, 0);
+		}
+		for (int i = 0; i < n; i++) {
+			batch[i].setMessage(null);
+		}
+		messages += n;
+		batches++;
+	}
+
+	/** Messages sent so far; may be read while replaying. */
+	public long getMessages() {
+		return messages;
+	}
+
+	/** Payload bytes sent so far; may be read while replaying. */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000;
+	}
+
+	public String getReport() {
+		double secs = Math.max(elapsedNanos, 1) / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Replayed %d messages, %.1f MB in %d batches (%.1f per batch), %d ms: %.0f msgs/s",
+			messages, bytes / 1048576.0, batches, batches > 0 ? (double) messages / batches : 0.0,
+			elapsedNanos / 1000000, messages / secs));
+		sb.append(String.format("\n  Recording spanned %d ms", recordedNanos / 1000000));
+		if (speed > 0) {
+			sb.append(String.format(" at speed %.2f; batches sent on average %.1f us late, at most %.1f us,"
+				+ " %d more than 1 ms late", speed, batches > 0 ? lateTotalNanos / 1000.0 / batches : 0.0,
+				lateMaxNanos / 1000.0, lateBatches));
+		}
+		if (skipped > 0) sb.append(String.format("\n  %d messages without a destination skipped", skipped));
+		return sb.toString();
+	}
+}
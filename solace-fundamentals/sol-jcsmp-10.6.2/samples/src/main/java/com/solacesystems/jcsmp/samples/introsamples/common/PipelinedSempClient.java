@@ -0,0 +1,256 @@
+/**
+ * PipelinedSempClient.java
+ *
+ * SEMP-over-message-bus client that keeps several requests in flight at
+ * once. Each request is sent with the session's P2P inbox as reply address
+ * and its own correlation ID, and the caller gets a Future for the reply.
+ * A permit limit caps how many requests may be outstanding so that the
+ * appliance's management plane is not flooded.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPProperties;
+import com.solacesystems.jcsmp.JCSMPRequestTimeoutException;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+
+/**
+ * Replies are matched on correlation ID, so this object must be installed as
+ * the listener of the session's XMLMessageConsumer (or be called from it).
+ * submit() blocks while the outstanding limit is reached; a permit is given
+ * back when the reply arrives or the request times out.
+ */
+public class PipelinedSempClient implements XMLMessageListener {
+
+	/**
+	 * Pending reply of one request. get() throws an ExecutionException whose
+	 * cause is the JCSMPException (e.g. a timeout) that failed the request.
+	 */
+	public final class SempFuture implements Future<byte[]> {
+		final String correlationId;
+		final long sentNanos;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile byte[] reply;
+		private volatile JCSMPException error;
+		private volatile long latencyNanos;
+		volatile ScheduledFuture<?> timeout;
+
+		SempFuture(String correlationId) {
+			this.correlationId = correlationId;
+			this.sentNanos = System.nanoTime();
+		}
+
+		boolean complete(byte[] reply, JCSMPException error) {
+			synchronized (this) {
+				if (done.getCount() == 0) return false;
+				this.reply = reply;
+				this.error = error;
+				this.latencyNanos = System.nanoTime() - sentNanos;
+				done.countDown();
+			}
+			ScheduledFuture<?> t = timeout;
+			if (t != null) t.cancel(false);
+			return true;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			// The request has already been sent; it cannot be withdrawn.
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		public byte[] get() throws InterruptedException, ExecutionException {
+			done.await();
+			return result();
+		}
+
+		public byte[] get(long time, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (!done.await(time, unit)) throw new TimeoutException();
+			return result();
+		}
+
+		private byte[] result() throws ExecutionException {
+			if (error != null) throw new ExecutionException(error.getMessage(), error);
+			return reply;
+		}
+
+		/** Round trip time, valid once done. */
+		public long getLatencyNanos() {
+			return latencyNanos;
+		}
+	}
+
+	private final XMLMessageProducer producer;
+	private final Destination sempTopic;
+	private final Destination replyTo;
+	private final long timeoutMs;
+	private final int maxOutstanding;
+	private final Semaphore permits;
+	private final String correlationPrefix;
+	private final ConcurrentHashMap<String, SempFuture> pending = new ConcurrentHashMap<String, SempFuture>();
+	private final ScheduledExecutorService timer;
+
+	// Statistics
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicInteger peakOutstanding = new AtomicInteger();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * @param session a connected session; its P2P inbox is used as the reply address
+	 * @param producer the producer used to send requests
+	 * @param sempTopic the appliance's #SEMP/ROUTER/SHOW topic
+	 * @param maxOutstanding maximum requests in flight
+	 * @param timeoutMs time to wait for each reply
+	 */
+	public PipelinedSempClient(JCSMPSession session, XMLMessageProducer producer, Destination sempTopic,
+		int maxOutstanding, long timeoutMs) {
+		this.producer = producer;
+		this.sempTopic = sempTopic;
+		this.timeoutMs = timeoutMs;
+		this.maxOutstanding = maxOutstanding;
+		this.permits = new Semaphore(maxOutstanding);
+		String inbox = (String) session.getProperty(JCSMPProperties.P2PINBOX_IN_USE);
+		this.replyTo = JCSMPFactory.onlyInstance().createTopic(inbox);
+		this.correlationPrefix = "#SEMP-PIPE/" + Long.toHexString(System.nanoTime()) + "/";
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "PipelinedSempClient-timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Sends a SEMP request, first waiting for a free slot if the outstanding
+	 * limit is reached.
+	 */
+	public SempFuture submit(String request) throws JCSMPException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JCSMPException("Interrupted waiting for a free request slot", e);
+		}
+		final SempFuture future = new SempFuture(correlationPrefix + sequence.incrementAndGet());
+		pending.put(future.correlationId, future);
+		int now = outstanding.incrementAndGet();
+		int peak;
+		while (now > (peak = peakOutstanding.get()) && !peakOutstanding.compareAndSet(peak, now)) {
+			// retry
+		}
+		try {
+			BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+			msg.writeAttachment(request.getBytes("UTF-8"));
+			msg.setReplyTo(replyTo);
+			msg.setCorrelationId(future.correlationId);
+			future.timeout = timer.schedule(new Runnable() {
+				public void run() {
+					if (finish(future, null, new JCSMPRequestTimeoutException(
+						"No SEMP reply received within " + timeoutMs + " ms"))) {
+						timeouts.incrementAndGet();
+					}
+				}
+			}, timeoutMs, TimeUnit.MILLISECONDS);
+			producer.send(msg, sempTopic);
+		} catch (JCSMPException e) {
+			finish(future, null, e);
+			throw e;
+		} catch (Exception e) {
+			JCSMPException ex = new JCSMPException("Unable to send SEMP request: " + e.getMessage(), e);
+			finish(future, null, ex);
+			throw ex;
+		}
+		return future;
+	}
+
+	private boolean finish(SempFuture future, byte[] reply, JCSMPException error) {
+		if (pending.remove(future.correlationId) == null) return false;
+		if (!future.complete(reply, error)) return false;
+		outstanding.decrementAndGet();
+		permits.release();
+		if (error == null) {
+			completed.incrementAndGet();
+			latency.recordNanosAsMicros(future.getLatencyNanos());
+		}
+		return true;
+	}
+
+	public void onReceive(BytesXMLMessage msg) {
+		String cid = msg.getCorrelationId();
+		if (cid == null) return;
+		SempFuture future = pending.get(cid);
+		if (future == null) return; // timed out, or not ours
+		byte[] bytes = new byte[msg.getAttachmentContentLength()];
+		msg.readAttachmentBytes(bytes);
+		finish(future, bytes, null);
+	}
+
+	public void onException(JCSMPException exception) {
+		System.err.println("PipelinedSempClient consumer error: " + exception);
+	}
+
+	/**
+	 * Fails all outstanding requests and stops the timeout timer.
+	 */
+	public void close() {
+		Iterator<SempFuture> it = pending.values().iterator();
+		while (it.hasNext()) {
+			finish(it.next(), null, new JCSMPException("PipelinedSempClient closed"));
+		}
+		timer.shutdownNow();
+	}
+
+	public int getMaxOutstanding() {
+		return maxOutstanding;
+	}
+
+	public int getPeakOutstanding() {
+		return peakOutstanding.get();
+	}
+
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+}
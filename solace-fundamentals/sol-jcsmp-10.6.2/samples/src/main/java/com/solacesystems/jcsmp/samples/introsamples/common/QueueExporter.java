@@ -0,0 +1,166 @@
+/**
+ * QueueExporter.java
+ *
+ * Exports the messages of a queue, without consuming them, into a
+ * SegmentedLogWriter log of MessageRecords. A Browser with a large
+ * transport window pulls the messages, and a background writer thread
+ * encodes them and copies them into the memory-mapped segments.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.solacesystems.jcsmp.Browser;
+import com.solacesystems.jcsmp.BrowserProperties;
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.Queue;
+
+/**
+ * The browser thread only hands messages over; encoding and file I/O run
+ * on the writer, so the next window of messages can be in flight while the
+ * previous one is written. The hand-over queue is bounded, which applies
+ * back-pressure to the browser if the disk falls behind.
+ *
+ * The export ends when the browser waits <code>waitMs</code> without a
+ * message, or after <code>maxMessages</code>. Each exporter uses its own
+ * Browser, so several queues can be exported in parallel on one session.
+ */
+public class QueueExporter {
+
+	/** Largest transport window a browser accepts. */
+	public static final int MAX_WINDOW = 255;
+
+	private static final BytesXMLMessage END = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+
+	private final JCSMPSession session;
+	private final Queue queue;
+	private final File dir;
+	private final int segmentBytes;
+	private final int windowSize;
+	private final int waitMs;
+
+	private volatile long messages;
+	private volatile long bytes;
+	private long elapsedMillis;
+	private int segments;
+	private long skippedProperties;
+
+	public QueueExporter(JCSMPSession session, Queue queue, File dir, int segmentBytes, int windowSize, int waitMs) {
+		this.session = session;
+		this.queue = queue;
+		this.dir = dir;
+		this.segmentBytes = segmentBytes;
+		this.windowSize = windowSize;
+		this.waitMs = waitMs;
+	}
+
+	/**
+	 * Browses the queue into the log and returns when the export is
+	 * complete and flushed to disk.
+	 *
+	 * @param maxMessages stop after this many messages; 0 for no limit
+	 * @throws IOException if writing failed; a RuntimeException or Error
+	 *         from the writer thread is thrown as is
+	 */
+	public void export(long maxMessages) throws JCSMPException, IOException, InterruptedException {
+		final BlockingQueue<BytesXMLMessage> handOver = new ArrayBlockingQueue<BytesXMLMessage>(windowSize * 4);
+		final SegmentedLogWriter writer = new SegmentedLogWriter(dir, queue.getName(), segmentBytes);
+		final Throwable[] writeError = new Throwable[1];
+		final MessageRecord.Encoder encoder = new MessageRecord.Encoder();
+
+		Thread writerThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						BytesXMLMessage msg = handOver.take();
+						if (msg == END) break;
+						long received = msg.getReceiveTimestamp();
+						if (received == 0) received = System.currentTimeMillis();
+						// Records hold nanoseconds, like the recorder's.
+						writer.append(encoder.encode(msg, received * 1000000L));
+						bytes = writer.getBytesWritten();
+						messages++;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (Throwable t) {
+					// Anything, so that export() reports a partial log as a failure.
+					writeError[0] = t;
+				} finally {
+					// Unblock the browser thread if it is waiting on a full queue.
+					handOver.clear();
+				}
+			}
+		}, "Export-Writer-" + queue.getName());
+
+		BrowserProperties props = new BrowserProperties();
+		props.setEndpoint(queue);
+		props.setTransportWindowSize(windowSize);
+		props.setWaitTimeout(waitMs);
+		Browser browser = session.createBrowser(props);
+		long start = System.nanoTime();
+		writerThread.start();
+		try {
+			long browsed = 0;
+			while (maxMessages == 0 || browsed < maxMessages) {
+				BytesXMLMessage msg = browser.getNext(waitMs);
+				if (msg == null) break;
+				browsed++;
+				if (!writerThread.isAlive()) break;
+				handOver.put(msg);
+			}
+		} finally {
+			browser.close();
+			if (writerThread.isAlive()) handOver.put(END);
+			writerThread.join();
+			writer.close();
+			elapsedMillis = (System.nanoTime() - start) / 1000000;
+			segments = writer.getFiles().size();
+			skippedProperties = encoder.getSkippedProperties();
+		}
+		Throwable t = writeError[0];
+		if (t instanceof IOException) throw (IOException) t;
+		if (t instanceof RuntimeException) throw (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		if (t != null) throw new IOException(t);
+	}
+
+	public Queue getQueue() {
+		return queue;
+	}
+
+	/** Messages written so far; may be read while the export runs. */
+	public long getMessages() {
+		return messages;
+	}
+
+	/** Bytes written so far; may be read while the export runs. */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public int getSegments() {
+		return segments;
+	}
+
+	public String getReport() {
+		double secs = Math.max(elapsedMillis, 1) / 1000.0;
+		return String.format("%s: %d messages, %.1f MB in %d segment(s), %d ms: %.0f msgs/s, %.1f MB/s%s",
+			queue.getName(), messages, bytes / 1048576.0, segments, elapsedMillis, messages / secs,
+			bytes / 1048576.0 / secs,
+			skippedProperties > 0 ? String.format(" (%d unsupported properties skipped)", skippedProperties) : "");
+	}
+}
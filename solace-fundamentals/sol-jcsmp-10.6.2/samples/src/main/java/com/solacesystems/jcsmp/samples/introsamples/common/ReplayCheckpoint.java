@@ -0,0 +1,275 @@
+/**
+ * ReplayCheckpoint.java
+ *
+ * Persists the position of a replay consumer in a local file, so that a
+ * restarted consumer can resume the replay where it stopped instead of
+ * reprocessing everything from the original start location.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import com.solacesystems.jcsmp.XMLMessage;
+
+/**
+ * The position has two parts. The latest sender timestamp processed gives
+ * the date to restart the replay from, so publishers must send timestamps
+ * (GENERATE_SEND_TIMESTAMPS). The application message IDs of the last
+ * <code>window</code> processed messages identify the ones the restarted
+ * replay delivers again: a replay can only be started from a date, so it
+ * repeats the messages spooled since then, that second or within the
+ * allowed clock skew. shouldProcess() skips a message only if its ID is
+ * one of those; it never guesses from a timestamp, because a publisher
+ * whose clock lags can have unprocessed messages with older timestamps
+ * spooled after the checkpoint. A repeated message without an application
+ * message ID, or one older than the window, is processed again, so the
+ * window should cover the messages of a few seconds and the consumer must
+ * tolerate the odd duplicate.
+ *
+ * Writing the file is cheap, forcing it to disk is not, so checkpoints are
+ * batched: the file is synced after <code>batchMessages</code> messages or
+ * <code>batchMillis</code>, whichever comes first. After a crash at most
+ * one batch is processed again. The file holds two slots that are written
+ * alternately, each with a sequence number and CRC, so a torn write never
+ * loses the previous checkpoint.
+ *
+ * Not thread-safe; call it from the thread that processes the messages.
+ */
+public class ReplayCheckpoint implements Closeable {
+
+	private static final int MAGIC = 0x52504332; // "RPC2"
+	private static final int HEADER_BYTES = 40;
+	/** Longer application message IDs are not kept, so never skipped. */
+	static final int MAX_ID_BYTES = 255;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final int batchMessages;
+	private final long batchMillis;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final int slotBytes;
+	private final ByteBuffer buf;
+	private final CRC32 crc = new CRC32();
+
+	// Position as of the last load: the IDs not yet seen again
+	private final long resumeTimestamp;
+	private final long resumeProcessed;
+	private final Set<String> resumeIds = new HashSet<String>();
+
+	// IDs of the last processed messages, oldest at head
+	private final byte[][] recent;
+	private int head;
+	private int count;
+
+	private long sequence;
+	private long timestamp;
+	private long processed;
+
+	private int unsynced;
+	private long lastSync = System.currentTimeMillis();
+	private long syncs;
+	private long skipped;
+
+	/**
+	 * Opens the checkpoint file and loads the last position, if any.
+	 *
+	 * @param window application message IDs kept to recognise repeated
+	 *        messages
+	 */
+	public ReplayCheckpoint(File file, int batchMessages, long batchMillis, int window) throws IOException {
+		this.file = file;
+		this.batchMessages = Math.max(1, batchMessages);
+		this.batchMillis = batchMillis;
+		this.recent = new byte[Math.max(1, window)][];
+		this.slotBytes = HEADER_BYTES + recent.length * (2 + MAX_ID_BYTES);
+		this.buf = ByteBuffer.allocate(slotBytes);
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		load();
+		resumeTimestamp = timestamp;
+		resumeProcessed = processed;
+		for (int i = 0; i < count; i++) {
+			resumeIds.add(new String(recent[(head + i) % recent.length], UTF8));
+		}
+	}
+
+	/**
+	 * Loads the newer valid slot. Slots are found by their size, so a file
+	 * written with a different window is not read.
+	 */
+	private void load() throws IOException {
+		for (int slot = 0; slot < 2; slot++) {
+			buf.clear();
+			channel.read(buf, (long) slot * slotBytes);
+			buf.flip();
+			if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) continue;
+			int check = buf.getInt();
+			long seq = buf.getLong();
+			long t = buf.getLong();
+			long p = buf.getLong();
+			int n = buf.getInt();
+			int len = buf.getInt();
+			if (n < 0 || n > recent.length || len < HEADER_BYTES || len > buf.limit()) continue;
+			crc.reset();
+			crc.update(buf.array(), 8, len - 8);
+			if ((int) crc.getValue() != check || seq <= sequence) continue;
+			sequence = seq;
+			timestamp = t;
+			processed = p;
+			head = 0;
+			count = n;
+			for (int i = 0; i < n; i++) {
+				byte[] id = new byte[buf.getShort() & 0xffff];
+				buf.get(id);
+				recent[i] = id;
+			}
+		}
+	}
+
+	/** True if a checkpoint was loaded, i.e. this is a resumed replay. */
+	public boolean isResumed() {
+		return resumeProcessed > 0;
+	}
+
+	/**
+	 * The date to start the replay from: the checkpoint minus
+	 * <code>skewMillis</code>, rounded down to the second.
+	 */
+	public Date getStartDate(long skewMillis) {
+		long t = Math.max(0, resumeTimestamp - skewMillis);
+		return new Date(t - t % 1000);
+	}
+
+	/**
+	 * Returns false for a message that was processed before the checkpoint,
+	 * which the caller should then skip.
+	 */
+	public boolean shouldProcess(XMLMessage msg) {
+		if (resumeIds.isEmpty()) return true;
+		String id = msg.getApplicationMessageId();
+		if (id == null || !resumeIds.remove(id)) return true;
+		skipped++;
+		return false;
+	}
+
+	/**
+	 * Advances the position past <code>msg</code>, and syncs the file when
+	 * the batch is full or the batch interval has passed.
+	 */
+	public void processed(XMLMessage msg) throws IOException {
+		Long sent = msg.getSenderTimestamp();
+		if (sent != null && sent.longValue() > timestamp) timestamp = sent.longValue();
+		String id = msg.getApplicationMessageId();
+		if (id != null) {
+			byte[] bytes = id.getBytes(UTF8);
+			if (bytes.length <= MAX_ID_BYTES) {
+				if (count == recent.length) {
+					head = (head + 1) % recent.length;
+					count--;
+				}
+				recent[(head + count) % recent.length] = bytes;
+				count++;
+			}
+		}
+		processed++;
+		if (++unsynced >= batchMessages || System.currentTimeMillis() - lastSync >= batchMillis) {
+			sync();
+		}
+	}
+
+	/** Writes the current position and forces it to disk. */
+	public void sync() throws IOException {
+		if (unsynced == 0) return;
+		sequence++;
+		buf.clear();
+		buf.putInt(MAGIC);
+		buf.putInt(0);
+		buf.putLong(sequence);
+		buf.putLong(timestamp);
+		buf.putLong(processed);
+		buf.putInt(count);
+		buf.putInt(0);
+		for (int i = 0; i < count; i++) {
+			byte[] id = recent[(head + i) % recent.length];
+			buf.putShort((short) id.length);
+			buf.put(id);
+		}
+		int len = buf.position();
+		buf.putInt(36, len);
+		crc.reset();
+		crc.update(buf.array(), 8, len - 8);
+		buf.putInt(4, (int) crc.getValue());
+		buf.flip();
+		channel.write(buf, (sequence % 2) * slotBytes);
+		channel.force(false);
+		unsynced = 0;
+		lastSync = System.currentTimeMillis();
+		syncs++;
+	}
+
+	/** Syncs any pending position and closes the file. */
+	public void close() throws IOException {
+		try {
+			sync();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/** Discards the checkpoint file, so the next replay starts afresh. */
+	public static boolean delete(File file) {
+		return !file.exists() || file.delete();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/** Latest sender timestamp of the processed messages. */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/** Messages processed, including those of earlier runs. */
+	public long getProcessed() {
+		return processed;
+	}
+
+	/** Messages repeated by the resumed replay and recognised by their ID. */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	public long getSyncs() {
+		return syncs;
+	}
+
+	public String getReport() {
+		StringBuilder sb = new StringBuilder();
+		long thisRun = processed - resumeProcessed;
+		sb.append(String.format("Checkpoint %s: %d messages processed this run, %d in total, %d syncs",
+			file.getName(), thisRun, processed, syncs));
+		if (syncs > 0) sb.append(String.format(" (%.1f messages per sync)", (double) thisRun / syncs));
+		if (isResumed()) {
+			sb.append(String.format(
+				"\n  Resumed after %d messages: %d repeated messages recognised by ID and skipped, %d IDs not repeated",
+				resumeProcessed, skipped, resumeIds.size()));
+		}
+		sb.append(String.format("\n  A crash between syncs reprocesses at most %d messages", batchMessages));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * ScatterGatherRequestor.java
+ *
+ * Publishes a single request to a topic that many repliers subscribe to and
+ * gathers their replies until a reply count, a deadline or a completion
+ * predicate is reached.
+ *
+ * Copyright 2013-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPProperties;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.XMLMessage;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+
+/**
+ * Replies are matched on correlation ID, so this object must be installed as
+ * the listener of the session's XMLMessageConsumer. Replies are streamed to a
+ * {@link ReplyHandler} on the consumer thread as they arrive; apart from the
+ * reply message itself nothing is allocated per reply.
+ */
+public class ScatterGatherRequestor implements XMLMessageListener {
+
+	public enum CompletionReason {
+		MAX_REPLIES,
+		DEADLINE,
+		PREDICATE
+	}
+
+	/**
+	 * Receives each reply as it arrives. Doubles as the completion predicate:
+	 * return false to stop gathering.
+	 */
+	public interface ReplyHandler {
+		boolean onReply(BytesXMLMessage reply, int replyIndex);
+	}
+
+	/**
+	 * State and outcome of one scatter-gather exchange.
+	 */
+	public static final class Gather {
+		private final ReplyHandler handler;
+		private final int maxReplies;
+		private final long startNanos;
+		private int replies = 0;
+		private long lastReplyNanos;
+		private CompletionReason reason = null;
+
+		Gather(ReplyHandler handler, int maxReplies) {
+			this.handler = handler;
+			this.maxReplies = maxReplies;
+			this.startNanos = System.nanoTime();
+		}
+
+		public synchronized int getReplyCount() {
+			return replies;
+		}
+
+		public synchronized CompletionReason getReason() {
+			return reason;
+		}
+
+		/** Time from publishing the request to the last reply taken, in ms. */
+		public synchronized double getGatherMillis() {
+			return replies == 0 ? 0 : (lastReplyNanos - startNanos) / 1e6;
+		}
+
+		synchronized void offer(BytesXMLMessage reply) {
+			if (reason != null) return; // late reply after completion
+			int index = replies++;
+			lastReplyNanos = System.nanoTime();
+			boolean more = handler.onReply(reply, index);
+			if (!more) {
+				complete(CompletionReason.PREDICATE);
+			} else if (replies >= maxReplies) {
+				complete(CompletionReason.MAX_REPLIES);
+			}
+		}
+
+		synchronized void complete(CompletionReason r) {
+			if (reason == null) {
+				reason = r;
+				notifyAll();
+			}
+		}
+
+		synchronized boolean awaitUntil(long deadlineNanos) throws InterruptedException {
+			long remaining;
+			while (reason == null && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+			return reason != null;
+		}
+	}
+
+	private final XMLMessageProducer producer;
+	private final Destination replyTo;
+	private final String correlationPrefix;
+	private final AtomicLong sequence = new AtomicLong();
+	private final ConcurrentHashMap<String, Gather> active = new ConcurrentHashMap<String, Gather>();
+
+	/**
+	 * @param session a connected session; its P2P inbox is used as the reply address
+	 * @param producer the producer used to publish requests
+	 */
+	public ScatterGatherRequestor(JCSMPSession session, XMLMessageProducer producer) {
+		this.producer = producer;
+		String inbox = (String) session.getProperty(JCSMPProperties.P2PINBOX_IN_USE);
+		this.replyTo = JCSMPFactory.onlyInstance().createTopic(inbox);
+		this.correlationPrefix = "#SG/" + Long.toHexString(System.nanoTime()) + "/";
+	}
+
+	/**
+	 * Publishes <code>request</code> once to <code>topic</code> and blocks
+	 * until <code>maxReplies</code> replies have been taken, the handler
+	 * returns false, or <code>timeoutMs</code> elapses.
+	 */
+	public Gather scatterGather(XMLMessage request, Destination topic, int maxReplies, long timeoutMs,
+		ReplyHandler handler) throws JCSMPException, InterruptedException {
+		String id = correlationPrefix + sequence.incrementAndGet();
+		Gather g = new Gather(handler, maxReplies <= 0 ? Integer.MAX_VALUE : maxReplies);
+		active.put(id, g);
+		try {
+			request.setReplyTo(replyTo);
+			request.setCorrelationId(id);
+			producer.send(request, topic);
+			if (!g.awaitUntil(g.startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMs))) {
+				g.complete(CompletionReason.DEADLINE);
+			}
+			return g;
+		} finally {
+			active.remove(id);
+		}
+	}
+
+	public void onReceive(BytesXMLMessage msg) {
+		String cid = msg.getCorrelationId();
+		if (cid == null) return;
+		Gather g = active.get(cid);
+		if (g != null) {
+			g.offer(msg);
+		}
+	}
+
+	public void onException(JCSMPException exception) {
+		System.err.println("ScatterGatherRequestor consumer error: " + exception);
+	}
+}
@@ -0,0 +1,727 @@
+/**
+ * SdtCodec.java
+ *
+ * Encodes plain record objects into SDT maps, SDT streams or raw bytes,
+ * and decodes them back, from a field plan compiled once per class.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTMap;
+import com.solacesystems.jcsmp.SDTStream;
+
+/**
+ * The record fields are found by reflection when the codec is compiled:
+ * every non-static, non-transient field of the class and its superclasses
+ * whose type is a primitive other than char, String or byte[]. Each one
+ * becomes a plan entry holding its SDT type, and encoding and decoding run
+ * a switch over the plan that reads and sets each field through an
+ * Accessor, by its position in the plan.
+ *
+ * By default the Accessor is built from getter and setter MethodHandles.
+ * Those sit in arrays the JIT cannot treat as constants, so each call goes
+ * through the handle rather than being inlined to a field access. For a
+ * class on a hot path, pass compile() an Accessor written for it, a switch
+ * over the position that touches the fields directly. Neither makes the
+ * codec as fast as hand-written code: the loop and the switch over the
+ * plan remain, and SdtCodecBenchmark measures both against it. The codec
+ * allocates what hand-written code does and nothing more: the SDTMap and
+ * SDTStream calls box, and raw strings and byte arrays are copied.
+ *
+ * Map fields are keyed by field name. Stream and raw fields are
+ * positional, in the order given to compile(), or by field name when no
+ * order is given, so both sides of a conversation must compile the same
+ * plan. The raw form is big-endian, with strings and byte arrays as an int
+ * length (-1 for null) followed by the UTF-8 or raw bytes.
+ *
+ * Decoding into an existing record, rather than a new one, is what keeps
+ * the consumer free of per-message record objects.
+ */
+public class SdtCodec<T> {
+
+	enum Kind {
+		BOOLEAN, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, STRING, BYTES
+	}
+
+	/**
+	 * Reads and sets the fields of a record by their position in the plan,
+	 * that is in the order given to compile(). Override the methods for the
+	 * types the record has; strings and byte arrays go through getObject()
+	 * and setObject(). The others throw UnsupportedOperationException.
+	 */
+	public static abstract class Accessor<T> {
+		public boolean getBoolean(T record, int field) {
+			throw unsupported(field);
+		}
+
+		public byte getByte(T record, int field) {
+			throw unsupported(field);
+		}
+
+		public short getShort(T record, int field) {
+			throw unsupported(field);
+		}
+
+		public int getInt(T record, int field) {
+			throw unsupported(field);
+		}
+
+		public long getLong(T record, int field) {
+			throw unsupported(field);
+		}
+
+		public float getFloat(T record, int field) {
+			throw unsupported(field);
+		}
+
+		public double getDouble(T record, int field) {
+			throw unsupported(field);
+		}
+
+		public Object getObject(T record, int field) {
+			throw unsupported(field);
+		}
+
+		public void setBoolean(T record, int field, boolean v) {
+			throw unsupported(field);
+		}
+
+		public void setByte(T record, int field, byte v) {
+			throw unsupported(field);
+		}
+
+		public void setShort(T record, int field, short v) {
+			throw unsupported(field);
+		}
+
+		public void setInt(T record, int field, int v) {
+			throw unsupported(field);
+		}
+
+		public void setLong(T record, int field, long v) {
+			throw unsupported(field);
+		}
+
+		public void setFloat(T record, int field, float v) {
+			throw unsupported(field);
+		}
+
+		public void setDouble(T record, int field, double v) {
+			throw unsupported(field);
+		}
+
+		public void setObject(T record, int field, Object v) {
+			throw unsupported(field);
+		}
+
+		private UnsupportedOperationException unsupported(int field) {
+			return new UnsupportedOperationException(getClass().getName() + " has no such accessor for field " + field);
+		}
+	}
+
+	/**
+	 * The default Accessor: the field's getter and setter MethodHandles,
+	 * adapted to exact primitive signatures so the calls do not box.
+	 */
+	private static final class HandleAccessor<T> extends Accessor<T> {
+		private final MethodHandle[] getters;
+		private final MethodHandle[] setters;
+
+		HandleAccessor(MethodHandle[] getters, MethodHandle[] setters) {
+			this.getters = getters;
+			this.setters = setters;
+		}
+
+		public boolean getBoolean(T record, int field) {
+			try {
+				return (boolean) getters[field].invokeExact((Object) record);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public byte getByte(T record, int field) {
+			try {
+				return (byte) getters[field].invokeExact((Object) record);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public short getShort(T record, int field) {
+			try {
+				return (short) getters[field].invokeExact((Object) record);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public int getInt(T record, int field) {
+			try {
+				return (int) getters[field].invokeExact((Object) record);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public long getLong(T record, int field) {
+			try {
+				return (long) getters[field].invokeExact((Object) record);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public float getFloat(T record, int field) {
+			try {
+				return (float) getters[field].invokeExact((Object) record);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public double getDouble(T record, int field) {
+			try {
+				return (double) getters[field].invokeExact((Object) record);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public Object getObject(T record, int field) {
+			try {
+				return (Object) getters[field].invokeExact((Object) record);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public void setBoolean(T record, int field, boolean v) {
+			try {
+				setters[field].invokeExact((Object) record, v);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public void setByte(T record, int field, byte v) {
+			try {
+				setters[field].invokeExact((Object) record, v);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public void setShort(T record, int field, short v) {
+			try {
+				setters[field].invokeExact((Object) record, v);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public void setInt(T record, int field, int v) {
+			try {
+				setters[field].invokeExact((Object) record, v);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public void setLong(T record, int field, long v) {
+			try {
+				setters[field].invokeExact((Object) record, v);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public void setFloat(T record, int field, float v) {
+			try {
+				setters[field].invokeExact((Object) record, v);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public void setDouble(T record, int field, double v) {
+			try {
+				setters[field].invokeExact((Object) record, v);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		public void setObject(T record, int field, Object v) {
+			try {
+				setters[field].invokeExact((Object) record, v);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+	}
+
+	private static final class FieldPlan {
+		final String name;
+		final Kind kind;
+
+		FieldPlan(String name, Kind kind) {
+			this.name = name;
+			this.kind = kind;
+		}
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final ConcurrentMap<Class<?>, SdtCodec<?>> compiled = new ConcurrentHashMap<Class<?>, SdtCodec<?>>();
+
+	private final Class<T> type;
+	private final FieldPlan[] plan;
+	private final Accessor<T> access;
+	private final MethodHandle constructor;
+
+	private SdtCodec(Class<T> type, FieldPlan[] plan, Accessor<T> access, MethodHandle constructor) {
+		this.type = type;
+		this.plan = plan;
+		this.access = access;
+		this.constructor = constructor;
+	}
+
+	/**
+	 * The codec for <code>type</code> with its fields ordered by name,
+	 * compiled on first use and shared afterwards.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> SdtCodec<T> forClass(Class<T> type) {
+		SdtCodec<T> codec = (SdtCodec<T>) compiled.get(type);
+		if (codec == null) {
+			codec = compile(type);
+			SdtCodec<T> raced = (SdtCodec<T>) compiled.putIfAbsent(type, codec);
+			if (raced != null) codec = raced;
+		}
+		return codec;
+	}
+
+	/**
+	 * Compiles the plan for <code>type</code>, which needs a no-argument
+	 * constructor for decode() to create records, with MethodHandles to
+	 * reach the fields.
+	 *
+	 * @param order the fields to encode, in stream and raw order; all
+	 *        supported fields by name if empty
+	 * @throws IllegalArgumentException if a field is missing, final or of
+	 *         an unsupported type
+	 */
+	public static <T> SdtCodec<T> compile(Class<T> type, String... order) {
+		return compile(type, order, null);
+	}
+
+	/**
+	 * Compiles the plan for <code>type</code>, reaching the fields through
+	 * <code>accessor</code>, which must number them as <code>order</code>
+	 * does.
+	 *
+	 * @throws IllegalArgumentException if a field is missing, final or of
+	 *         an unsupported type, or if no order is given
+	 */
+	public static <T> SdtCodec<T> compile(Class<T> type, Accessor<T> accessor, String... order) {
+		if (accessor == null) throw new NullPointerException("accessor");
+		if (order.length == 0) throw new IllegalArgumentException("An accessor needs the field order");
+		return compile(type, order, accessor);
+	}
+
+	private static <T> SdtCodec<T> compile(Class<T> type, String[] order, Accessor<T> accessor) {
+		List<Field> fields = new ArrayList<Field>();
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				int mod = f.getModifiers();
+				if (Modifier.isStatic(mod) || Modifier.isTransient(mod)) continue;
+				if (order.length == 0 && kindOf(f.getType()) == null) continue;
+				fields.add(f);
+			}
+		}
+		List<Field> selected = new ArrayList<Field>();
+		if (order.length == 0) {
+			selected.addAll(fields);
+			Collections.sort(selected, new Comparator<Field>() {
+				public int compare(Field a, Field b) {
+					return a.getName().compareTo(b.getName());
+				}
+			});
+		} else {
+			for (String name : order) {
+				Field match = null;
+				for (Field f : fields) {
+					if (f.getName().equals(name)) match = f;
+				}
+				if (match == null) throw new IllegalArgumentException(type.getName() + " has no field " + name);
+				selected.add(match);
+			}
+		}
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		FieldPlan[] plan = new FieldPlan[selected.size()];
+		MethodHandle[] getters = new MethodHandle[plan.length];
+		MethodHandle[] setters = new MethodHandle[plan.length];
+		try {
+			for (int i = 0; i < plan.length; i++) {
+				Field f = selected.get(i);
+				Kind kind = kindOf(f.getType());
+				if (kind == null || Modifier.isFinal(f.getModifiers())) {
+					throw new IllegalArgumentException("Cannot encode field " + f);
+				}
+				plan[i] = new FieldPlan(f.getName(), kind);
+				if (accessor != null) continue;
+				f.setAccessible(true);
+				Class<?> exact = f.getType().isPrimitive() ? f.getType() : Object.class;
+				getters[i] = lookup.unreflectGetter(f).asType(MethodType.methodType(exact, Object.class));
+				setters[i] = lookup.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, exact));
+			}
+			MethodHandle constructor = null;
+			try {
+				java.lang.reflect.Constructor<T> ctor = type.getDeclaredConstructor();
+				ctor.setAccessible(true);
+				constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+			} catch (NoSuchMethodException e) {
+				// decode() can still fill records the caller creates
+			}
+			if (accessor == null) accessor = new HandleAccessor<T>(getters, setters);
+			return new SdtCodec<T>(type, plan, accessor, constructor);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot access the fields of " + type.getName(), e);
+		}
+	}
+
+	private static Kind kindOf(Class<?> c) {
+		if (c == boolean.class) return Kind.BOOLEAN;
+		if (c == byte.class) return Kind.BYTE;
+		if (c == short.class) return Kind.SHORT;
+		if (c == int.class) return Kind.INT;
+		if (c == long.class) return Kind.LONG;
+		if (c == float.class) return Kind.FLOAT;
+		if (c == double.class) return Kind.DOUBLE;
+		if (c == String.class) return Kind.STRING;
+		if (c == byte[].class) return Kind.BYTES;
+		return null;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	/** The encoded field names, in stream and raw order. */
+	public List<String> getFieldNames() {
+		List<String> names = new ArrayList<String>(plan.length);
+		for (FieldPlan f : plan) names.add(f.name);
+		return names;
+	}
+
+	/** A new record from the no-argument constructor. */
+	@SuppressWarnings("unchecked")
+	public T newRecord() {
+		if (constructor == null) throw new IllegalStateException(type.getName() + " has no no-argument constructor");
+		try {
+			return (T) (Object) constructor.invokeExact();
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/** Replaces the content of <code>map</code> with the fields of <code>record</code>. */
+	public void encode(T record, SDTMap map) throws SDTException {
+		map.clear();
+		for (int i = 0; i < plan.length; i++) {
+			FieldPlan f = plan[i];
+			switch (f.kind) {
+			case BOOLEAN:
+				map.putBoolean(f.name, access.getBoolean(record, i));
+				break;
+			case BYTE:
+				map.putByte(f.name, access.getByte(record, i));
+				break;
+			case SHORT:
+				map.putShort(f.name, access.getShort(record, i));
+				break;
+			case INT:
+				map.putInteger(f.name, access.getInt(record, i));
+				break;
+			case LONG:
+				map.putLong(f.name, access.getLong(record, i));
+				break;
+			case FLOAT:
+				map.putFloat(f.name, access.getFloat(record, i));
+				break;
+			case DOUBLE:
+				map.putDouble(f.name, access.getDouble(record, i));
+				break;
+			case STRING:
+				map.putString(f.name, (String) access.getObject(record, i));
+				break;
+			case BYTES:
+				map.putBytes(f.name, (byte[]) access.getObject(record, i));
+				break;
+			}
+		}
+	}
+
+	/** Replaces the content of <code>stream</code> with the fields of <code>record</code>. */
+	public void encode(T record, SDTStream stream) {
+		stream.clear();
+		for (int i = 0; i < plan.length; i++) {
+			switch (plan[i].kind) {
+			case BOOLEAN:
+				stream.writeBoolean(access.getBoolean(record, i));
+				break;
+			case BYTE:
+				stream.writeByte(access.getByte(record, i));
+				break;
+			case SHORT:
+				stream.writeShort(access.getShort(record, i));
+				break;
+			case INT:
+				stream.writeInteger(access.getInt(record, i));
+				break;
+			case LONG:
+				stream.writeLong(access.getLong(record, i));
+				break;
+			case FLOAT:
+				stream.writeFloat(access.getFloat(record, i));
+				break;
+			case DOUBLE:
+				stream.writeDouble(access.getDouble(record, i));
+				break;
+			case STRING:
+				stream.writeString((String) access.getObject(record, i));
+				break;
+			case BYTES:
+				stream.writeBytes((byte[]) access.getObject(record, i));
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Writes the fields of <code>record</code> at the position of
+	 * <code>buf</code>, for example into a buffer that then becomes the
+	 * message attachment.
+	 *
+	 * @return the number of bytes written
+	 * @throws java.nio.BufferOverflowException if <code>buf</code> is too small
+	 */
+	public int encode(T record, ByteBuffer buf) {
+		int start = buf.position();
+		for (int i = 0; i < plan.length; i++) {
+			switch (plan[i].kind) {
+			case BOOLEAN:
+				buf.put(access.getBoolean(record, i) ? (byte) 1 : (byte) 0);
+				break;
+			case BYTE:
+				buf.put(access.getByte(record, i));
+				break;
+			case SHORT:
+				buf.putShort(access.getShort(record, i));
+				break;
+			case INT:
+				buf.putInt(access.getInt(record, i));
+				break;
+			case LONG:
+				buf.putLong(access.getLong(record, i));
+				break;
+			case FLOAT:
+				buf.putFloat(access.getFloat(record, i));
+				break;
+			case DOUBLE:
+				buf.putDouble(access.getDouble(record, i));
+				break;
+			case STRING:
+				String s = (String) access.getObject(record, i);
+				putBytes(buf, s == null ? null : s.getBytes(UTF8));
+				break;
+			case BYTES:
+				putBytes(buf, (byte[]) access.getObject(record, i));
+				break;
+			}
+		}
+		return buf.position() - start;
+	}
+
+	private static void putBytes(ByteBuffer buf, byte[] b) {
+		if (b == null) {
+			buf.putInt(-1);
+		} else {
+			buf.putInt(b.length);
+			buf.put(b);
+		}
+	}
+
+	/**
+	 * Sets the fields of <code>into</code>, or of a new record if it is
+	 * null, from <code>map</code>. Fields the map does not hold keep their
+	 * value.
+	 */
+	public T decode(SDTMap map, T into) throws SDTException {
+		T record = into != null ? into : newRecord();
+		for (int i = 0; i < plan.length; i++) {
+			FieldPlan f = plan[i];
+			// A missing key reads as null, so only the nullable kinds need containsKey().
+			switch (f.kind) {
+			case BOOLEAN:
+				Boolean z = map.getBoolean(f.name);
+				if (z != null) access.setBoolean(record, i, z.booleanValue());
+				break;
+			case BYTE:
+				Byte b = map.getByte(f.name);
+				if (b != null) access.setByte(record, i, b.byteValue());
+				break;
+			case SHORT:
+				Short s = map.getShort(f.name);
+				if (s != null) access.setShort(record, i, s.shortValue());
+				break;
+			case INT:
+				Integer n = map.getInteger(f.name);
+				if (n != null) access.setInt(record, i, n.intValue());
+				break;
+			case LONG:
+				Long l = map.getLong(f.name);
+				if (l != null) access.setLong(record, i, l.longValue());
+				break;
+			case FLOAT:
+				Float x = map.getFloat(f.name);
+				if (x != null) access.setFloat(record, i, x.floatValue());
+				break;
+			case DOUBLE:
+				Double d = map.getDouble(f.name);
+				if (d != null) access.setDouble(record, i, d.doubleValue());
+				break;
+			case STRING:
+				if (map.containsKey(f.name)) access.setObject(record, i, map.getString(f.name));
+				break;
+			case BYTES:
+				if (map.containsKey(f.name)) access.setObject(record, i, map.getBytes(f.name));
+				break;
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Sets the fields of <code>into</code>, or of a new record if it is
+	 * null, from <code>stream</code>, read from its start.
+	 */
+	public T decode(SDTStream stream, T into) throws SDTException {
+		T record = into != null ? into : newRecord();
+		stream.rewind();
+		for (int i = 0; i < plan.length; i++) {
+			switch (plan[i].kind) {
+			case BOOLEAN:
+				access.setBoolean(record, i, stream.readBoolean().booleanValue());
+				break;
+			case BYTE:
+				access.setByte(record, i, stream.readByte().byteValue());
+				break;
+			case SHORT:
+				access.setShort(record, i, stream.readShort().shortValue());
+				break;
+			case INT:
+				access.setInt(record, i, stream.readInteger().intValue());
+				break;
+			case LONG:
+				access.setLong(record, i, stream.readLong().longValue());
+				break;
+			case FLOAT:
+				access.setFloat(record, i, stream.readFloat().floatValue());
+				break;
+			case DOUBLE:
+				access.setDouble(record, i, stream.readDouble().doubleValue());
+				break;
+			case STRING:
+				access.setObject(record, i, stream.readString());
+				break;
+			case BYTES:
+				access.setObject(record, i, stream.readBytes());
+				break;
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Sets the fields of <code>into</code>, or of a new record if it is
+	 * null, from the bytes at the position of <code>buf</code>.
+	 */
+	public T decode(ByteBuffer buf, T into) {
+		T record = into != null ? into : newRecord();
+		for (int i = 0; i < plan.length; i++) {
+			switch (plan[i].kind) {
+			case BOOLEAN:
+				access.setBoolean(record, i, buf.get() != 0);
+				break;
+			case BYTE:
+				access.setByte(record, i, buf.get());
+				break;
+			case SHORT:
+				access.setShort(record, i, buf.getShort());
+				break;
+			case INT:
+				access.setInt(record, i, buf.getInt());
+				break;
+			case LONG:
+				access.setLong(record, i, buf.getLong());
+				break;
+			case FLOAT:
+				access.setFloat(record, i, buf.getFloat());
+				break;
+			case DOUBLE:
+				access.setDouble(record, i, buf.getDouble());
+				break;
+			case STRING:
+				byte[] s = getBytes(buf);
+				access.setObject(record, i, s == null ? null : new String(s, UTF8));
+				break;
+			case BYTES:
+				access.setObject(record, i, getBytes(buf));
+				break;
+			}
+		}
+		return record;
+	}
+
+	private static byte[] getBytes(ByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0) return null;
+		byte[] b = new byte[len];
+		buf.get(b);
+		return b;
+	}
+
+	/** The handles throw nothing checked; anything else is passed on as is. */
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof RuntimeException) return (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		return new IllegalStateException(t);
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder(type.getSimpleName()).append(" {");
+		for (int i = 0; i < plan.length; i++) {
+			sb.append(i == 0 ? " " : ", ").append(plan[i].kind.name().toLowerCase()).append(' ').append(plan[i].name);
+		}
+		return sb.append(" }").toString();
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * SegmentedLogReader.java
+ *
+ * Reads back the records of a log written by SegmentedLogWriter, mapping
+ * one segment file at a time.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * next() returns each record as a read-only view into the mapped segment,
+ * without copying. A view is valid until the reader is closed, but should
+ * not be kept longer than needed, since it keeps its segment mapped.
+ */
+public class SegmentedLogReader implements Closeable {
+
+	private final File dir;
+	private final String prefix;
+	private int nextSegment;
+	private MappedByteBuffer segment;
+	private long records;
+
+	public SegmentedLogReader(File dir, String prefix) {
+		this.dir = dir;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * @return the next record, or null at the end of the log
+	 */
+	public ByteBuffer next() throws IOException {
+		while (true) {
+			if (segment == null && !openNext()) return null;
+			if (segment.remaining() >= 4) {
+				int len = segment.getInt();
+				if (len > 0) {
+					if (len > segment.remaining()) {
+						throw new IOException(String.format("Truncated record in %s at offset %d",
+							SegmentedLogWriter.segmentName(prefix, nextSegment - 1), segment.position() - 4));
+					}
+					ByteBuffer record = segment.slice();
+					record.limit(len);
+					segment.position(segment.position() + len);
+					records++;
+					return record.asReadOnlyBuffer();
+				}
+			}
+			segment = null;
+		}
+	}
+
+	private boolean openNext() throws IOException {
+		File f = new File(dir, SegmentedLogWriter.segmentName(prefix, nextSegment));
+		if (!f.isFile()) return false;
+		nextSegment++;
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		if (segment.remaining() < SegmentedLogWriter.HEADER_BYTES || segment.getInt() != SegmentedLogWriter.MAGIC) {
+			throw new IOException("Not a log segment: " + f);
+		}
+		int version = segment.getInt();
+		if (version != SegmentedLogWriter.VERSION) {
+			throw new IOException("Unsupported segment version " + version + ": " + f);
+		}
+		segment.getLong(); // index of the first record
+		return true;
+	}
+
+	/** Number of segments opened so far. */
+	public int getSegmentCount() {
+		return nextSegment;
+	}
+
+	public long getRecordsRead() {
+		return records;
+	}
+
+	public void close() {
+		segment = null;
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * SegmentedLogWriter.java
+ *
+ * Appends length-prefixed binary records to a series of memory-mapped
+ * segment files, <prefix>-00000000.seg, <prefix>-00000001.seg and so on.
+ * Records are copied straight into the mapped file; the operating system
+ * writes the pages out in the background.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Segment layout: a 16 byte header (magic, format version, index of the
+ * first record in the log), then records of an int length followed by that
+ * many bytes. A length of 0, or the end of the file, ends the segment. A
+ * finished segment is truncated to the bytes written.
+ *
+ * Not thread-safe; use one writer thread per log.
+ */
+public class SegmentedLogWriter implements Closeable {
+
+	static final int MAGIC = 0x534F4C47; // "SOLG"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+
+	/** File name of segment <code>n</code> of a log. */
+	static String segmentName(String prefix, int n) {
+		return String.format("%s-%08d.seg", prefix, n);
+	}
+
+	private final File dir;
+	private final String prefix;
+	private final int segmentBytes;
+	private final List<File> files = new ArrayList<File>();
+
+	private RandomAccessFile file;
+	private MappedByteBuffer segment;
+	private long records;
+	private long bytes;
+
+	/**
+	 * @param dir directory for the segment files; created if missing.
+	 *        Existing segments of the same prefix are deleted, so that a
+	 *        shorter log does not end with the segments of an older one.
+	 * @param segmentBytes size of each segment; a larger record gets a
+	 *        segment of its own
+	 */
+	public SegmentedLogWriter(File dir, String prefix, int segmentBytes) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create directory " + dir);
+		}
+		this.dir = dir;
+		this.prefix = prefix;
+		this.segmentBytes = segmentBytes;
+		deleteSegments(dir, prefix);
+	}
+
+	private static void deleteSegments(File dir, final String prefix) throws IOException {
+		File[] old = dir.listFiles(new FilenameFilter() {
+			public boolean accept(File d, String name) {
+				if (name.length() != segmentName(prefix, 0).length() || !name.startsWith(prefix + "-")
+					|| !name.endsWith(".seg")) {
+					return false;
+				}
+				for (int i = prefix.length() + 1; i < name.length() - 4; i++) {
+					if (!Character.isDigit(name.charAt(i))) return false;
+				}
+				return true;
+			}
+		});
+		if (old == null) throw new IOException("Unable to list directory " + dir);
+		for (File f : old) {
+			if (!f.delete()) throw new IOException("Unable to delete old segment " + f);
+		}
+	}
+
+	/**
+	 * Appends the bytes between position and limit of <code>record</code>
+	 * as one record. The position of <code>record</code> is advanced.
+	 */
+	public void append(ByteBuffer record) throws IOException {
+		int len = record.remaining();
+		if (segment == null || segment.remaining() < 4 + len) {
+			roll(4 + len);
+		}
+		segment.putInt(len);
+		segment.put(record);
+		records++;
+		bytes += 4 + len;
+	}
+
+	private void roll(int needed) throws IOException {
+		finishSegment();
+		File f = new File(dir, segmentName(prefix, files.size()));
+		int size = Math.max(segmentBytes, HEADER_BYTES + needed + 4);
+		file = new RandomAccessFile(f, "rw");
+		file.setLength(0);
+		segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		segment.putInt(MAGIC);
+		segment.putInt(VERSION);
+		segment.putLong(records);
+		files.add(f);
+	}
+
+	private void finishSegment() throws IOException {
+		if (segment == null) return;
+		int end = segment.position();
+		if (segment.remaining() >= 4) segment.putInt(0);
+		segment.force();
+		try {
+			// Drop the unused, preallocated tail. The mapping stays valid
+			// until it is garbage collected, which Java 7 cannot hurry.
+			file.getChannel().truncate(Math.min(end + 4, segment.capacity()));
+		} catch (IOException e) {
+			// Platforms that refuse to truncate a mapped file keep the
+			// padding; readers stop at the 0 length.
+		}
+		file.close();
+		file = null;
+		segment = null;
+	}
+
+	/** Flushes the current segment to disk. */
+	public void force() {
+		if (segment != null) segment.force();
+	}
+
+	public void close() throws IOException {
+		finishSegment();
+	}
+
+	public long getRecordsWritten() {
+		return records;
+	}
+
+	/** Bytes appended, including the record length prefixes. */
+	public long getBytesWritten() {
+		return bytes;
+	}
+
+	public List<File> getFiles() {
+		return Collections.unmodifiableList(files);
+	}
+}
@@ -0,0 +1,310 @@
+/**
+ * SempBulkApplier.java
+ *
+ * Applies a list of SEMP configuration RPCs over HTTP with bounded
+ * parallelism. Connections are kept alive and reused by SempHttpClient,
+ * transient failures are retried with backoff, and an RPC is only started
+ * once every RPC it depends on has succeeded.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.solacesystems.jcsmp.samples.introsamples.common.SempHttpClient.ResponseHandler;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempHttpClient.SempHttpException;
+
+/**
+ * Dependencies are given per RPC as the IDs of RPCs that must succeed
+ * first (for example, creating a queue before setting its permissions).
+ * When an RPC fails for good, everything that depends on it, directly or
+ * not, is skipped; independent RPCs still run.
+ *
+ * Connection errors, timeouts and HTTP 5xx responses are retried. A SEMP
+ * execute-result other than "ok" is a permanent failure.
+ */
+public class SempBulkApplier {
+
+	public enum Status {
+		PENDING, OK, FAILED, SKIPPED
+	}
+
+	/**
+	 * One configuration RPC and its outcome.
+	 */
+	public static final class ConfigRpc {
+		final String id;
+		final byte[] request;
+		final List<String> dependsOn;
+		final List<ConfigRpc> dependents = new ArrayList<ConfigRpc>();
+		final AtomicInteger unmetDependencies = new AtomicInteger();
+		volatile Status status = Status.PENDING;
+		volatile int attempts;
+		volatile long latencyMicros;
+		volatile String error;
+
+		public ConfigRpc(String id, String request, List<String> dependsOn) {
+			this.id = id;
+			this.request = toBytes(request);
+			this.dependsOn = dependsOn == null ? Collections.<String> emptyList() : dependsOn;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+		/** Time of the successful attempt. */
+		public long getLatencyMicros() {
+			return latencyMicros;
+		}
+
+		public String getError() {
+			return error;
+		}
+	}
+
+	static byte[] toBytes(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private final SempHttpClient client;
+	private final int parallelism;
+	private final int maxAttempts;
+	private final long initialBackoffMs;
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicInteger ok = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private final AtomicInteger skipped = new AtomicInteger();
+	private long applyMillis;
+
+	/**
+	 * @param client client whose connection cache holds at least
+	 *        <code>parallelism</code> connections
+	 * @param parallelism RPCs in flight at once
+	 * @param maxAttempts attempts per RPC, including the first
+	 * @param initialBackoffMs wait before the first retry; doubled for each
+	 *        following retry
+	 */
+	public SempBulkApplier(SempHttpClient client, int parallelism, int maxAttempts, long initialBackoffMs) {
+		this.client = client;
+		this.parallelism = parallelism;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMs = initialBackoffMs;
+	}
+
+	/**
+	 * Runs all RPCs and returns when each one has succeeded, failed or been
+	 * skipped.
+	 *
+	 * @throws IllegalArgumentException for duplicate IDs, unknown
+	 *         dependencies or dependency cycles
+	 */
+	public void apply(List<ConfigRpc> rpcs) throws InterruptedException {
+		Map<String, ConfigRpc> byId = new LinkedHashMap<String, ConfigRpc>();
+		for (ConfigRpc rpc : rpcs) {
+			if (byId.put(rpc.id, rpc) != null) {
+				throw new IllegalArgumentException("Duplicate RPC id: " + rpc.id);
+			}
+		}
+		List<ConfigRpc> roots = new ArrayList<ConfigRpc>();
+		for (ConfigRpc rpc : rpcs) {
+			for (String dep : rpc.dependsOn) {
+				ConfigRpc parent = byId.get(dep);
+				if (parent == null) {
+					throw new IllegalArgumentException(String.format("RPC %s depends on unknown RPC %s", rpc.id, dep));
+				}
+				parent.dependents.add(rpc);
+			}
+			rpc.unmetDependencies.set(rpc.dependsOn.size());
+			if (rpc.dependsOn.isEmpty()) roots.add(rpc);
+		}
+		checkAcyclic(rpcs);
+
+		final CountDownLatch done = new CountDownLatch(rpcs.size());
+		final ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		long start = System.nanoTime();
+		try {
+			for (ConfigRpc rpc : roots) {
+				submit(pool, rpc, done);
+			}
+			done.await();
+		} finally {
+			pool.shutdownNow();
+			applyMillis = (System.nanoTime() - start) / 1000000;
+		}
+	}
+
+	/**
+	 * Kahn's algorithm on a scratch copy of the in-degrees.
+	 */
+	private static void checkAcyclic(List<ConfigRpc> rpcs) {
+		Map<ConfigRpc, Integer> indegree = new LinkedHashMap<ConfigRpc, Integer>();
+		List<ConfigRpc> ready = new ArrayList<ConfigRpc>();
+		for (ConfigRpc rpc : rpcs) {
+			indegree.put(rpc, rpc.dependsOn.size());
+			if (rpc.dependsOn.isEmpty()) ready.add(rpc);
+		}
+		int visited = 0;
+		while (!ready.isEmpty()) {
+			ConfigRpc rpc = ready.remove(ready.size() - 1);
+			visited++;
+			for (ConfigRpc child : rpc.dependents) {
+				int n = indegree.get(child) - 1;
+				indegree.put(child, n);
+				if (n == 0) ready.add(child);
+			}
+		}
+		if (visited != rpcs.size()) {
+			throw new IllegalArgumentException("RPC dependencies contain a cycle");
+		}
+	}
+
+	private void submit(final ExecutorService pool, final ConfigRpc rpc, final CountDownLatch done) {
+		pool.execute(new Runnable() {
+			public void run() {
+				try {
+					execute(rpc);
+				} finally {
+					// Whatever happened, apply() must not wait for this RPC or
+					// its dependents forever.
+					done.countDown();
+					if (rpc.status == Status.OK) {
+						for (ConfigRpc child : rpc.dependents) {
+							if (child.unmetDependencies.decrementAndGet() == 0 && child.status == Status.PENDING) {
+								submit(pool, child, done);
+							}
+						}
+					} else {
+						skipDependents(rpc, done);
+					}
+				}
+			}
+		});
+	}
+
+	private void skipDependents(ConfigRpc rpc, CountDownLatch done) {
+		for (ConfigRpc child : rpc.dependents) {
+			synchronized (child) {
+				if (child.status != Status.PENDING) continue;
+				child.status = Status.SKIPPED;
+				child.error = "dependency " + rpc.id + " did not succeed";
+			}
+			skipped.incrementAndGet();
+			done.countDown();
+			skipDependents(child, done);
+		}
+	}
+
+	private void execute(ConfigRpc rpc) {
+		final SempReplyReader reader = new SempReplyReader(null);
+		final SempReplyReader.Result[] result = new SempReplyReader.Result[1];
+		ResponseHandler handler = new ResponseHandler() {
+			public void onResponse(InputStream in) throws IOException {
+				try {
+					result[0] = reader.read(in, null);
+				} catch (XMLStreamException e) {
+					throw new IOException("Unable to parse SEMP reply: " + e.getMessage(), e);
+				}
+			}
+		};
+		long backoff = initialBackoffMs;
+		while (true) {
+			rpc.attempts++;
+			result[0] = null;
+			long start = System.nanoTime();
+			try {
+				client.execute(rpc.request, handler);
+				long micros = (System.nanoTime() - start) / 1000;
+				if (result[0] == null) {
+					finish(rpc, Status.FAILED, "no SEMP reply body");
+				} else if (result[0].isOk()) {
+					rpc.latencyMicros = micros;
+					latency.record(micros);
+					finish(rpc, Status.OK, null);
+				} else {
+					String reason = result[0].getReason();
+					finish(rpc, Status.FAILED, "execute-result " + result[0].getExecuteResult()
+						+ (reason != null ? ": " + reason : ""));
+				}
+				return;
+			} catch (IOException e) {
+				boolean retryable = !(e instanceof SempHttpException)
+					|| ((SempHttpException) e).getResponseCode() >= 500;
+				if (!retryable || rpc.attempts >= maxAttempts) {
+					finish(rpc, Status.FAILED, e.getMessage());
+					return;
+				}
+			} catch (RuntimeException e) {
+				finish(rpc, Status.FAILED, e.toString());
+				return;
+			}
+			retries.incrementAndGet();
+			try {
+				// Full jitter, so that retries from many workers spread out.
+				Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				finish(rpc, Status.FAILED, "interrupted");
+				return;
+			}
+			backoff = Math.min(backoff * 2, 10000);
+		}
+	}
+
+	private void finish(ConfigRpc rpc, Status status, String error) {
+		rpc.error = error;
+		rpc.status = status;
+		if (status == Status.OK) {
+			ok.incrementAndGet();
+		} else {
+			failed.incrementAndGet();
+		}
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public long getApplyMillis() {
+		return applyMillis;
+	}
+
+	public String getReport() {
+		int total = ok.get() + failed.get() + skipped.get();
+		return String.format("%d RPCs in %d ms (%.0f RPC/s) with %d in flight: ok=%d failed=%d skipped=%d retries=%d\n"
+			+ "RPC latency: %s",
+			total, applyMillis, applyMillis == 0 ? 0.0 : total * 1000.0 / applyMillis, parallelism,
+			ok.get(), failed.get(), skipped.get(), retries.get(), latency.getSummary("us"));
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * SempHttpClient.java
+ *
+ * Thread-safe client for SEMP requests over HTTP(S). Requests are POSTed to
+ * /SEMP through java.net.HttpURLConnection; every response body is read to
+ * the end and closed so that the underlying keep-alive connection goes back
+ * to the JVM's connection cache and is reused by the next request.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Authenticator;
+import java.net.HttpURLConnection;
+import java.net.PasswordAuthentication;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+public class SempHttpClient {
+
+	/**
+	 * Consumes a successful (HTTP 200) response body.
+	 */
+	public interface ResponseHandler {
+		void onResponse(InputStream in) throws IOException;
+	}
+
+	/**
+	 * Thrown for HTTP status codes other than 200.
+	 */
+	public static class SempHttpException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final int responseCode;
+
+		public SempHttpException(int responseCode, String responseMessage) {
+			super(String.format("HTTP %s %s", responseCode, responseMessage));
+			this.responseCode = responseCode;
+		}
+
+		public int getResponseCode() {
+			return responseCode;
+		}
+	}
+
+	private final URL url;
+	private final int connectTimeoutMs;
+	private final int readTimeoutMs;
+
+	/**
+	 * @param ipPort appliance management address, HOST:PORT
+	 * @param username SEMP username
+	 * @param password SEMP password
+	 * @param useHttps connect with HTTPS (certificates are not validated)
+	 * @param maxConnections keep-alive connections cached per host; should be
+	 *        at least the number of threads issuing requests concurrently
+	 */
+	public SempHttpClient(String ipPort, String username, String password, boolean useHttps, int maxConnections)
+		throws IOException, GeneralSecurityException {
+		// Default authenticator for connections. Java will first attempt an
+		// unauthenticated connection, then automatically retry with auth
+		// when that first connection fails, and cache the credentials.
+		Authenticator.setDefault(new BasicAuthenticator(username, password));
+		// The JVM keeps at most http.maxConnections idle connections per
+		// destination (5 by default); more concurrent requests than that
+		// would keep reconnecting.
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", String.valueOf(Math.max(5, maxConnections)));
+		}
+		String scheme = "http://";
+		if (useHttps) {
+			scheme = "https://";
+			trustAllCertificates();
+		}
+		this.url = new URL(scheme + ipPort + "/SEMP");
+		this.connectTimeoutMs = 10000;
+		this.readTimeoutMs = 30000;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	/**
+	 * POSTs one SEMP request and hands the response body to the handler.
+	 * Whatever the handler leaves unread is drained so the connection can be
+	 * reused.
+	 */
+	public void execute(byte[] request, ResponseHandler handler) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoInput(true);
+		connection.setDoOutput(true);
+		connection.setConnectTimeout(connectTimeoutMs);
+		connection.setReadTimeout(readTimeoutMs);
+		OutputStream out = connection.getOutputStream();
+		try {
+			out.write(request);
+		} finally {
+			out.close();
+		}
+
+		int responseCode = connection.getResponseCode();
+		if (responseCode != 200) {
+			drainAndClose(connection.getErrorStream());
+			throw new SempHttpException(responseCode, connection.getResponseMessage());
+		}
+		InputStream in = connection.getInputStream();
+		try {
+			handler.onResponse(in);
+		} finally {
+			drainAndClose(in);
+		}
+	}
+
+	/**
+	 * POSTs one SEMP request and returns the whole response body.
+	 */
+	public byte[] execute(byte[] request) throws IOException {
+		final ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+		execute(request, new ResponseHandler() {
+			public void onResponse(InputStream in) throws IOException {
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = in.read(buf)) >= 0) {
+					body.write(buf, 0, n);
+				}
+			}
+		});
+		return body.toByteArray();
+	}
+
+	private static final ThreadLocal<byte[]> DRAIN_BUFFER = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+
+	static void drainAndClose(InputStream in) {
+		if (in == null) return;
+		try {
+			byte[] buf = DRAIN_BUFFER.get();
+			while (in.read(buf) >= 0) {
+				// discard
+			}
+		} catch (IOException e) {
+			// The connection will not be reused.
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Setup for https.
+	 * Installs a trust manager that accepts all certificates and a hostname
+	 * verifier that accepts all hostnames.
+	 */
+	public static void trustAllCertificates() throws GeneralSecurityException {
+		SSLContext sc = SSLContext.getInstance("TLS");
+		sc.init(null, new TrustManager[] {new X509TrustManager() {
+			public X509Certificate[] getAcceptedIssuers() {
+				return null;
+			}
+			public void checkServerTrusted(X509Certificate[] chain, String authType)
+					throws CertificateException {
+			}
+			public void checkClientTrusted(X509Certificate[] chain, String authType)
+					throws CertificateException {
+			}
+		}}, null);
+		HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
+		HttpsURLConnection.setDefaultHostnameVerifier(new HostnameVerifier() {
+			public boolean verify(String arg0, SSLSession arg1) {
+				return true;
+			}
+		});
+	}
+
+	static class BasicAuthenticator extends Authenticator {
+		private final String user;
+		private final String pwd;
+
+		BasicAuthenticator(String username, String password) {
+			user = username;
+			pwd = password;
+		}
+
+		protected PasswordAuthentication getPasswordAuthentication() {
+			return new PasswordAuthentication(user, pwd.toCharArray());
+		}
+	}
+}
@@ -0,0 +1,534 @@
+/**
+ * SempMetricsScraper.java
+ *
+ * Polls a configured set of SEMP show commands on a schedule and turns the
+ * numeric fields of every record into values, deltas and per-second rates.
+ * Replies are parsed straight off the HTTP connection with SempReplyReader,
+ * and the previous sample is kept in primitive arrays indexed by row, so a
+ * poll does not allocate per record once the set of rows is known.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.solacesystems.jcsmp.samples.introsamples.common.SempHttpClient.ResponseHandler;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader.RecordHandler;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader.SempRecord;
+
+/**
+ * After each poll an immutable Snapshot is published; get it with
+ * getSnapshot() or register a SnapshotListener. Every field is a COUNTER or
+ * a GAUGE. A counter that goes down between polls is taken to have been
+ * reset and its delta is its new value; a gauge, such as a spool depth, may
+ * go either way and its delta and rate are signed.
+ */
+public class SempMetricsScraper {
+
+	/** How the difference between two polls of a field is interpreted. */
+	public enum Kind {
+		/** Only increases, except when reset. */
+		COUNTER,
+		/** Goes up and down. */
+		GAUGE
+	}
+
+	/**
+	 * Called on the polling thread after each poll.
+	 */
+	public interface SnapshotListener {
+		void onSnapshot(Snapshot snapshot);
+	}
+
+	/**
+	 * One show command and the numeric fields taken from each of its records.
+	 */
+	public static final class MetricSet {
+		final String name;
+		final String showBody;
+		final String keyField;
+		final String[] fields;
+		final Kind[] kinds;
+		final SempReplyReader reader;
+
+		// Per-row state; row r, field f is at [r * fields.length + f].
+		final RowIndex index = new RowIndex();
+		long[] previous = new long[0];
+		long[] current = new long[0];
+		long[] delta = new long[0];
+		double[] rate = new double[0];
+		long[] seenInPoll = new long[0];
+		boolean[] hasPrevious = new boolean[0];
+		boolean[] present = new boolean[0];
+		long lastPollNanos = 0;
+		long poll = 0;
+		final RecordHandler handler;
+
+		/**
+		 * @param name name of the set in snapshots
+		 * @param showBody the &lt;show&gt; element of the request
+		 * @param recordPath record element path, see SempReplyReader
+		 * @param keyField leaf identifying a record, e.g. "name"
+		 * @param fields numeric leaves to track, relative to the record; they
+		 *        are counters unless marked with setKind()
+		 */
+		public MetricSet(String name, String showBody, String recordPath, String keyField, String... fields) {
+			this.name = name;
+			this.showBody = showBody;
+			this.keyField = keyField;
+			this.fields = fields;
+			this.kinds = new Kind[fields.length];
+			Arrays.fill(kinds, Kind.COUNTER);
+			this.reader = new SempReplyReader(recordPath);
+			this.handler = new RecordHandler() {
+				public void onRecord(SempRecord record) {
+					CharSequence key = record.getValue(MetricSet.this.keyField);
+					if (key == null) return;
+					int row = rowFor(key);
+					seenInPoll[row] = poll;
+					int base = row * MetricSet.this.fields.length;
+					for (int f = 0; f < MetricSet.this.fields.length; f++) {
+						current[base + f] = record.getLong(MetricSet.this.fields[f], 0);
+					}
+				}
+			};
+		}
+
+		/**
+		 * Sets the kind of the given fields, e.g. setKind(Kind.GAUGE,
+		 * "info/num-messages-spooled").
+		 */
+		public MetricSet setKind(Kind kind, String... names) {
+			for (String n : names) {
+				int f = Arrays.asList(fields).indexOf(n);
+				if (f < 0) throw new IllegalArgumentException("No field " + n + " in metric set " + name);
+				kinds[f] = kind;
+			}
+			return this;
+		}
+
+		int rowFor(CharSequence key) {
+			int row = index.get(key);
+			if (row >= 0) return row;
+			row = index.add(key.toString());
+			if (row >= seenInPoll.length) {
+				int rows = Math.max(16, seenInPoll.length * 2);
+				int width = fields.length;
+				previous = grow(previous, rows * width);
+				current = grow(current, rows * width);
+				delta = grow(delta, rows * width);
+				double[] r = new double[rows * width];
+				System.arraycopy(rate, 0, r, 0, rate.length);
+				rate = r;
+				seenInPoll = grow(seenInPoll, rows);
+				hasPrevious = grow(hasPrevious, rows);
+				present = grow(present, rows);
+			}
+			hasPrevious[row] = false;
+			return row;
+		}
+
+		private static long[] grow(long[] a, int size) {
+			long[] b = new long[size];
+			System.arraycopy(a, 0, b, 0, a.length);
+			return b;
+		}
+
+		private static boolean[] grow(boolean[] a, int size) {
+			boolean[] b = new boolean[size];
+			System.arraycopy(a, 0, b, 0, a.length);
+			return b;
+		}
+
+		/**
+		 * Computes deltas and rates for the rows seen in this poll.
+		 */
+		void completePoll(long nowNanos) {
+			double seconds = lastPollNanos == 0 ? 0 : (nowNanos - lastPollNanos) / 1e9;
+			int width = fields.length;
+			for (int row = 0; row < index.size(); row++) {
+				present[row] = seenInPoll[row] == poll;
+				if (!present[row]) {
+					// A row that comes back starts over rather than being
+					// compared with a sample from before it went away.
+					hasPrevious[row] = false;
+					continue;
+				}
+				int base = row * width;
+				for (int f = base; f < base + width; f++) {
+					if (hasPrevious[row]) {
+						long d = current[f] - previous[f];
+						delta[f] = d < 0 && kinds[f - base] == Kind.COUNTER ? current[f] : d;
+						rate[f] = seconds > 0 ? delta[f] / seconds : 0;
+					} else {
+						delta[f] = 0;
+						rate[f] = 0;
+					}
+					previous[f] = current[f];
+				}
+				hasPrevious[row] = true;
+			}
+			lastPollNanos = nowNanos;
+		}
+
+		/**
+		 * Copies the rows of the last completed poll; "previous" holds their
+		 * values, while "current" may be partly overwritten by a failed poll.
+		 */
+		SetSnapshot snapshot() {
+			int width = fields.length;
+			int count = 0;
+			for (int row = 0; row < index.size(); row++) {
+				if (present[row]) count++;
+			}
+			String[] keys = new String[count];
+			long[] v = new long[count * width];
+			long[] d = new long[count * width];
+			double[] r = new double[count * width];
+			int out = 0;
+			for (int row = 0; row < index.size(); row++) {
+				if (!present[row]) continue;
+				keys[out] = index.keyOf(row);
+				System.arraycopy(previous, row * width, v, out * width, width);
+				System.arraycopy(delta, row * width, d, out * width, width);
+				System.arraycopy(rate, row * width, r, out * width, width);
+				out++;
+			}
+			return new SetSnapshot(name, fields, kinds, keys, v, d, r);
+		}
+	}
+
+	/**
+	 * Open-addressing map from record key to row number that can be probed
+	 * with the reader's reusable CharSequence, so known keys are found
+	 * without creating Strings.
+	 */
+	static final class RowIndex {
+		private String[] keys = new String[64];
+		private int[] rows = new int[64];
+		private final List<String> byRow = new ArrayList<String>();
+
+		static int hash(CharSequence s) {
+			int h = 0;
+			for (int i = 0; i < s.length(); i++) h = 31 * h + s.charAt(i);
+			return h ^ (h >>> 16);
+		}
+
+		static boolean contentEquals(String s, CharSequence cs) {
+			if (s.length() != cs.length()) return false;
+			for (int i = 0; i < s.length(); i++) {
+				if (s.charAt(i) != cs.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		int get(CharSequence key) {
+			int mask = keys.length - 1;
+			for (int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+				if (contentEquals(keys[i], key)) return rows[i];
+			}
+			return -1;
+		}
+
+		int add(String key) {
+			if ((byRow.size() + 1) * 2 > keys.length) rehash(keys.length * 2);
+			int row = byRow.size();
+			put(key, row);
+			byRow.add(key);
+			return row;
+		}
+
+		private void put(String key, int row) {
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != null) i = (i + 1) & mask;
+			keys[i] = key;
+			rows[i] = row;
+		}
+
+		private void rehash(int capacity) {
+			keys = new String[capacity];
+			rows = new int[capacity];
+			for (int row = 0; row < byRow.size(); row++) put(byRow.get(row), row);
+		}
+
+		int size() {
+			return byRow.size();
+		}
+
+		String keyOf(int row) {
+			return byRow.get(row);
+		}
+	}
+
+	/**
+	 * Values of one metric set at the end of a poll.
+	 */
+	public static final class SetSnapshot {
+		private final String name;
+		private final String[] fields;
+		private final Kind[] kinds;
+		private final String[] keys;
+		private final long[] values;
+		private final long[] deltas;
+		private final double[] rates;
+
+		SetSnapshot(String name, String[] fields, Kind[] kinds, String[] keys, long[] values, long[] deltas,
+			double[] rates) {
+			this.name = name;
+			this.fields = fields;
+			this.kinds = kinds.clone();
+			this.keys = keys;
+			this.values = values;
+			this.deltas = deltas;
+			this.rates = rates;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getRowCount() {
+			return keys.length;
+		}
+
+		public String getKey(int row) {
+			return keys[row];
+		}
+
+		public int getFieldCount() {
+			return fields.length;
+		}
+
+		public String getField(int field) {
+			return fields[field];
+		}
+
+		public Kind getKind(int field) {
+			return kinds[field];
+		}
+
+		public int indexOfField(String field) {
+			for (int i = 0; i < fields.length; i++) {
+				if (fields[i].equals(field)) return i;
+			}
+			return -1;
+		}
+
+		public long getValue(int row, int field) {
+			return values[row * fields.length + field];
+		}
+
+		public long getDelta(int row, int field) {
+			return deltas[row * fields.length + field];
+		}
+
+		/**
+		 * Change per second since the previous poll; 0 on a row's first poll.
+		 * Negative only for gauges.
+		 */
+		public double getRate(int row, int field) {
+			return rates[row * fields.length + field];
+		}
+
+		public long getTotal(int field) {
+			long total = 0;
+			for (int row = 0; row < keys.length; row++) total += getValue(row, field);
+			return total;
+		}
+
+		public double getTotalRate(int field) {
+			double total = 0;
+			for (int row = 0; row < keys.length; row++) total += getRate(row, field);
+			return total;
+		}
+	}
+
+	/**
+	 * Results of one poll over all metric sets.
+	 */
+	public static final class Snapshot {
+		private final long timestamp;
+		private final long pollMicros;
+		private final List<SetSnapshot> sets;
+
+		Snapshot(long timestamp, long pollMicros, List<SetSnapshot> sets) {
+			this.timestamp = timestamp;
+			this.pollMicros = pollMicros;
+			this.sets = Collections.unmodifiableList(sets);
+		}
+
+		/** Wall clock time the poll finished. */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/** How long the poll took. */
+		public long getPollMicros() {
+			return pollMicros;
+		}
+
+		public List<SetSnapshot> getSets() {
+			return sets;
+		}
+
+		public SetSnapshot get(String name) {
+			for (SetSnapshot s : sets) {
+				if (s.getName().equals(name)) return s;
+			}
+			return null;
+		}
+	}
+
+	private final SempHttpClient client;
+	private final String sempVersion;
+	private final List<MetricSet> sets = new CopyOnWriteArrayList<MetricSet>();
+	private final List<SnapshotListener> listeners = new CopyOnWriteArrayList<SnapshotListener>();
+	private final LatencyHistogram pollTimes = new LatencyHistogram();
+	private final AtomicLong polls = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private volatile Exception lastError;
+	private volatile Snapshot snapshot;
+	private ScheduledExecutorService scheduler;
+
+	// Reused for every page request.
+	private final StringBuilder requestBuilder = new StringBuilder(256);
+
+	public SempMetricsScraper(SempHttpClient client, String sempVersion) {
+		this.client = client;
+		this.sempVersion = sempVersion;
+	}
+
+	public void addMetricSet(MetricSet set) {
+		sets.add(set);
+	}
+
+	public void addListener(SnapshotListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Polls every interval until stop() is called. A poll that overruns the
+	 * interval delays the next one rather than overlapping it.
+	 */
+	public synchronized void start(long intervalMs) {
+		if (scheduler != null) return;
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SempMetricsScraper");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					poll();
+				} catch (Exception e) {
+					// Keep polling; the error is counted and kept.
+				}
+			}
+		}, 0, intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Runs one poll of all metric sets on the calling thread and publishes
+	 * the snapshot. A set whose request fails keeps its previous sample.
+	 */
+	public synchronized Snapshot poll() throws IOException {
+		long start = System.nanoTime();
+		IOException failure = null;
+		List<SetSnapshot> results = new ArrayList<SetSnapshot>(sets.size());
+		for (MetricSet set : sets) {
+			try {
+				pollSet(set);
+				set.completePoll(System.nanoTime());
+			} catch (IOException e) {
+				failure = e;
+				errors.incrementAndGet();
+				lastError = e;
+			}
+			results.add(set.snapshot());
+		}
+		long micros = (System.nanoTime() - start) / 1000;
+		pollTimes.record(micros);
+		polls.incrementAndGet();
+		Snapshot s = new Snapshot(System.currentTimeMillis(), micros, results);
+		snapshot = s;
+		for (SnapshotListener listener : listeners) {
+			listener.onSnapshot(s);
+		}
+		if (failure != null) throw failure;
+		return s;
+	}
+
+	private void pollSet(final MetricSet set) throws IOException {
+		set.poll++;
+		requestBuilder.setLength(0);
+		requestBuilder.append("<rpc semp-version=\"").append(sempVersion).append("\">")
+			.append(set.showBody).append("</rpc>");
+		String request = requestBuilder.toString();
+		final SempReplyReader.Result[] result = new SempReplyReader.Result[1];
+		ResponseHandler handler = new ResponseHandler() {
+			public void onResponse(InputStream in) throws IOException {
+				try {
+					result[0] = set.reader.read(in, set.handler);
+				} catch (XMLStreamException e) {
+					throw new IOException("Unable to parse SEMP reply: " + e.getMessage(), e);
+				}
+			}
+		};
+		// Follow more-cookies until the whole listing has been read.
+		while (request != null) {
+			client.execute(request.getBytes("UTF-8"), handler);
+			if (!result[0].isOk()) {
+				throw new IOException(String.format("SEMP response for '%s' was '%s'", set.name,
+					result[0].getExecuteResult()));
+			}
+			request = result[0].getMoreCookie();
+		}
+	}
+
+	/** The most recent snapshot, or null before the first poll. */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public long getPolls() {
+		return polls.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	public LatencyHistogram getPollTimes() {
+		return pollTimes;
+	}
+}
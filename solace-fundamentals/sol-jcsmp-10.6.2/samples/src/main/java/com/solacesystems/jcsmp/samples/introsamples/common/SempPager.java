@@ -0,0 +1,251 @@
+/**
+ * SempPager.java
+ *
+ * Lazy iterator over the records of a paged SEMP "show" query sent over the
+ * message bus. As soon as a reply has been parsed and its more-cookie found,
+ * the request for the following page is sent, so that round trips overlap
+ * with the caller consuming the current page.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.Requestor;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader.RecordHandler;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader.SempRecord;
+
+/**
+ * With a prefetch depth of N, a background thread keeps up to N pages
+ * requested ahead of the consumer, counting the one in flight: it sends the
+ * next request as soon as the previous reply is parsed, unless N pages are
+ * already waiting or in flight, in which case it sends it as soon as the
+ * consumer takes a page. Handing a page over never delays a request. With a
+ * depth of 0 each page is requested from the caller's thread when the
+ * previous one is used up, which is the strictly sequential behaviour.
+ *
+ * The records returned are copies and may be kept. Call close() when
+ * abandoning the iteration early so that the fetch thread stops.
+ */
+public class SempPager implements Iterator<SempRecord>, Closeable {
+
+	/**
+	 * Unchecked wrapper for request or parse failures, since Iterator
+	 * methods cannot throw checked exceptions.
+	 */
+	public static class SempPagingException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public SempPagingException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+
+	static final class Page {
+		final List<SempRecord> records;
+		final boolean last;
+		final Exception error;
+
+		Page(List<SempRecord> records, boolean last, Exception error) {
+			this.records = records;
+			this.last = last;
+			this.error = error;
+		}
+	}
+
+	private final Requestor requestor;
+	private final Destination sempTopic;
+	private final long timeoutMs;
+	private final SempReplyReader reader;
+	private final BlockingQueue<Page> ready;
+	private final Semaphore slots;
+	private final Thread fetcher;
+
+	// Consumer side state
+	private Iterator<SempRecord> current = Collections.<SempRecord> emptyList().iterator();
+	private boolean finished = false;
+	private String nextRequest;
+	private volatile boolean closed = false;
+
+	// Statistics
+	private volatile long pages = 0;
+	private volatile long records = 0;
+	private volatile long requestNanos = 0;
+	private long waitNanos = 0;
+
+	/**
+	 * Builds a show request that returns <code>pageSize</code> records per
+	 * reply, e.g. pagedShowRequest(v, "queue", "&lt;name&gt;*&lt;/name&gt;", 100).
+	 */
+	public static String pagedShowRequest(String sempVersion, String command, String filter, int pageSize) {
+		return String.format("<rpc semp-version=\"%s\"><show><%s>%s<num-elements>%d</num-elements></%s></show></rpc>",
+			sempVersion, command, filter, pageSize, command);
+	}
+
+	/**
+	 * @param requestor requestor of a connected session
+	 * @param sempTopic the appliance's #SEMP/ROUTER/SHOW topic
+	 * @param firstRequest request for the first page
+	 * @param recordPath record element path, see SempReplyReader
+	 * @param timeoutMs per-request timeout
+	 * @param prefetchPages pages fetched ahead of the consumer; 0 disables
+	 *        prefetching
+	 */
+	public SempPager(Requestor requestor, Destination sempTopic, String firstRequest, String recordPath,
+		long timeoutMs, int prefetchPages) {
+		this.requestor = requestor;
+		this.sempTopic = sempTopic;
+		this.timeoutMs = timeoutMs;
+		this.reader = new SempReplyReader(recordPath);
+		if (prefetchPages > 0) {
+			this.ready = new LinkedBlockingQueue<Page>();
+			this.slots = new Semaphore(prefetchPages);
+			this.fetcher = new Thread(new Fetcher(firstRequest), "SempPager");
+			this.fetcher.setDaemon(true);
+			this.fetcher.start();
+		} else {
+			this.ready = null;
+			this.slots = null;
+			this.fetcher = null;
+			this.nextRequest = firstRequest;
+		}
+	}
+
+	class Fetcher implements Runnable {
+		private String request;
+
+		Fetcher(String firstRequest) {
+			request = firstRequest;
+		}
+
+		public void run() {
+			try {
+				while (request != null && !closed) {
+					// A slot is freed when the consumer takes a page.
+					slots.acquire();
+					List<SempRecord> page = new ArrayList<SempRecord>();
+					request = fetchPage(request, page);
+					// The queue is unbounded, so this never blocks and the
+					// request for the cookie goes out right away.
+					ready.offer(new Page(page, request == null, null));
+				}
+			} catch (InterruptedException e) {
+				// closed
+			} catch (Exception e) {
+				ready.offer(new Page(null, true, e));
+			}
+		}
+	}
+
+	/**
+	 * Sends one request, adds copies of its records to <code>page</code> and
+	 * returns the more-cookie, or null on the last page.
+	 */
+	String fetchPage(String request, final List<SempRecord> page) throws Exception {
+		BytesXMLMessage requestMsg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+		requestMsg.writeAttachment(request.getBytes("UTF-8"));
+		long start = System.nanoTime();
+		BytesXMLMessage replyMsg = requestor.request(requestMsg, timeoutMs, sempTopic);
+		requestNanos += System.nanoTime() - start;
+
+		byte[] bytes = new byte[replyMsg.getAttachmentContentLength()];
+		replyMsg.readAttachmentBytes(bytes);
+		SempReplyReader.Result result = reader.read(bytes, 0, bytes.length, new RecordHandler() {
+			public void onRecord(SempRecord record) {
+				page.add(record.copy());
+			}
+		});
+		if (!result.isOk()) {
+			throw new JCSMPException(String.format("SEMP response '%s' not OK.", result.getExecuteResult()));
+		}
+		pages++;
+		records += result.getRecordCount();
+		return result.getMoreCookie();
+	}
+
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (finished) return false;
+			long start = System.nanoTime();
+			Page page = nextPage();
+			waitNanos += System.nanoTime() - start;
+			if (page.error != null) {
+				finished = true;
+				throw new SempPagingException("SEMP paging failed: " + page.error.getMessage(), page.error);
+			}
+			finished = page.last;
+			current = page.records.iterator();
+		}
+		return true;
+	}
+
+	private Page nextPage() {
+		if (fetcher == null) {
+			List<SempRecord> page = new ArrayList<SempRecord>();
+			try {
+				nextRequest = fetchPage(nextRequest, page);
+				return new Page(page, nextRequest == null, null);
+			} catch (Exception e) {
+				return new Page(null, true, e);
+			}
+		}
+		try {
+			Page page = ready.take();
+			slots.release();
+			return page;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Page(null, true, e);
+		}
+	}
+
+	public SempRecord next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		return current.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops fetching further pages.
+	 */
+	public void close() {
+		closed = true;
+		finished = true;
+		if (fetcher != null) fetcher.interrupt();
+	}
+
+	public long getPageCount() {
+		return pages;
+	}
+
+	public long getRecordCount() {
+		return records;
+	}
+
+	/** Sum of request round trip times. */
+	public long getRequestMillis() {
+		return requestNanos / 1000000;
+	}
+
+	/** Time the consumer spent blocked waiting for a page. */
+	public long getWaitMillis() {
+		return waitNanos / 1000000;
+	}
+}
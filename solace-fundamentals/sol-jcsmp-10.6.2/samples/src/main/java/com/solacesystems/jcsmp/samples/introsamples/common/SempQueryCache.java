@@ -0,0 +1,269 @@
+/**
+ * SempQueryCache.java
+ *
+ * Shared cache for SEMP show requests sent over the message bus. Replies are
+ * kept for a per-command time to live, the least recently used entries are
+ * evicted beyond a size limit, and concurrent identical requests are
+ * coalesced so that only one of them goes to the appliance.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.Requestor;
+
+/**
+ * Requests are keyed by their normalized XML: whitespace between and inside
+ * tags is collapsed and empty elements are written as &lt;name/&gt;, so
+ * requests that differ only in formatting share an entry. The time to live
+ * is chosen by the first element below &lt;show&gt; (e.g. "queue").
+ *
+ * Cached reply bytes are shared between callers and must not be modified.
+ * Each calling thread gets its own Requestor on the session.
+ */
+public class SempQueryCache {
+
+	private static final Pattern EMPTY_ELEMENT = Pattern.compile("<([A-Za-z0-9_.:-]+)></\\1>");
+
+	static final class CachedReply {
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile byte[] reply;
+		volatile JCSMPException error;
+		volatile long expiresAt;
+
+		boolean isLoaded() {
+			return done.getCount() == 0;
+		}
+	}
+
+	private final JCSMPSession session;
+	private final Destination sempTopic;
+	private final long timeoutMs;
+	private final long defaultTtlMs;
+	private final Map<String, Long> ttlByCommand = new ConcurrentHashMap<String, Long>();
+	private final LinkedHashMap<String, CachedReply> entries;
+
+	private final ThreadLocal<Requestor> requestors = new ThreadLocal<Requestor>();
+
+	// Statistics
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong brokerRequests = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * @param session connected session
+	 * @param sempTopic the appliance's #SEMP/ROUTER/SHOW topic
+	 * @param defaultTtlMs time to live for commands without their own TTL
+	 * @param maxEntries entries kept before the least recently used is evicted
+	 * @param timeoutMs per-request timeout
+	 */
+	public SempQueryCache(JCSMPSession session, Destination sempTopic, long defaultTtlMs, final int maxEntries,
+		long timeoutMs) {
+		this.session = session;
+		this.sempTopic = sempTopic;
+		this.defaultTtlMs = defaultTtlMs;
+		this.timeoutMs = timeoutMs;
+		this.entries = new LinkedHashMap<String, CachedReply>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, CachedReply> eldest) {
+				// Requests still in flight are never evicted; their waiters
+				// need the entry.
+				if (size() > maxEntries && eldest.getValue().isLoaded()) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Sets the time to live for one show command, e.g. setTtl("queue", 2000).
+	 * A TTL of 0 disables caching for the command but keeps coalescing.
+	 */
+	public void setTtl(String command, long ttlMs) {
+		ttlByCommand.put(command, ttlMs);
+	}
+
+	/**
+	 * Returns the reply to <code>request</code>, from the cache when a fresh
+	 * entry exists, by waiting for an identical request already in flight,
+	 * or else by sending it to the appliance.
+	 */
+	public byte[] query(String request) throws JCSMPException {
+		String key = normalize(request);
+		requests.incrementAndGet();
+		CachedReply entry;
+		boolean load = false;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry == null || (entry.isLoaded() && System.currentTimeMillis() >= entry.expiresAt)) {
+				if (entry != null) expirations.incrementAndGet();
+				entry = new CachedReply();
+				entries.put(key, entry);
+				load = true;
+			}
+		}
+		if (load) {
+			brokerRequests.incrementAndGet();
+			load(key, entry);
+		} else if (entry.isLoaded()) {
+			hits.incrementAndGet();
+		} else {
+			coalesced.incrementAndGet();
+			try {
+				entry.done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JCSMPException("Interrupted waiting for SEMP reply", e);
+			}
+		}
+		if (entry.error != null) throw entry.error;
+		return entry.reply;
+	}
+
+	private void load(String key, CachedReply entry) {
+		try {
+			Requestor requestor = requestors.get();
+			if (requestor == null) {
+				requestor = session.createRequestor();
+				requestors.set(requestor);
+			}
+			BytesXMLMessage requestMsg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+			requestMsg.writeAttachment(key.getBytes("UTF-8"));
+			BytesXMLMessage replyMsg = requestor.request(requestMsg, timeoutMs, sempTopic);
+			byte[] bytes = new byte[replyMsg.getAttachmentContentLength()];
+			replyMsg.readAttachmentBytes(bytes);
+			entry.reply = bytes;
+			entry.expiresAt = System.currentTimeMillis() + ttlOf(key);
+		} catch (Exception e) {
+			failures.incrementAndGet();
+			entry.error = e instanceof JCSMPException ? (JCSMPException) e
+				: new JCSMPException("SEMP request failed: " + e.getMessage(), e);
+			// Failures are not cached; the next caller retries.
+			synchronized (entries) {
+				if (entries.get(key) == entry) entries.remove(key);
+			}
+		} finally {
+			entry.done.countDown();
+		}
+	}
+
+	long ttlOf(String normalizedRequest) {
+		String command = commandOf(normalizedRequest);
+		Long ttl = command == null ? null : ttlByCommand.get(command);
+		return ttl == null ? defaultTtlMs : ttl.longValue();
+	}
+
+	/**
+	 * Returns the name of the first element inside &lt;show&gt;, or null.
+	 */
+	static String commandOf(String normalizedRequest) {
+		int i = normalizedRequest.indexOf("<show>");
+		if (i < 0) return null;
+		i += "<show>".length();
+		if (i >= normalizedRequest.length() || normalizedRequest.charAt(i) != '<') return null;
+		int end = i + 1;
+		while (end < normalizedRequest.length()) {
+			char c = normalizedRequest.charAt(end);
+			if (c == '>' || c == '/' || c == ' ') break;
+			end++;
+		}
+		return normalizedRequest.substring(i + 1, end);
+	}
+
+	/**
+	 * Canonical form of a request used as the cache key.
+	 */
+	static String normalize(String request) {
+		StringBuilder out = new StringBuilder(request.length());
+		boolean inTag = false;
+		boolean pendingSpace = false;
+		for (int i = 0; i < request.length(); i++) {
+			char c = request.charAt(i);
+			if (Character.isWhitespace(c)) {
+				pendingSpace = out.length() > 0;
+				continue;
+			}
+			if (pendingSpace) {
+				char prev = out.charAt(out.length() - 1);
+				// Keep a single space only where it is significant: between
+				// words of text, or between a tag name and its attributes.
+				if (inTag ? (prev != '=' && c != '=' && c != '>' && c != '/') : (prev != '>' && c != '<')) {
+					out.append(' ');
+				}
+				pendingSpace = false;
+			}
+			if (c == '<') inTag = true;
+			else if (c == '>') inTag = false;
+			out.append(c);
+		}
+		return EMPTY_ELEMENT.matcher(out).replaceAll("<$1/>");
+	}
+
+	/**
+	 * Drops every cached reply.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public long getBrokerRequests() {
+		return brokerRequests.get();
+	}
+
+	/** Requests answered without a round trip of their own. */
+	public long getSavedRequests() {
+		return hits.get() + coalesced.get();
+	}
+
+	public double getHitRatio() {
+		long r = requests.get();
+		return r == 0 ? 0 : (double) getSavedRequests() / r;
+	}
+
+	public String getReport() {
+		return String.format("requests=%d hits=%d coalesced=%d broker-requests=%d saved=%d hit-ratio=%.1f%% "
+			+ "expired=%d evicted=%d failed=%d entries=%d",
+			getRequests(), getHits(), getCoalesced(), getBrokerRequests(), getSavedRequests(),
+			100.0 * getHitRatio(), expirations.get(), evictions.get(), failures.get(), size());
+	}
+}
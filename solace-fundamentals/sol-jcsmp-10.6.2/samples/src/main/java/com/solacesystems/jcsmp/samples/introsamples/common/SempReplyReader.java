@@ -0,0 +1,350 @@
+/**
+ * SempReplyReader.java
+ *
+ * Streaming (StAX) reader for SEMP replies. Records, such as each
+ * <queue> element of a "show queue" reply, are pulled straight from the
+ * reply bytes and handed to a callback one at a time, so memory use does
+ * not grow with the size of the reply. The execute-result code and the
+ * more-cookie used for paging are captured on the way.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A reader is configured once with the path of the record element, given as
+ * trailing element names, e.g. "queue/queues/queue" for
+ * //show/queue/queues/queue. Every leaf below a record is exposed by its
+ * path relative to the record, e.g. "name" or "info/num-messages-spooled".
+ *
+ * A SempReplyReader reuses its record buffers and is not thread-safe; use
+ * one per thread.
+ */
+public class SempReplyReader {
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+	static {
+		FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+	}
+
+	private static final int MAX_DEPTH = 64;
+
+	/**
+	 * Receives each record as it is parsed. The record object is reused for
+	 * the next record, so values must be copied if they are kept.
+	 */
+	public interface RecordHandler {
+		void onRecord(SempRecord record);
+	}
+
+	/**
+	 * Reusable flat view of one record: leaf paths and their text values.
+	 */
+	public static final class SempRecord {
+		private String[] keys = new String[16];
+		private StringBuilder[] values = new StringBuilder[16];
+		private int size = 0;
+		private long index;
+
+		void clear(long index) {
+			this.index = index;
+			size = 0;
+		}
+
+		/**
+		 * Returns the value buffer for <code>path</code>, reusing the key
+		 * String from the previous record when the layout is unchanged.
+		 */
+		StringBuilder slot(CharSequence path) {
+			if (size == keys.length) {
+				String[] k = new String[size * 2];
+				StringBuilder[] v = new StringBuilder[size * 2];
+				System.arraycopy(keys, 0, k, 0, size);
+				System.arraycopy(values, 0, v, 0, size);
+				keys = k;
+				values = v;
+			}
+			if (keys[size] == null || !contentEquals(keys[size], path)) {
+				keys[size] = path.toString();
+			}
+			if (values[size] == null) {
+				values[size] = new StringBuilder(32);
+			}
+			StringBuilder value = values[size++];
+			value.setLength(0);
+			return value;
+		}
+
+		private static boolean contentEquals(String s, CharSequence cs) {
+			if (s.length() != cs.length()) return false;
+			for (int i = 0; i < s.length(); i++) {
+				if (s.charAt(i) != cs.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		/** Position of this record in the reply, starting at 0. */
+		public long getIndex() {
+			return index;
+		}
+
+		public int getFieldCount() {
+			return size;
+		}
+
+		public String getKey(int i) {
+			return keys[i];
+		}
+
+		public CharSequence getValue(int i) {
+			return values[i];
+		}
+
+		/** Returns the value of a leaf without copying it, or null. */
+		public CharSequence getValue(String path) {
+			for (int i = 0; i < size; i++) {
+				if (keys[i].equals(path)) return values[i];
+			}
+			return null;
+		}
+
+		public String get(String path) {
+			CharSequence v = getValue(path);
+			return v == null ? null : v.toString();
+		}
+
+		/** Parses a numeric leaf without allocating; returns dflt if absent or not a number. */
+		public long getLong(String path, long dflt) {
+			CharSequence v = getValue(path);
+			if (v == null || v.length() == 0) return dflt;
+			long result = 0;
+			int i = 0;
+			boolean negative = v.charAt(0) == '-';
+			if (negative) i++;
+			if (i == v.length()) return dflt;
+			for (; i < v.length(); i++) {
+				char c = v.charAt(i);
+				if (c < '0' || c > '9') return dflt;
+				result = result * 10 + (c - '0');
+			}
+			return negative ? -result : result;
+		}
+
+		/**
+		 * Returns an independent copy sized to this record, for callers that
+		 * keep records after the handler returns.
+		 */
+		public SempRecord copy() {
+			SempRecord c = new SempRecord();
+			c.keys = new String[Math.max(size, 1)];
+			c.values = new StringBuilder[Math.max(size, 1)];
+			for (int i = 0; i < size; i++) {
+				c.keys[i] = keys[i];
+				c.values[i] = new StringBuilder(values[i]);
+			}
+			c.size = size;
+			c.index = index;
+			return c;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder bldr = new StringBuilder("{");
+			for (int i = 0; i < size; i++) {
+				if (i > 0) bldr.append(", ");
+				bldr.append(keys[i]).append('=').append(values[i]);
+			}
+			return bldr.append('}').toString();
+		}
+	}
+
+	/**
+	 * Summary of one reply.
+	 */
+	public static final class Result {
+		String executeResult;
+		String reason;
+		String moreCookie;
+		long records;
+
+		/** The execute-result code attribute, e.g. "ok", or null if absent. */
+		public String getExecuteResult() {
+			return executeResult;
+		}
+
+		/** The execute-result reason attribute of a failed request, or null. */
+		public String getReason() {
+			return reason;
+		}
+
+		public boolean isOk() {
+			return "ok".equals(executeResult);
+		}
+
+		/** The next request to send for paging, or null when there is no more data. */
+		public String getMoreCookie() {
+			return moreCookie;
+		}
+
+		public long getRecordCount() {
+			return records;
+		}
+	}
+
+	private final String[] recordPath;
+	private final String[] stack = new String[MAX_DEPTH];
+	private final StringBuilder leafPath = new StringBuilder(64);
+	private final SempRecord record = new SempRecord();
+
+	/**
+	 * @param recordPath trailing element names of the record element,
+	 *        separated by '/', or null to only read the result and cookie
+	 */
+	public SempReplyReader(String recordPath) {
+		this.recordPath = recordPath == null ? new String[0] : recordPath.split("/");
+	}
+
+	public Result read(byte[] data, int offset, int length, RecordHandler handler) throws XMLStreamException {
+		return read(new ByteArrayInputStream(data, offset, length), handler);
+	}
+
+	/**
+	 * Parses a complete reply from <code>in</code>, calling the handler for
+	 * every record. The stream is not closed.
+	 */
+	public Result read(InputStream in, RecordHandler handler) throws XMLStreamException {
+		Result result = new Result();
+		XMLStreamReader xr = FACTORY.createXMLStreamReader(in);
+		try {
+			int depth = 0;
+			int recordDepth = -1;   // depth of the current record element
+			int leafDepth = -1;     // depth of the element whose text is being captured
+			StringBuilder leaf = null;
+			while (xr.hasNext()) {
+				int event = xr.next();
+				switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					String name = xr.getLocalName();
+					if (depth < MAX_DEPTH) stack[depth] = name;
+					depth++;
+					if (recordDepth < 0) {
+						if ("execute-result".equals(name)) {
+							result.executeResult = xr.getAttributeValue(null, "code");
+							result.reason = xr.getAttributeValue(null, "reason");
+						} else if ("more-cookie".equals(name)) {
+							result.moreCookie = readSubtree(xr);
+							depth--;
+						} else if (recordPath.length > 0 && matchesRecordPath(depth)) {
+							recordDepth = depth;
+							record.clear(result.records);
+						}
+					} else {
+						// Any element inside a record may be a leaf. Its slot
+						// is only taken once text or its end tag shows up, so
+						// elements with children never get one.
+						leafPath.setLength(0);
+						for (int d = recordDepth; d < depth && d < MAX_DEPTH; d++) {
+							if (leafPath.length() > 0) leafPath.append('/');
+							leafPath.append(stack[d]);
+						}
+						leaf = null;
+						leafDepth = depth;
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+					if (leafDepth == depth && !xr.isWhiteSpace()) {
+						if (leaf == null) leaf = record.slot(leafPath);
+						leaf.append(xr.getTextCharacters(), xr.getTextStart(), xr.getTextLength());
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					if (depth == leafDepth && leaf == null) {
+						record.slot(leafPath); // empty leaf, e.g. <durable/>
+					}
+					leafDepth = -1;
+					if (depth == recordDepth) {
+						result.records++;
+						if (handler != null) handler.onRecord(record);
+						recordDepth = -1;
+					}
+					leaf = null;
+					depth--;
+					break;
+				default:
+					break;
+				}
+			}
+		} finally {
+			xr.close();
+		}
+		return result;
+	}
+
+	private boolean matchesRecordPath(int depth) {
+		if (depth < recordPath.length || depth > MAX_DEPTH) return false;
+		for (int i = 0; i < recordPath.length; i++) {
+			if (!recordPath[recordPath.length - 1 - i].equals(stack[depth - 1 - i])) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the content of the current element as text, re-serializing any
+	 * child elements (a more-cookie holds the complete next <rpc> request).
+	 * Leaves the reader on the element's END_ELEMENT.
+	 */
+	private static String readSubtree(XMLStreamReader xr) throws XMLStreamException {
+		StringBuilder out = new StringBuilder(256);
+		int level = 0;
+		while (xr.hasNext()) {
+			int event = xr.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				level++;
+				out.append('<').append(xr.getLocalName());
+				for (int i = 0; i < xr.getAttributeCount(); i++) {
+					out.append(' ').append(xr.getAttributeLocalName(i)).append("=\"");
+					escape(xr.getAttributeValue(i), out);
+					out.append('"');
+				}
+				out.append('>');
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (level == 0) break;
+				level--;
+				out.append("</").append(xr.getLocalName()).append('>');
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				if (level == 0) {
+					out.append(xr.getText()); // plain text cookie
+				} else {
+					escape(xr.getText(), out);
+				}
+			}
+		}
+		String cookie = out.toString().trim();
+		return cookie.length() == 0 ? null : cookie;
+	}
+
+	private static void escape(String s, StringBuilder out) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '<': out.append("&lt;"); break;
+			case '>': out.append("&gt;"); break;
+			case '&': out.append("&amp;"); break;
+			case '"': out.append("&quot;"); break;
+			default: out.append(c);
+			}
+		}
+	}
+}
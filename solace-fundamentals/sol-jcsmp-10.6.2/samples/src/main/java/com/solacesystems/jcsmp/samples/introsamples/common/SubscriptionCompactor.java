@@ -0,0 +1,215 @@
+/**
+ * SubscriptionCompactor.java
+ *
+ * Reduces a set of topic subscriptions to the ones the broker needs, by
+ * leaving out every subscription that another one in the set covers.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A subscription covers another if every topic the other matches, it
+ * matches as well: "a/b/*" covers "a/b/c" and "a/b/c*", "a/&gt;" covers
+ * everything below "a", "ab*" covers "abc*". The wildcards are those of
+ * TopicMatcher.matches.
+ *
+ * compact() keeps the subscriptions no other one covers, and records for
+ * each of them the subscriptions it stands for. Only the kept ones need to
+ * be added to the session; the original ones are still what the
+ * application's handlers should be registered on, for example in a
+ * TopicDispatcher, so that each handler sees exactly the topics it asked
+ * for.
+ *
+ * To find the covering candidates of a subscription without comparing it
+ * to every other one, the wildcard subscriptions are indexed by their
+ * literal leading levels, the ones before the first wildcard; a candidate
+ * must share those levels, so the lookups are one per level.
+ */
+public class SubscriptionCompactor {
+
+	/** The result of compact(). */
+	public static final class Plan {
+		private final int requested;
+		private final int duplicates;
+		private final Map<String, List<String>> covered;
+		private final Map<String, String> owner;
+
+		Plan(int requested, int duplicates, Map<String, List<String>> covered, Map<String, String> owner) {
+			this.requested = requested;
+			this.duplicates = duplicates;
+			this.covered = covered;
+			this.owner = owner;
+		}
+
+		/** The subscriptions to add to the session, in request order. */
+		public List<String> getBrokerSubscriptions() {
+			return new ArrayList<String>(covered.keySet());
+		}
+
+		/**
+		 * The reverse index: each broker subscription and the original
+		 * subscriptions it carries, itself first.
+		 */
+		public Map<String, List<String>> getCovered() {
+			return Collections.unmodifiableMap(covered);
+		}
+
+		/** The broker subscription that carries <code>original</code>, or null. */
+		public String getBrokerSubscription(String original) {
+			return owner.get(original);
+		}
+
+		/** Subscriptions passed to compact(), duplicates included. */
+		public int getRequested() {
+			return requested;
+		}
+
+		public int getDuplicates() {
+			return duplicates;
+		}
+
+		/** Broker subscriptions saved: duplicates and covered subscriptions. */
+		public int getSaved() {
+			return requested - covered.size();
+		}
+
+		/** Broker subscriptions this plan has and <code>previous</code> has not. */
+		public List<String> getAdded(Plan previous) {
+			List<String> added = new ArrayList<String>();
+			for (String s : covered.keySet()) {
+				if (previous == null || !previous.covered.containsKey(s)) added.add(s);
+			}
+			return added;
+		}
+
+		/** Broker subscriptions <code>previous</code> has and this plan has not. */
+		public List<String> getRemoved(Plan previous) {
+			List<String> removed = new ArrayList<String>();
+			if (previous == null) return removed;
+			for (String s : previous.covered.keySet()) {
+				if (!covered.containsKey(s)) removed.add(s);
+			}
+			return removed;
+		}
+
+		public String toString() {
+			return String.format("%d subscriptions requested, %d broker subscriptions needed: %d saved"
+				+ " (%d duplicates, %d covered by wildcards, %.1f%%)", requested, covered.size(), getSaved(),
+				duplicates, getSaved() - duplicates, getSaved() * 100.0 / Math.max(requested, 1));
+		}
+	}
+
+	/**
+	 * @return true if every topic matching <code>specific</code> also
+	 *         matches <code>general</code>
+	 */
+	public static boolean covers(String general, String specific) {
+		int p = 0, q = 0;
+		int pn = general.length(), qn = specific.length();
+		while (true) {
+			int pEnd = general.indexOf('/', p);
+			if (pEnd < 0) pEnd = pn;
+			int qEnd = specific.indexOf('/', q);
+			if (qEnd < 0) qEnd = qn;
+			if (pEnd == pn && pEnd - p == 1 && general.charAt(p) == '>') {
+				// One or more levels; specific has at least this one.
+				return q < qn;
+			}
+			if (qEnd == qn && qEnd - q == 1 && specific.charAt(q) == '>') return false;
+			boolean specificPrefix = qEnd > q && specific.charAt(qEnd - 1) == '*';
+			if (pEnd > p && general.charAt(pEnd - 1) == '*') {
+				int prefix = pEnd - 1 - p;
+				int level = specificPrefix ? qEnd - 1 - q : qEnd - q;
+				if (level < prefix || !specific.regionMatches(q, general, p, prefix)) return false;
+			} else if (specificPrefix || pEnd - p != qEnd - q || !specific.regionMatches(q, general, p, pEnd - p)) {
+				return false;
+			}
+			if (pEnd == pn || qEnd == qn) return pEnd == pn && qEnd == qn;
+			p = pEnd + 1;
+			q = qEnd + 1;
+		}
+	}
+
+	/**
+	 * The leading levels of <code>subscription</code> before its first
+	 * wildcard level, with their trailing '/', or null if it has none.
+	 */
+	static String literalPrefix(String subscription) {
+		int p = 0, n = subscription.length();
+		while (p <= n) {
+			int end = subscription.indexOf('/', p);
+			if (end < 0) end = n;
+			boolean wildcard = (end > p && subscription.charAt(end - 1) == '*')
+				|| (end == n && end - p == 1 && subscription.charAt(p) == '>');
+			if (wildcard) return subscription.substring(0, p);
+			p = end + 1;
+		}
+		return null;
+	}
+
+	public static Plan compact(Collection<String> subscriptions) {
+		Set<String> unique = new LinkedHashSet<String>(subscriptions);
+		Map<String, List<String>> wildcards = new HashMap<String, List<String>>();
+		for (String s : unique) {
+			String key = literalPrefix(s);
+			if (key == null) continue;
+			List<String> list = wildcards.get(key);
+			if (list == null) wildcards.put(key, list = new ArrayList<String>());
+			list.add(s);
+		}
+
+		// Covering is transitive, so the subscriptions no other one covers
+		// are enough, and each dropped one has a kept cover among its
+		// candidates.
+		Set<String> dropped = new LinkedHashSet<String>();
+		for (String s : unique) {
+			if (findCover(wildcards, s, null) != null) dropped.add(s);
+		}
+		Map<String, List<String>> covered = new LinkedHashMap<String, List<String>>();
+		Map<String, String> owner = new HashMap<String, String>();
+		for (String s : unique) {
+			if (dropped.contains(s)) continue;
+			List<String> list = new ArrayList<String>();
+			list.add(s);
+			covered.put(s, list);
+			owner.put(s, s);
+		}
+		for (String s : dropped) {
+			String cover = findCover(wildcards, s, dropped);
+			covered.get(cover).add(s);
+			owner.put(s, cover);
+		}
+		return new Plan(subscriptions.size(), subscriptions.size() - unique.size(), covered, owner);
+	}
+
+	/**
+	 * A wildcard subscription other than <code>s</code> that covers it and
+	 * is not in <code>exclude</code>, or null.
+	 */
+	private static String findCover(Map<String, List<String>> wildcards, String s, Set<String> exclude) {
+		int p = 0, n = s.length();
+		while (true) {
+			List<String> candidates = wildcards.get(s.substring(0, p));
+			if (candidates != null) {
+				for (String c : candidates) {
+					if (!c.equals(s) && (exclude == null || !exclude.contains(c)) && covers(c, s)) return c;
+				}
+			}
+			int end = s.indexOf('/', p);
+			if (end < 0) return null;
+			p = end + 1;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * SubscriptionReconciler.java
+ *
+ * Brings the topic subscriptions of a set of queues in line with a
+ * declared subscription set by applying only the difference, through a
+ * BulkSubscriptionManager.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.Requestor;
+import com.solacesystems.jcsmp.samples.introsamples.common.BulkSubscriptionManager.Entry;
+import com.solacesystems.jcsmp.samples.introsamples.common.BulkSubscriptionManager.Op;
+import com.solacesystems.jcsmp.samples.introsamples.common.SempReplyReader.SempRecord;
+
+/**
+ * Subscription sets are kept as queue name to sorted topic set. The file
+ * format, for both the desired set and the tracked state, is one
+ * "queue topic" pair per line; blank lines and lines starting with '#'
+ * are ignored.
+ *
+ * The current set comes from a CurrentState: either the broker itself,
+ * over SEMP (SempState), or a local state file the reconciler keeps up to
+ * date after each run (TrackedState). The SEMP source only looks at the
+ * queues in the desired set. The tracked source also covers the queues it
+ * recorded before, so a queue dropped from the desired set has its
+ * subscriptions removed.
+ *
+ * Additions are applied before removals, so a topic that moves from one
+ * wildcard to another keeps being delivered.
+ */
+public class SubscriptionReconciler {
+
+	/** Source of the subscriptions currently on the broker. */
+	public interface CurrentState {
+		/** Queues the source knows subscriptions for, besides the desired ones. */
+		Set<String> getKnownQueues() throws Exception;
+
+		Set<String> fetch(String queue) throws Exception;
+	}
+
+	/**
+	 * Reads the subscriptions of a queue with the paged SEMP request
+	 * "show queue NAME subscriptions".
+	 */
+	public static class SempState implements CurrentState {
+		private final Requestor requestor;
+		private final Destination sempTopic;
+		private final String sempVersion;
+		private final int pageSize;
+		private long requests;
+
+		public SempState(Requestor requestor, Destination sempTopic, String sempVersion, int pageSize) {
+			this.requestor = requestor;
+			this.sempTopic = sempTopic;
+			this.sempVersion = sempVersion;
+			this.pageSize = pageSize;
+		}
+
+		public Set<String> getKnownQueues() {
+			return new TreeSet<String>();
+		}
+
+		public Set<String> fetch(String queue) {
+			String request = SempPager.pagedShowRequest(sempVersion, "queue",
+				"<name>" + queue + "</name><subscriptions/>", pageSize);
+			SempPager pager = new SempPager(requestor, sempTopic, request,
+				"queue/queues/queue/subscriptions/subscription", 10000, 2);
+			Set<String> topics = new TreeSet<String>();
+			try {
+				while (pager.hasNext()) {
+					SempRecord r = pager.next();
+					String topic = r.get("topic");
+					if (topic != null) topics.add(topic);
+				}
+			} finally {
+				pager.close();
+				requests += pager.getPageCount();
+			}
+			return topics;
+		}
+
+		/** SEMP requests sent so far. */
+		public long getRequests() {
+			return requests;
+		}
+	}
+
+	/**
+	 * The state recorded by the last reconcile. Only correct while nothing
+	 * else changes the subscriptions of these queues.
+	 */
+	public static class TrackedState implements CurrentState {
+		private final Map<String, Set<String>> state;
+
+		public TrackedState(File file) throws IOException {
+			state = file.isFile() ? read(file) : new TreeMap<String, Set<String>>();
+		}
+
+		public Set<String> getKnownQueues() {
+			return state.keySet();
+		}
+
+		public Set<String> fetch(String queue) {
+			Set<String> topics = state.get(queue);
+			return topics == null ? new TreeSet<String>() : topics;
+		}
+	}
+
+	/** Outcome of one reconcile(). */
+	public static final class Report {
+		private int queues;
+		private int desired;
+		private int current;
+		private int adds;
+		private int removes;
+		private long fetchMillis;
+		private BulkSubscriptionManager.Result result;
+
+		public int getAdds() {
+			return adds;
+		}
+
+		public int getRemoves() {
+			return removes;
+		}
+
+		/** Null for a dry run or when there was nothing to do. */
+		public BulkSubscriptionManager.Result getResult() {
+			return result;
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%d queues: %d desired, %d current subscriptions (read in %d ms)\n", queues,
+				desired, current, fetchMillis));
+			sb.append(String.format("Diff: %d to add, %d to remove, %d unchanged; a full re-add would send %d requests",
+				adds, removes, desired - adds, desired));
+			if (result != null) sb.append("\nApplied: ").append(result);
+			return sb.toString();
+		}
+	}
+
+	private final BulkSubscriptionManager manager;
+	private final CurrentState currentState;
+	private final File stateFile;
+
+	/**
+	 * @param stateFile where the resulting state is saved for a later
+	 *        TrackedState; may be null
+	 */
+	public SubscriptionReconciler(BulkSubscriptionManager manager, CurrentState currentState, File stateFile) {
+		this.manager = manager;
+		this.currentState = currentState;
+		this.stateFile = stateFile;
+	}
+
+	/**
+	 * Computes the difference between the current and the desired set and,
+	 * unless <code>dryRun</code>, applies it.
+	 *
+	 * @param changes receives the diff entries; may be null
+	 */
+	public Report reconcile(Map<String, Set<String>> desired, boolean dryRun, List<Entry> changes)
+		throws Exception {
+		Report report = new Report();
+		Set<String> queues = new TreeSet<String>(desired.keySet());
+		queues.addAll(currentState.getKnownQueues());
+
+		long start = System.nanoTime();
+		Map<String, Set<String>> current = new TreeMap<String, Set<String>>();
+		for (String q : queues) {
+			current.put(q, new TreeSet<String>(currentState.fetch(q)));
+		}
+		report.fetchMillis = (System.nanoTime() - start) / 1000000;
+
+		List<Entry> adds = new ArrayList<Entry>();
+		List<Entry> removes = new ArrayList<Entry>();
+		for (String q : queues) {
+			Set<String> want = desired.containsKey(q) ? desired.get(q) : new TreeSet<String>();
+			Set<String> have = current.get(q);
+			Queue queue = JCSMPFactory.onlyInstance().createQueue(q);
+			for (String t : want) {
+				if (!have.contains(t)) adds.add(new Entry(queue, JCSMPFactory.onlyInstance().createTopic(t), Op.ADD));
+			}
+			for (String t : have) {
+				if (!want.contains(t)) {
+					removes.add(new Entry(queue, JCSMPFactory.onlyInstance().createTopic(t), Op.REMOVE));
+				}
+			}
+			report.desired += want.size();
+			report.current += have.size();
+		}
+		report.queues = queues.size();
+		report.adds = adds.size();
+		report.removes = removes.size();
+
+		List<Entry> diff = new ArrayList<Entry>(adds);
+		diff.addAll(removes);
+		if (changes != null) changes.addAll(diff);
+		if (dryRun) return report;
+
+		if (!diff.isEmpty()) report.result = manager.apply(diff);
+
+		// The new state is the old one with the successful changes applied.
+		for (Entry e : diff) {
+			if (e.getError() != null) continue;
+			Set<String> topics = current.get(e.getEndpoint().getName());
+			if (e.getOp() == Op.ADD) {
+				topics.add(e.getTopic().getName());
+			} else {
+				topics.remove(e.getTopic().getName());
+			}
+		}
+		if (stateFile != null) write(stateFile, current);
+		return report;
+	}
+
+	/** Reads a subscription set file. */
+	public static Map<String, Set<String>> read(File file) throws IOException {
+		Map<String, Set<String>> set = new TreeMap<String, Set<String>>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			int n = 0;
+			while ((line = in.readLine()) != null) {
+				n++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				String[] parts = line.split("\\s+");
+				if (parts.length != 2) {
+					throw new IOException(String.format("%s:%d: expected 'queue topic'", file, n));
+				}
+				Set<String> topics = set.get(parts[0]);
+				if (topics == null) set.put(parts[0], topics = new TreeSet<String>());
+				topics.add(parts[1]);
+			}
+		} finally {
+			in.close();
+		}
+		return set;
+	}
+
+	/**
+	 * Writes a subscription set file, replacing <code>file</code> only once
+	 * the new content is complete. Queues without subscriptions are left
+	 * out.
+	 */
+	public static void write(File file, Map<String, Set<String>> set) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(fos, "UTF-8"));
+		try {
+			for (Map.Entry<String, Set<String>> e : set.entrySet()) {
+				for (String t : e.getValue()) {
+					out.write(e.getKey());
+					out.write(' ');
+					out.write(t);
+					out.newLine();
+				}
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+		// A crash leaves either the old file or the new one, never neither.
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
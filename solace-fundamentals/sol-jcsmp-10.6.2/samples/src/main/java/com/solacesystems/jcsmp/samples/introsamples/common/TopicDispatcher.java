@@ -0,0 +1,342 @@
+/**
+ * TopicDispatcher.java
+ *
+ * Routes received messages to handlers registered per topic subscription,
+ * using a trie of topic levels.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.XMLMessageListener;
+
+/**
+ * Each node of the trie is one topic level. A node has three kinds of
+ * children: exact levels, found through an open-addressing table hashed
+ * over the level's characters, prefix levels such as "sym*" (a lone "*"
+ * is the empty prefix), and the handlers of a trailing "&gt;". Wildcards
+ * follow TopicMatcher.matches: '*' only counts at the end of a
+ * level, and '&gt;' only as the last level.
+ *
+ * Routing a topic walks the levels in place, with indexOf and
+ * regionMatches instead of split, so a message costs one table probe per
+ * level plus one branch per matching wildcard, and nothing is allocated.
+ * A message matching several subscriptions is passed to the handlers of
+ * each of them; a handler registered on two matching subscriptions sees it
+ * twice.
+ *
+ * Routing takes no lock. Changes are serialized on the dispatcher and
+ * published through volatile fields, so subscriptions may be added or
+ * removed while messages are being dispatched.
+ */
+public class TopicDispatcher implements XMLMessageListener {
+
+	private static final XMLMessageListener[] NONE = new XMLMessageListener[0];
+	private static final Node[] NO_NODES = new Node[0];
+
+	private static final class Node {
+		final Node parent;
+		/** The level, or for a prefix node the prefix without its '*'. */
+		final String level;
+		final boolean prefix;
+		volatile AtomicReferenceArray<Node> table;
+		int size;
+		volatile Node[] prefixes = NO_NODES;
+		/** Handlers of the subscription ending at this level. */
+		volatile XMLMessageListener[] handlers = NONE;
+		/** Handlers of the subscription that is this level followed by "/&gt;". */
+		volatile XMLMessageListener[] rest = NONE;
+
+		Node(Node parent, String level, boolean prefix) {
+			this.parent = parent;
+			this.level = level;
+			this.prefix = prefix;
+		}
+
+		boolean isEmpty() {
+			return size == 0 && prefixes.length == 0 && handlers.length == 0 && rest.length == 0;
+		}
+	}
+
+	private final Node root = new Node(null, "", false);
+	private final XMLMessageListener unmatched;
+	private int subscriptions;
+	private int nodes = 1;
+	private volatile long dispatched;
+	private volatile long dropped;
+	private volatile long handlerErrors;
+
+	/**
+	 * @param unmatched receives the messages no subscription matches, and
+	 *        the exceptions passed to onException; may be null
+	 */
+	public TopicDispatcher(XMLMessageListener unmatched) {
+		this.unmatched = unmatched;
+	}
+
+	/**
+	 * Registers <code>handler</code> for messages whose topic matches
+	 * <code>subscription</code>.
+	 *
+	 * @return true if this is the first handler of the subscription, that
+	 *         is, if the session needs to subscribe to it
+	 */
+	public synchronized boolean subscribe(String subscription, XMLMessageListener handler) {
+		Node n = root;
+		boolean rest = false;
+		int p = 0, len = subscription.length();
+		while (p <= len) {
+			int end = subscription.indexOf('/', p);
+			if (end < 0) end = len;
+			if (end == len && end - p == 1 && subscription.charAt(p) == '>') {
+				rest = true;
+				break;
+			}
+			n = child(n, subscription, p, end);
+			p = end + 1;
+		}
+		XMLMessageListener[] current = rest ? n.rest : n.handlers;
+		XMLMessageListener[] updated = new XMLMessageListener[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, current.length);
+		updated[current.length] = handler;
+		if (rest) {
+			n.rest = updated;
+		} else {
+			n.handlers = updated;
+		}
+		if (current.length == 0) subscriptions++;
+		return current.length == 0;
+	}
+
+	/**
+	 * Removes one registration of <code>handler</code> for
+	 * <code>subscription</code>.
+	 *
+	 * @return true if the subscription has no handlers left, that is, if the
+	 *         session no longer needs it
+	 */
+	public synchronized boolean unsubscribe(String subscription, XMLMessageListener handler) {
+		Node n = root;
+		boolean rest = false;
+		int p = 0, len = subscription.length();
+		while (p <= len && n != null) {
+			int end = subscription.indexOf('/', p);
+			if (end < 0) end = len;
+			if (end == len && end - p == 1 && subscription.charAt(p) == '>') {
+				rest = true;
+				break;
+			}
+			n = existing(n, subscription, p, end);
+			p = end + 1;
+		}
+		if (n == null) return false;
+		XMLMessageListener[] current = rest ? n.rest : n.handlers;
+		int i = current.length - 1;
+		while (i >= 0 && current[i] != handler) i--;
+		if (i < 0) return false;
+		XMLMessageListener[] updated = NONE;
+		if (current.length > 1) {
+			updated = new XMLMessageListener[current.length - 1];
+			System.arraycopy(current, 0, updated, 0, i);
+			System.arraycopy(current, i + 1, updated, i, updated.length - i);
+		}
+		if (rest) {
+			n.rest = updated;
+		} else {
+			n.handlers = updated;
+		}
+		if (updated.length > 0) return false;
+		subscriptions--;
+		prune(n);
+		return true;
+	}
+
+	/** Distinct subscriptions with at least one handler. */
+	public synchronized int getSubscriptionCount() {
+		return subscriptions;
+	}
+
+	/** Trie nodes, the root included. */
+	public synchronized int getNodeCount() {
+		return nodes;
+	}
+
+	public long getDispatched() {
+		return dispatched;
+	}
+
+	/** Messages that matched no subscription. */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/** RuntimeExceptions thrown by handlers; the other handlers still run. */
+	public long getHandlerErrors() {
+		return handlerErrors;
+	}
+
+	public void onReceive(BytesXMLMessage msg) {
+		dispatched++;
+		if (dispatch(msg.getDestination().getName(), msg) == 0) {
+			dropped++;
+			if (unmatched != null) unmatched.onReceive(msg);
+		}
+	}
+
+	public void onException(JCSMPException e) {
+		if (unmatched != null) unmatched.onException(e);
+	}
+
+	/**
+	 * Passes <code>msg</code> to the handlers of every subscription
+	 * matching <code>topic</code>.
+	 *
+	 * @return the number of matching subscriptions
+	 */
+	public int dispatch(String topic, BytesXMLMessage msg) {
+		return walk(root, topic, 0, msg);
+	}
+
+	/** @param t start of the level to match, or length + 1 past the last one */
+	private int walk(Node n, String topic, int t, BytesXMLMessage msg) {
+		int len = topic.length();
+		if (t > len) return deliver(n.handlers, msg);
+		int hits = 0;
+		// '>' needs at least one more level, and it must not be empty.
+		if (t < len) hits += deliver(n.rest, msg);
+		int end = topic.indexOf('/', t);
+		if (end < 0) end = len;
+		Node exact = find(n, topic, t, end);
+		if (exact != null) hits += walk(exact, topic, end + 1, msg);
+		Node[] prefixes = n.prefixes;
+		for (int i = 0; i < prefixes.length; i++) {
+			String prefix = prefixes[i].level;
+			if (prefix.length() <= end - t && topic.regionMatches(t, prefix, 0, prefix.length())) {
+				hits += walk(prefixes[i], topic, end + 1, msg);
+			}
+		}
+		return hits;
+	}
+
+	private int deliver(XMLMessageListener[] handlers, BytesXMLMessage msg) {
+		if (handlers.length == 0) return 0;
+		for (int i = 0; i < handlers.length; i++) {
+			try {
+				handlers[i].onReceive(msg);
+			} catch (RuntimeException e) {
+				handlerErrors++;
+			}
+		}
+		return 1;
+	}
+
+	private static int hash(String s, int from, int to) {
+		int h = 0;
+		for (int i = from; i < to; i++) h = 31 * h + s.charAt(i);
+		return h ^ (h >>> 16);
+	}
+
+	/** The exact child for s[from, to), or null. */
+	private static Node find(Node n, String s, int from, int to) {
+		AtomicReferenceArray<Node> table = n.table;
+		if (table == null) return null;
+		int mask = table.length() - 1;
+		int len = to - from;
+		for (int i = hash(s, from, to) & mask;; i = (i + 1) & mask) {
+			Node c = table.get(i);
+			if (c == null) return null;
+			if (c.level.length() == len && s.regionMatches(from, c.level, 0, len)) return c;
+		}
+	}
+
+	/** The child for the subscription level s[from, to), or null. */
+	private static Node existing(Node n, String s, int from, int to) {
+		if (to > from && s.charAt(to - 1) == '*') {
+			for (Node c : n.prefixes) {
+				if (c.level.length() == to - 1 - from && s.regionMatches(from, c.level, 0, c.level.length())) return c;
+			}
+			return null;
+		}
+		return find(n, s, from, to);
+	}
+
+	/** The child for the subscription level s[from, to), created if needed. */
+	private Node child(Node n, String s, int from, int to) {
+		Node c = existing(n, s, from, to);
+		if (c != null) return c;
+		if (to > from && s.charAt(to - 1) == '*') {
+			c = new Node(n, s.substring(from, to - 1), true);
+			Node[] updated = new Node[n.prefixes.length + 1];
+			System.arraycopy(n.prefixes, 0, updated, 0, n.prefixes.length);
+			updated[n.prefixes.length] = c;
+			n.prefixes = updated;
+			nodes++;
+			return c;
+		}
+		c = new Node(n, s.substring(from, to), false);
+		AtomicReferenceArray<Node> table = n.table;
+		if (table == null || (n.size + 1) * 2 > table.length()) {
+			// Readers keep using the old table until the new one is complete.
+			n.table = rehash(table, c, table == null ? 4 : table.length() * 2);
+		} else {
+			put(table, c);
+		}
+		n.size++;
+		nodes++;
+		return c;
+	}
+
+	private static AtomicReferenceArray<Node> rehash(AtomicReferenceArray<Node> old, Node add, int capacity) {
+		AtomicReferenceArray<Node> table = new AtomicReferenceArray<Node>(capacity);
+		if (old != null) {
+			for (int i = 0; i < old.length(); i++) {
+				Node c = old.get(i);
+				if (c != null) put(table, c);
+			}
+		}
+		if (add != null) put(table, add);
+		return table;
+	}
+
+	private static void put(AtomicReferenceArray<Node> table, Node c) {
+		int mask = table.length() - 1;
+		int i = hash(c.level, 0, c.level.length()) & mask;
+		while (table.get(i) != null) i = (i + 1) & mask;
+		table.set(i, c);
+	}
+
+	/** Unlinks empty nodes from <code>n</code> upwards. */
+	private void prune(Node n) {
+		while (n.parent != null && n.isEmpty()) {
+			Node parent = n.parent;
+			if (n.prefix) {
+				Node[] updated = new Node[parent.prefixes.length - 1];
+				int j = 0;
+				for (Node c : parent.prefixes) {
+					if (c != n) updated[j++] = c;
+				}
+				parent.prefixes = updated;
+			} else {
+				// Open addressing cannot just clear the slot; rebuild without it.
+				AtomicReferenceArray<Node> old = parent.table;
+				AtomicReferenceArray<Node> table = null;
+				if (parent.size > 1) {
+					table = new AtomicReferenceArray<Node>(old.length());
+					for (int i = 0; i < old.length(); i++) {
+						Node c = old.get(i);
+						if (c != null && c != n) put(table, c);
+					}
+				}
+				parent.table = table;
+				parent.size--;
+			}
+			nodes--;
+			n = parent;
+		}
+	}
+}
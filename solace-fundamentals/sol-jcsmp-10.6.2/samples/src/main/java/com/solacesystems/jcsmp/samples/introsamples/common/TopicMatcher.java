@@ -0,0 +1,44 @@
+/**
+ * TopicMatcher.java
+ *
+ * Matches topics against Solace subscriptions with wildcards, for the
+ * samples that filter or route messages by topic themselves.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+public final class TopicMatcher {
+
+	private TopicMatcher() {
+	}
+
+	/**
+	 * Solace topic matching: '*' matches one level, or the rest of a level
+	 * after a prefix, and '>' as the last level matches one or more levels.
+	 */
+	public static boolean matches(String pattern, String topic) {
+		int p = 0, t = 0;
+		int pn = pattern.length(), tn = topic.length();
+		while (p < pn) {
+			int pEnd = pattern.indexOf('/', p);
+			if (pEnd < 0) pEnd = pn;
+			if (t > tn) return false;
+			int tEnd = topic.indexOf('/', t);
+			if (tEnd < 0) tEnd = tn;
+			if (pEnd - p == 1 && pattern.charAt(p) == '>' && pEnd == pn) {
+				return t < tn;
+			}
+			if (pEnd > p && pattern.charAt(pEnd - 1) == '*') {
+				int prefix = pEnd - 1 - p;
+				if (tEnd - t < prefix || !topic.regionMatches(t, pattern, p, prefix)) return false;
+			} else if (pEnd - p != tEnd - t || !topic.regionMatches(t, pattern, p, pEnd - p)) {
+				return false;
+			}
+			p = pEnd + 1;
+			t = tEnd + 1;
+		}
+		return t > tn;
+	}
+}
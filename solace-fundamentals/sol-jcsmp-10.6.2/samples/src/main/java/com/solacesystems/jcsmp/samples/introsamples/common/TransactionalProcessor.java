@@ -0,0 +1,247 @@
+/**
+ * TransactionalProcessor.java
+ *
+ * Multi-threaded consume-transform-produce engine. Each worker owns a
+ * TransactedSession, a flow bound to a shared non-exclusive queue and a
+ * producer created from the same TransactedSession, so every consumed
+ * message and its transformed output are committed atomically.
+ *
+ * Copyright 2009-2019 Solace Corporation. All rights reserved.
+ */
+
+package com.solacesystems.jcsmp.samples.introsamples.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.ConsumerFlowProperties;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.EndpointProperties;
+import com.solacesystems.jcsmp.FlowReceiver;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishEventHandler;
+import com.solacesystems.jcsmp.ProducerFlowProperties;
+import com.solacesystems.jcsmp.Queue;
+import com.solacesystems.jcsmp.XMLMessage;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.transaction.RollbackException;
+import com.solacesystems.jcsmp.transaction.TransactedSession;
+
+/**
+ * Failed transforms and commits are rolled back; the broker then redelivers
+ * the consumed messages (possibly to another worker), and the worker backs
+ * off before continuing. Messages that fail on every attempt are bounded by
+ * the queue's max-redelivery setting and its dead message queue.
+ */
+public class TransactionalProcessor {
+
+	/**
+	 * Pluggable transformation. Returns the message to produce, or null to
+	 * consume the input without producing anything. Throwing rolls back the
+	 * transaction. Called from the worker thread only.
+	 */
+	public interface Transform {
+		XMLMessage transform(BytesXMLMessage input) throws Exception;
+	}
+
+	private static final int POLL_MS = 250;
+	private static final long MAX_BACKOFF_MS = 1000;
+
+	private final JCSMPSession session;
+	private final Queue source;
+	private final Destination target;
+	private final Transform transform;
+	private final int groupSize;
+	private final long maxDelayMicros;
+	private final List<Worker> workers = new ArrayList<Worker>();
+	private volatile boolean running = false;
+
+	/**
+	 * One transacted consumer/producer pair on its own thread.
+	 */
+	public class Worker implements Runnable, GroupCommitSession.CommitListener, JCSMPStreamingPublishEventHandler {
+		final int id;
+		final AtomicLong committed = new AtomicLong();
+		final AtomicLong rolledBack = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+		private TransactedSession txSession;
+		private FlowReceiver receiver;
+		private XMLMessageProducer producer;
+		private GroupCommitSession groupCommit;
+		private Thread thread;
+		private long backoffMs = 0;
+
+		Worker(int id) {
+			this.id = id;
+		}
+
+		void open() throws JCSMPException {
+			txSession = session.createTransactedSession();
+			ProducerFlowProperties prodFlowProps = new ProducerFlowProperties();
+			prodFlowProps.setWindowSize(255);
+			producer = txSession.createProducer(prodFlowProps, this);
+
+			ConsumerFlowProperties consFlowProps = new ConsumerFlowProperties();
+			consFlowProps.setEndpoint(source);
+			consFlowProps.setStartState(true);
+			EndpointProperties endpointProps = new EndpointProperties();
+			endpointProps.setAccessType(EndpointProperties.ACCESSTYPE_NONEXCLUSIVE);
+			receiver = txSession.createFlow(null, consFlowProps, endpointProps);
+
+			groupCommit = new GroupCommitSession(txSession, groupSize, maxDelayMicros);
+		}
+
+		public void run() {
+			// An interrupt stops only this worker; stop() stops them all.
+			while (running && !Thread.currentThread().isInterrupted()) {
+				int due = groupCommit.millisUntilDue();
+				int timeout = due == 0 ? POLL_MS : Math.min(POLL_MS, due);
+				try {
+					BytesXMLMessage msg = receiver.receive(timeout);
+					if (msg != null) {
+						XMLMessage out = transform.transform(msg);
+						if (out != null) {
+							producer.send(out, target);
+						}
+						groupCommit.add(null, this);
+					}
+					groupCommit.commitIfDue();
+					backoffMs = 0;
+				} catch (RollbackException e) {
+					// The group has been rolled back by the broker.
+					backoff();
+				} catch (Exception e) {
+					failures.incrementAndGet();
+					try {
+						groupCommit.rollback(e instanceof JCSMPException
+							? (JCSMPException) e : new JCSMPException("Transform failed", e));
+					} catch (JCSMPException re) {
+						System.err.printf("Worker %d: rollback failed: %s\n", id, re);
+					}
+					backoff();
+				}
+			}
+			try {
+				groupCommit.commit();
+			} catch (JCSMPException e) {
+				System.err.printf("Worker %d: final commit failed: %s\n", id, e);
+			}
+			receiver.close();
+			txSession.close();
+		}
+
+		private void backoff() {
+			backoffMs = backoffMs == 0 ? 10 : Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+			try {
+				Thread.sleep(backoffMs);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public void onCommitted(Object token) {
+			committed.incrementAndGet();
+		}
+
+		public void onRolledBack(Object token, JCSMPException cause) {
+			rolledBack.incrementAndGet();
+		}
+
+		public void handleError(String messageID, JCSMPException cause, long timestamp) {
+			System.err.printf("Worker %d: publish error %s\n", id, cause);
+		}
+
+		public void responseReceived(String messageID) {
+			// Do Nothing
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public long getCommitted() {
+			return committed.get();
+		}
+
+		public long getTransactions() {
+			return groupCommit == null ? 0 : groupCommit.getCommitCount();
+		}
+
+		public long getRolledBack() {
+			return rolledBack.get();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+	}
+
+	/**
+	 * @param session a connected session shared by the workers' transacted sessions
+	 * @param source non-exclusive queue the workers consume from
+	 * @param target destination transformed messages are sent to
+	 * @param workers number of worker threads
+	 * @param transform transformation applied to each message
+	 * @param groupSize messages per transaction (1 commits every message)
+	 * @param maxDelayMicros maximum time a message waits for its group commit
+	 */
+	public TransactionalProcessor(JCSMPSession session, Queue source, Destination target, int workers,
+		Transform transform, int groupSize, long maxDelayMicros) {
+		this.session = session;
+		this.source = source;
+		this.target = target;
+		this.transform = transform;
+		this.groupSize = groupSize;
+		this.maxDelayMicros = maxDelayMicros;
+		for (int i = 0; i < workers; i++) {
+			this.workers.add(new Worker(i));
+		}
+	}
+
+	/**
+	 * Opens the transacted sessions and flows, then starts the worker threads.
+	 */
+	public void start() throws JCSMPException {
+		for (Worker w : workers) {
+			w.open();
+		}
+		running = true;
+		for (Worker w : workers) {
+			w.thread = new Thread(w, "tx-processor-" + w.id);
+			w.thread.start();
+		}
+	}
+
+	/**
+	 * Stops the workers after their current message, committing pending work.
+	 */
+	public void stop() throws InterruptedException {
+		running = false;
+		for (Worker w : workers) {
+			if (w.thread != null) w.thread.join();
+		}
+	}
+
+	public List<Worker> getWorkers() {
+		return workers;
+	}
+
+	public long getCommitted() {
+		long total = 0;
+		for (Worker w : workers) {
+			total += w.getCommitted();
+		}
+		return total;
+	}
+
+	public long getTransactions() {
+		long total = 0;
+		for (Worker w : workers) {
+			total += w.getTransactions();
+		}
+		return total;
+	}
+}